@@ -0,0 +1,198 @@
+package trafficsimulator.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outputs of the external tools stored by the digest of their inputs, so the layout which was
+ * already generated once does not need the tools again. Shared by all the sessions, the least
+ * recently used outputs are deleted when the cache grows over its size.
+ * @author z003ru0y
+ *
+ */
+public class ArtifactCache
+{
+  private static Logger logger = LoggerFactory.getLogger(ArtifactCache.class);
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path directory;
+
+  private final long maxBytes;
+
+  /** sizes of the stored outputs by key, the least recently used first */
+  private final Map<String, Long> entries;
+
+  private long totalBytes;
+
+  /**
+   * Creates the cache and loads the outputs stored in the directory before
+   * @param directory directory of the cache
+   * @param maxBytes maximal total size of the stored outputs
+   */
+  public ArtifactCache(String directory, long maxBytes)
+  {
+    this.directory = Paths.get(directory);
+    this.maxBytes = maxBytes;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    load();
+    evict(null);
+    logger.debug("Artifact cache started in {} with {} outputs, {} bytes", directory, entries.size(), totalBytes);
+  }
+
+  /**
+   * Copies the stored output to the file
+   * @param key tool and digest of its inputs
+   * @param target file where to put the output
+   * @return true if the output was stored, false if the tool has to run
+   */
+  public synchronized boolean restore(String key, String target)
+  {
+    // get marks the output as the most recently used one
+    if (entries.get(key) == null)
+    {
+      return false;
+    }
+
+    Path stored = directory.resolve(key);
+    try
+    {
+      Files.copy(stored, Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+      Files.setLastModifiedTime(stored, FileTime.fromMillis(System.currentTimeMillis()));
+      return true;
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not restore {} from the artifact cache: {}", key, e.getMessage());
+      remove(key);
+      return false;
+    }
+  }
+
+  /**
+   * Stores copy of the output, the least recently used outputs are deleted if the cache is full
+   * @param key tool and digest of its inputs
+   * @param source file with the output
+   */
+  public synchronized void store(String key, String source)
+  {
+    Path stored = directory.resolve(key);
+    Path temp = directory.resolve(key + TEMP_SUFFIX);
+    try
+    {
+      Files.createDirectories(directory);
+      Files.copy(Paths.get(source), temp, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temp, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      long size = Files.size(stored);
+
+      Long previous = entries.put(key, size);
+      totalBytes += size - (previous != null ? previous : 0);
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not store {} in the artifact cache: {}", key, e.getMessage());
+      return;
+    }
+
+    evict(key);
+  }
+
+  /**
+   * Deletes the least recently used outputs until the cache fits its size
+   * @param keep key of the output which is kept anyway, null for none
+   */
+  private void evict(String keep)
+  {
+    // get would change the access order, the sizes are read from the entries
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext())
+    {
+      Map.Entry<String, Long> eldest = iterator.next();
+      if (eldest.getKey().equals(keep))
+      {
+        continue;
+      }
+      totalBytes -= eldest.getValue();
+      iterator.remove();
+      delete(eldest.getKey());
+      logger.debug("{} removed from the artifact cache", eldest.getKey());
+    }
+  }
+
+  private void remove(String key)
+  {
+    Long size = entries.remove(key);
+    if (size != null)
+    {
+      totalBytes -= size;
+    }
+    delete(key);
+  }
+
+  private void delete(String key)
+  {
+    try
+    {
+      Files.deleteIfExists(directory.resolve(key));
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not delete {} from the artifact cache: {}", key, e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the outputs stored in the directory, the order of use is taken from the modification time
+   */
+  private void load()
+  {
+    if (!Files.isDirectory(directory))
+    {
+      return;
+    }
+
+    List<File> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+    {
+      for (Path path : stream)
+      {
+        if (path.toString().endsWith(TEMP_SUFFIX))
+        {
+          // left by interrupted store
+          Files.deleteIfExists(path);
+        }
+        else if (Files.isRegularFile(path))
+        {
+          files.add(path.toFile());
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not read the artifact cache {}: {}", directory, e.getMessage());
+      return;
+    }
+
+    files.sort(Comparator.comparingLong(File::lastModified));
+    for (File file : files)
+    {
+      entries.put(file.getName(), file.length());
+      totalBytes += file.length();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package trafficsimulator.generator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of the content of the input files of an external tool, so the tool can be skipped
+ * when its inputs did not change. The digest of the inputs of the last run is kept
+ * in a stamp file next to the output of the tool.
+ * @author z003ru0y
+ *
+ */
+public class ContentDigest
+{
+  private static final String ALGORITHM = "SHA-256";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private ContentDigest()
+  {
+  }
+
+  /**
+   * @param files input files, in fixed order
+   * @return hex digest of the names and the content of the files
+   * @throws IOException when some of the files can not be read
+   */
+  public static String of(String... files) throws IOException
+  {
+    MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance(ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      // every Java platform has to support SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    for (String file : files)
+    {
+      Path path = Paths.get(file);
+      byte[] content = Files.readAllBytes(path);
+      digest.update(path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+      digest.update(longToBytes(content.length));
+      digest.update(content);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * @param stamp stamp file
+   * @param digest digest of the current inputs
+   * @param output output file of the tool
+   * @return true if the output exists and was generated from the inputs with the digest
+   */
+  public static boolean isUpToDate(String stamp, String digest, String output)
+  {
+    try
+    {
+      Path stampPath = Paths.get(stamp);
+      return Files.exists(Paths.get(output)) && Files.exists(stampPath)
+        && new String(Files.readAllBytes(stampPath), StandardCharsets.UTF_8).equals(digest);
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * @param stamp stamp file
+   * @param digest digest of the inputs the output was generated from
+   * @throws IOException when the stamp can not be written
+   */
+  public static void writeStamp(String stamp, String digest) throws IOException
+  {
+    Files.write(Paths.get(stamp), digest.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Removes the stamp, so the tool runs next time, called before the tool runs
+   * @param stamp stamp file
+   * @throws IOException when the stamp can not be deleted
+   */
+  public static void deleteStamp(String stamp) throws IOException
+  {
+    Files.deleteIfExists(Paths.get(stamp));
+  }
+
+  private static byte[] longToBytes(long value)
+  {
+    byte[] bytes = new byte[Long.BYTES];
+    for (int i = Long.BYTES - 1; i >= 0; i--)
+    {
+      bytes[i] = (byte) value;
+      value >>>= 8;
+    }
+    return bytes;
+  }
+
+  private static String toHex(byte[] bytes)
+  {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,31 @@
+package trafficsimulator.generator;
+
+import lombok.Data;
+
+/**
+ * Result of external tool which finished
+ * @author z003ru0y
+ *
+ */
+@Data
+public class ProcessResult
+{
+  private final int exitValue;
+
+  /** last lines of the standard output of the tool */
+  private final String output;
+
+  /** last lines of the error output of the tool */
+  private final String errorOutput;
+
+  /** how long the tool ran (ms) */
+  private final long duration;
+
+  /**
+   * @return true if the tool finished with exit value 0
+   */
+  public boolean isSuccessful()
+  {
+    return exitValue == 0;
+  }
+}
@@ -0,0 +1,244 @@
+package trafficsimulator.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import trafficsimulator.generator.exceptions.ToolExecutionException;
+
+/**
+ * Runs the external tools (netconvert, duarouter) for all the sessions. The output of the tools is
+ * read while they run, so they never block on full pipe, and the last lines of both the outputs are
+ * kept for the error message. Tool which does not finish in time is killed, the same happens when the waiting thread is
+ * interrupted. Several tools run at once, up to the limit, the others wait for their turn.
+ * @author z003ru0y
+ *
+ */
+public class ProcessRunner
+{
+  private static Logger logger = LoggerFactory.getLogger(ProcessRunner.class);
+
+  /** how long to wait for the tool to quit before it is killed forcibly (ms) */
+  private static final long KILL_TIMEOUT = 2000;
+
+  /** how long to wait for the rest of the output after the tool ended (ms) */
+  private static final long DRAIN_TIMEOUT = 1000;
+
+  /** number of the last output lines kept for the result */
+  private static final int OUTPUT_LINES = 20;
+
+  /** maximal time of one run of a tool (ms), 0 for no limit */
+  private final long timeout;
+
+  private final Semaphore slots;
+
+  private final ExecutorService drainers;
+
+  private final Set<Process> running;
+
+  /**
+   * @param maxProcesses maximal number of tools running at once
+   * @param timeout maximal time of one run of a tool (ms), 0 for no limit
+   */
+  public ProcessRunner(int maxProcesses, long timeout)
+  {
+    this.timeout = timeout;
+    this.slots = new Semaphore(maxProcesses, true);
+    this.running = ConcurrentHashMap.newKeySet();
+    this.drainers = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "tool-output-drainer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    logger.debug("Process runner started, max processes: {}, timeout: {} ms", maxProcesses, timeout);
+  }
+
+  /**
+   * Runs the tool and waits until it finishes, waits for its turn first if too many tools are running
+   * @param command the tool and its arguments
+   * @param directory working directory of the tool, null for the current one
+   * @return exit value and output of the tool
+   * @throws ToolExecutionException when the tool could not be started or did not finish in time
+   * @throws InterruptedException when the thread was interrupted, the tool is killed
+   */
+  public ProcessResult run(List<String> command, File directory) throws ToolExecutionException, InterruptedException
+  {
+    slots.acquire();
+    try
+    {
+      return execute(command, directory);
+    }
+    finally
+    {
+      slots.release();
+    }
+  }
+
+  /**
+   * Kills all the running tools, the waiting threads get their exit values
+   */
+  public void shutdown()
+  {
+    for (Process process : running)
+    {
+      process.destroyForcibly();
+    }
+    drainers.shutdownNow();
+  }
+
+  private ProcessResult execute(List<String> command, File directory) throws ToolExecutionException, InterruptedException
+  {
+    String name = command.get(0);
+    long start = System.currentTimeMillis();
+
+    Process process;
+    try
+    {
+      process = new ProcessBuilder(command).directory(directory).start();
+      // the tools read no input
+      process.getOutputStream().close();
+    }
+    catch (IOException e)
+    {
+      throw new ToolExecutionException("'" + name + "' could not be started: " + e.getMessage());
+    }
+    running.add(process);
+    logger.debug("'{}' started: {}", name, command);
+
+    OutputTail output = new OutputTail();
+    OutputTail errorOutput = new OutputTail();
+    Future<?> stdout = drainers.submit(() -> drain(name, process.getInputStream(), output));
+    Future<?> stderr = drainers.submit(() -> drain(name, process.getErrorStream(), errorOutput));
+    try
+    {
+      boolean finished;
+      if (timeout > 0)
+      {
+        finished = process.waitFor(timeout, TimeUnit.MILLISECONDS);
+      }
+      else
+      {
+        process.waitFor();
+        finished = true;
+      }
+
+      if (!finished)
+      {
+        kill(name, process);
+        throw new ToolExecutionException("'" + name + "' did not finish in " + timeout + " ms, error output: " + errorOutput);
+      }
+
+      awaitOutput(name, stdout, stderr);
+      long duration = System.currentTimeMillis() - start;
+      logger.debug("'{}' finished with {} in {} ms", name, process.exitValue(), duration);
+      return new ProcessResult(process.exitValue(), output.toString(), errorOutput.toString(), duration);
+    }
+    catch (InterruptedException e)
+    {
+      logger.debug("Waiting for '{}' interrupted, killing it", name);
+      kill(name, process);
+      throw e;
+    }
+    finally
+    {
+      running.remove(process);
+    }
+  }
+
+  /**
+   * Asks the tool to quit, kills it when it does not
+   */
+  private static void kill(String name, Process process)
+  {
+    process.destroy();
+    try
+    {
+      if (!process.waitFor(KILL_TIMEOUT, TimeUnit.MILLISECONDS))
+      {
+        logger.warn("'{}' did not quit, killing it", name);
+        process.destroyForcibly();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Waits until the output is read, the pipes may be still open if the tool left its own child processes
+   */
+  private static void awaitOutput(String name, Future<?> stdout, Future<?> stderr) throws InterruptedException
+  {
+    try
+    {
+      stdout.get(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+      stderr.get(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException | TimeoutException e)
+    {
+      logger.warn("Output of '{}' was not read completely: {}", name, e.getMessage());
+      stdout.cancel(true);
+      stderr.cancel(true);
+    }
+  }
+
+  private static void drain(String name, InputStream stream, OutputTail output)
+  {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream)))
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        logger.debug("{}: {}", name, line);
+        output.add(line);
+      }
+    }
+    catch (IOException e)
+    {
+      // the stream is closed when the tool is killed
+      logger.trace("Output of '{}' closed: {}", name, e.getMessage());
+    }
+  }
+
+  /**
+   * Last lines of one output of the tool, read by the waiting thread while the drainer writes them
+   */
+  private static class OutputTail
+  {
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    synchronized void add(String line)
+    {
+      if (lines.size() == OUTPUT_LINES)
+      {
+        lines.removeFirst();
+      }
+      lines.addLast(line);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+      return String.join(System.lineSeparator(), lines);
+    }
+  }
+}
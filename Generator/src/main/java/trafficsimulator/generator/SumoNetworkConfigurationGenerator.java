@@ -1,28 +1,33 @@
 package trafficsimulator.generator;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactoryConfigurationError;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import trafficsimulator.shared.dto.Situation;
 import trafficsimulator.generator.exceptions.SumoNetworkGenerationException;
+import trafficsimulator.generator.exceptions.ToolExecutionException;
 import trafficsimulator.generator.exceptions.UnknownSignalNumberException;
 import trafficsimulator.shared.dto.Detector;
 import trafficsimulator.shared.dto.GeneratedRoute;
@@ -35,6 +40,7 @@ import trafficsimulator.shared.dto.SignalGroup;
 import trafficsimulator.shared.dto.SignalProgram;
 import trafficsimulator.shared.dto.SumoPhase;
 import trafficsimulator.shared.dto.VehicleType;
+import trafficsimulator.shared.enumerators.SituationPart;
 import trafficsimulator.shared.helper.FileNames;
 
 /**
@@ -44,6 +50,19 @@ import trafficsimulator.shared.helper.FileNames;
 public class SumoNetworkConfigurationGenerator
 {
   private static Logger logger = LoggerFactory.getLogger(SumoNetworkConfigurationGenerator.class);
+
+  /** suffix of the stamp file with the digest of the inputs the output of the tool was generated from */
+  private static final String STAMP_SUFFIX = ".inputs";
+
+  /* the tools, found on the path */
+  private static final String NETCONVERT = "netconvert";
+  private static final String DUAROUTER = "duarouter";
+
+  /* prefixes of the keys of the tool outputs in the artifact cache */
+  private static final String NETCONVERT_KEY = "netconvert-";
+  private static final String DUAROUTER_KEY = "duarouter-";
+
+  private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
   
   
   @Autowired
@@ -52,15 +71,35 @@ public class SumoNetworkConfigurationGenerator
   private final FileNames fileNames;
   
   private final String configurationPath;
+
+  /** outputs of netconvert and duarouter, null when they are not cached */
+  private final ArtifactCache artifactCache;
+
+  /** runs netconvert and duarouter */
+  private final ProcessRunner processRunner;
+
+  /** generates the independent files in parallel, shared by the sessions; null to generate them one by one */
+  private final ExecutorService fileWriters;
   
   /**
    * @param confPath path to the configuration files
    * @param fileNames object with file names
+   * @param artifactCache outputs of netconvert and duarouter of the layouts generated before, null to not cache them
+   * @param processRunner runs netconvert and duarouter
+   * @param threads maximal number of files generated in parallel, 1 to generate them one by one
    */
-  public SumoNetworkConfigurationGenerator(String confPath, FileNames fileNames)
+  public SumoNetworkConfigurationGenerator(String confPath, FileNames fileNames, ArtifactCache artifactCache,
+      ProcessRunner processRunner, int threads)
   {
     this.configurationPath = confPath;
     this.fileNames = fileNames;
+    this.artifactCache = artifactCache;
+    this.processRunner = processRunner;
+    this.fileWriters = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "sumo-generator-file-writer");
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
     logger.info("Sumo configuration path: {}", this.configurationPath);
     logger.debug("Sumo Network Configuration Generator started");
   }
@@ -72,29 +111,83 @@ public class SumoNetworkConfigurationGenerator
   public void generateConfiguration(Situation configuration)
     throws SumoNetworkGenerationException
   {
-    logger.info("Generating SUMO cfg files");
+    generateConfiguration(configuration, configurationPath);
+  }
+
+  /**
+   * Only the files of the parts changed since the last generation are generated again,
+   * a file is written only when its content changed and netconvert and duarouter run only
+   * when the content of their inputs changed since their last run.
+   * @param configuration infrastructure layoput to generate into files
+   * @param configurationPath directory where to put the files, has to end with separator
+   * @throws SumoNetworkGenerationException when the generation fails
+   */
+  public void generateConfiguration(Situation configuration, String configurationPath)
+    throws SumoNetworkGenerationException
+  {
+    logger.info("Generating SUMO cfg files to {}", configurationPath);
     
     List<Intersection> intersections = configuration.getIntersectionList();
+    Set<SituationPart> changes = configuration.getChangedParts();
+    List<Future<?>> tasks = new ArrayList<>();
 
     try
     {
-      generateNodeFile(intersections, configurationPath);
-      generateEdgeFile(intersections, configuration.getIntersectionConnections(), configurationPath);
-      generateConnectionFile(intersections, configuration.getIntersectionConnections(), configurationPath);
-      xmlGenerator.generateNetCfgFile(configurationPath);
+      // files which do not depend on each other are generated in parallel,
+      // only the tools and the files generated from their outputs wait for their inputs
+      List<Future<?>> networkFiles = new ArrayList<>();
+      if (needsGeneration(changes, SituationPart.NETWORK, configurationPath, fileNames.getNodesFileName(),
+        fileNames.getEdgesFileName(), fileNames.getConnectionsFileName()))
+      {
+        networkFiles.add(submit(tasks, () -> generateNodeFile(intersections, configurationPath)));
+        networkFiles.add(submit(tasks, () -> generateEdgeFile(intersections, configuration.getIntersectionConnections(),
+          configurationPath)));
+        networkFiles.add(submit(tasks, () -> generateConnectionFile(intersections,
+          configuration.getIntersectionConnections(), configurationPath)));
+      }
+      networkFiles.add(submit(tasks, () -> xmlGenerator.generateNetCfgFile(configurationPath)));
+
+      List<Future<?>> flowFiles = new ArrayList<>();
+      if (needsGeneration(changes, SituationPart.FLOWS, configurationPath, fileNames.getFlowsFileName()))
+      {
+        flowFiles.add(submit(tasks, () -> generateFlowsFile(configuration.getRoutes(), configurationPath)));
+      }
+
+      List<Future<?>> additionalFiles = new ArrayList<>();
+      if (needsGeneration(changes, SituationPart.TRAFFIC_LIGHTS, configurationPath, fileNames.getTlsFileName()))
+      {
+        additionalFiles.add(submit(tasks, () -> generateTrafficLightFile(intersections, configurationPath)));
+      }
+      if (needsGeneration(changes, SituationPart.DETECTORS, configurationPath, fileNames.getDetFileName()))
+      {
+        additionalFiles.add(submit(tasks, () -> generateDetectorsFile(intersections, configurationPath)));
+      }
+
+      await(networkFiles);
       generateNetFile(configurationPath);
 
-      generateFlowsFile(configuration.getRoutes(), configurationPath);
-      generateRoutesFile(configurationPath);
-      configuration.setGeneratedRoutes(transformRoutesFile(configuration.getVehicleTypes(), configurationPath));
-      generateTrafficLightFile(intersections, configurationPath);
-      generateDetectorsFile(intersections, configurationPath);
+      await(flowFiles);
+      boolean routed = generateRoutesFile(configurationPath);
+      if (routed || configuration.getGeneratedRoutes() == null
+        || needsGeneration(changes, SituationPart.VEHICLE_TYPES, configurationPath, fileNames.getRoutesFileName()))
+      {
+        configuration.setGeneratedRoutes(transformRoutesFile(configuration.getVehicleTypes(), configurationPath));
+      }
+
+      await(additionalFiles);
       xmlGenerator.generateSumoCfgFile(configurationPath);
+
+      configuration.clearChanges();
+    }
+    catch (SumoNetworkGenerationException e)
+    {
+      throw e;
     }
-    catch (
-      ParserConfigurationException
-      | TransformerFactoryConfigurationError
-      | TransformerException e)
+    catch (ToolExecutionException e)
+    {
+      throw new SumoNetworkGenerationException("Sumo configuration generator failed: " + e.getMessage());
+    }
+    catch (XMLStreamException e)
     {
       throw new SumoNetworkGenerationException(
           "Sumo configuration generator failed: javax.xml... :" + e.getMessage());
@@ -105,455 +198,624 @@ public class SumoNetworkConfigurationGenerator
       throw new SumoNetworkGenerationException(
           "Sumo configuration generator failed for unknown reason: javax.xml... :" + e.getMessage());
     }
+    finally
+    {
+      // no file is written after the generation ended, even when it failed
+      awaitQuietly(tasks);
+    }
   }
 
-  private void generateNodeFile(List<Intersection> intersections, String confPath) 
-  throws ParserConfigurationException, TransformerConfigurationException,
-    TransformerFactoryConfigurationError, TransformerException
+  /**
+   * Stops the threads generating the files
+   */
+  public void shutdown()
   {
+    if (fileWriters != null)
+    {
+      fileWriters.shutdownNow();
+    }
+  }
 
-    Document doc = xmlGenerator.prepareDocument("nodes");
-    Element rootElement = doc.getDocumentElement();
+  /**
+   * Generates the file on the pool, or right away when there is no pool
+   * @param tasks all the submitted tasks of the generation
+   * @param file generation of the file
+   * @return task generating the file
+   * @throws Exception when the file generated right away fails
+   */
+  private Future<?> submit(List<Future<?>> tasks, FileTask file) throws Exception
+  {
+    Future<?> task;
+    if (fileWriters == null)
+    {
+      file.generate();
+      task = CompletableFuture.completedFuture(null);
+    }
+    else
+    {
+      task = fileWriters.submit(() -> {
+        file.generate();
+        return null;
+      });
+    }
+    tasks.add(task);
+    return task;
+  }
 
-    for (Intersection intersection : intersections)
+  /**
+   * Waits until all the tasks finish, even when some of them fail
+   * @param tasks tasks generating the files
+   * @throws Exception failure of the first failed task
+   */
+  private static void await(List<Future<?>> tasks) throws Exception
+  {
+    Exception failure = null;
+    for (Future<?> task : tasks)
     {
-      // create intersection node
-      String attributesPart0[][] =
+      try
       {
-          { "id",
-              Integer.toString(intersection.getId()) },
-          { "x",
-              Double.toString(intersection.getCoordinates().getX()) },
-          { "y",
-              Double.toString(intersection.getCoordinates().getY()) },
-          { "type",
-              "traffic_light" } };
-      Element node = xmlGenerator.createElement(doc, "node", attributesPart0);
-      rootElement.appendChild(node);
-
-      for (Leg leg : intersection.getLegs())
+        task.get();
+      }
+      catch (ExecutionException e)
       {
-        // create leg node part 1 - far away
-        String attributesPart1[][] =
+        if (failure == null)
+        {
+          failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+  }
+
+  /**
+   * Waits until all the tasks finish, their failures are already reported by {@link #await(List)}
+   * @param tasks tasks generating the files
+   */
+  private static void awaitQuietly(List<Future<?>> tasks)
+  {
+    for (Future<?> task : tasks)
+    {
+      try
+      {
+        task.get();
+      }
+      catch (ExecutionException e)
+      {
+        logger.trace("Generation of the file failed: {}", e.getCause().getMessage());
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @param changes parts of the situation changed since the last generation
+   * @param part part generated into the files
+   * @param confPath path to the configuration files
+   * @param files files of the part
+   * @return true if the part changed or some of its files does not exist
+   */
+  private static boolean needsGeneration(Set<SituationPart> changes, SituationPart part, String confPath,
+      String... files)
+  {
+    if (changes.contains(part))
+    {
+      return true;
+    }
+    for (String file : files)
+    {
+      if (!Files.exists(Paths.get(confPath + file)))
+      {
+        return true;
+      }
+    }
+    logger.debug("{} did not change, its files are kept", part);
+    return false;
+  }
+
+  private void generateNodeFile(List<Intersection> intersections, String confPath) 
+    throws XMLStreamException, IOException
+  {
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getNodesFileName(), confPath, "nodes"))
+    {
+      for (Intersection intersection : intersections)
+      {
+        // create intersection node
+        String attributesPart0[][] =
         {
             { "id",
-                leg.getId() },
+                Integer.toString(intersection.getId()) },
             { "x",
-                Double.toString(leg.getCoordinates().getX()) },
+                Double.toString(intersection.getCoordinates().getX()) },
             { "y",
-                Double.toString(leg.getCoordinates().getY()) },
+                Double.toString(intersection.getCoordinates().getY()) },
             { "type",
-                "priority" } };
-        node = xmlGenerator.createElement(doc, "node", attributesPart1);
-        rootElement.appendChild(node);
+                "traffic_light" } };
+        writer.element("node", attributesPart0);
 
+        for (Leg leg : intersection.getLegs())
+        {
+          // create leg node part 1 - far away
+          String attributesPart1[][] =
+          {
+              { "id",
+                  leg.getId() },
+              { "x",
+                  Double.toString(leg.getCoordinates().getX()) },
+              { "y",
+                  Double.toString(leg.getCoordinates().getY()) },
+              { "type",
+                  "priority" } };
+          writer.element("node", attributesPart1);
+
+        }
       }
-    }
 
-    xmlGenerator.finalizeDocument(doc, fileNames.getNodesFileName(), confPath);
+      writer.finish();
+    }
   }
 
   private void generateEdgeFile(
 		  List<Intersection> intersections, List<IntersectionConnection> connections, String confPath)
-  throws ParserConfigurationException, TransformerConfigurationException,
-    TransformerFactoryConfigurationError, TransformerException
+    throws XMLStreamException, IOException
   {
-    Document doc = xmlGenerator.prepareDocument("edges");
-    Element rootElement = doc.getDocumentElement();
-
-    for (Intersection intersection : intersections)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getEdgesFileName(), confPath, "edges"))
     {
+      for (Intersection intersection : intersections)
+      {
+
+        String intersectionId = Integer.toString(intersection.getId());
 
-      String intersectionId = Integer.toString(intersection.getId());
+        for (Leg leg : intersection.getLegs())
+        {
+          // Part 2 -
+          String attributesPart2[][] =
+          {
+              { "id",
+                  leg.getEdgeInConnectionName() },
+              { "from",
+                  /* "m" + */leg.getId() },
+              { "to",
+                  intersectionId },
+              { "priority",
+                  "1" },
+              { "numLanes",
+                  Integer.toString((leg.getAllLanes().size())) },
+              { "speed",
+                  "50" },
+              { "spreadType",
+                  "center" } };
+          writer.element("edge", attributesPart2);
+
+          // Part 3 -
+          String attributesPart3[][] =
+          {
+              { "id",
+                  leg.getEdgeOutConnectionName() },
+              { "from",
+                  intersectionId },
+              { "to",
+                  leg.getId() },
+              { "priority",
+                  "1" },
+              { "numLanes",
+                  "1" },
+              { "speed",
+                  "60" },
+              { "spreadType",
+                  "center" } };
+          writer.element("edge", attributesPart3);
+        }
+      }
 
-      for (Leg leg : intersection.getLegs())
+      for (IntersectionConnection connection : connections)
       {
-        // Part 2 -
-        String attributesPart2[][] =
+        String attributesPart1[][] =
         {
             { "id",
-                leg.getEdgeInConnectionName() },
+                connection.getId() },
             { "from",
-                /* "m" + */leg.getId() },
+                connection.getLegI1().getId() },
             { "to",
-                intersectionId },
+                connection.getLegI2().getId() },
             { "priority",
                 "1" },
             { "numLanes",
-                Integer.toString((leg.getAllLanes().size())) },
+                "1" },
             { "speed",
-                "50" },
+                "40" },
             { "spreadType",
                 "center" } };
-        Element edge = xmlGenerator.createElement(doc, "edge", attributesPart2);
-        rootElement.appendChild(edge);
+        writer.element("edge", attributesPart1);
 
-        // Part 3 -
-        String attributesPart3[][] =
+        String attributesPart2[][] =
         {
             { "id",
-                leg.getEdgeOutConnectionName() },
+                connection.getIdBack() },
             { "from",
-                intersectionId },
+                connection.getLegI2().getId() },
             { "to",
-                leg.getId() },
+                connection.getLegI1().getId() },
             { "priority",
                 "1" },
             { "numLanes",
                 "1" },
             { "speed",
-                "60" },
+                "40" },
             { "spreadType",
                 "center" } };
-        edge = xmlGenerator.createElement(doc, "edge", attributesPart3);
-        rootElement.appendChild(edge);
-      }
-    }
+        writer.element("edge", attributesPart2);
 
-    for (IntersectionConnection connection : connections)
-    {
-      String attributesPart1[][] =
-      {
-          { "id",
-              connection.getId() },
-          { "from",
-              connection.getLegI1().getId() },
-          { "to",
-              connection.getLegI2().getId() },
-          { "priority",
-              "1" },
-          { "numLanes",
-              "1" },
-          { "speed",
-              "40" },
-          { "spreadType",
-              "center" } };
-      Element edge = xmlGenerator.createElement(doc, "edge", attributesPart1);
-      rootElement.appendChild(edge);
-
-      String attributesPart2[][] =
-      {
-          { "id",
-              connection.getIdBack() },
-          { "from",
-              connection.getLegI2().getId() },
-          { "to",
-              connection.getLegI1().getId() },
-          { "priority",
-              "1" },
-          { "numLanes",
-              "1" },
-          { "speed",
-              "40" },
-          { "spreadType",
-              "center" } };
-      edge = xmlGenerator.createElement(doc, "edge", attributesPart2);
-      rootElement.appendChild(edge);
+      }
 
+      writer.finish();
     }
-
-    xmlGenerator.finalizeDocument(doc, fileNames.getEdgesFileName(), confPath);
   }
 
   private void generateConnectionFile(
 		  List<Intersection> intersections, List<IntersectionConnection> connections, String confPath) 
-  throws ParserConfigurationException, TransformerConfigurationException,
-    TransformerFactoryConfigurationError, TransformerException
+    throws XMLStreamException, IOException
   {
-    Document doc = xmlGenerator.prepareDocument("connections");
-    Element rootElement = doc.getDocumentElement();
-    int j = 0;
-    for (Intersection intersection : intersections)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getConnectionsFileName(), confPath, "connections"))
     {
-      for (Leg leg : intersection.getLegs())
+      int j = 0;
+      for (Intersection intersection : intersections)
       {
-        for (Lane lane : leg.getAllLanes())
+        for (Leg leg : intersection.getLegs())
         {
-          for (Leg connectionLane : lane.getOutputLegs())
+          for (Lane lane : leg.getAllLanes())
           {
-            String[][] attributes =
+            for (Leg connectionLane : lane.getOutputLegs())
             {
-                { "from",
-                    leg.getEdgeInConnectionName() },
-                { "to",
-                    connectionLane.getEdgeOutConnectionName() },
-                { "fromLane",
-                    Integer.toString(lane.getId()) },
-                { "toLane",
-                    "0" },
-                { "tl",
-                    Integer.toString(intersection.getId()) },
-                { "linkIndex",
-                    Integer.toString(j) } };
-            Element connection = xmlGenerator.createElement(doc, "connection", attributes);
-            // XXX hardcoded 0 id for exit lane
-            rootElement.appendChild(connection);
-            j++;
+              String[][] attributes =
+              {
+                  { "from",
+                      leg.getEdgeInConnectionName() },
+                  { "to",
+                      connectionLane.getEdgeOutConnectionName() },
+                  { "fromLane",
+                      Integer.toString(lane.getId()) },
+                  { "toLane",
+                      "0" },
+                  { "tl",
+                      Integer.toString(intersection.getId()) },
+                  { "linkIndex",
+                      Integer.toString(j) } };
+              // XXX hardcoded 0 id for exit lane
+              writer.element("connection", attributes);
+              j++;
+            }
           }
+          String[][] attributes =
+          {
+              { "from",
+                  leg.getEdgeInConnectionName() },
+              { "to",
+                  leg.getEdgeOutConnectionName() } };
+          writer.element("delete", attributes);
+        
+          String[][] attributesBack =
+          {
+              { "from",
+                  leg.getEdgeOutConnectionName() },
+              { "to",
+                  leg.getEdgeInConnectionName() } };
+          writer.element("delete", attributesBack);
         }
+
+      }
+    
+      for (IntersectionConnection connection : connections)
+      {
         String[][] attributes =
         {
             { "from",
-                leg.getEdgeInConnectionName() },
+                connection.getId() },
             { "to",
-                leg.getEdgeOutConnectionName() } };
-        Element delete = xmlGenerator.createElement(doc, "delete", attributes);
-        rootElement.appendChild(delete);
-        
+                  connection.getIdBack() } };
+        writer.element("delete", attributes);
+      
         String[][] attributesBack =
         {
             { "from",
-                leg.getEdgeOutConnectionName() },
+              connection.getIdBack() },
             { "to",
-                leg.getEdgeInConnectionName() } };
-        delete = xmlGenerator.createElement(doc, "delete", attributesBack);
-        rootElement.appendChild(delete);
+                  connection.getId()  } };
+        writer.element("delete", attributesBack);
       }
-
-    }
     
-    for (IntersectionConnection connection : connections)
-    {
-      String[][] attributes =
-      {
-          { "from",
-              connection.getId() },
-          { "to",
-                connection.getIdBack() } };
-      Element delete = xmlGenerator.createElement(doc, "delete", attributes);
-      rootElement.appendChild(delete);
-      
-      String[][] attributesBack =
-      {
-          { "from",
-            connection.getIdBack() },
-          { "to",
-                connection.getId()  } };
-      delete = xmlGenerator.createElement(doc, "delete", attributesBack);
-      rootElement.appendChild(delete);
+      writer.finish();
     }
-    
-    xmlGenerator.finalizeDocument(doc, fileNames.getConnectionsFileName(), confPath);
   }
 
-  private void generateNetFile(String confPath) throws IOException, InterruptedException, SumoNetworkGenerationException
+  private void generateNetFile(String confPath)
+    throws IOException, InterruptedException, SumoNetworkGenerationException, ToolExecutionException
   {
-    logger.debug("Using 'netconvert' to generate net file");
-
     String outputFilePath = confPath + fileNames.getNetworkFileName();
-    Process netconvert =
-      Runtime.getRuntime().exec("cmd /C start /wait netconvert "+ confPath + fileNames.getNetworkConfFileName());
-    int exitValue = netconvert.waitFor();
+    String stamp = outputFilePath + STAMP_SUFFIX;
+    String inputs = ContentDigest.of(confPath + fileNames.getNetworkConfFileName(), confPath + fileNames.getNodesFileName(),
+      confPath + fileNames.getEdgesFileName(), confPath + fileNames.getConnectionsFileName());
+    if (ContentDigest.isUpToDate(stamp, inputs, outputFilePath))
+    {
+      logger.debug("Inputs of 'netconvert' did not change, using existing net file");
+      return;
+    }
+    ContentDigest.deleteStamp(stamp);
+    if (artifactCache != null && artifactCache.restore(NETCONVERT_KEY + inputs, outputFilePath))
+    {
+      ContentDigest.writeStamp(stamp, inputs);
+      logger.debug("Net file taken from the artifact cache");
+      return;
+    }
+
+    logger.debug("Using 'netconvert' to generate net file");
+    ProcessResult result = processRunner.run(Arrays.asList(NETCONVERT,
+      "-c", confPath + fileNames.getNetworkConfFileName()), new File(confPath));
 
-    if (exitValue != 0)
+    if (!result.isSuccessful())
     {
-      throw new SumoNetworkGenerationException("'netconvert' failed with return value: " + exitValue);
+      throw new SumoNetworkGenerationException("'netconvert' failed with return value: " + result.getExitValue()
+        + ", error output: " + result.getErrorOutput());
     }
 
+    ContentDigest.writeStamp(stamp, inputs);
+    if (artifactCache != null)
+    {
+      artifactCache.store(NETCONVERT_KEY + inputs, outputFilePath);
+    }
     logger.debug("'netconvert' finished successfuly, generated file: {}", outputFilePath);
 
   }
 
-  private void generateFlowsFile(List<Flow> flows, String confPath) throws TransformerConfigurationException, TransformerFactoryConfigurationError,
-    TransformerException, ParserConfigurationException
+  private void generateFlowsFile(List<Flow> flows, String confPath) throws XMLStreamException, IOException
   {
-    Document doc = xmlGenerator.prepareDocument("flowdefs");
-    Element rootElement = doc.getDocumentElement();
-
-    for (Flow route : flows)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getFlowsFileName(), confPath, "flowdefs"))
     {
-      String[][] attributes =
+      for (Flow route : flows)
       {
-          { "id",
-              route.getId() },
-          { "begin",
-              "0" },
-          { "end",
-              "1" },
-          { "from",
-              route.getFrom().getEdgeInConnectionName() },
-          { "to",
-              route.getTo().getEdgeOutConnectionName() },
-          { "probability",
-              "1" } };
-      Element flow = xmlGenerator.createElement(doc, "flow", attributes);
-      rootElement.appendChild(flow);
-    }
+        String[][] attributes =
+        {
+            { "id",
+                route.getId() },
+            { "begin",
+                "0" },
+            { "end",
+                "1" },
+            { "from",
+                route.getFrom().getEdgeInConnectionName() },
+            { "to",
+                route.getTo().getEdgeOutConnectionName() },
+            { "probability",
+                "1" } };
+        writer.element("flow", attributes);
+      }
 
-    xmlGenerator.finalizeDocument(doc, fileNames.getFlowsFileName(), confPath);
+      writer.finish();
+    }
   }
 
-  private void generateRoutesFile(String confPath) throws IOException, InterruptedException, SumoNetworkGenerationException
+  /**
+   * @return true if the routes file was replaced, false if its inputs did not change
+   */
+  private boolean generateRoutesFile(String confPath)
+    throws IOException, InterruptedException, SumoNetworkGenerationException, ToolExecutionException
   {
-    logger.debug("Using 'duarouter' to generate temporary routes file from flows file");
-    
     String outputFilePath = confPath + fileNames.getRoutesTempFileName();
-    Process duarouter = Runtime.getRuntime().exec("cmd /C start /wait duarouter -n " +confPath + fileNames.getNetworkFileName()
-      + " -r " + confPath + fileNames.getFlowsFileName()
-      + " -o " + outputFilePath);
-    int exitValue = duarouter.waitFor();
+    String stamp = outputFilePath + STAMP_SUFFIX;
+    String inputs = ContentDigest.of(confPath + fileNames.getNetworkFileName(), confPath + fileNames.getFlowsFileName());
+    if (ContentDigest.isUpToDate(stamp, inputs, outputFilePath))
+    {
+      logger.debug("Inputs of 'duarouter' did not change, using existing routes");
+      return false;
+    }
+    ContentDigest.deleteStamp(stamp);
+    if (artifactCache != null && artifactCache.restore(DUAROUTER_KEY + inputs, outputFilePath))
+    {
+      ContentDigest.writeStamp(stamp, inputs);
+      logger.debug("Routes taken from the artifact cache");
+      return true;
+    }
 
-    if (exitValue != 0)
+    logger.debug("Using 'duarouter' to generate temporary routes file from flows file");
+    ProcessResult result = processRunner.run(Arrays.asList(DUAROUTER,
+      "-n", confPath + fileNames.getNetworkFileName(),
+      "-r", confPath + fileNames.getFlowsFileName(),
+      "-o", outputFilePath), new File(confPath));
+
+    if (!result.isSuccessful())
     {
-      throw new SumoNetworkGenerationException("'duarouter' failed with return value: " + exitValue);
+      throw new SumoNetworkGenerationException("'duarouter' failed with return value: " + result.getExitValue()
+        + ", error output: " + result.getErrorOutput());
     }
 
+    ContentDigest.writeStamp(stamp, inputs);
+    if (artifactCache != null)
+    {
+      artifactCache.store(DUAROUTER_KEY + inputs, outputFilePath);
+    }
     logger.debug("'duarouter' finished successfuly, generated file: {}", outputFilePath);
+    return true;
   }
 
-  private List<GeneratedRoute> transformRoutesFile(List<VehicleType> vehTypes, String confPath) throws ParserConfigurationException, SAXException, IOException,
-    TransformerConfigurationException, TransformerFactoryConfigurationError, TransformerException
+  private List<GeneratedRoute> transformRoutesFile(List<VehicleType> vehTypes, String confPath)
+    throws XMLStreamException, IOException
   {
+    List<GeneratedRoute> routes = readGeneratedRoutes(confPath + fileNames.getRoutesTempFileName());
 
-    File fXmlFile = new File(confPath + fileNames.getRoutesTempFileName());
-
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-    Document parsedRoutes = dBuilder.parse(fXmlFile);
-
-    List<GeneratedRoute> routes = new ArrayList<>();
-
-    NodeList nList = parsedRoutes.getElementsByTagName("vehicle");
+    // TODO delete alt files
 
-    for (int temp = 0; temp < nList.getLength(); temp++)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getRoutesFileName(), confPath, "routes"))
     {
-
-      Node nNode = nList.item(temp);
-
-      if (nNode.getNodeType() == Node.ELEMENT_NODE)
+      for (VehicleType vType : vehTypes)
       {
+        String[][] attributes =
+        {
+            { "id",
+                vType.getName() },
+            { "accel",
+                vType.getAccel() + "" },
+            { "decel",
+                vType.getDecel() + "" },
+            { "length",
+                vType.getLength() + "" } };
+        writer.element("vtype", attributes);
+      }
 
-        Element eElement = (Element)nNode;
-        String id = eElement.getAttribute("id");
-        id = id.substring(0, id.indexOf("."));
-        NodeList routeList = eElement.getElementsByTagName("route");
-        if (routeList.getLength() > 0)
+      for (GeneratedRoute route : routes)
+      {
+        String[][] attributes =
         {
-          Element route = (Element)routeList.item(0);
-          routes.add(new GeneratedRoute(route.getAttribute("edges"), id));
-        }
-        logger.trace("Creating route: {}", id);
+            { "id",
+              route.getEdges() },
+            { "edges",
+              route.getId()  } };
+        writer.element("route", attributes);
       }
+      writer.finish();
     }
 
-    // fXmlFile.delete();
-
-    // TODO delete alt files
+    return routes;
+  }
 
-    Document newRoutes = xmlGenerator.prepareDocument("routes");
-    Element rootElement = newRoutes.getDocumentElement();
+  /**
+   * Reads the first route of every vehicle from the output of 'duarouter' element by element
+   * @param routesFile routes file generated by 'duarouter'
+   * @return routes by the flow of the vehicle
+   */
+  private static List<GeneratedRoute> readGeneratedRoutes(String routesFile) throws XMLStreamException, IOException
+  {
+    List<GeneratedRoute> routes = new ArrayList<>();
 
-    for (VehicleType vType : vehTypes)
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(routesFile))))
     {
-      String[][] attributes =
+      XMLStreamReader reader;
+      synchronized (INPUT_FACTORY)
       {
-          { "id",
-              vType.getName() },
-          { "accel",
-              vType.getAccel() + "" },
-          { "decel",
-              vType.getDecel() + "" },
-          { "length",
-              vType.getLength() + "" } };
-      Element vtype = xmlGenerator.createElement(newRoutes, "vtype", attributes);
-      rootElement.appendChild(vtype);
-    }
+        reader = INPUT_FACTORY.createXMLStreamReader(input);
+      }
+      try
+      {
+        String id = null;
+        while (reader.hasNext())
+        {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT)
+          {
+            continue;
+          }
 
-    for (GeneratedRoute route : routes)
-    {
-      String[][] attributes =
+          if ("vehicle".equals(reader.getLocalName()))
+          {
+            id = reader.getAttributeValue(null, "id");
+            id = id.substring(0, id.indexOf("."));
+            logger.trace("Creating route: {}", id);
+          }
+          else if ("route".equals(reader.getLocalName()) && id != null)
+          {
+            routes.add(new GeneratedRoute(reader.getAttributeValue(null, "edges"), id));
+            // only the first route of the vehicle
+            id = null;
+          }
+        }
+      }
+      finally
       {
-          { "id",
-            route.getEdges() },
-          { "edges",
-            route.getId()  } };
-      Element newRoute = xmlGenerator.createElement(newRoutes, "route", attributes);
-      rootElement.appendChild(newRoute);
+        reader.close();
+      }
     }
-    xmlGenerator.finalizeDocument(newRoutes, fileNames.getRoutesFileName(), confPath);
-
     return routes;
   }
 
-  private void generateTrafficLightFile(List<Intersection> intersections, String confPath) throws ParserConfigurationException, TransformerConfigurationException,
-    TransformerFactoryConfigurationError, TransformerException, UnknownSignalNumberException
+  private void generateTrafficLightFile(List<Intersection> intersections, String confPath)
+    throws XMLStreamException, UnknownSignalNumberException, IOException
   {
-    Document doc = xmlGenerator.prepareDocument("additional");
-    Element rootElement = doc.getDocumentElement();
-
-    for (Intersection intersection : intersections)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getTlsFileName(), confPath, "additional"))
     {
-      for (SignalProgram sp : intersection.getSignalPrograms())
+      for (Intersection intersection : intersections)
       {
-        String[][] attributesTL =
-        {
-            { "id",
-                Integer.toString(intersection.getId()) },
-            { "programID",
-                sp.getProgramId() },
-            { "offset",
-                Integer.toString(sp.getActivationOffset()) },
-            { "type",
-                "static" } };
-        Element tlLogic = xmlGenerator.createElement(doc, "tlLogic", attributesTL);
-        rootElement.appendChild(tlLogic);
-
-        List<SumoPhase> sumoPhaseList = xmlGenerator.transformSequencesToSumoPhases(sp, intersection);
-
-        for (SumoPhase sumoPhase : sumoPhaseList)
+        for (SignalProgram sp : intersection.getSignalPrograms())
         {
-          String[][] attributesPhase =
+          String[][] attributesTL =
+          {
+              { "id",
+                  Integer.toString(intersection.getId()) },
+              { "programID",
+                  sp.getProgramId() },
+              { "offset",
+                  Integer.toString(sp.getActivationOffset()) },
+              { "type",
+                  "static" } };
+          writer.startElement("tlLogic", attributesTL);
+
+          List<SumoPhase> sumoPhaseList = xmlGenerator.transformSequencesToSumoPhases(sp, intersection);
+
+          for (SumoPhase sumoPhase : sumoPhaseList)
           {
-              { "duration",
-                  Integer.toString(sumoPhase.getDuration()) },
-              { "state",
-                  sumoPhase.getState() } };
-          Element phase = xmlGenerator.createElement(doc, "phase", attributesPhase);
-          tlLogic.appendChild(phase);
+            String[][] attributesPhase =
+            {
+                { "duration",
+                    Integer.toString(sumoPhase.getDuration()) },
+                { "state",
+                    sumoPhase.getState() } };
+            writer.element("phase", attributesPhase);
+          }
+          writer.endElement();
         }
       }
-    }
 
-    xmlGenerator.finalizeDocument(doc, fileNames.getTlsFileName(), confPath);
+      writer.finish();
+    }
   }
 
-  private void generateDetectorsFile(List<Intersection> intersections, String confPath) throws ParserConfigurationException, TransformerConfigurationException,
-    TransformerFactoryConfigurationError, TransformerException
+  private void generateDetectorsFile(List<Intersection> intersections, String confPath)
+    throws XMLStreamException, IOException
   {
-    Document doc = xmlGenerator.prepareDocument("additional");
-    Element rootElement = doc.getDocumentElement();
-
-    for (Intersection intersection : intersections)
+    try (XmlFileWriter writer = xmlGenerator.openFile(fileNames.getDetFileName(), confPath, "additional"))
     {
-      for (SignalGroup sg : intersection.getAllSignalGroups())
+      for (Intersection intersection : intersections)
       {
-        List<Lane> lanes = sg.getLanes();
-        for (Detector det : sg.getDetectors())
+        for (SignalGroup sg : intersection.getAllSignalGroups())
         {
-          for (Lane lane : lanes)
+          List<Lane> lanes = sg.getLanes();
+          for (Detector det : sg.getDetectors())
           {
-            String laneDetId = det.getId() + "_"
-              + lane.getId();
-            det.addLaneUsed(lane);
-            String[][] attributes =
+            for (Lane lane : lanes)
             {
-                { "id",
-                    laneDetId },
-                { "lane",
-                    lane.getLaneNetId() },
-                { "pos",
-                    "20" },
-                { "freq",
-                    "900" },
-                { "file",
-                    det.getId() + ".xml" } };
-            Element singleLoop = xmlGenerator.createElement(doc, "inductionLoop", attributes);
-            rootElement.appendChild(singleLoop);
+              String laneDetId = det.getId() + "_"
+                + lane.getId();
+              det.addLaneUsed(lane);
+              String[][] attributes =
+              {
+                  { "id",
+                      laneDetId },
+                  { "lane",
+                      lane.getLaneNetId() },
+                  { "pos",
+                      "20" },
+                  { "freq",
+                      "900" },
+                  { "file",
+                      det.getId() + ".xml" } };
+              writer.element("inductionLoop", attributes);
+            }
           }
         }
       }
+
+      writer.finish();
     }
+  }
 
-    xmlGenerator.finalizeDocument(doc, fileNames.getDetFileName(), confPath);
+  /**
+   * Generation of one file
+   */
+  private interface FileTask
+  {
+    void generate() throws Exception;
   }
 }
@@ -0,0 +1,227 @@
+package trafficsimulator.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes XML file element by element, nothing is kept in memory. The content goes to a temporary
+ * file first, the file itself is replaced only when the content changed, so its modification time
+ * tells when it really changed.
+ * @author z003ru0y
+ *
+ */
+public class XmlFileWriter implements AutoCloseable
+{
+  private static Logger logger = LoggerFactory.getLogger(XmlFileWriter.class);
+
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final String INDENT = "  ";
+
+  private static final int COMPARE_BUFFER_SIZE = 8192;
+
+  private final Path file;
+
+  private final Path temp;
+
+  private final OutputStream output;
+
+  private final XMLStreamWriter writer;
+
+  /** number of open elements */
+  private int depth;
+
+  /** false while the open element has no child elements */
+  private boolean hasChildren;
+
+  private boolean finished;
+
+  /**
+   * Starts the document with the root element
+   * @param path path to the configuration files
+   * @param filename filename
+   * @param rootName root element
+   * @throws IOException when the file can not be created
+   * @throws XMLStreamException when the writer fails
+   */
+  public XmlFileWriter(String path, String filename, String rootName) throws IOException, XMLStreamException
+  {
+    this.file = Paths.get(path + filename);
+    this.temp = Paths.get(path + filename + TEMP_SUFFIX);
+    this.output = new BufferedOutputStream(Files.newOutputStream(temp));
+    // the factory is shared by the threads generating the files and is not guaranteed to be thread safe
+    synchronized (OUTPUT_FACTORY)
+    {
+      this.writer = OUTPUT_FACTORY.createXMLStreamWriter(output, StandardCharsets.UTF_8.name());
+    }
+
+    writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+    startElement(rootName, new String[][] {{"xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance"}});
+  }
+
+  /**
+   * Writes element without children
+   * @param name name of the element
+   * @param attributes double array of attributes
+   * @throws XMLStreamException when the writer fails
+   */
+  public void element(String name, String[][] attributes) throws XMLStreamException
+  {
+    newLine();
+    writer.writeEmptyElement(name);
+    writeAttributes(attributes);
+    hasChildren = true;
+  }
+
+  /**
+   * Opens element, its children follow until {@link #endElement()}
+   * @param name name of the element
+   * @param attributes double array of attributes
+   * @throws XMLStreamException when the writer fails
+   */
+  public void startElement(String name, String[][] attributes) throws XMLStreamException
+  {
+    newLine();
+    writer.writeStartElement(name);
+    writeAttributes(attributes);
+    depth++;
+    hasChildren = false;
+  }
+
+  /**
+   * Closes the last opened element
+   * @throws XMLStreamException when the writer fails
+   */
+  public void endElement() throws XMLStreamException
+  {
+    depth--;
+    if (hasChildren)
+    {
+      newLine();
+    }
+    writer.writeEndElement();
+    hasChildren = true;
+  }
+
+  /**
+   * Closes the document and replaces the file if its content changed
+   * @return true if the file was written, false if it already had the same content
+   * @throws XMLStreamException when the writer fails
+   * @throws IOException when the file can not be written
+   */
+  public boolean finish() throws XMLStreamException, IOException
+  {
+    while (depth > 0)
+    {
+      endElement();
+    }
+    writer.writeEndDocument();
+    writer.writeCharacters("\n");
+    writer.close();
+    output.close();
+    finished = true;
+
+    if (Files.exists(file) && sameContent(temp, file))
+    {
+      Files.delete(temp);
+      logger.debug("File {} did not change", file.getFileName());
+      return false;
+    }
+
+    logger.debug("Writing to file: {}", file.getFileName());
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    return true;
+  }
+
+  /**
+   * Removes the temporary file if the document was not finished
+   */
+  @Override
+  public void close()
+  {
+    if (finished)
+    {
+      return;
+    }
+    try
+    {
+      writer.close();
+      output.close();
+      Files.deleteIfExists(temp);
+    }
+    catch (XMLStreamException | IOException e)
+    {
+      logger.warn("Could not remove unfinished file {}: {}", temp, e.getMessage());
+    }
+  }
+
+  private void writeAttributes(String[][] attributes) throws XMLStreamException
+  {
+    for (String[] attribute : attributes)
+    {
+      writer.writeAttribute(attribute[0], attribute[1]);
+    }
+  }
+
+  private void newLine() throws XMLStreamException
+  {
+    StringBuilder indentation = new StringBuilder("\n");
+    for (int i = 0; i < depth; i++)
+    {
+      indentation.append(INDENT);
+    }
+    writer.writeCharacters(indentation.toString());
+  }
+
+  private static boolean sameContent(Path first, Path second) throws IOException
+  {
+    if (Files.size(first) != Files.size(second))
+    {
+      return false;
+    }
+
+    try (InputStream firstStream = Files.newInputStream(first); InputStream secondStream = Files.newInputStream(second))
+    {
+      byte[] firstBuffer = new byte[COMPARE_BUFFER_SIZE];
+      byte[] secondBuffer = new byte[COMPARE_BUFFER_SIZE];
+      int read;
+      while ((read = firstStream.read(firstBuffer)) > 0)
+      {
+        int offset = 0;
+        while (offset < read)
+        {
+          int secondRead = secondStream.read(secondBuffer, offset, read - offset);
+          if (secondRead < 0)
+          {
+            return false;
+          }
+          offset += secondRead;
+        }
+        for (int i = 0; i < read; i++)
+        {
+          if (firstBuffer[i] != secondBuffer[i])
+          {
+            return false;
+          }
+        }
+      }
+      return secondStream.read() < 0;
+    }
+  }
+}
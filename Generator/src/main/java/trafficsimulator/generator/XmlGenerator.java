@@ -1,24 +1,13 @@
 package trafficsimulator.generator;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLStreamException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import trafficsimulator.generator.exceptions.UnknownSignalNumberException;
 import trafficsimulator.shared.dto.Intersection;
@@ -51,67 +40,20 @@ public class XmlGenerator
   }
 
   /**
-   * Sets attributes of a node and returns new element
+   * Opens the file for writing with predefined root, the elements are written to the file
+   * as they come, without building the document in memory
    * 
-   * @param doc xml document instance 
-   * @param elemName name of a element to be created
-   * @param attributes double array of attributes
-   * @return new element instance
-   */
-  public Element createElement(Document doc, String elemName, String[][] attributes)
-  {
-    Element element = doc.createElement(elemName);
-    for (int i = 0; i < attributes.length; i++)
-    {
-      element.setAttribute(attributes[i][0], attributes[i][1]);
-    }
-    return element;
-  }
-
-  /**
-   * Method prepares the XML Document with predefined root
-   * 
-   * @param rootName root element 
-   * @return XML document instance 
-   * @throws ParserConfigurationException when the document builder fails 
-   */
-  public Document prepareDocument(String rootName) throws ParserConfigurationException
-  {
-    logger.debug("Preparing document for {}", rootName);
-    
-    Document doc = null;
-    DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-    // root elements
-    doc = docBuilder.newDocument();
-
-    Element rootElement = doc.createElement(rootName);
-    doc.appendChild(rootElement);
-    Attr attr = doc.createAttribute("xmlns:xsi");
-    attr.setValue("http://www.w3.org/2001/XMLSchema-instance");
-    rootElement.setAttributeNode(attr);
-    return doc;
-  }
-
-  /**
-   * @param doc
-   *          XML Document for saving
    * @param filename filename
    * @param path path to the configuration files
-   * @throws TransformerException when the transformer fails
+   * @param rootName root element 
+   * @return writer of the file, finished with {@link XmlFileWriter#finish()}
+   * @throws XMLStreamException when the writer fails
+   * @throws IOException when the file can not be created
    */
-  public void finalizeDocument(Document doc, String filename, String path)
-      throws TransformerException
+  public XmlFileWriter openFile(String filename, String path, String rootName) throws XMLStreamException, IOException
   {
-    logger.debug("Writing to file: {}", filename);
-    
-    TransformerFactory transformerFactory = TransformerFactory.newInstance();
-    Transformer transformer = transformerFactory.newTransformer();
-    DOMSource source = new DOMSource(doc);
-    StreamResult result = new StreamResult(new File(path + filename));
-    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-    transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-    transformer.transform(source, result);
+    logger.debug("Preparing document for {}", rootName);
+    return new XmlFileWriter(path, filename, rootName);
   }
 
   /**
@@ -120,84 +62,58 @@ public class XmlGenerator
    * Network configuration file is XML file which defines SUMO network for simulation
    * It is combination of node xml file, edge xml file and connection xml file
    * @param path path to the configuration files
+   * @return true if the file was written, false if it already had the same content
    * 
-   * @throws ParserConfigurationException when the document builder fails 
-   * @throws TransformerException when the transformer fails
+   * @throws XMLStreamException when the writer fails
+   * @throws IOException when the file can not be read or written
    */
-  public void generateNetCfgFile(String path) throws ParserConfigurationException,
-   TransformerException
+  public boolean generateNetCfgFile(String path) throws XMLStreamException, IOException
   {
+    try (XmlFileWriter writer = openFile(fileNames.getNetworkConfFileName(), path, "configuration"))
+    {
+      writer.startElement("input", new String[][] {});
+      writer.element("node-files", new String[][] {{"value", fileNames.getNodesFileName()}});
+      writer.element("edge-files", new String[][] {{"value", fileNames.getEdgesFileName()}});
+      writer.element("connection-files", new String[][] {{"value", fileNames.getConnectionsFileName()}});
+      writer.endElement();
 
-    Document doc = prepareDocument("configuration");
-    Element rootElement = doc.getDocumentElement();
-    Element input = doc.createElement("input");
-    rootElement.appendChild(input);
-
-    Element nodeFiles = doc.createElement("node-files");
-    nodeFiles.setAttribute("value", fileNames.getNodesFileName());
-    input.appendChild(nodeFiles);
-
-    Element edgeFiles = doc.createElement("edge-files");
-    edgeFiles.setAttribute("value", fileNames.getEdgesFileName());
-    input.appendChild(edgeFiles);
-
-    Element connectionFiles = doc.createElement("connection-files");
-    connectionFiles.setAttribute("value", fileNames.getConnectionsFileName());
-    input.appendChild(connectionFiles);
-
-    Element output = doc.createElement("output");
-    rootElement.appendChild(output);
-
-    Element outputFile = doc.createElement("output-file");
-    outputFile.setAttribute("value", fileNames.getNetworkFileName());
-    output.appendChild(outputFile);
-
-    Element processing = doc.createElement("processing");
-    rootElement.appendChild(processing);
-
-    Element speed = doc.createElement("speed-in-kmh");
-    speed.setAttribute("value", "true");
-    processing.appendChild(speed);
+      writer.startElement("output", new String[][] {});
+      writer.element("output-file", new String[][] {{"value", fileNames.getNetworkFileName()}});
+      writer.endElement();
 
-    Element report = doc.createElement("report");
-    rootElement.appendChild(report);
+      writer.startElement("processing", new String[][] {});
+      writer.element("speed-in-kmh", new String[][] {{"value", "true"}});
+      writer.endElement();
 
-    Element xmlValidation = doc.createElement("xml-validation");
-    xmlValidation.setAttribute("value", "never");
-    report.appendChild(xmlValidation);
+      writer.startElement("report", new String[][] {});
+      writer.element("xml-validation", new String[][] {{"value", "never"}});
+      writer.endElement();
 
-    finalizeDocument(doc, fileNames.getNetworkConfFileName(), path);
+      return writer.finish();
+    }
   }
 
   /**
    * Method generates common SUMO configuration based on files which should be already created
    * @param path path to the configuration files
+   * @return true if the file was written, false if it already had the same content
    * 
-   * @throws ParserConfigurationException when the document builder fails 
-   * @throws TransformerException when the transformer fails
+   * @throws XMLStreamException when the writer fails
+   * @throws IOException when the file can not be read or written
    */
-  public void generateSumoCfgFile(String path) 
-      throws ParserConfigurationException, TransformerException
+  public boolean generateSumoCfgFile(String path) throws XMLStreamException, IOException
   {
-    Document doc = prepareDocument("configuration");
-    Element rootElement = doc.getDocumentElement();
-    Element input = doc.createElement("input");
-    rootElement.appendChild(input);
-
-    Element netFiles = doc.createElement("net-file");
-    netFiles.setAttribute("value", fileNames.getNetworkFileName());
-    input.appendChild(netFiles);
-
-    Element routeFiles = doc.createElement("route-files");
-    routeFiles.setAttribute("value", fileNames.getRoutesFileName());
-    input.appendChild(routeFiles);
-
-    Element addFiles = doc.createElement("additional-files");
-    addFiles.setAttribute("value", fileNames.getTlsFileName() + " "
-      + fileNames.getDetFileName());
-    input.appendChild(addFiles);
-
-    finalizeDocument(doc, fileNames.getSumoConfigurationFileName(), path);
+    try (XmlFileWriter writer = openFile(fileNames.getSumoConfigurationFileName(), path, "configuration"))
+    {
+      writer.startElement("input", new String[][] {});
+      writer.element("net-file", new String[][] {{"value", fileNames.getNetworkFileName()}});
+      writer.element("route-files", new String[][] {{"value", fileNames.getRoutesFileName()}});
+      writer.element("additional-files", new String[][] {{"value", fileNames.getTlsFileName() + " "
+        + fileNames.getDetFileName()}});
+      writer.endElement();
+
+      return writer.finish();
+    }
   }
 
   /**
@@ -0,0 +1,19 @@
+package trafficsimulator.generator.exceptions;
+
+/**
+ * @author z003ru0y
+ * When external tool can not be started or does not finish in time
+ */
+public class ToolExecutionException extends Exception
+{
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message error message
+   */
+  public ToolExecutionException(String message)
+  {
+    super(message);
+  }
+}
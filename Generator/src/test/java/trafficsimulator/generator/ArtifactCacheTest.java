@@ -0,0 +1,198 @@
+package trafficsimulator.generator;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+public class ArtifactCacheTest
+{
+  /**
+   * @return file with the given number of bytes of the character
+   */
+  private static File createOutput(File directory, String name, char content, int bytes) throws Exception
+  {
+    File file = new File(directory, name);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < bytes; i++)
+    {
+      builder.append(content);
+    }
+    Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static String read(File file) throws Exception
+  {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sets the time of the last use of the stored output, the cache takes the order of use from it after restart
+   */
+  private static void setLastUse(File cacheDirectory, String key, long millis) throws Exception
+  {
+    Files.setLastModifiedTime(new File(cacheDirectory, key).toPath(), FileTime.fromMillis(millis));
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class storeAndRestore
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+
+    private File outputs;
+
+    @Before
+    public void setUp() throws Exception
+    {
+      cacheDirectory = new File(folder.getRoot(), "cache");
+      outputs = folder.newFolder("outputs");
+    }
+
+    @Test
+    public void stored_output_is_restored() throws Exception
+    {
+      // PREPARE
+      ArtifactCache cache = new ArtifactCache(cacheDirectory.getPath() + File.separator, 1000);
+      File output = createOutput(outputs, "net.xml", 'a', 100);
+      File target = new File(outputs, "restored.xml");
+      // EXECUTE
+      cache.store("netconvert-1", output.getPath());
+      boolean restored = cache.restore("netconvert-1", target.getPath());
+      // VERIFY
+      assertThat("restored", restored, is(true));
+      assertThat("same content", read(target), is(equalTo(read(output))));
+    }
+
+    @Test
+    public void unknown_output_is_not_restored() throws Exception
+    {
+      // PREPARE
+      ArtifactCache cache = new ArtifactCache(cacheDirectory.getPath() + File.separator, 1000);
+      File target = new File(outputs, "restored.xml");
+      // EXECUTE
+      boolean restored = cache.restore("netconvert-2", target.getPath());
+      // VERIFY
+      assertThat("not restored", restored, is(false));
+      assertThat("target not created", target.exists(), is(false));
+    }
+
+    @Test
+    public void least_recently_used_output_is_evicted_by_size() throws Exception
+    {
+      // PREPARE
+      ArtifactCache cache = new ArtifactCache(cacheDirectory.getPath() + File.separator, 250);
+      File target = new File(outputs, "restored.xml");
+      cache.store("a", createOutput(outputs, "a.xml", 'a', 100).getPath());
+      cache.store("b", createOutput(outputs, "b.xml", 'b', 100).getPath());
+      cache.restore("a", target.getPath());
+      // EXECUTE
+      cache.store("c", createOutput(outputs, "c.xml", 'c', 100).getPath());
+      // VERIFY
+      assertThat("least recently used evicted", cache.restore("b", target.getPath()), is(false));
+      assertThat("its file deleted", new File(cacheDirectory, "b").exists(), is(false));
+      assertThat("recently restored kept", cache.restore("a", target.getPath()), is(true));
+      assertThat("just stored kept", cache.restore("c", target.getPath()), is(true));
+    }
+
+    @Test
+    public void output_larger_than_the_cache_is_kept_alone() throws Exception
+    {
+      // PREPARE
+      ArtifactCache cache = new ArtifactCache(cacheDirectory.getPath() + File.separator, 150);
+      File target = new File(outputs, "restored.xml");
+      cache.store("a", createOutput(outputs, "a.xml", 'a', 100).getPath());
+      // EXECUTE
+      cache.store("big", createOutput(outputs, "big.xml", 'b', 300).getPath());
+      // VERIFY
+      assertThat("older output evicted", cache.restore("a", target.getPath()), is(false));
+      assertThat("large output kept", cache.restore("big", target.getPath()), is(true));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class restart
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+
+    private File outputs;
+
+    @Before
+    public void setUp() throws Exception
+    {
+      cacheDirectory = new File(folder.getRoot(), "cache");
+      outputs = folder.newFolder("outputs");
+    }
+
+    @Test
+    public void stored_outputs_are_loaded_in_order_of_use() throws Exception
+    {
+      // PREPARE
+      ArtifactCache before = new ArtifactCache(cacheDirectory.getPath() + File.separator, 1000);
+      before.store("a", createOutput(outputs, "a.xml", 'a', 100).getPath());
+      before.store("b", createOutput(outputs, "b.xml", 'b', 100).getPath());
+      before.store("c", createOutput(outputs, "c.xml", 'c', 100).getPath());
+      setLastUse(cacheDirectory, "b", 1000000);
+      setLastUse(cacheDirectory, "c", 2000000);
+      setLastUse(cacheDirectory, "a", 3000000);
+      File target = new File(outputs, "restored.xml");
+      // EXECUTE
+      // the smaller cache has to drop the output used first
+      ArtifactCache after = new ArtifactCache(cacheDirectory.getPath() + File.separator, 250);
+      // VERIFY
+      assertThat("used first evicted", new File(cacheDirectory, "b").exists(), is(false));
+      assertThat("used later loaded", after.restore("c", target.getPath()), is(true));
+      assertThat("used last loaded", after.restore("a", target.getPath()), is(true));
+      assertThat("content restored", read(target), is(equalTo(read(new File(outputs, "a.xml")))));
+    }
+
+    @Test
+    public void restore_marks_the_output_as_used_across_restart() throws Exception
+    {
+      // PREPARE
+      ArtifactCache before = new ArtifactCache(cacheDirectory.getPath() + File.separator, 1000);
+      before.store("a", createOutput(outputs, "a.xml", 'a', 100).getPath());
+      before.store("b", createOutput(outputs, "b.xml", 'b', 100).getPath());
+      setLastUse(cacheDirectory, "a", 1000000);
+      setLastUse(cacheDirectory, "b", 2000000);
+      File target = new File(outputs, "restored.xml");
+      // EXECUTE
+      before.restore("a", target.getPath());
+      ArtifactCache after = new ArtifactCache(cacheDirectory.getPath() + File.separator, 150);
+      // VERIFY
+      assertThat("not restored evicted", after.restore("b", target.getPath()), is(false));
+      assertThat("restored kept", after.restore("a", target.getPath()), is(true));
+    }
+
+    @Test
+    public void unfinished_outputs_are_deleted() throws Exception
+    {
+      // PREPARE
+      cacheDirectory.mkdirs();
+      File unfinished = createOutput(cacheDirectory, "a.tmp", 'a', 100);
+      File target = new File(outputs, "restored.xml");
+      // EXECUTE
+      ArtifactCache cache = new ArtifactCache(cacheDirectory.getPath() + File.separator, 1000);
+      // VERIFY
+      assertThat("temporary file deleted", unfinished.exists(), is(false));
+      assertThat("not restored", cache.restore("a.tmp", target.getPath()), is(false));
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package trafficsimulator.generator;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+public class ContentDigestTest
+{
+  private static String write(File directory, String name, String content) throws Exception
+  {
+    File file = new File(directory, name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file.getPath();
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class ofMethod
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void same_content_has_same_digest() throws Exception
+    {
+      // PREPARE
+      String nodes = write(folder.getRoot(), "nodes.xml", "<nodes/>");
+      String edges = write(folder.getRoot(), "edges.xml", "<edges/>");
+      // EXECUTE
+      String first = ContentDigest.of(nodes, edges);
+      String second = ContentDigest.of(nodes, edges);
+      // VERIFY
+      assertThat("same digest", second, is(equalTo(first)));
+      assertThat("hex of SHA-256", first.matches("[0-9a-f]{64}"), is(true));
+    }
+
+    @Test
+    public void changed_content_changes_the_digest() throws Exception
+    {
+      // PREPARE
+      String nodes = write(folder.getRoot(), "nodes.xml", "<nodes/>");
+      String before = ContentDigest.of(nodes);
+      // EXECUTE
+      write(folder.getRoot(), "nodes.xml", "<nodes></nodes>");
+      String after = ContentDigest.of(nodes);
+      // VERIFY
+      assertThat("different digest", after, is(not(equalTo(before))));
+    }
+
+    @Test
+    public void names_and_order_of_the_files_count() throws Exception
+    {
+      // PREPARE
+      String nodes = write(folder.getRoot(), "nodes.xml", "<x/>");
+      String edges = write(folder.getRoot(), "edges.xml", "<x/>");
+      // EXECUTE
+      String ordered = ContentDigest.of(nodes, edges);
+      String reversed = ContentDigest.of(edges, nodes);
+      // VERIFY
+      assertThat("same content, other name", ContentDigest.of(nodes), is(not(equalTo(ContentDigest.of(edges)))));
+      assertThat("other order", reversed, is(not(equalTo(ordered))));
+    }
+
+    @Test
+    public void content_moved_between_the_files_changes_the_digest() throws Exception
+    {
+      // PREPARE
+      String first = write(folder.getRoot(), "first.xml", "ab");
+      String second = write(folder.getRoot(), "second.xml", "c");
+      String before = ContentDigest.of(first, second);
+      // EXECUTE
+      write(folder.getRoot(), "first.xml", "a");
+      write(folder.getRoot(), "second.xml", "bc");
+      // VERIFY
+      assertThat("different digest", ContentDigest.of(first, second), is(not(equalTo(before))));
+    }
+
+    @Test(expected = IOException.class)
+    public void missing_file_throws_exception() throws Exception
+    {
+      ContentDigest.of(new File(folder.getRoot(), "missing.xml").getPath());
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class stamp
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void output_with_stamp_of_the_digest_is_up_to_date() throws Exception
+    {
+      // PREPARE
+      String output = write(folder.getRoot(), "net.xml", "<net/>");
+      String stamp = new File(folder.getRoot(), "net.xml.digest").getPath();
+      // EXECUTE
+      ContentDigest.writeStamp(stamp, "1234");
+      // VERIFY
+      assertThat("up to date", ContentDigest.isUpToDate(stamp, "1234", output), is(true));
+      assertThat("other inputs", ContentDigest.isUpToDate(stamp, "5678", output), is(false));
+    }
+
+    @Test
+    public void missing_stamp_or_output_is_not_up_to_date() throws Exception
+    {
+      // PREPARE
+      String output = write(folder.getRoot(), "net.xml", "<net/>");
+      String stamp = new File(folder.getRoot(), "net.xml.digest").getPath();
+      String missingOutput = new File(folder.getRoot(), "routes.xml").getPath();
+      // VERIFY
+      assertThat("no stamp", ContentDigest.isUpToDate(stamp, "1234", output), is(false));
+      ContentDigest.writeStamp(stamp, "1234");
+      assertThat("no output", ContentDigest.isUpToDate(stamp, "1234", missingOutput), is(false));
+    }
+
+    @Test
+    public void deleted_stamp_makes_the_tool_run() throws Exception
+    {
+      // PREPARE
+      String output = write(folder.getRoot(), "net.xml", "<net/>");
+      String stamp = new File(folder.getRoot(), "net.xml.digest").getPath();
+      ContentDigest.writeStamp(stamp, "1234");
+      // EXECUTE
+      ContentDigest.deleteStamp(stamp);
+      // VERIFY
+      assertThat("not up to date", ContentDigest.isUpToDate(stamp, "1234", output), is(false));
+    }
+  }
+}
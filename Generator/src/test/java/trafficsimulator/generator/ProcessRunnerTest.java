@@ -0,0 +1,264 @@
+package trafficsimulator.generator;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import trafficsimulator.generator.exceptions.ToolExecutionException;
+
+public class ProcessRunnerTest
+{
+  /**
+   * @param exitValue exit value of the stand-in tool
+   * @param seconds how long the tool sleeps before it exits
+   * @param lines number of lines the tool writes to each of its outputs
+   * @return command running the stand-in tool
+   */
+  private static List<String> standInTool(int exitValue, int seconds, int lines) throws Exception
+  {
+    File script = new File(ProcessRunnerTest.class.getResource("stand-in-tool.sh").toURI());
+    return new ArrayList<>(Arrays.asList("sh", script.getAbsolutePath(), Integer.toString(exitValue),
+      Integer.toString(seconds), Integer.toString(lines)));
+  }
+
+  /**
+   * @param seconds how long the tool sleeps before it exits
+   * @param state directory where the tool writes its pid and the number of tools running with it
+   * @param tools number of tools the tool waits for before it goes on
+   * @return command running the stand-in tool
+   */
+  private static List<String> standInTool(int seconds, File state, int tools) throws Exception
+  {
+    List<String> command = standInTool(0, seconds, 1);
+    command.add(state.getAbsolutePath());
+    command.add(Integer.toString(tools));
+    return command;
+  }
+
+  /**
+   * @return lines of the state file written by the stand-in tools, empty when there is no file
+   */
+  private static List<String> readState(File state, String filename) throws Exception
+  {
+    File file = new File(state, filename);
+    return file.isFile() ? Files.readAllLines(file.toPath(), StandardCharsets.UTF_8) : Collections.emptyList();
+  }
+
+  private static boolean isRunning(String pid) throws Exception
+  {
+    return new ProcessBuilder("sh", "-c", "kill -0 " + pid + " 2>/dev/null").start().waitFor() == 0;
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class runMethod
+  {
+    private final ProcessRunner runner = new ProcessRunner(2, 5000);
+
+    @After
+    public void shutdown()
+    {
+      runner.shutdown();
+    }
+
+    @Test
+    public void returns_exit_value_and_both_outputs() throws Exception
+    {
+      // EXECUTE
+      ProcessResult result = runner.run(standInTool(0, 0, 2), null);
+      // VERIFY
+      assertThat("successful", result.isSuccessful(), is(true));
+      assertThat("standard output", result.getOutput(), containsString("out 2"));
+      assertThat("error output", result.getErrorOutput(), containsString("err 2"));
+    }
+
+    @Test
+    public void failed_tool_returns_its_exit_value() throws Exception
+    {
+      // EXECUTE
+      ProcessResult result = runner.run(standInTool(3, 0, 1), null);
+      // VERIFY
+      assertThat("exit value", result.getExitValue(), is(equalTo(3)));
+      assertThat("not successful", result.isSuccessful(), is(false));
+    }
+
+    @Test
+    public void large_output_does_not_block_the_tool_and_only_its_end_is_kept() throws Exception
+    {
+      // EXECUTE
+      // far more than fits into the pipe buffers
+      ProcessResult result = runner.run(standInTool(0, 0, 20000), null);
+      // VERIFY
+      assertThat("successful", result.isSuccessful(), is(true));
+      assertThat("last line", result.getOutput(), containsString("out 20000"));
+      assertThat("last error line", result.getErrorOutput(), containsString("err 20000"));
+      assertThat("first line dropped", result.getOutput(), not(containsString("out 1" + System.lineSeparator())));
+      assertThat("tail only", result.getOutput().split(System.lineSeparator()).length, is(lessThan(21)));
+      assertThat("error tail only", result.getErrorOutput().split(System.lineSeparator()).length, is(lessThan(21)));
+    }
+
+    @Test(expected = ToolExecutionException.class)
+    public void missing_tool_throws_exception() throws Exception
+    {
+      runner.run(Arrays.asList("stand-in-tool-which-does-not-exist"), null);
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class timeoutAndCancellation
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ProcessRunner runner = new ProcessRunner(2, 300);
+
+    @After
+    public void shutdown()
+    {
+      runner.shutdown();
+    }
+
+    @Test
+    public void tool_over_timeout_is_killed() throws Exception
+    {
+      // PREPARE
+      File state = folder.newFolder();
+      long start = System.currentTimeMillis();
+      ToolExecutionException failure = null;
+      // EXECUTE
+      try
+      {
+        runner.run(standInTool(10, state, 1), null);
+      }
+      catch (ToolExecutionException e)
+      {
+        failure = e;
+      }
+      // VERIFY
+      assertThat("timeout reported", failure != null && failure.getMessage().contains("did not finish"), is(true));
+      assertThat("did not wait for the tool", System.currentTimeMillis() - start, is(lessThan(5000L)));
+      List<String> pids = readState(state, "pids");
+      assertThat("tool started", pids.size(), is(equalTo(1)));
+      assertThat("tool killed", isRunning(pids.get(0)), is(false));
+    }
+
+    @Test
+    public void interrupted_run_kills_the_tool() throws Exception
+    {
+      // PREPARE
+      File state = folder.newFolder();
+      ProcessRunner unlimitedRunner = new ProcessRunner(1, 0);
+      Thread caller = Thread.currentThread();
+      Thread interrupter = new Thread(() -> {
+        try
+        {
+          // interrupts once the tool runs
+          while (readState(state, "pids").isEmpty())
+          {
+            Thread.sleep(50);
+          }
+          caller.interrupt();
+        }
+        catch (Exception e)
+        {
+          // test finished
+        }
+      });
+      long start = System.currentTimeMillis();
+      boolean interrupted = false;
+      // EXECUTE
+      interrupter.start();
+      try
+      {
+        unlimitedRunner.run(standInTool(10, state, 1), null);
+      }
+      catch (InterruptedException e)
+      {
+        interrupted = true;
+      }
+      finally
+      {
+        unlimitedRunner.shutdown();
+      }
+      // VERIFY
+      assertThat("interrupted", interrupted, is(true));
+      assertThat("did not wait for the tool", System.currentTimeMillis() - start, is(lessThan(5000L)));
+      List<String> pids = readState(state, "pids");
+      assertThat("tool started", pids.size(), is(equalTo(1)));
+      assertThat("tool killed", isRunning(pids.get(0)), is(false));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class concurrency
+  {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Runs four tools from four sessions, every tool waits until the given number of tools runs
+     * @return the most tools the tools saw running at once
+     */
+    private int runFour(ProcessRunner runner, int tools) throws Exception
+    {
+      File state = folder.newFolder();
+      ExecutorService sessions = Executors.newFixedThreadPool(4);
+      try
+      {
+        List<Future<ProcessResult>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+          results.add(sessions.submit(() -> runner.run(standInTool(0, state, tools), null)));
+        }
+        for (Future<ProcessResult> result : results)
+        {
+          assertThat("successful", result.get().isSuccessful(), is(true));
+        }
+        return readState(state, "running").stream().mapToInt(line -> Integer.parseInt(line.trim())).max().orElse(0);
+      }
+      finally
+      {
+        sessions.shutdownNow();
+        runner.shutdown();
+      }
+    }
+
+    @Test
+    public void tools_of_several_sessions_run_at_once() throws Exception
+    {
+      // EXECUTE
+      int running = runFour(new ProcessRunner(4, 20000), 4);
+      // VERIFY
+      assertThat("all four at once", running, is(equalTo(4)));
+    }
+
+    @Test
+    public void number_of_running_tools_is_limited() throws Exception
+    {
+      // EXECUTE
+      int running = runFour(new ProcessRunner(2, 20000), 2);
+      // VERIFY
+      assertThat("two at once, never more", running, is(equalTo(2)));
+    }
+  }
+}
@@ -0,0 +1,30 @@
+#!/bin/sh
+# Stand-in for netconvert and duarouter in the tests
+# usage: stand-in-tool.sh <exit value> <whole seconds to sleep> <lines written to each output> [<state directory> <tools>]
+# With the state directory the tool writes its pid to the file pids, then waits until the given number
+# of tools share the directory (10 s at most) and appends the number of tools running at once to the file running.
+
+lines=${3:-0}
+i=1
+while [ "$i" -le "$lines" ]; do
+  echo "out $i"
+  echo "err $i" >&2
+  i=$((i + 1))
+done
+
+if [ -n "$4" ]; then
+  echo "$$" >> "$4/pids"
+  touch "$4/running.$$"
+  waited=0
+  while [ "$(ls "$4" | grep -c '^running\.')" -lt "${5:-1}" ] && [ "$waited" -lt 10 ]; do
+    sleep 1
+    waited=$((waited + 1))
+  done
+  ls "$4" | grep -c '^running\.' >> "$4/running"
+fi
+
+sleep "${2:-0}"
+if [ -n "$4" ]; then
+  rm -f "$4/running.$$"
+fi
+exit "${1:-0}"
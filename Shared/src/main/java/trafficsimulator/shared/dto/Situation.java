@@ -2,10 +2,13 @@ package trafficsimulator.shared.dto;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import lombok.Getter;
 import lombok.Setter;
+import trafficsimulator.shared.enumerators.SituationPart;
 import trafficsimulator.shared.enumerators.VehicleTypeEnum;
 import trafficsimulator.shared.exceptions.InfrastructureElementNotFoundException;
 
@@ -24,7 +27,6 @@ public class Situation
 
   /* list of routes which are used for generating the flows file */
   @Getter
-  @Setter
   private List<Flow> routes;
 
   /* list of routes generated by duarouter and used for routes file */
@@ -40,6 +42,9 @@ public class Situation
   @Getter
   private List<VehicleType> vehicleTypes;
 
+  /* parts changed since the configuration files were generated */
+  private Set<SituationPart> changedParts;
+
   /**
    * inits empty situation
    */
@@ -49,6 +54,36 @@ public class Situation
     this.intersectionConnections = new ArrayList<>();
     this.routes = new ArrayList<>();
     this.vehicleTypes = new ArrayList<>();
+    this.changedParts = EnumSet.allOf(SituationPart.class);
+  }
+
+  /**
+   * Marks the parts as changed, has to be called when the situation is modified
+   * other than by its own methods
+   * @param parts changed parts
+   */
+  public void markChanged(SituationPart... parts)
+  {
+    for (SituationPart part : parts)
+    {
+      changedParts.add(part);
+    }
+  }
+
+  /**
+   * @return parts changed since the changes were cleared
+   */
+  public Set<SituationPart> getChangedParts()
+  {
+    return EnumSet.copyOf(changedParts);
+  }
+
+  /**
+   * Called when the configuration files were generated
+   */
+  public void clearChanges()
+  {
+    changedParts.clear();
   }
   
   /**
@@ -73,6 +108,7 @@ public class Situation
   public void addIntersection(Intersection intersection)
   {
     intersectionList.add(intersection);
+    markChanged(SituationPart.NETWORK, SituationPart.TRAFFIC_LIGHTS, SituationPart.DETECTORS);
   }
   
   /**
@@ -81,6 +117,7 @@ public class Situation
   public void addIntersectionConnection(IntersectionConnection connection)
   {
     intersectionConnections.add(connection);
+    markChanged(SituationPart.NETWORK);
   }
 
   /**
@@ -112,9 +149,19 @@ public class Situation
     {
       this.intersectionList.remove(intersection);
     }
+    markChanged(SituationPart.NETWORK, SituationPart.TRAFFIC_LIGHTS, SituationPart.DETECTORS);
     
   }  
 
+  /**
+   * @param routes routes which are used for generating the flows file
+   */
+  public void setRoutes(List<Flow> routes)
+  {
+    this.routes = routes;
+    markChanged(SituationPart.FLOWS);
+  }
+
   /**
    * @param id id of searched intersection
    * @return found intersection
@@ -152,6 +199,7 @@ public class Situation
    */
   public void setVehicleType(VehicleTypeEnum vehicleType)
   {    
+    markChanged(SituationPart.VEHICLE_TYPES);
     switch (vehicleType)
     {
       case VAN:
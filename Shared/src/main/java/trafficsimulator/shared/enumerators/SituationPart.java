@@ -0,0 +1,20 @@
+package trafficsimulator.shared.enumerators;
+
+/**
+ * Parts of the situation which are generated into separate SUMO configuration files
+ * @author z003ru0y
+ *
+ */
+public enum SituationPart
+{
+  /** intersections, legs, lanes and their connections (nodes, edges and connections files) */
+  NETWORK,
+  /** routes between the legs (flows file) */
+  FLOWS,
+  /** signal programs (traffic lights file) */
+  TRAFFIC_LIGHTS,
+  /** detectors on the lanes (detectors file) */
+  DETECTORS,
+  /** vehicle types (routes file) */
+  VEHICLE_TYPES;
+}
@@ -0,0 +1,48 @@
+package trafficsimulator.simulator.control;
+
+import java.util.Optional;
+
+/**
+ * @author z003ru0y
+ * What the stepping thread does when the frame buffer is full of frames nobody has read yet
+ */
+public enum BackpressurePolicy
+{
+  /** stepping waits until the frames are read */
+  BLOCK("block"),
+  /** the oldest unread frame is overwritten */
+  DROP_OLDEST("drop-oldest"),
+  /** the new frame is merged into the newest unread frame */
+  COALESCE("coalesce");
+
+  private final String key;
+
+  private BackpressurePolicy(String key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * @param key string with backpressure policy
+   * @return Optional of backpressure policy
+   */
+  public static final Optional<BackpressurePolicy> fromKey(final String key)
+  {
+    for (final BackpressurePolicy type : values())
+    {
+      if (type.key.equals(key))
+      {
+        return Optional.of(type);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return string value of the enum
+   */
+  public String getValue()
+  {
+    return key;
+  }
+}
@@ -1,8 +1,9 @@
 package trafficsimulator.simulator.control;
 
+import java.io.File;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 
 import trafficsimulator.shared.dto.Situation;
 import trafficsimulator.simulator.exceptions.NoIntersectionInSituationException;
@@ -10,6 +11,9 @@ import trafficsimulator.simulator.exceptions.NoValidRoutesInSituationException;
 import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.interfaces.SimulationControl;
 import trafficsimulator.simulator.interfaces.impl.SimulationControlImpl;
+import trafficsimulator.simulator.metrics.MetricsRegistry;
+import trafficsimulator.simulator.snapshot.SnapshotStore;
+import trafficsimulator.simulator.statistics.TripLog;
 import trafficsimulator.simulator.traci.TraciService;
 
 /**
@@ -24,33 +28,68 @@ public class SimulationControlFactory
   private final double sumoSimulationStepLength;
   
   private final int sumoMaxVehicles;
-  
-  @Autowired
-  private TraciService traciService;
+
+  private final int frameBufferSize;
+
+  private final BackpressurePolicy backpressurePolicy;
+
+  private final int maxSnapshots;
+
+  /** directory for the trip logs, ends with separator, null when the trips are not logged */
+  private final String tripLogDirectory;
+
+  /** where the durations of the step stages are recorded, null when they are not */
+  private final MetricsRegistry metrics;
+
+  private final boolean stepTiming;
   
   /**
    * @param stepLength simulation step length
    * @param maxVehicles maximum vehicles limitation
+   * @param frameBufferSize number of frames buffered by the continuous run
+   * @param backpressurePolicy what the continuous run does when the clients do not read the frames
+   * @param maxSnapshots maximal number of snapshots kept for one simulation
+   * @param tripLogDirectory directory for the trip logs of the simulations, null or empty to not log the trips
+   * @param metrics where to record the durations of the step stages, null to not record them
+   * @param stepTiming if true, every step carries the durations of its stages
    */
-  public SimulationControlFactory(double stepLength, int maxVehicles)
+  public SimulationControlFactory(double stepLength, int maxVehicles, int frameBufferSize,
+      BackpressurePolicy backpressurePolicy, int maxSnapshots, String tripLogDirectory,
+      MetricsRegistry metrics, boolean stepTiming)
   {
     sumoSimulationStepLength = stepLength;
     sumoMaxVehicles = maxVehicles;
+    this.frameBufferSize = frameBufferSize;
+    this.backpressurePolicy = backpressurePolicy;
+    this.maxSnapshots = maxSnapshots;
+    this.tripLogDirectory = tripLogDirectory == null || tripLogDirectory.isEmpty() ? null
+      : tripLogDirectory.endsWith(File.separator) ? tripLogDirectory : tripLogDirectory + File.separator;
+    this.metrics = metrics;
+    this.stepTiming = stepTiming;
     logger.debug("Simulation Control Factory started");
   }
   
   /**
    * @param situation infrastructure for simulation
+   * @param traciService connection to SUMO of the session
+   * @param snapshotPath directory for the snapshots of the simulation, ends with separator
+   * @param sessionToken token of the session, names the trip log of the simulation
    * @return SimulationControl instance
    * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    * @throws TraciException when some of the traci calls fails
    */
-  public SimulationControl createSimulationControl(Situation situation)
+  public SimulationControl createSimulationControl(Situation situation, TraciService traciService, String snapshotPath,
+      String sessionToken)
       throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {
+    TripLog tripLog = tripLogDirectory == null ? null
+      : new TripLog(tripLogDirectory + "trips-" + sessionToken + "-" + System.currentTimeMillis() + ".csv");
+
     logger.debug("SimulationControl instance created");
-    return new SimulationControlImpl(traciService, sumoSimulationStepLength, sumoMaxVehicles, situation);
+    return new SimulationControlImpl(traciService, sumoSimulationStepLength, sumoMaxVehicles, situation,
+      frameBufferSize, backpressurePolicy, new SnapshotStore(snapshotPath, maxSnapshots), tripLog,
+      metrics, stepTiming);
   }
   
 }
@@ -0,0 +1,183 @@
+package trafficsimulator.simulator.control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+
+/**
+ * Bounded ring buffer of simulation frames produced by the stepping thread.
+ * Every frame gets a sequence number, clients read the frames from their cursor
+ * (sequence of the first frame they did not read yet).
+ * A frame counts as unread until some client reads past it. When the buffer
+ * is full of unread frames, the {@link BackpressurePolicy} decides what happens.
+ * @author z003ru0y
+ *
+ */
+public class StepFrameBuffer
+{
+  private final JsonSimulationStep[] frames;
+
+  private final BackpressurePolicy policy;
+
+  /** sequence of the next frame */
+  private long head;
+
+  /** sequence of the oldest frame still in the buffer */
+  private long tail;
+
+  /** the furthest cursor any client read to */
+  private long consumed;
+
+  private boolean closed;
+
+  /**
+   * @param capacity maximal number of frames in the buffer
+   * @param policy what to do when the buffer is full of unread frames
+   */
+  public StepFrameBuffer(int capacity, BackpressurePolicy policy)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Frame buffer capacity has to be positive: " + capacity);
+    }
+    this.frames = new JsonSimulationStep[capacity];
+    this.policy = policy;
+  }
+
+  /**
+   * Adds frame to the buffer
+   * @param frame simulation step
+   * @throws InterruptedException when interrupted while waiting for the clients
+   */
+  public synchronized void put(JsonSimulationStep frame) throws InterruptedException
+  {
+    if (policy == BackpressurePolicy.BLOCK)
+    {
+      while (!closed && unread() >= frames.length)
+      {
+        wait();
+      }
+    }
+    else if (policy == BackpressurePolicy.COALESCE && unread() >= frames.length)
+    {
+      int newest = index(head - 1);
+      frames[newest] = coalesce(frames[newest], frame);
+      notifyAll();
+      return;
+    }
+
+    if (closed)
+    {
+      return;
+    }
+
+    if (head - tail == frames.length)
+    {
+      frames[index(tail)] = null;
+      tail++;
+    }
+    frames[index(head)] = frame;
+    head++;
+    notifyAll();
+  }
+
+  /**
+   * Reads frames starting at the cursor, does not wait for new frames
+   * @param cursor sequence of the first frame to read
+   * @param maxFrames maximal number of frames to read
+   * @return read frames with the cursor for the next read
+   */
+  public synchronized JsonStepFrames read(long cursor, int maxFrames)
+  {
+    long from = Math.min(Math.max(cursor, tail), head);
+    long skipped = Math.max(0, tail - cursor);
+    long to = Math.min(head, from + Math.max(0, maxFrames));
+
+    List<JsonSimulationStep> steps = new ArrayList<>((int) (to - from));
+    for (long sequence = from; sequence < to; sequence++)
+    {
+      steps.add(frames[index(sequence)]);
+    }
+
+    if (to > consumed)
+    {
+      consumed = to;
+      notifyAll();
+    }
+    return new JsonStepFrames(to, skipped, !closed || to < head, steps);
+  }
+
+  /**
+   * Waits until there is a frame at the cursor or the buffer is closed
+   * @param cursor sequence of the frame to wait for
+   * @param timeoutMillis maximal time to wait
+   * @return true if there is a frame to read
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public synchronized boolean await(long cursor, long timeoutMillis) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (!closed && head <= cursor)
+    {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0)
+      {
+        break;
+      }
+      wait(remaining);
+    }
+    return head > cursor;
+  }
+
+  /**
+   * @return sequence of the next frame
+   */
+  public synchronized long getHead()
+  {
+    return head;
+  }
+
+  /**
+   * Stops accepting frames and wakes up everybody waiting; frames in the buffer can be still read
+   */
+  public synchronized void close()
+  {
+    closed = true;
+    notifyAll();
+  }
+
+  /**
+   * @return true when no more frames will be added
+   */
+  public synchronized boolean isClosed()
+  {
+    return closed;
+  }
+
+  private long unread()
+  {
+    return head - Math.max(tail, consumed);
+  }
+
+  private int index(long sequence)
+  {
+    return (int) (sequence % frames.length);
+  }
+
+  /**
+   * Newer frame carries the current state, only the vehicles to add have to be kept from both,
+   * otherwise the client would not know about vehicles added in the older one
+   */
+  private static JsonSimulationStep coalesce(JsonSimulationStep older, JsonSimulationStep newer)
+  {
+    List<JsonVehicle> vehiclesToAdd = new ArrayList<>(older.getVehiclesToAdd());
+    vehiclesToAdd.addAll(newer.getVehiclesToAdd());
+    JsonSimulationStep coalesced = new JsonSimulationStep(newer.getSimulationStep(), newer.getVehicleState(),
+      newer.getTlState(), newer.getPhaseState(), vehiclesToAdd);
+    coalesced.setTiming(newer.getTiming());
+    return coalesced;
+  }
+}
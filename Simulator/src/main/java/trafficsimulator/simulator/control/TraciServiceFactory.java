@@ -0,0 +1,78 @@
+package trafficsimulator.simulator.control;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import trafficsimulator.simulator.metrics.MetricsRegistry;
+import trafficsimulator.simulator.traci.TraciService;
+import trafficsimulator.simulator.traci.impl.InstrumentedTraciService;
+import trafficsimulator.simulator.traci.impl.NetworkGeometryCache;
+import trafficsimulator.simulator.traci.impl.SumoProcessPool;
+import trafficsimulator.simulator.traci.impl.TraciServiceImpl;
+
+/**
+ * Creates TraciService instances, one for every simulation session.
+ * All of them share the cache of the network geometry and the pool of SUMO processes.
+ * @author z003ru0y
+ *
+ */
+public class TraciServiceFactory
+{
+  private static Logger logger = LoggerFactory.getLogger(TraciServiceFactory.class);
+
+  private static final int GEOMETRY_CACHE_SIZE = 16;
+
+  private final double sumoSimulationStepLength;
+
+  private final String sumoConfFileName;
+
+  private final String sumoNetFileName;
+
+  private final boolean useSubscriptions;
+
+  private final boolean usePipelining;
+
+  private final Map<String, NetworkGeometryCache> geometryCaches;
+
+  private final SumoProcessPool processPool;
+
+  /** where the durations of the traci calls are recorded, null when they are not measured */
+  private final MetricsRegistry metrics;
+
+  /**
+   * @param stepLength simulation step length
+   * @param sumoConfFileName name of main sumo configuration file
+   * @param sumoNetFileName name of sumo network file
+   * @param useSubscriptions retrieve values by variable subscriptions
+   * @param usePipelining send queued set commands in one message
+   * @param processPool pool of running SUMO processes
+   * @param metrics where to record the durations of the traci calls, null to not measure them
+   */
+  public TraciServiceFactory(double stepLength, String sumoConfFileName, String sumoNetFileName,
+      boolean useSubscriptions, boolean usePipelining, SumoProcessPool processPool, MetricsRegistry metrics)
+  {
+    this.sumoSimulationStepLength = stepLength;
+    this.sumoConfFileName = sumoConfFileName;
+    this.sumoNetFileName = sumoNetFileName;
+    this.useSubscriptions = useSubscriptions;
+    this.usePipelining = usePipelining;
+    this.geometryCaches = NetworkGeometryCache.recentlyUsed(GEOMETRY_CACHE_SIZE);
+    this.processPool = processPool;
+    this.metrics = metrics;
+    logger.debug("Traci Service Factory started");
+  }
+
+  /**
+   * @param sumoConfPath directory with the SUMO configuration of the session
+   * @return TraciService instance
+   */
+  public TraciService createTraciService(String sumoConfPath)
+  {
+    logger.debug("TraciService instance created for {}", sumoConfPath);
+    TraciService traciService = new TraciServiceImpl(sumoConfPath, sumoSimulationStepLength, sumoConfFileName,
+      sumoNetFileName, useSubscriptions, usePipelining, processPool, geometryCaches);
+    return metrics != null ? new InstrumentedTraciService(traciService, metrics) : traciService;
+  }
+}
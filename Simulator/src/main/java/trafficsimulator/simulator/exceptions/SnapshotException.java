@@ -0,0 +1,17 @@
+package trafficsimulator.simulator.exceptions;
+
+/**
+ * @author z003ru0y
+ * 
+ */
+public class SnapshotException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * @param message error message
+	 */
+	public SnapshotException(String message) {
+        super(message);
+    }
+}
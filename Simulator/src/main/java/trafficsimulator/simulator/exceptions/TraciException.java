@@ -18,13 +18,16 @@ public class TraciException extends Exception
 
   /**
    * @param e originalException
-   * @param conn traci connection for printing out sumo error
+   * @param conn traci connection for printing out sumo error, null if the connection was not established
    * @param msg error message
    */
   public TraciException(Exception e, SumoTraciConnection conn, String msg)
   {
     super(e);
     logger.error(msg);
-    conn.printSumoError(true);       
+    if (conn != null)
+    {
+      conn.printSumoError(true);
+    }
   }
 }
@@ -3,10 +3,14 @@ package trafficsimulator.simulator.interfaces;
 import java.util.List;
 
 import trafficsimulator.shared.exceptions.InfrastructureElementNotFoundException;
+import trafficsimulator.simulator.exceptions.SnapshotException;
 import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.output.dto.JsonSimulationStep;
 import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonSnapshot;
 import trafficsimulator.simulator.output.dto.JsonStatistics;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatisticsPage;
 
 /**
  * Interface for outer communication with simulator
@@ -26,7 +30,96 @@ public interface SimulationControl
    */
   List<JsonSimulationStep> performStepSequence(int numberOfSteps, int visualizationMultiplier) 
       throws TraciException, InfrastructureElementNotFoundException;
+
+  /**
+   * Advances the simulation without assembling the visualization data of the steps. Every step
+   * only does the traffic actuation, vehicle generation and statistics, the visualization data are
+   * gathered once after the last step. Stops the continuous run, if there is one.
+   * @param numberOfSteps number of steps to do
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @return json object of the last step, its vehicles to add are the vehicles generated
+   *   during the fast forward which are still in the simulation
+   * @throws TraciException when the traci call fails
+   * @throws InfrastructureElementNotFoundException when some of required infrastracure is missing
+   * @throws IllegalArgumentException when the number of steps is not positive
+   */
+  JsonSimulationStep fastForward(int numberOfSteps, int visualizationMultiplier)
+      throws TraciException, InfrastructureElementNotFoundException;
+
+  /**
+   * Advances the simulation like {@link #fastForward(int, int)} until the simulation time is reached
+   * @param untilTime simulation time to reach (ms)
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @return json object of the last step
+   * @throws TraciException when the traci call fails
+   * @throws InfrastructureElementNotFoundException when some of required infrastracure is missing
+   * @throws IllegalArgumentException when the simulation time was already reached
+   */
+  JsonSimulationStep fastForwardUntil(int untilTime, int visualizationMultiplier)
+      throws TraciException, InfrastructureElementNotFoundException;
+
+  /**
+   * Starts stepping the simulation in a background thread. The frames are stored
+   * in a bounded buffer, from where the clients read them by {@link #readFrames(long, int)}
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   */
+  void startContinuousRun(int visualizationMultiplier);
+
+  /**
+   * Stops the background stepping, the frames already produced can be still read
+   */
+  void stopContinuousRun();
+
+  /**
+   * @return true if the simulation is stepped in the background
+   */
+  boolean isContinuousRun();
+
+  /**
+   * Reads the frames produced by the continuous run, does not wait for new ones
+   * @param cursor sequence of the first frame to read (nextCursor of the previous read, 0 at the beginning)
+   * @param maxFrames maximal number of frames to read
+   * @return frames with the cursor for the next read
+   * @throws TraciException when the background stepping failed on traci call
+   * @throws InfrastructureElementNotFoundException when the background stepping did not find some infrastructure
+   */
+  JsonStepFrames readFrames(long cursor, int maxFrames) throws TraciException, InfrastructureElementNotFoundException;
+
+  /**
+   * Waits until the continuous run produces a frame at the cursor
+   * @param cursor sequence of the frame to wait for
+   * @param timeoutMillis maximal time to wait
+   * @return true if there is a frame to read; false on timeout or when there is no continuous run
+   * @throws InterruptedException when interrupted while waiting
+   */
+  boolean awaitFrames(long cursor, long timeoutMillis) throws InterruptedException;
   
+  /**
+   * Saves the current state of the simulation, together with its statistics and vehicle generation
+   * @return saved snapshot
+   * @throws TraciException when the traci call fails
+   * @throws SnapshotException when the state could not be stored
+   */
+  JsonSnapshot checkpoint() throws TraciException, SnapshotException;
+
+  /**
+   * Continues the simulation from the snapshot, the snapshot stays stored for other runs.
+   * Stops the continuous run, if there is one.
+   * @param snapshotId id of the snapshot
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @return json object of the restored step, its vehicles to add are all the vehicles in the simulation
+   * @throws TraciException when the traci call fails
+   * @throws SnapshotException when there is no such snapshot or it could not be read
+   * @throws InfrastructureElementNotFoundException when some of required infrastracure is missing
+   */
+  JsonSimulationStep restore(String snapshotId, int visualizationMultiplier)
+      throws TraciException, SnapshotException, InfrastructureElementNotFoundException;
+
+  /**
+   * @return all the stored snapshots in the order they were taken
+   */
+  List<JsonSnapshot> getSnapshots();
+
   /**
    * Correctly stops the simulation
    */
@@ -34,9 +127,21 @@ public interface SimulationControl
   
   /**
    * Generates statistics from the start of simulation to the current state
+   * @param from start of the time range of the chart data (s)
+   * @param to end of the time range of the chart data (s)
+   * @param resolution time between the chart points (s), 0 for as fine as allowed
+   * @param maxPoints maximal number of the chart points
    * @return json object with statistical data
    */
-  JsonStatistics getnerateStatistics();
+  JsonStatistics getnerateStatistics(double from, double to, double resolution, int maxPoints);
+
+  /**
+   * Generates statistics of the vehicles in the simulation, one page at a time
+   * @param offset index of the first vehicle
+   * @param limit maximal number of vehicles
+   * @return json object with statistics of the vehicles
+   */
+  JsonVehicleStatisticsPage generateVehicleStatistics(int offset, int limit);
   
   /**
    * Generates map data of the simulation network
@@ -1,14 +1,19 @@
 package trafficsimulator.simulator.interfaces;
 
+import java.io.Serializable;
+
 import trafficsimulator.simulator.output.dto.JsonStatistics;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatistics;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatisticsPage;
 import trafficsimulator.simulator.statistics.dto.VehicleChangeset;
 
 /**
- * Interface responsible for saving adn retrieving statistical data of simulation
+ * Interface responsible for saving adn retrieving statistical data of simulation.
+ * The statistics are serialized into the snapshots of the simulation.
  * @author z003ru0y
  *
  */
-public interface StatisticsControl
+public interface StatisticsControl extends Serializable
 {
   /**
    * Sets current simulation time to the statistics module
@@ -28,10 +33,34 @@ public interface StatisticsControl
    * @param changes changeset object
    */
   void updateVehicle(String id, VehicleChangeset changes);
+
+  /**
+   * Records the trip of the vehicle which arrived at its destination in the last step and removes
+   * the vehicle, its values stay in the totals
+   * @param id of the vehicle
+   * @return final statistics of the vehicle, null if the vehicle is not in the statistics
+   */
+  JsonVehicleStatistics finishVehicle(String id);
   
   /**
-   * Generates json object with statistics
+   * Generates json object with statistics, the totals and averages are maintained
+   * by the updates, so it does not go through the vehicles. The chart data contain
+   * the steps in the time range, aggregated when there would be more points than allowed.
+   * Percentiles of the finished trips and of the passages through the approaches come from
+   * fixed size histograms.
+   * @param from start of the time range (s)
+   * @param to end of the time range (s)
+   * @param resolution time between the chart points (s), 0 for as fine as allowed
+   * @param maxPoints maximal number of the chart points
    * @return json object with statistics
    */
-  JsonStatistics generateStatistics();
+  JsonStatistics generateStatistics(double from, double to, double resolution, int maxPoints);
+
+  /**
+   * Generates statistics of the vehicles in the simulation in the order they were added
+   * @param offset index of the first vehicle
+   * @param limit maximal number of vehicles
+   * @return json object with the statistics of the vehicles
+   */
+  JsonVehicleStatisticsPage generateVehicleStatistics(int offset, int limit);
 }
@@ -4,6 +4,7 @@ import java.util.List;
 
 import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.snapshot.VehicleGenerationState;
 
 /**
  * Interface responsible for controlling vehicle operations from the simulation control
@@ -34,4 +35,16 @@ public interface VehicleGenerationControl
    * @throws TraciException when some of the traci calls fails
    */
   List<JsonVehicle> generateVehicles(int simulationTime, StatisticsControl statistics, int visualizationMultiplier) throws TraciException;
+
+  /**
+   * The state is serialized right away, it shares the random generator with the generation
+   * @return state of the generation (rate and random generator)
+   */
+  VehicleGenerationState getState();
+
+  /**
+   * Continues the generation from the state, e.g. when the simulation is restored from snapshot
+   * @param state state from {@link #getState()}, not shared with anything else
+   */
+  void restoreState(VehicleGenerationState state);
 }
@@ -0,0 +1,242 @@
+package trafficsimulator.simulator.interfaces.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Getter;
+import trafficsimulator.shared.dto.Detector;
+import trafficsimulator.shared.dto.Intersection;
+import trafficsimulator.shared.dto.Lane;
+import trafficsimulator.shared.dto.SignalProgram;
+import trafficsimulator.shared.dto.SumoPhase;
+import trafficsimulator.simulator.exceptions.TraciException;
+import trafficsimulator.simulator.traci.TraciService;
+import trafficsimulator.simulator.traci.dto.PhaseInfo;
+
+/**
+ * Everything the traffic actuation needs to know about one intersection, resolved once
+ * per simulation. Detector lanes are translated to indexes in the TLS state string
+ * and phases are stored in arrays indexed by the SUMO phase id, so the actuation itself
+ * does not search in any list.
+ * @author z003ru0y
+ *
+ */
+final class IntersectionActuationPlan
+{
+  private static Logger logger = LoggerFactory.getLogger(IntersectionActuationPlan.class);
+
+  /** value in max duration table for phases which can not be prolonged */
+  static final int NOT_ACTUATED = -1;
+
+  @Getter
+  private final int intersectionId;
+
+  /** detector id of every detector lane */
+  private final String[] detectorIds;
+
+  /** occupancy slot of every detector lane */
+  private final int[] detectorSlots;
+
+  /** index of every detector lane in the TLS state string */
+  private final int[] stateIndexes;
+
+  private final int[] runningGaps;
+
+  private final int[] demandResetThresholds;
+
+  /** state of every phase of the selected program, by phase index */
+  private final char[][] selectedSequences;
+
+  /** duration of every phase of the selected program, by phase index */
+  private final double[] selectedDurations;
+
+  /** maximal duration of the phases by phase id, for each signal program */
+  private final Map<String, int[]> maxDurations;
+
+  private IntersectionActuationPlan(int intersectionId, List<String> detectorIds, List<Integer> detectorSlots,
+      List<Integer> stateIndexes, List<Integer> runningGaps, List<Integer> demandResetThresholds,
+      List<PhaseInfo> selectedPhases, Map<String, int[]> maxDurations)
+  {
+    this.intersectionId = intersectionId;
+    this.detectorIds = detectorIds.toArray(new String[detectorIds.size()]);
+    this.detectorSlots = toArray(detectorSlots);
+    this.stateIndexes = toArray(stateIndexes);
+    this.runningGaps = toArray(runningGaps);
+    this.demandResetThresholds = toArray(demandResetThresholds);
+    this.selectedSequences = new char[selectedPhases.size()][];
+    this.selectedDurations = new double[selectedPhases.size()];
+    for (int i = 0; i < selectedPhases.size(); i++)
+    {
+      selectedSequences[i] = selectedPhases.get(i).getSequence().toCharArray();
+      selectedDurations[i] = selectedPhases.get(i).getDuration();
+    }
+    this.maxDurations = Collections.unmodifiableMap(maxDurations);
+  }
+
+  /**
+   * Creates the plan for the intersection and registers its detectors. Detector lanes
+   * which are not controlled by the traffic light are left out.
+   * @param intersection intersection
+   * @param traciService traci service used to retrieve controlled lanes and program definition
+   * @return actuation plan
+   * @throws TraciException when some of the traci calls fails
+   */
+  static IntersectionActuationPlan compile(Intersection intersection, TraciService traciService) throws TraciException
+  {
+    List<String> controlledLanes = traciService.getControledLanes(intersection.getId());
+
+    List<String> detectorIds = new ArrayList<>();
+    List<Integer> detectorSlots = new ArrayList<>();
+    List<Integer> stateIndexes = new ArrayList<>();
+    List<Integer> runningGaps = new ArrayList<>();
+    List<Integer> demandResetThresholds = new ArrayList<>();
+    for (Detector detector : intersection.getAllDetectors())
+    {
+      for (Lane lane : detector.getLanesUsed())
+      {
+        int stateIndex = controlledLanes.indexOf(lane.getLaneNetId());
+        if (stateIndex < 0)
+        {
+          logger.warn("Lane " + lane.getLaneNetId() + " of detector " + detector.getId()
+            + " is not controlled by intersection " + intersection.getId());
+          continue;
+        }
+
+        detectorIds.add(detector.getId());
+        detectorSlots.add(traciService.registerDetector(detector.getId(), lane.getId()));
+        stateIndexes.add(stateIndex);
+        runningGaps.add(detector.getRunningGap());
+        demandResetThresholds.add(detector.getDemandResetThreshold());
+      }
+    }
+
+    List<PhaseInfo> selectedPhases = detectorIds.isEmpty() ? Collections.emptyList()
+      : traciService.getSignalProgramPhases(intersection.getId(),
+        intersection.getSelectedSignalProgram().getProgramId());
+
+    Map<String, int[]> maxDurations = new HashMap<>();
+    for (SignalProgram signalProgram : intersection.getSignalPrograms())
+    {
+      maxDurations.put(signalProgram.getProgramId(), maxDurationsByPhaseId(signalProgram.getSumoPhases()));
+    }
+
+    return new IntersectionActuationPlan(intersection.getId(), detectorIds, detectorSlots, stateIndexes, runningGaps,
+      demandResetThresholds, selectedPhases, maxDurations);
+  }
+
+  /**
+   * @return number of detector lanes
+   */
+  int size()
+  {
+    return detectorIds.length;
+  }
+
+  String getDetectorId(int index)
+  {
+    return detectorIds[index];
+  }
+
+  int getDetectorSlot(int index)
+  {
+    return detectorSlots[index];
+  }
+
+  int getRunningGap(int index)
+  {
+    return runningGaps[index];
+  }
+
+  /**
+   * @param index detector lane index
+   * @param phaseIndex index of the current phase
+   * @return true if the lane has green without priority in the phase of the selected program
+   */
+  boolean isMinorGreen(int index, int phaseIndex)
+  {
+    if (phaseIndex < 0 || phaseIndex >= selectedSequences.length)
+    {
+      return false;
+    }
+    char[] sequence = selectedSequences[phaseIndex];
+    return stateIndexes[index] < sequence.length && sequence[stateIndexes[index]] == 'g';
+  }
+
+  /**
+   * @param phaseIndex index of the current phase
+   * @return duration of the phase of the selected program
+   */
+  double getSelectedDuration(int phaseIndex)
+  {
+    return selectedDurations[phaseIndex];
+  }
+
+  /**
+   * @param index detector lane index
+   * @param phaseIndex index of the current phase
+   * @param programMaxDurations max durations of the running program
+   * @return true if the phase still can be prolonged by the detector
+   */
+  boolean canProlong(int index, int phaseIndex, int[] programMaxDurations)
+  {
+    if (programMaxDurations == null || phaseIndex < 0 || phaseIndex >= programMaxDurations.length
+      || phaseIndex >= selectedDurations.length || programMaxDurations[phaseIndex] == NOT_ACTUATED)
+    {
+      return false;
+    }
+    return selectedDurations[phaseIndex] + demandResetThresholds[index] <= programMaxDurations[phaseIndex];
+  }
+
+  /**
+   * @param programId id of the signal program
+   * @return maximal durations by phase id or null if the program is unknown
+   */
+  int[] getMaxDurations(String programId)
+  {
+    return maxDurations.get(programId);
+  }
+
+  private static int[] maxDurationsByPhaseId(List<SumoPhase> sumoPhases)
+  {
+    if (sumoPhases == null)
+    {
+      return new int[0];
+    }
+
+    int maxId = -1;
+    for (SumoPhase sumoPhase : sumoPhases)
+    {
+      maxId = Math.max(maxId, sumoPhase.getId());
+    }
+
+    int[] result = new int[maxId + 1];
+    Arrays.fill(result, NOT_ACTUATED);
+    // backwards, so the first phase with the id wins
+    for (int i = sumoPhases.size() - 1; i >= 0; i--)
+    {
+      SumoPhase sumoPhase = sumoPhases.get(i);
+      if (sumoPhase.getId() >= 0)
+      {
+        result[sumoPhase.getId()] = sumoPhase.getPhase() == null ? NOT_ACTUATED : sumoPhase.getPhase().getMaxDuration();
+      }
+    }
+    return result;
+  }
+
+  private static int[] toArray(List<Integer> values)
+  {
+    int[] result = new int[values.size()];
+    for (int i = 0; i < result.length; i++)
+    {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+}
@@ -6,8 +6,11 @@ import trafficsimulator.shared.dto.Lane;
 import trafficsimulator.shared.dto.Leg;
 import trafficsimulator.shared.dto.SignalGroup;
 import trafficsimulator.shared.exceptions.InfrastructureElementNotFoundException;
+import trafficsimulator.simulator.control.BackpressurePolicy;
+import trafficsimulator.simulator.control.StepFrameBuffer;
 import trafficsimulator.simulator.exceptions.NoIntersectionInSituationException;
 import trafficsimulator.simulator.exceptions.NoValidRoutesInSituationException;
+import trafficsimulator.simulator.exceptions.SnapshotException;
 import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.interfaces.JsonMapDataGenerator;
 import trafficsimulator.simulator.interfaces.SignalProgramControl;
@@ -15,17 +18,32 @@ import trafficsimulator.simulator.interfaces.SimulationControl;
 import trafficsimulator.simulator.interfaces.StatisticsControl;
 import trafficsimulator.simulator.interfaces.TrafficActuationControl;
 import trafficsimulator.simulator.interfaces.VehicleGenerationControl;
+import trafficsimulator.simulator.metrics.MetricsRegistry;
 import trafficsimulator.simulator.output.dto.JsonPhaseState;
 import trafficsimulator.simulator.output.dto.JsonSimulationStep;
 import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonSnapshot;
 import trafficsimulator.simulator.output.dto.JsonStatistics;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonStepTiming;
 import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
 import trafficsimulator.simulator.output.dto.JsonVehicle;
 import trafficsimulator.simulator.output.dto.JsonVehicleState;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatistics;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatisticsPage;
+import trafficsimulator.simulator.snapshot.SimulationSnapshot;
+import trafficsimulator.simulator.snapshot.SnapshotStore;
+import trafficsimulator.simulator.snapshot.VehicleGenerationState;
+import trafficsimulator.simulator.statistics.TripLog;
 import trafficsimulator.simulator.traci.TraciService;
+import trafficsimulator.simulator.traci.dto.VehicleInfo;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +54,10 @@ import org.slf4j.LoggerFactory;
 public class SimulationControlImpl implements SimulationControl
 {
   private static Logger logger = LoggerFactory.getLogger(SimulationControlImpl.class);
+
+  /** names of the recorded step stages, in the order of {@link JsonStepTiming} */
+  private static final String[] STEP_STAGES = {"step.actuation", "step.generation", "step.nextStep",
+    "step.arrivals", "step.vehicles", "step.trafficLights", "step.total"};
   
   private final TraciService traciService;
   
@@ -53,20 +75,71 @@ public class SimulationControlImpl implements SimulationControl
   
   private Situation configuration;
 
+  /** simulation step length (ms) */
+  private final int stepLengthMillis;
+
+  private final int frameBufferSize;
+
+  private final BackpressurePolicy backpressurePolicy;
+
+  /** serializes the steps of the stepping thread with the requests of the clients */
+  private final Object stepLock = new Object();
+
+  private volatile StepFrameBuffer frameBuffer;
+
+  private Thread steppingThread;
+
+  private volatile boolean continuousRun;
+
+  /** failure which ended the continuous run */
+  private volatile Exception steppingFailure;
+
+  /** cursor used by {@link #performStepSequence(int, int)} during the continuous run */
+  private long sequenceCursor;
+
+  private final SnapshotStore snapshotStore;
+
+  /** the last snapshot taken or restored in the current run */
+  private String lastSnapshotId;
+
+  /** where the trips of the arrived vehicles are written, null when they are not */
+  private final TripLog tripLog;
+
+  /** where the durations of the step stages are recorded, null when they are not */
+  private final MetricsRegistry metrics;
+
+  /** if true, every step carries the durations of its stages */
+  private final boolean stepTiming;
+
   /**
    * @param traciService traci service
    * @param sumoStepLength simulation step length
    * @param maxVeh limit for vehicle count
    * @param situation infrastructure for simulation
+   * @param frameBufferSize number of frames buffered by the continuous run
+   * @param backpressurePolicy what the continuous run does when the clients do not read the frames
+   * @param snapshotStore store for the snapshots of the simulation
+   * @param tripLog where to write the trips of the arrived vehicles, null to not write them
+   * @param metrics where to record the durations of the step stages, null to not record them
+   * @param stepTiming if true, every step carries the durations of its stages
    * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    * @throws TraciException when some of the traci calls fails
    */
-  public SimulationControlImpl(TraciService traciService, double sumoStepLength, int maxVeh, Situation situation)
+  public SimulationControlImpl(TraciService traciService, double sumoStepLength, int maxVeh, Situation situation,
+      int frameBufferSize, BackpressurePolicy backpressurePolicy, SnapshotStore snapshotStore,
+      TripLog tripLog, MetricsRegistry metrics, boolean stepTiming)
           throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {    
     this.configuration = situation;
     this.traciService = traciService;
+    this.frameBufferSize = frameBufferSize;
+    this.stepLengthMillis = (int) Math.round(sumoStepLength * 1000);
+    this.backpressurePolicy = backpressurePolicy;
+    this.snapshotStore = snapshotStore;
+    this.tripLog = tripLog;
+    this.metrics = metrics;
+    this.stepTiming = stepTiming;
     
     initSimulation();
     
@@ -102,42 +175,148 @@ public class SimulationControlImpl implements SimulationControl
   @Override
   public JsonSituationLayout generateMapData(int visualizationMultiplier) throws TraciException
   {
-    return jsonMapDataGenerator.generateMapData(visualizationMultiplier);
+    synchronized (stepLock)
+    {
+      return jsonMapDataGenerator.generateMapData(visualizationMultiplier);
+    }
   }
 
   @Override
   public void setVehicleGenerationRate(int genMod)
   {   
-    vehicleGenerationControl.setVehicleGenerationRate(genMod); 
+    synchronized (stepLock)
+    {
+      vehicleGenerationControl.setVehicleGenerationRate(genMod); 
+    }
   }
 
   @Override
   public void dispatchEmergencyVehicle(int simulationTime) throws TraciException
   {
-    vehicleGenerationControl.dispatchEmergencyVehicle(simulationTime);    
+    synchronized (stepLock)
+    {
+      vehicleGenerationControl.dispatchEmergencyVehicle(simulationTime);    
+    }
   }
 
   @Override
   public void setSignalProgramToIntersection(int intersectionId, String signalProgramId) throws TraciException
   {
-    signalProgramControl.setSignalProgramToIntersection(intersectionId, signalProgramId);    
+    synchronized (stepLock)
+    {
+      signalProgramControl.setSignalProgramToIntersection(intersectionId, signalProgramId);    
+    }
+  }
+
+  @Override
+  public JsonStatistics getnerateStatistics(double from, double to, double resolution, int maxPoints)
+  {
+    synchronized (stepLock)
+    {
+      return statisticsControl.generateStatistics(from, to, resolution, maxPoints);
+    }
+  }
+
+  @Override
+  public JsonVehicleStatisticsPage generateVehicleStatistics(int offset, int limit)
+  {
+    synchronized (stepLock)
+    {
+      return statisticsControl.generateVehicleStatistics(offset, limit);
+    }
+  }
+
+  @Override
+  public JsonSnapshot checkpoint() throws TraciException, SnapshotException
+  {
+    synchronized (stepLock)
+    {
+      String id = snapshotStore.nextId();
+      String stateFile = snapshotStore.getStateFile(id);
+      traciService.saveState(stateFile);
+
+      SimulationSnapshot snapshot = new SimulationSnapshot(id, lastSnapshotId, traciService.getSimulationTime(),
+        stateFile, SnapshotStore.serialize(statisticsControl), SnapshotStore.serialize(vehicleGenerationControl.getState()),
+        tripLog != null ? tripLog.mark() : null);
+      snapshotStore.put(snapshot);
+      lastSnapshotId = id;
+
+      logger.info("Snapshot {} taken at {} ms", id, snapshot.getSimulationTime());
+      return toJsonSnapshot(snapshot);
+    }
+  }
+
+  @Override
+  public JsonSimulationStep restore(String snapshotId, int visualizationMultiplier)
+      throws TraciException, SnapshotException, InfrastructureElementNotFoundException
+  {
+    stopContinuousRun();
+
+    synchronized (stepLock)
+    {
+      SimulationSnapshot snapshot = snapshotStore.get(snapshotId);
+      StatisticsControl statistics = SnapshotStore.deserialize(snapshot.getStatistics(), StatisticsControl.class);
+      VehicleGenerationState generation =
+        SnapshotStore.deserialize(snapshot.getVehicleGeneration(), VehicleGenerationState.class);
+
+      traciService.loadState(snapshot.getStateFile());
+      statisticsControl = statistics;
+      vehicleGenerationControl.restoreState(generation);
+      if (tripLog != null)
+      {
+        // the vehicles which arrived after the snapshot arrive again
+        tripLog.cutBack(snapshot.getTripLogMark());
+      }
+      lastSnapshotId = snapshot.getId();
+      simulationTime = traciService.getSimulationTime();
+
+      List<JsonVehicle> vehicles = new ArrayList<>();
+      for (VehicleInfo vehicle : traciService.getAlreadyExistingVehicles())
+      {
+        vehicles.add(new JsonVehicle(vehicle.getId(), vehicle.getVehLength() * visualizationMultiplier,
+          vehicle.getVehWidth() * visualizationMultiplier, vehicle.getHexColor()));
+      }
+
+      logger.info("Snapshot {} restored at {} ms", snapshotId, simulationTime);
+      // the statistics of this step are in the snapshot already
+      return getSimStepJsonResult(vehicles, getVehicles(false));
+    }
   }
 
   @Override
-  public JsonStatistics getnerateStatistics()
+  public List<JsonSnapshot> getSnapshots()
+  {
+    List<JsonSnapshot> snapshots = new ArrayList<>();
+    for (SimulationSnapshot snapshot : snapshotStore.getSnapshots())
+    {
+      snapshots.add(toJsonSnapshot(snapshot));
+    }
+    return snapshots;
+  }
+
+  private static JsonSnapshot toJsonSnapshot(SimulationSnapshot snapshot)
   {
-    return statisticsControl.generateStatistics();
+    return new JsonSnapshot(snapshot.getId(), snapshot.getParentId(), snapshot.getSimulationTime());
   }
 
   @Override
   public void stopSimulation()
   {
     logger.info("Simulation finished");
-    // stop TraCI
+    stopContinuousRun();
     
-    if(traciService != null)
+    // stop TraCI
+    synchronized (stepLock)
     {
-      traciService.stopSimulation();
+      if(traciService != null)
+      {
+        traciService.stopSimulation();
+      }
+    }
+    snapshotStore.clear();
+    if (tripLog != null)
+    {
+      tripLog.close();
     }
   }
 
@@ -145,46 +324,327 @@ public class SimulationControlImpl implements SimulationControl
   public List<JsonSimulationStep> performStepSequence(int numberOfSteps, int visualizationMultiplier) 
       throws TraciException, InfrastructureElementNotFoundException
   {
+    if (continuousRun)
+    {
+      // the simulation is stepped by the background thread, serve the produced frames instead
+      JsonStepFrames frames = readFrames(sequenceCursor, numberOfSteps);
+      sequenceCursor = frames.getNextCursor();
+      return frames.getSteps();
+    }
+
     List<JsonSimulationStep> list = new ArrayList<>();
     
-    for(int i = 0; i < numberOfSteps; i++)
+    synchronized (stepLock)
     {
-        list.add(performStep(visualizationMultiplier));
+      for(int i = 0; i < numberOfSteps; i++)
+      {
+          list.add(performStep(visualizationMultiplier));
+      }
     }
     
     return list;
   }
 
+  @Override
+  public JsonSimulationStep fastForward(int numberOfSteps, int visualizationMultiplier)
+      throws TraciException, InfrastructureElementNotFoundException
+  {
+    if (numberOfSteps <= 0)
+    {
+      throw new IllegalArgumentException("Number of steps has to be positive: " + numberOfSteps);
+    }
+    stopContinuousRun();
+
+    synchronized (stepLock)
+    {
+      return doFastForward(numberOfSteps, Integer.MAX_VALUE, visualizationMultiplier);
+    }
+  }
+
+  @Override
+  public JsonSimulationStep fastForwardUntil(int untilTime, int visualizationMultiplier)
+      throws TraciException, InfrastructureElementNotFoundException
+  {
+    stopContinuousRun();
+
+    synchronized (stepLock)
+    {
+      int currentTime = traciService.getSimulationTime();
+      if (untilTime <= currentTime)
+      {
+        throw new IllegalArgumentException("Simulation time " + untilTime + " ms was already reached, current time is "
+          + currentTime + " ms");
+      }
+      return doFastForward(Integer.MAX_VALUE, untilTime, visualizationMultiplier);
+    }
+  }
+
+  @Override
+  public synchronized void startContinuousRun(int visualizationMultiplier)
+  {
+    if (continuousRun)
+    {
+      return;
+    }
+
+    frameBuffer = new StepFrameBuffer(frameBufferSize, backpressurePolicy);
+    sequenceCursor = 0;
+    steppingFailure = null;
+    continuousRun = true;
+
+    steppingThread = new Thread(() -> runContinuously(visualizationMultiplier), "simulation-stepping");
+    steppingThread.setDaemon(true);
+    steppingThread.start();
+    logger.info("Continuous run started, buffer size {}, backpressure {}", frameBufferSize, backpressurePolicy.getValue());
+  }
+
+  @Override
+  public synchronized void stopContinuousRun()
+  {
+    if (steppingThread == null)
+    {
+      return;
+    }
+
+    continuousRun = false;
+    frameBuffer.close();
+    try
+    {
+      steppingThread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    steppingThread = null;
+    logger.info("Continuous run stopped");
+  }
+
+  @Override
+  public boolean isContinuousRun()
+  {
+    return continuousRun;
+  }
+
+  @Override
+  public JsonStepFrames readFrames(long cursor, int maxFrames) 
+      throws TraciException, InfrastructureElementNotFoundException
+  {
+    StepFrameBuffer buffer = frameBuffer;
+    if (buffer == null)
+    {
+      return new JsonStepFrames(cursor, 0, false, new ArrayList<>());
+    }
+
+    JsonStepFrames frames = buffer.read(cursor, maxFrames);
+    if (frames.getSteps().isEmpty() && steppingFailure != null)
+    {
+      if (steppingFailure instanceof TraciException)
+      {
+        throw (TraciException) steppingFailure;
+      }
+      throw (InfrastructureElementNotFoundException) steppingFailure;
+    }
+    return frames;
+  }
+
+  @Override
+  public boolean awaitFrames(long cursor, long timeoutMillis) throws InterruptedException
+  {
+    StepFrameBuffer buffer = frameBuffer;
+    return buffer != null && buffer.await(cursor, timeoutMillis);
+  }
+
+  /**
+   * Body of the stepping thread, runs until stopped or until the step fails
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   */
+  private void runContinuously(int visualizationMultiplier)
+  {
+    try
+    {
+      while (continuousRun)
+      {
+        JsonSimulationStep step;
+        synchronized (stepLock)
+        {
+          step = performStep(visualizationMultiplier);
+        }
+        frameBuffer.put(step);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (TraciException | InfrastructureElementNotFoundException e)
+    {
+      logger.error("Continuous run failed: " + e.getMessage());
+      steppingFailure = e;
+    }
+    finally
+    {
+      continuousRun = false;
+      frameBuffer.close();
+    }
+  }
+
+  /**
+   * Does headless steps until the step count or the simulation time is reached, the last step
+   * is done completely. Has to be called with the step lock
+   * @param maxSteps maximal number of steps to do, at least one step is done
+   * @param untilTime simulation time to reach (ms)
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @return json object of the last step
+   * @throws TraciException when the traci call fails
+   * @throws InfrastructureElementNotFoundException when some of required infrastracure is missing
+   */
+  private JsonSimulationStep doFastForward(int maxSteps, int untilTime, int visualizationMultiplier)
+      throws TraciException, InfrastructureElementNotFoundException
+  {
+    // vehicles generated during the fast forward, the client has to get the ones which did not arrive yet
+    Map<String, JsonVehicle> generated = new LinkedHashMap<>();
+    Set<String> inserted = new HashSet<>();
+
+    int steps = 1;
+    long start = System.currentTimeMillis();
+    while (steps < maxSteps && traciService.getSimulationTime() + stepLengthMillis < untilTime)
+    {
+      performHeadlessStep(visualizationMultiplier, generated, inserted);
+      steps++;
+    }
+
+    JsonSimulationStep result = performStep(visualizationMultiplier);
+
+    Set<String> running = new HashSet<>();
+    for (JsonVehicleState vehicle : result.getVehicleState())
+    {
+      running.add(vehicle.getId());
+    }
+    for (JsonVehicle vehicle : generated.values())
+    {
+      // not inserted yet ones are still waiting for the departure
+      if (running.contains(vehicle.getId()) || !inserted.contains(vehicle.getId()))
+      {
+        result.getVehiclesToAdd().add(vehicle);
+      }
+    }
+
+    logger.info("Fast forwarded {} steps to {} ms in {} ms", steps, simulationTime, System.currentTimeMillis() - start);
+    return result;
+  }
+
+  /**
+   * Does the simulation step without gathering the visualization data, only the statistics are updated
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @param generated vehicles generated during the fast forward, the new ones are added
+   * @param inserted ids of the generated vehicles which already entered the simulation
+   * @throws TraciException when the traci call fails
+   */
+  private void performHeadlessStep(int visualizationMultiplier, Map<String, JsonVehicle> generated,
+      Set<String> inserted) throws TraciException
+  {
+    simulationTime = traciService.getSimulationTime();
+
+    statisticsControl.setSimulationTime(simulationTime / 1000.0);
+
+    trafficActuationControl.doTrafficActuation(configuration.getIntersectionList());
+
+    for (JsonVehicle vehicle : vehicleGenerationControl.generateVehicles(simulationTime, statisticsControl, visualizationMultiplier))
+    {
+      generated.put(vehicle.getId(), vehicle);
+    }
+
+    traciService.nextStep();
+    finishArrivedVehicles();
+
+    for (String vehicleId : traciService.getVehicleIds())
+    {
+      statisticsControl.updateVehicle(vehicleId, traciService.getVehicleStatistics(vehicleId));
+      if (generated.containsKey(vehicleId))
+      {
+        inserted.add(vehicleId);
+      }
+    }
+  }
+
   private JsonSimulationStep performStep(int visualizationMultiplier) 
       throws TraciException, InfrastructureElementNotFoundException
   {        
+      long start = System.nanoTime();
       simulationTime = traciService.getSimulationTime();
       
       statisticsControl.setSimulationTime(simulationTime / 1000.0);
                 
       trafficActuationControl.doTrafficActuation(configuration.getIntersectionList());
+      long actuated = System.nanoTime();
             
       List<JsonVehicle> vehicles = vehicleGenerationControl.generateVehicles(simulationTime, statisticsControl, visualizationMultiplier);
+      long generated = System.nanoTime();
             
       traciService.nextStep();
+      long stepped = System.nanoTime();
+
+      finishArrivedVehicles();
+      long finished = System.nanoTime();
+
+      List<JsonVehicleState> vehicleStates = getVehicles(true);
+      long retrieved = System.nanoTime();
              
-      JsonSimulationStep result = getSimStepJsonResult(vehicles);
+      JsonSimulationStep result = getSimStepJsonResult(vehicles, vehicleStates);
+      long end = System.nanoTime();
+
+      long[] stages = {actuated - start, generated - actuated, stepped - generated, finished - stepped,
+        retrieved - finished, end - retrieved, end - start};
+      if (metrics != null)
+      {
+        for (int stage = 0; stage < STEP_STAGES.length; stage++)
+        {
+          metrics.get(STEP_STAGES[stage]).record(stages[stage]);
+        }
+      }
+      if (stepTiming)
+      {
+        result.setTiming(new JsonStepTiming(toMillis(stages[0]), toMillis(stages[1]), toMillis(stages[2]),
+          toMillis(stages[3]), toMillis(stages[4]), toMillis(stages[5]), toMillis(stages[6])));
+      }
                   
       return result;      
   }
 
+  private static double toMillis(long nanos)
+  {
+    return nanos / 1e6;
+  }
+
+  /**
+   * Records the trips of the vehicles which arrived in the last step, so only the vehicles
+   * in the simulation are kept in the statistics
+   * @throws TraciException when the traci call fails
+   */
+  private void finishArrivedVehicles() throws TraciException
+  {
+    for (String vehicleId : traciService.getArrivedVehicleIds())
+    {
+      JsonVehicleStatistics trip = statisticsControl.finishVehicle(vehicleId);
+      if (trip != null && tripLog != null)
+      {
+        tripLog.append(trip, (simulationTime + stepLengthMillis) / 1000.0);
+      }
+    }
+  }
+
   /**
    * Gather the results of the simulation step
    * @param vehiclesToAdd vehicles to be added in simulation step
+   * @param vehList states of the vehicles in the simulation
    * @return json object of data for vizualization
    * @throws TraciException when the traci call fails
    * @throws InfrastructureElementNotFoundException when some of required infrastracure is missing
    */
-  private JsonSimulationStep getSimStepJsonResult(List<JsonVehicle> vehiclesToAdd) 
+  private JsonSimulationStep getSimStepJsonResult(List<JsonVehicle> vehiclesToAdd, List<JsonVehicleState> vehList) 
       throws TraciException, InfrastructureElementNotFoundException
   {
-    
-    List<JsonVehicleState> vehList = getVehicles();
   
     List<JsonTrafficLightState> tlsList = new ArrayList<>();
     List<JsonPhaseState> stateList = new ArrayList<>();
@@ -241,7 +701,7 @@ public class SimulationControlImpl implements SimulationControl
     return intersectionList;
   }
 
-  private List<JsonVehicleState> getVehicles() throws TraciException
+  private List<JsonVehicleState> getVehicles(boolean updateStatistics) throws TraciException
   {
     List<JsonVehicleState> vehicleList = new ArrayList<>();
     List<String> vehicleIds = traciService.getVehicleIds();
@@ -249,7 +709,10 @@ public class SimulationControlImpl implements SimulationControl
     for (String vehicleId : vehicleIds)
     {
       vehicleList.add(traciService.getVehicleState(vehicleId));
-      statisticsControl.updateVehicle(vehicleId, traciService.getVehicleStatistics(vehicleId));
+      if (updateStatistics)
+      {
+        statisticsControl.updateVehicle(vehicleId, traciService.getVehicleStatistics(vehicleId));
+      }
     }
     
     return vehicleList;
@@ -1,16 +1,23 @@
 package trafficsimulator.simulator.interfaces.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
 import trafficsimulator.simulator.interfaces.StatisticsControl;
+import trafficsimulator.simulator.output.dto.JsonDoubleSeries;
 import trafficsimulator.simulator.output.dto.JsonStatistics;
-import trafficsimulator.simulator.output.dto.JsonStepStatistics;
+import trafficsimulator.simulator.output.dto.JsonTrafficPercentiles;
 import trafficsimulator.simulator.output.dto.JsonVehicleStatistics;
-import trafficsimulator.simulator.statistics.dto.SimulationStepStatistics;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatisticsPage;
+import trafficsimulator.simulator.statistics.StatisticsRollup;
+import trafficsimulator.simulator.statistics.StepStatisticsStore;
+import trafficsimulator.simulator.statistics.TrafficHistograms;
 import trafficsimulator.simulator.statistics.dto.VehicleChangeset;
 import trafficsimulator.simulator.statistics.dto.VehicleStatistics;
 
@@ -20,12 +27,38 @@ import trafficsimulator.simulator.statistics.dto.VehicleStatistics;
  */
 public class StatisticsControlImpl implements StatisticsControl
 {
+  private static final long serialVersionUID = 1L;
+
+  /** bucket widths of the rollups (s) */
+  private static final double[] ROLLUP_WIDTHS = {1, 10, 60};
+
   private double simulationTime;
   private double simulationStepLength;
   private int totalVehiclesAdded;
+  private int totalVehiclesArrived;
 
+  /** vehicles in the simulation in the order they were added, the arrived ones are removed */
   private Map<String, VehicleStatistics> vehicles;
-  private List<SimulationStepStatistics> simSteps;
+  private StepStatisticsStore simSteps;
+
+  /** finished steps aggregated by {@link #ROLLUP_WIDTHS} */
+  private StatisticsRollup[] rollups;
+
+  /* totals of all the vehicles, maintained by every update */
+  private double totalCO2;
+  private double totalCO;
+  private double totalHC;
+  private double totalPMx;
+  private double totalNOx;
+  private double totalFuelConsumption;
+  private double totalWaitingTime;
+  private double totalStepsInSimulation;
+
+  /** of the finished trips */
+  private TrafficHistograms trips;
+
+  /** of the passages through the approaches, by edge id */
+  private Map<String, TrafficHistograms> approaches;
 
   /**
    * @param simulationStepLength simulation step length
@@ -36,78 +69,163 @@ public class StatisticsControlImpl implements StatisticsControl
     this.simulationStepLength = simulationStepLength;
     this.totalVehiclesAdded = 0;
 
-    this.vehicles = new HashMap<>();
-    this.simSteps = new ArrayList<>();
+    this.vehicles = new LinkedHashMap<>();
+    this.simSteps = new StepStatisticsStore();
+    this.trips = new TrafficHistograms();
+    this.approaches = new HashMap<>();
+    this.rollups = new StatisticsRollup[ROLLUP_WIDTHS.length];
+    for (int i = 0; i < ROLLUP_WIDTHS.length; i++)
+    {
+      rollups[i] = new StatisticsRollup(ROLLUP_WIDTHS[i]);
+    }
   }
 
   @Override
   public void setSimulationTime(double simulationTime)
   {
     this.simulationTime = simulationTime;
-    simSteps.add(new SimulationStepStatistics(simulationTime));
+    if (simSteps.size() > 0)
+    {
+      rollUp(simSteps.size() - 1);
+    }
+    simSteps.addStep(simulationTime);
+  }
+
+  /**
+   * Adds the finished step to the rollups
+   * @param step index of the step
+   */
+  private void rollUp(int step)
+  {
+    double[] values = {
+      simSteps.get(StepStatisticsStore.CO2, step), simSteps.get(StepStatisticsStore.CO, step),
+      simSteps.get(StepStatisticsStore.HC, step), simSteps.get(StepStatisticsStore.PMX, step),
+      simSteps.get(StepStatisticsStore.NOX, step), simSteps.get(StepStatisticsStore.FUEL, step),
+      simSteps.getVehicleCount(step)};
+    double time = simSteps.get(StepStatisticsStore.SIMULATION_TIME, step);
+    for (StatisticsRollup rollup : rollups)
+    {
+      rollup.add(time, values);
+    }
   }
 
   @Override
   public void addVehicle(String id)
   {
-    vehicles.put(id, new VehicleStatistics(id));
+    vehicles.put(id, new VehicleStatistics(id, simulationTime));
     totalVehiclesAdded++;
   }
 
   @Override
   public void updateVehicle(String id, VehicleChangeset changes)
   {
-    vehicles.get(id).update(changes);
-    simSteps.get(simSteps.size()-1).update(changes);
+    // the changes are read after the step was done
+    vehicles.get(id).update(changes, simulationTime + simulationStepLength, simulationStepLength, approaches);
+    simSteps.update(changes);
+
+    totalCO2 += changes.getVehicleCO2();
+    totalCO += changes.getVehicleCO();
+    totalHC += changes.getVehicleHC();
+    totalPMx += changes.getVehiclePMx();
+    totalNOx += changes.getVehicleNOx();
+    totalFuelConsumption += changes.getVehicleFuelConsumption();
+    totalWaitingTime += changes.getWaitingTime();
+    totalStepsInSimulation++;
+  }
+
+  @Override
+  public JsonVehicleStatistics finishVehicle(String id)
+  {
+    VehicleStatistics vehicle = vehicles.remove(id);
+    if (vehicle == null)
+    {
+      return null;
+    }
+    vehicle.finish(simulationTime + simulationStepLength, trips, approaches);
+    totalVehiclesArrived++;
+    return vehicle.generateVehicleResult();
   }
 
   @Override
-  public JsonStatistics generateStatistics()
+  public JsonStatistics generateStatistics(double from, double to, double resolution, int maxPoints)
   {
-    List<JsonVehicleStatistics> vehicles = this.vehicles.values().stream()
-      .map(veh -> veh.generateVehicleResult())
-      .collect(Collectors.toList());
-    
-    List<JsonStepStatistics> steps = this.simSteps.stream()
-      .map(step -> step.generateStepResult())
-      .collect(Collectors.toList());
-
-    double totalCO2 =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalCO2).sum();
-    double totalCO =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalCO).sum();
-
-    double totalHC =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalHC).sum();
-    double totalPMx =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalPMx).sum();
-    double totalNOx =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalNOx).sum();
-    double totalFuelConsumption =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleTotalFuelConsumption).sum();
-
-    double averageVehicleTimeInSimulation =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getTimeInSimulation).average().getAsDouble();
-    
-    double averageVehicleWaitingTime =
-      vehicles.stream().mapToDouble(JsonVehicleStatistics::getVehicleWaitingTime).average().getAsDouble();
-    
-    int[] vehiclesInTime = steps.stream().mapToInt(step -> step.getVehicleCount()).toArray();
-   // double[] vehiclesWaitingInTime = steps.stream().mapToDouble(step -> step.).toArray();
-    double[] COInTime = steps.stream().mapToDouble(step -> step.getStepTotalCO()).toArray();
-    double[] CO2InTime = steps.stream().mapToDouble(step -> step.getStepTotalCO2()).toArray();
-    double[] NOxInTime = steps.stream().mapToDouble(step -> step.getStepTotalNOx()).toArray();
-    double[] PMxInTime = steps.stream().mapToDouble(step -> step.getStepTotalPMx()).toArray();
-    double[] HCInTime = steps.stream().mapToDouble(step -> step.getStepTotalHC()).toArray();
-    double[] FuelInTime = steps.stream().mapToDouble(step -> step.getStepTotalFuelConsumption()).toArray();
-    
-    double[] simSteps = steps.stream().mapToDouble(step -> step.getSimTime()).toArray();
-    
-
-    return new JsonStatistics(vehicles, steps, simulationTime, simulationStepLength, totalVehiclesAdded,
+    // every vehicle is counted in the averages from the moment it was added
+    double averageVehicleTimeInSimulation = totalVehiclesAdded > 0 ? totalStepsInSimulation / totalVehiclesAdded : 0;
+    double averageVehicleWaitingTime = totalVehiclesAdded > 0 ? totalWaitingTime / totalVehiclesAdded : 0;
+
+    JsonTrafficPercentiles tripPercentiles = trips.generatePercentiles();
+    Map<String, JsonTrafficPercentiles> approachPercentiles = new TreeMap<>();
+    approaches.forEach((approach, histograms) -> approachPercentiles.put(approach, histograms.generatePercentiles()));
+
+    double rangeStart = Math.max(0, from);
+    double rangeEnd = Math.min(simulationTime, to);
+    // the payload stays bounded, however long the range is
+    double pointResolution = Math.max(resolution, (rangeEnd - rangeStart) / Math.max(1, maxPoints));
+
+    if (pointResolution <= simulationStepLength)
+    {
+      // views of the stored columns, nothing is copied
+      int first = simSteps.indexOf(rangeStart);
+      int last = simSteps.indexOf(Math.nextUp(rangeEnd));
+      return new JsonStatistics(simulationTime, simulationStepLength, totalVehiclesAdded, totalVehiclesArrived,
+        totalCO2, totalCO, totalHC, totalPMx, totalNOx, totalFuelConsumption,
+        averageVehicleTimeInSimulation, averageVehicleWaitingTime, tripPercentiles, approachPercentiles, simulationStepLength,
+        simSteps.getColumn(StepStatisticsStore.SIMULATION_TIME, first, last), simSteps.getVehicleCounts(first, last),
+        simSteps.getColumn(StepStatisticsStore.CO, first, last), simSteps.getColumn(StepStatisticsStore.CO2, first, last),
+        simSteps.getColumn(StepStatisticsStore.NOX, first, last), simSteps.getColumn(StepStatisticsStore.PMX, first, last),
+        simSteps.getColumn(StepStatisticsStore.HC, first, last), simSteps.getColumn(StepStatisticsStore.FUEL, first, last),
+        Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    // the coarsest rollup which is not coarser than the resolution, its buckets merged up to the resolution
+    int level = 0;
+    while (level + 1 < rollups.length && rollups[level + 1].getWidth() <= pointResolution)
+    {
+      level++;
+    }
+    int factor = (int) Math.ceil(pointResolution / rollups[level].getWidth() - 1e-9);
+    StatisticsRollup.Timeline timeline = rollups[level].read(rangeStart, rangeEnd, Math.max(1, factor));
+
+    int length = timeline.getLength();
+    Map<String, JsonDoubleSeries> minInTime = new LinkedHashMap<>();
+    Map<String, JsonDoubleSeries> maxInTime = new LinkedHashMap<>();
+    Map<String, JsonDoubleSeries> sumInTime = new LinkedHashMap<>();
+    for (int metric = 0; metric < StatisticsRollup.METRICS.length; metric++)
+    {
+      minInTime.put(StatisticsRollup.METRICS[metric], new JsonDoubleSeries(timeline.getMin()[metric], length));
+      maxInTime.put(StatisticsRollup.METRICS[metric], new JsonDoubleSeries(timeline.getMax()[metric], length));
+      sumInTime.put(StatisticsRollup.METRICS[metric], new JsonDoubleSeries(timeline.getSum()[metric], length));
+    }
+    double[][] average = timeline.getAverage();
+
+    return new JsonStatistics(simulationTime, simulationStepLength, totalVehiclesAdded, totalVehiclesArrived,
       totalCO2, totalCO, totalHC, totalPMx, totalNOx, totalFuelConsumption,
-      averageVehicleTimeInSimulation, averageVehicleWaitingTime, simSteps, vehiclesInTime, COInTime, CO2InTime,
-      NOxInTime, PMxInTime, HCInTime, FuelInTime);
+      averageVehicleTimeInSimulation, averageVehicleWaitingTime, tripPercentiles, approachPercentiles, timeline.getResolution(),
+      new JsonDoubleSeries(timeline.getTime(), length),
+      new JsonDoubleSeries(average[StatisticsRollup.VEHICLES], length),
+      new JsonDoubleSeries(average[StatisticsRollup.CO], length),
+      new JsonDoubleSeries(average[StatisticsRollup.CO2], length),
+      new JsonDoubleSeries(average[StatisticsRollup.NOX], length),
+      new JsonDoubleSeries(average[StatisticsRollup.PMX], length),
+      new JsonDoubleSeries(average[StatisticsRollup.HC], length),
+      new JsonDoubleSeries(average[StatisticsRollup.FUEL], length),
+      minInTime, maxInTime, sumInTime);
+  }
+
+  @Override
+  public JsonVehicleStatisticsPage generateVehicleStatistics(int offset, int limit)
+  {
+    List<JsonVehicleStatistics> page = new ArrayList<>();
+    Iterator<VehicleStatistics> iterator = vehicles.values().iterator();
+    for (int i = 0; iterator.hasNext() && i < offset + limit; i++)
+    {
+      VehicleStatistics vehicle = iterator.next();
+      if (i >= offset)
+      {
+        page.add(vehicle.generateVehicleResult());
+      }
+    }
+    return new JsonVehicleStatisticsPage(offset, vehicles.size(), page);
   }
 
 }
@@ -1,19 +1,15 @@
 package trafficsimulator.simulator.interfaces.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import trafficsimulator.shared.dto.Detector;
 import trafficsimulator.shared.dto.Intersection;
-import trafficsimulator.shared.dto.Lane;
-import trafficsimulator.shared.dto.SignalProgram;
-import trafficsimulator.shared.dto.SumoPhase;
 import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.interfaces.TrafficActuationControl;
 import trafficsimulator.simulator.traci.TraciService;
-import trafficsimulator.simulator.traci.dto.PhaseInfo;
 
 /**
  * @author z003ru0y
@@ -25,6 +21,11 @@ public class TrafficActuationControlImpl implements TrafficActuationControl
   private static Logger logger = LoggerFactory.getLogger(TrafficActuationControlImpl.class);
   
   private final TraciService traciService;
+
+  /** plans compiled for the intersection list, in the same order */
+  private List<IntersectionActuationPlan> plans;
+
+  private List<Intersection> compiledFor;
   
   /**
    * @param traciService traci service
@@ -37,99 +38,50 @@ public class TrafficActuationControlImpl implements TrafficActuationControl
   @Override
   public void doTrafficActuation(List<Intersection> intersectionList) throws TraciException
   {    
-    for (Intersection intersection : intersectionList)
+    if (compiledFor != intersectionList)
     {
-      for (Detector detector : intersection.getAllDetectors())
-      {
-        for (Lane lane : detector.getLanesUsed())
-        {
-          laneTrafficActuation(intersection, detector, lane);
-        }
-      }
+      compilePlans(intersectionList);
     }
-  }
-  
-  private void laneTrafficActuation(Intersection intersection, 
-      Detector detector, Lane lane) 
-      throws TraciException
-  {
-    boolean detectorOccupancy = traciService.detectorIsOccupied(detector.getId(), lane.getId());
-    int phaseId = traciService.getTlsPhaseId(intersection.getId());
-    String spProgram = traciService.getTlsSignalProgramId(intersection.getId());
-    SignalProgram sp = getSPbyId(intersection.getSignalPrograms(), spProgram);
-    List<String> sumoLanes = traciService.getControledLanes(intersection.getId());
-    
-    int laneIndex = getLaneIndex(sumoLanes, lane);
-    
-    PhaseInfo currentPhase = traciService.getCurrentIntersectionPhaseInfo(intersection.getId(),
-      intersection.getSelectedSignalProgram().getProgramId());
-    SumoPhase sumoPhase = getSumoPhaseById(sp.getSumoPhases(), phaseId);
 
-    if (detectorOccupancy)
-    {
-       prolongPhase(currentPhase, sumoPhase, detector, intersection, laneIndex);      
-    }
-  }
-  
-  
-  private int getLaneIndex(List<String> sumoLanes, Lane lane)
-  {
-    for (int i = 0; i < sumoLanes.size(); i++)
+    for (IntersectionActuationPlan plan : plans)
     {
-      if (sumoLanes.get(i).equals(lane.getLaneNetId()))
+      if (plan.size() > 0)
       {
-        return i;
+        intersectionTrafficActuation(plan);
       }
     }
-    return -1;
   }
-  
-  
-  private void prolongPhase(PhaseInfo currentPhase, SumoPhase sumoPhase, 
-      Detector det, Intersection intersection, int laneIndex) throws TraciException
-  {
-    if (currentPhase.getSequence().charAt(laneIndex) == 'g' && sumoPhase.getPhase() != null)
-    {
 
-      if (currentPhase.getDuration() + det.getDemandResetThreshold() <= sumoPhase.getPhase().getMaxDuration())
-      {
-        logger.info("Traffic actuation used on intersection " + intersection.getId()
-          + " at detector "
-          + det.getId());
-
-        traciService.setCurrentPhaseDuration(intersection.getId(),
-          ((int)currentPhase.getDuration() + det.getRunningGap()) * 1000);
-
-      }
-
-    }
-  }
-  
-  private SumoPhase getSumoPhaseById(List<SumoPhase> sumoPhaseList, int id)
+  private void compilePlans(List<Intersection> intersectionList) throws TraciException
   {
-    for (SumoPhase sumoPhase : sumoPhaseList)
+    List<IntersectionActuationPlan> compiled = new ArrayList<>();
+    for (Intersection intersection : intersectionList)
     {
-      if (id == sumoPhase.getId())
-      {
-        return sumoPhase;
-      }
+      compiled.add(IntersectionActuationPlan.compile(intersection, traciService));
     }
 
-    // TODO throw not found ex
-    return null;
+    plans = compiled;
+    compiledFor = intersectionList;
+    logger.debug("Traffic actuation plans compiled for " + plans.size() + " intersections");
   }
-
-  private SignalProgram getSPbyId(List<SignalProgram> spList, String programId)
+  
+  private void intersectionTrafficActuation(IntersectionActuationPlan plan) throws TraciException
   {
-    for (SignalProgram sp : spList)
+    int phaseId = traciService.getTlsPhaseId(plan.getIntersectionId());
+    int[] maxDurations = plan.getMaxDurations(traciService.getTlsSignalProgramId(plan.getIntersectionId()));
+
+    for (int i = 0; i < plan.size(); i++)
     {
-      if (programId.equals(sp.getProgramId()))
+      if (plan.isMinorGreen(i, phaseId) && plan.canProlong(i, phaseId, maxDurations)
+        && traciService.detectorIsOccupied(plan.getDetectorSlot(i)))
       {
-        return sp;
+        logger.info("Traffic actuation used on intersection " + plan.getIntersectionId()
+          + " at detector "
+          + plan.getDetectorId(i));
+
+        traciService.setCurrentPhaseDuration(plan.getIntersectionId(),
+          ((int) plan.getSelectedDuration(phaseId) + plan.getRunningGap(i)) * 1000);
       }
     }
-
-    // TODO throw not found ex
-    return null;
   }
 }
@@ -2,7 +2,7 @@ package trafficsimulator.simulator.interfaces.impl;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Random;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +16,7 @@ import trafficsimulator.simulator.exceptions.TraciException;
 import trafficsimulator.simulator.interfaces.StatisticsControl;
 import trafficsimulator.simulator.interfaces.VehicleGenerationControl;
 import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.snapshot.VehicleGenerationState;
 import trafficsimulator.simulator.traci.TraciService;
 import trafficsimulator.simulator.traci.dto.SumoVehicle;
 
@@ -37,6 +38,12 @@ public class VehicleGenerationControlImpl implements VehicleGenerationControl
   
   private List<GeneratedRoute> generatedRoutes;
   private List<VehicleType> vehicleTypes;
+
+  /** own generator instead of the thread local one, so it can be stored in the snapshot */
+  private Random random;
+
+  /** number of the next generated vehicle, the ids stay unique even for steps in the same millisecond */
+  private long nextVehicleNumber;
   
 
   /**
@@ -50,6 +57,7 @@ public class VehicleGenerationControlImpl implements VehicleGenerationControl
     maximumNumberOfVehicles = maxVeh;
     generatedRoutes = situation.getGeneratedRoutes();
     vehicleTypes = situation.getVehicleTypes();  
+    random = new Random();
   }
 
   @Override
@@ -58,6 +66,20 @@ public class VehicleGenerationControlImpl implements VehicleGenerationControl
     this.generateVehicleEveryXStep = genMod;
   }
 
+  @Override
+  public VehicleGenerationState getState()
+  {
+    return new VehicleGenerationState(generateVehicleEveryXStep, random, nextVehicleNumber);
+  }
+
+  @Override
+  public void restoreState(VehicleGenerationState state)
+  {
+    generateVehicleEveryXStep = state.getGenerateVehicleEveryXStep();
+    random = state.getRandom();
+    nextVehicleNumber = state.getNextVehicleNumber();
+  }
+
   @Override
   public void dispatchEmergencyVehicle(int simulationTime) throws TraciException
   {
@@ -79,7 +101,7 @@ public class VehicleGenerationControlImpl implements VehicleGenerationControl
       {
         String route = this.pickRoute();
         VehicleType vType = pickVehicleType();
-        String vehId = String.valueOf(vType.getName() + "_" + System.currentTimeMillis());
+        String vehId = vType.getName() + "_" + nextVehicleNumber++;
         SumoVehicle vehicle = new SumoVehicle(route, vehId, simulationTime + 1, vType);
 
         SumoColor color = vehicle.getColor();
@@ -102,13 +124,13 @@ public class VehicleGenerationControlImpl implements VehicleGenerationControl
 
   private String pickRoute()
   {
-    int randomNum = ThreadLocalRandom.current().nextInt(0, generatedRoutes.size());
+    int randomNum = random.nextInt(generatedRoutes.size());
     return generatedRoutes.get(randomNum).getEdges();
   }
 
   private VehicleType pickVehicleType()
   {
-    int randomNum = ThreadLocalRandom.current().nextInt(0, vehicleTypes.size() * 3);
+    int randomNum = random.nextInt(vehicleTypes.size() * 3);
 
     if (randomNum >= vehicleTypes.size())
     {
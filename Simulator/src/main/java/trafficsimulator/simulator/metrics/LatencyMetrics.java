@@ -0,0 +1,176 @@
+package trafficsimulator.simulator.metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import trafficsimulator.simulator.output.dto.JsonLatencyMetrics;
+import trafficsimulator.simulator.statistics.LogHistogram;
+
+/**
+ * Number, total time and histogram of the durations of one kind of operation. Every thread records
+ * into its own part, the parts are merged when the metrics are read, so the sessions measuring
+ * the same operation do not wait for each other. The parts of the threads which ended are folded
+ * into one, so short lived threads do not add up.
+ * @author z003ru0y
+ *
+ */
+public class LatencyMetrics
+{
+  /** resolution of the durations (ms) */
+  private static final double MICROSECOND = 0.001;
+
+  /** weight of the newest duration in the recent average, the average follows about the last 1 / weight durations */
+  private static final double RECENT_WEIGHT = 0.05;
+
+  /** parts of the threads which recorded, until they are found ended */
+  private final Queue<Recorder> recorders;
+
+  /** durations of the threads which ended, its lock guards folding the parts into it */
+  private final Recorder retired;
+
+  private final ThreadLocal<Recorder> recorder;
+
+  /**
+   * creates empty metrics
+   */
+  public LatencyMetrics()
+  {
+    this.recorders = new ConcurrentLinkedQueue<>();
+    this.retired = new Recorder(null);
+    this.recorder = ThreadLocal.withInitial(() -> {
+      Recorder created = new Recorder(Thread.currentThread());
+      synchronized (retired)
+      {
+        retireEnded();
+        recorders.add(created);
+      }
+      return created;
+    });
+  }
+
+  /**
+   * @param nanos duration of the operation (ns)
+   */
+  public void record(long nanos)
+  {
+    recorder.get().record(nanos);
+  }
+
+  /**
+   * @return json object with the metrics, times in ms, the recent average is the average of the recent
+   * averages of the threads weighted by the number of their durations, up to 1 / {@link #RECENT_WEIGHT}
+   */
+  public JsonLatencyMetrics generateMetrics()
+  {
+    LogHistogram latency = new LogHistogram(MICROSECOND);
+    long count = 0;
+    long totalNanos = 0;
+    double recentNanos = 0;
+    double recentWeight = 0;
+    synchronized (retired)
+    {
+      retireEnded();
+      List<Recorder> parts = new ArrayList<>(recorders);
+      parts.add(retired);
+      for (Recorder part : parts)
+      {
+        synchronized (part)
+        {
+          latency.merge(part.latency);
+          count += part.count;
+          totalNanos += part.totalNanos;
+          double weight = part.recentWeight();
+          recentNanos += weight * part.recentNanos;
+          recentWeight += weight;
+        }
+      }
+    }
+
+    double millis = TimeUnit.MILLISECONDS.toNanos(1);
+    double totalMillis = totalNanos / millis;
+    return new JsonLatencyMetrics(count, totalMillis, count > 0 ? totalMillis / count : 0,
+      recentWeight > 0 ? recentNanos / recentWeight / millis : 0, latency.generatePercentiles());
+  }
+
+  /**
+   * Folds the parts of the ended threads into the retired part, called with its lock held
+   */
+  private void retireEnded()
+  {
+    Iterator<Recorder> iterator = recorders.iterator();
+    while (iterator.hasNext())
+    {
+      Recorder part = iterator.next();
+      if (part.hasEnded())
+      {
+        iterator.remove();
+        retired.fold(part);
+      }
+    }
+  }
+
+  /**
+   * Durations recorded by one thread, its lock is taken by other thread only while the metrics are read
+   */
+  private static class Recorder
+  {
+    /** thread which records, null for the retired part */
+    private final WeakReference<Thread> owner;
+
+    private final LogHistogram latency = new LogHistogram(MICROSECOND);
+
+    private long count;
+
+    private long totalNanos;
+
+    /** exponentially weighted average of the durations (ns) */
+    private double recentNanos;
+
+    Recorder(Thread owner)
+    {
+      this.owner = owner != null ? new WeakReference<>(owner) : null;
+    }
+
+    boolean hasEnded()
+    {
+      Thread thread = owner != null ? owner.get() : null;
+      return owner != null && (thread == null || !thread.isAlive());
+    }
+
+    /**
+     * @return weight of the recent average when the parts are merged
+     */
+    double recentWeight()
+    {
+      return Math.min(count, 1 / RECENT_WEIGHT);
+    }
+
+    synchronized void fold(Recorder other)
+    {
+      synchronized (other)
+      {
+        double weight = recentWeight() + other.recentWeight();
+        if (weight > 0)
+        {
+          recentNanos = (recentWeight() * recentNanos + other.recentWeight() * other.recentNanos) / weight;
+        }
+        latency.merge(other.latency);
+        count += other.count;
+        totalNanos += other.totalNanos;
+      }
+    }
+
+    synchronized void record(long nanos)
+    {
+      count++;
+      totalNanos += nanos;
+      recentNanos = count == 1 ? nanos : recentNanos + RECENT_WEIGHT * (nanos - recentNanos);
+      latency.record(nanos / 1e6);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package trafficsimulator.simulator.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import trafficsimulator.simulator.output.dto.JsonLatencyMetrics;
+
+/**
+ * Latency metrics of the operations by their name, shared by all the sessions
+ * @author z003ru0y
+ *
+ */
+public class MetricsRegistry
+{
+  private final ConcurrentMap<String, LatencyMetrics> metrics;
+
+  /**
+   * creates empty registry
+   */
+  public MetricsRegistry()
+  {
+    this.metrics = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param name name of the operation
+   * @return metrics of the operation, created when they do not exist
+   */
+  public LatencyMetrics get(String name)
+  {
+    LatencyMetrics operation = metrics.get(name);
+    return operation != null ? operation : metrics.computeIfAbsent(name, key -> new LatencyMetrics());
+  }
+
+  /**
+   * Records the operation which ends now
+   * @param name name of the operation
+   * @param startNanos {@link System#nanoTime()} when the operation started
+   */
+  public void record(String name, long startNanos)
+  {
+    get(name).record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return metrics of all the operations by name
+   */
+  public Map<String, JsonLatencyMetrics> generateMetrics()
+  {
+    Map<String, JsonLatencyMetrics> result = new TreeMap<>();
+    metrics.forEach((name, operation) -> result.put(name, operation.generateMetrics()));
+    return result;
+  }
+
+  /**
+   * Forgets all the recorded operations
+   */
+  public void clear()
+  {
+    metrics.clear();
+  }
+}
@@ -0,0 +1,129 @@
+package trafficsimulator.simulator.output;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import trafficsimulator.simulator.output.dto.JsonDeltaStep;
+import trafficsimulator.simulator.output.dto.JsonPhaseState;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+
+/**
+ * Encodes the steps sent to one client as {@link JsonDeltaStep}. The differences are computed
+ * against what was sent to the client before, not against the previous simulation step,
+ * so the steps the client did not get (skipped or coalesced) do not break the reconstruction.
+ * @author z003ru0y
+ *
+ */
+public class DeltaFrameEncoder
+{
+  private final int keyframeInterval;
+
+  private final double positionQuantum;
+
+  private final Map<String, JsonVehicleState> sentVehicles;
+
+  private final Map<String, Character> sentLights;
+
+  private final Map<Integer, JsonPhaseState> sentPhases;
+
+  private int framesSinceKeyframe;
+
+  /**
+   * @param keyframeInterval every how many frames to send a keyframe
+   * @param positionQuantum smallest position change (m) which is sent
+   */
+  public DeltaFrameEncoder(int keyframeInterval, double positionQuantum)
+  {
+    this.keyframeInterval = Math.max(1, keyframeInterval);
+    this.positionQuantum = positionQuantum;
+    this.sentVehicles = new HashMap<>();
+    this.sentLights = new HashMap<>();
+    this.sentPhases = new HashMap<>();
+    this.framesSinceKeyframe = -1;
+  }
+
+  /**
+   * @param step step to send
+   * @return keyframe or difference to the previously encoded step
+   */
+  public JsonDeltaStep encode(JsonSimulationStep step)
+  {
+    boolean keyframe = framesSinceKeyframe < 0 || framesSinceKeyframe + 1 >= keyframeInterval;
+    framesSinceKeyframe = keyframe ? 0 : framesSinceKeyframe + 1;
+    if (keyframe)
+    {
+      sentVehicles.clear();
+      sentLights.clear();
+      sentPhases.clear();
+    }
+
+    List<JsonVehicleState> vehicles = new ArrayList<>();
+    Set<String> present = new HashSet<>();
+    for (JsonVehicleState vehicle : step.getVehicleState())
+    {
+      present.add(vehicle.getId());
+      JsonVehicleState sent = sentVehicles.get(vehicle.getId());
+      if (sent == null || vehicleChanged(sent, vehicle))
+      {
+        vehicles.add(vehicle);
+        sentVehicles.put(vehicle.getId(), vehicle);
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    if (!keyframe)
+    {
+      for (String vehId : sentVehicles.keySet())
+      {
+        if (!present.contains(vehId))
+        {
+          removed.add(vehId);
+        }
+      }
+    }
+    sentVehicles.keySet().retainAll(present);
+
+    List<JsonTrafficLightState> lights = new ArrayList<>();
+    for (JsonTrafficLightState light : step.getTlState())
+    {
+      Character sent = sentLights.put(light.getLaneId(), light.getLaneState());
+      if (sent == null || sent != light.getLaneState())
+      {
+        lights.add(light);
+      }
+    }
+
+    List<JsonPhaseState> phases = new ArrayList<>();
+    for (JsonPhaseState phase : step.getPhaseState())
+    {
+      JsonPhaseState sent = sentPhases.put(phase.getId(), phase);
+      if (!phase.equals(sent))
+      {
+        phases.add(phase);
+      }
+    }
+
+    return new JsonDeltaStep(step.getSimulationStep(), keyframe, vehicles, removed, lights, phases,
+      step.getVehiclesToAdd());
+  }
+
+  private boolean vehicleChanged(JsonVehicleState sent, JsonVehicleState current)
+  {
+    return quantize(sent.getCoords().getX()) != quantize(current.getCoords().getX())
+      || quantize(sent.getCoords().getY()) != quantize(current.getCoords().getY())
+      || sent.getAngle() != current.getAngle()
+      || sent.getSpeed() != current.getSpeed()
+      || !sent.getSignaling().equals(current.getSignaling());
+  }
+
+  private long quantize(double position)
+  {
+    return Math.round(position / positionQuantum);
+  }
+}
@@ -0,0 +1,56 @@
+package trafficsimulator.simulator.output.binary;
+
+/**
+ * Constants of the compact binary wire format of the simulation data.
+ * <p>
+ * Primitives:
+ * <ul>
+ * <li>varint - unsigned LEB128 (7 bits per byte, lowest first, high bit set when more bytes follow)</li>
+ * <li>svarint - signed value zigzag encoded into varint</li>
+ * <li>fixed - decimal number multiplied by {@link #FIXED_POINT_SCALE}, rounded, written as svarint</li>
+ * <li>string - varint of (UTF-8 length + 1) followed by the bytes, 0 stands for null</li>
+ * <li>ref - entry of a dictionary: varint index of already known value, or index equal
+ * to the dictionary size followed by the string, which becomes the next entry.
+ * Vehicle ids, lane ids and program ids have separate dictionaries, they start empty
+ * in every message</li>
+ * <li>shape - varint point count, first point as fixed x and y, every next one as fixed
+ * difference to the previous point</li>
+ * </ul>
+ * Message: {@link #MAGIC}, {@link #VERSION} byte, varint status, string status message,
+ * payload kind byte and the payload (see {@link BinaryFrameWriter} for the layout of each kind).
+ * @author z003ru0y
+ *
+ */
+public final class BinaryFormat
+{
+  /** media type under which the format is negotiated */
+  public static final String MEDIA_TYPE = "application/x-trafficsimulator-binary";
+
+  /** first bytes of every message */
+  public static final byte[] MAGIC = { 'T', 'S' };
+
+  /** version of the format */
+  public static final int VERSION = 1;
+
+  /** 1 unit of fixed point value is 1 cm, or 0.01 of whatever unit */
+  public static final double FIXED_POINT_SCALE = 100.0;
+
+  /** message without payload */
+  public static final int PAYLOAD_NONE = 0;
+
+  /** payload is list of simulation steps */
+  public static final int PAYLOAD_STEPS = 1;
+
+  /** payload are frames of the continuous run */
+  public static final int PAYLOAD_STEP_FRAMES = 2;
+
+  /** payload is layout of the situation (map) */
+  public static final int PAYLOAD_LAYOUT = 3;
+
+  /** payload without binary representation, varint length and JSON bytes */
+  public static final int PAYLOAD_JSON = 4;
+
+  private BinaryFormat()
+  {
+  }
+}
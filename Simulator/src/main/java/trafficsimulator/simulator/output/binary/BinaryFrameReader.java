@@ -0,0 +1,352 @@
+package trafficsimulator.simulator.output.binary;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import trafficsimulator.shared.dto.Coordinates;
+import trafficsimulator.shared.dto.GridPosition;
+import trafficsimulator.simulator.output.dto.JsonConnectionLeg;
+import trafficsimulator.simulator.output.dto.JsonConnectionPolygon;
+import trafficsimulator.simulator.output.dto.JsonCoordinates;
+import trafficsimulator.simulator.output.dto.JsonDirections;
+import trafficsimulator.simulator.output.dto.JsonIntersection;
+import trafficsimulator.simulator.output.dto.JsonIntersectionLeg;
+import trafficsimulator.simulator.output.dto.JsonLane;
+import trafficsimulator.simulator.output.dto.JsonLayoutMetadata;
+import trafficsimulator.simulator.output.dto.JsonPhaseState;
+import trafficsimulator.simulator.output.dto.JsonShape;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+
+/**
+ * Reference decoder of the {@link BinaryFormat}, reads what {@link BinaryFrameWriter} wrote.
+ * One instance reads one message. Decimal values come back rounded to the fixed point precision.
+ * @author z003ru0y
+ *
+ */
+public class BinaryFrameReader
+{
+  private final DataInputStream in;
+
+  private final List<String> vehicleIds;
+
+  private final List<String> laneIds;
+
+  private final List<String> programIds;
+
+  private List<String> previousLanes;
+
+  /**
+   * @param in stream to read from
+   */
+  public BinaryFrameReader(InputStream in)
+  {
+    this.in = new DataInputStream(in);
+    this.vehicleIds = new ArrayList<>();
+    this.laneIds = new ArrayList<>();
+    this.programIds = new ArrayList<>();
+    this.previousLanes = new ArrayList<>();
+  }
+
+  /**
+   * Reads and checks magic and version
+   * @throws IOException when the data are not in the supported format
+   */
+  public void readMagic() throws IOException
+  {
+    for (byte expected : BinaryFormat.MAGIC)
+    {
+      if (in.readByte() != expected)
+      {
+        throw new IOException("Not a binary simulation message");
+      }
+    }
+    int version = in.readUnsignedByte();
+    if (version != BinaryFormat.VERSION)
+    {
+      throw new IOException("Unsupported binary format version " + version);
+    }
+  }
+
+  /**
+   * @return status of the message, call after {@link #readMagic()}
+   * @throws IOException when reading fails
+   */
+  public int readStatus() throws IOException
+  {
+    return (int) readVarint();
+  }
+
+  /**
+   * @return status message of the message, call after {@link #readStatus()}
+   * @throws IOException when reading fails
+   */
+  public String readStatusMessage() throws IOException
+  {
+    return readString();
+  }
+
+  /**
+   * @return kind of the payload, call after {@link #readStatusMessage()}
+   * @throws IOException when reading fails
+   */
+  public int readPayloadKind() throws IOException
+  {
+    return in.readUnsignedByte();
+  }
+
+  /**
+   * @return simulation steps
+   * @throws IOException when reading fails
+   */
+  public List<JsonSimulationStep> readSteps() throws IOException
+  {
+    int count = (int) readVarint();
+    List<JsonSimulationStep> steps = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      steps.add(readStep());
+    }
+    return steps;
+  }
+
+  /**
+   * @return frames of the continuous run
+   * @throws IOException when reading fails
+   */
+  public JsonStepFrames readStepFrames() throws IOException
+  {
+    long nextCursor = readVarint();
+    long skippedFrames = readVarint();
+    boolean running = in.readBoolean();
+    return new JsonStepFrames(nextCursor, skippedFrames, running, readSteps());
+  }
+
+  /**
+   * @return situation layout
+   * @throws IOException when reading fails
+   */
+  public JsonSituationLayout readLayout() throws IOException
+  {
+    double stepLength = in.readDouble();
+    int intersectionCount = (int) readVarint();
+    int routesCount = (int) readVarint();
+    JsonCoordinates boundary = new JsonCoordinates(readFixed(), readFixed());
+    JsonLayoutMetadata metadata = new JsonLayoutMetadata(stepLength, intersectionCount, routesCount, boundary);
+
+    int count = (int) readVarint();
+    List<JsonIntersection> intersections = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      String id = readString();
+      JsonShape shape = readShape();
+      GridPosition gridPosition = new GridPosition((int) readSignedVarint(), (int) readSignedVarint());
+      int angle = (int) readSignedVarint();
+      int legCount = (int) readVarint();
+      List<JsonIntersectionLeg> legs = new ArrayList<>(legCount);
+      for (int j = 0; j < legCount; j++)
+      {
+        legs.add(readLeg());
+      }
+      int programCount = (int) readVarint();
+      List<String> programs = new ArrayList<>(programCount);
+      for (int j = 0; j < programCount; j++)
+      {
+        programs.add(readString());
+      }
+      intersections.add(new JsonIntersection(id, shape, gridPosition, angle, legs, programs));
+    }
+
+    count = (int) readVarint();
+    List<JsonConnectionLeg> connectionLegs = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      connectionLegs.add(new JsonConnectionLeg(readString(), readString(), readString(), readShape()));
+    }
+
+    count = (int) readVarint();
+    List<JsonConnectionPolygon> polygons = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      polygons.add(new JsonConnectionPolygon(readShape()));
+    }
+
+    return new JsonSituationLayout(metadata, intersections, connectionLegs, polygons, readVehicles());
+  }
+
+  /**
+   * Reads bytes written as varint length and the bytes
+   * @return the bytes
+   * @throws IOException when reading fails
+   */
+  public byte[] readBytes() throws IOException
+  {
+    byte[] bytes = new byte[(int) readVarint()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private JsonSimulationStep readStep() throws IOException
+  {
+    int simulationStep = (int) readSignedVarint();
+
+    int count = (int) readVarint();
+    List<JsonVehicleState> vehicles = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      String id = readRef(vehicleIds);
+      Coordinates coordinates = new Coordinates(readFixed(), readFixed());
+      int angle = (int) readSignedVarint();
+      int signals = (int) readVarint();
+      long speed = readSignedVarint();
+      long distance = readSignedVarint();
+      double waitingTime = readFixed();
+      vehicles.add(new JsonVehicleState(id, coordinates, angle, signals, speed, distance, waitingTime));
+    }
+
+    count = (int) readVarint();
+    if (!in.readBoolean())
+    {
+      previousLanes = new ArrayList<>(count);
+      for (int i = 0; i < count; i++)
+      {
+        previousLanes.add(readRef(laneIds));
+      }
+    }
+    if (previousLanes.size() != count)
+    {
+      throw new IOException("Traffic light count " + count + " does not match the previous lanes");
+    }
+    byte[] states = new byte[count];
+    in.readFully(states);
+    List<JsonTrafficLightState> lights = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      lights.add(new JsonTrafficLightState(previousLanes.get(i), (char) states[i]));
+    }
+
+    count = (int) readVarint();
+    List<JsonPhaseState> phases = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      String programId = readRef(programIds);
+      int id = (int) readSignedVarint();
+      int phaseId = (int) readSignedVarint();
+      double nextSwitch = readSignedVarint() / 1000.0;
+      phases.add(new JsonPhaseState(programId, id, phaseId, nextSwitch));
+    }
+
+    return new JsonSimulationStep(simulationStep, vehicles, lights, phases, readVehicles());
+  }
+
+  private List<JsonVehicle> readVehicles() throws IOException
+  {
+    int count = (int) readVarint();
+    List<JsonVehicle> vehicles = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      String id = readRef(vehicleIds);
+      double length = readFixed();
+      double width = readFixed();
+      String color = String.format("#%02X%02X%02X", in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte());
+      vehicles.add(new JsonVehicle(id, length, width, color));
+    }
+    return vehicles;
+  }
+
+  private JsonIntersectionLeg readLeg() throws IOException
+  {
+    String id = readString();
+    int angle = (int) readSignedVarint();
+    int count = (int) readVarint();
+    List<JsonLane> lanes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      String laneId = readString();
+      int flags = in.readUnsignedByte();
+      JsonDirections directions = new JsonDirections((flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0);
+      double length = readFixed();
+      lanes.add(new JsonLane(laneId, (flags & 1) != 0, directions, length, readShape()));
+    }
+    return new JsonIntersectionLeg(id, angle, lanes);
+  }
+
+  private JsonShape readShape() throws IOException
+  {
+    int count = (int) readVarint();
+    List<JsonCoordinates> coords = new ArrayList<>(count);
+    long x = 0;
+    long y = 0;
+    for (int i = 0; i < count; i++)
+    {
+      x += readSignedVarint();
+      y += readSignedVarint();
+      coords.add(new JsonCoordinates(x / BinaryFormat.FIXED_POINT_SCALE, y / BinaryFormat.FIXED_POINT_SCALE));
+    }
+    return new JsonShape(coords);
+  }
+
+  private String readRef(List<String> dictionary) throws IOException
+  {
+    int index = (int) readVarint();
+    if (index < dictionary.size())
+    {
+      return dictionary.get(index);
+    }
+    if (index > dictionary.size())
+    {
+      throw new IOException("Invalid dictionary reference " + index);
+    }
+
+    String value = readString();
+    dictionary.add(value);
+    return value;
+  }
+
+  private String readString() throws IOException
+  {
+    long length = readVarint();
+    if (length == 0)
+    {
+      return null;
+    }
+
+    byte[] bytes = new byte[(int) (length - 1)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private double readFixed() throws IOException
+  {
+    return readSignedVarint() / BinaryFormat.FIXED_POINT_SCALE;
+  }
+
+  private long readSignedVarint() throws IOException
+  {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private long readVarint() throws IOException
+  {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+}
@@ -0,0 +1,358 @@
+package trafficsimulator.simulator.output.binary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import trafficsimulator.simulator.output.dto.JsonConnectionLeg;
+import trafficsimulator.simulator.output.dto.JsonConnectionPolygon;
+import trafficsimulator.simulator.output.dto.JsonCoordinates;
+import trafficsimulator.simulator.output.dto.JsonIntersection;
+import trafficsimulator.simulator.output.dto.JsonIntersectionLeg;
+import trafficsimulator.simulator.output.dto.JsonLane;
+import trafficsimulator.simulator.output.dto.JsonLayoutMetadata;
+import trafficsimulator.simulator.output.dto.JsonPhaseState;
+import trafficsimulator.simulator.output.dto.JsonShape;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+
+/**
+ * Writes simulation data in the {@link BinaryFormat}. One instance writes one message,
+ * the dictionaries are shared by everything written by the instance.
+ * <p>
+ * Steps: varint count, then every step:
+ * <ul>
+ * <li>svarint simulation time (ms)</li>
+ * <li>varint vehicle count, every vehicle: ref id, fixed x, fixed y, svarint angle, varint signals,
+ * svarint speed, svarint distance, fixed waiting time</li>
+ * <li>varint traffic light count, byte 1 if the lanes are the same as in the previous step
+ * (otherwise 0 and ref of every lane id), then one ASCII byte of the state per lane</li>
+ * <li>varint phase count, every phase: ref program id, svarint intersection id, svarint phase id,
+ * svarint next switch (ms)</li>
+ * <li>varint count of vehicles to add, every vehicle: ref id, fixed length, fixed width, 3 bytes of RGB color</li>
+ * </ul>
+ * Step frames: varint next cursor, varint skipped frames, byte running, steps.
+ * <p>
+ * Layout: double step length, varint intersection count, varint routes count, fixed boundary x and y;
+ * intersections (string id, shape, svarint grid x and y, svarint angle, legs, program id strings),
+ * where every leg is string id, svarint angle and lanes (string id, byte flags 1 input, 2 left,
+ * 4 right, 8 straight, fixed length, shape); connection legs (string id, leg1 id, leg2 id, shape);
+ * connection polygons (shape); vehicles as vehicles to add. Every list starts with varint count.
+ * @author z003ru0y
+ *
+ */
+public class BinaryFrameWriter
+{
+  private final DataOutputStream out;
+
+  private final Map<String, Integer> vehicleIds;
+
+  private final Map<String, Integer> laneIds;
+
+  private final Map<String, Integer> programIds;
+
+  private List<String> previousLanes;
+
+  /**
+   * @param out stream to write to
+   */
+  public BinaryFrameWriter(OutputStream out)
+  {
+    this.out = new DataOutputStream(out);
+    this.vehicleIds = new HashMap<>();
+    this.laneIds = new HashMap<>();
+    this.programIds = new HashMap<>();
+    this.previousLanes = new ArrayList<>();
+  }
+
+  /**
+   * Writes magic, version, status and status message
+   * @param status message status
+   * @param statusMessage message text
+   * @param payloadKind one of the PAYLOAD constants of {@link BinaryFormat}
+   * @throws IOException when writing fails
+   */
+  public void writeHeader(int status, String statusMessage, int payloadKind) throws IOException
+  {
+    out.write(BinaryFormat.MAGIC);
+    out.writeByte(BinaryFormat.VERSION);
+    writeVarint(status);
+    writeString(statusMessage);
+    out.writeByte(payloadKind);
+  }
+
+  /**
+   * @param steps simulation steps
+   * @throws IOException when writing fails
+   */
+  public void writeSteps(List<JsonSimulationStep> steps) throws IOException
+  {
+    writeVarint(steps.size());
+    for (JsonSimulationStep step : steps)
+    {
+      writeStep(step);
+    }
+  }
+
+  /**
+   * @param frames frames of the continuous run
+   * @throws IOException when writing fails
+   */
+  public void writeStepFrames(JsonStepFrames frames) throws IOException
+  {
+    writeVarint(frames.getNextCursor());
+    writeVarint(frames.getSkippedFrames());
+    out.writeBoolean(frames.isRunning());
+    writeSteps(frames.getSteps());
+  }
+
+  /**
+   * @param layout situation layout
+   * @throws IOException when writing fails
+   */
+  public void writeLayout(JsonSituationLayout layout) throws IOException
+  {
+    JsonLayoutMetadata metadata = layout.getMetadata();
+    out.writeDouble(metadata.getSimulationStepLength());
+    writeVarint(metadata.getIntersectionCount());
+    writeVarint(metadata.getRoutesCount());
+    writeFixed(metadata.getNetworkBoundary().getX());
+    writeFixed(metadata.getNetworkBoundary().getY());
+
+    writeVarint(layout.getIntersectionList().size());
+    for (JsonIntersection intersection : layout.getIntersectionList())
+    {
+      writeString(intersection.getId());
+      writeShape(intersection.getShape());
+      writeSignedVarint(intersection.getGridPosition().getX());
+      writeSignedVarint(intersection.getGridPosition().getY());
+      writeSignedVarint(intersection.getAngle());
+      writeVarint(intersection.getLegList().size());
+      for (JsonIntersectionLeg leg : intersection.getLegList())
+      {
+        writeLeg(leg);
+      }
+      writeVarint(intersection.getSignalProgramList().size());
+      for (String programId : intersection.getSignalProgramList())
+      {
+        writeString(programId);
+      }
+    }
+
+    writeVarint(layout.getConnectionLegs().size());
+    for (JsonConnectionLeg connectionLeg : layout.getConnectionLegs())
+    {
+      writeString(connectionLeg.getId());
+      writeString(connectionLeg.getLeg1Id());
+      writeString(connectionLeg.getLeg2Id());
+      writeShape(connectionLeg.getShape());
+    }
+
+    writeVarint(layout.getConnectionPolygons().size());
+    for (JsonConnectionPolygon polygon : layout.getConnectionPolygons())
+    {
+      writeShape(polygon.getShape());
+    }
+
+    writeVehicles(layout.getAlreadyExistingVehicles());
+  }
+
+  /**
+   * Writes bytes as varint length and the bytes
+   * @param bytes bytes to write
+   * @throws IOException when writing fails
+   */
+  public void writeBytes(byte[] bytes) throws IOException
+  {
+    writeVarint(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Flushes the underlying stream
+   * @throws IOException when writing fails
+   */
+  public void flush() throws IOException
+  {
+    out.flush();
+  }
+
+  private void writeStep(JsonSimulationStep step) throws IOException
+  {
+    writeSignedVarint(step.getSimulationStep());
+
+    writeVarint(step.getVehicleState().size());
+    for (JsonVehicleState vehicle : step.getVehicleState())
+    {
+      writeRef(vehicleIds, vehicle.getId());
+      writeFixed(vehicle.getCoords().getX());
+      writeFixed(vehicle.getCoords().getY());
+      writeSignedVarint(vehicle.getAngle());
+      writeVarint(Long.parseLong(vehicle.getSignaling(), 2));
+      writeSignedVarint(vehicle.getSpeed());
+      writeSignedVarint(vehicle.getDistance());
+      writeFixed(vehicle.getWaitingTime());
+    }
+
+    List<String> lanes = new ArrayList<>(step.getTlState().size());
+    for (JsonTrafficLightState light : step.getTlState())
+    {
+      lanes.add(light.getLaneId());
+    }
+    writeVarint(lanes.size());
+    boolean sameLanes = lanes.equals(previousLanes);
+    out.writeBoolean(sameLanes);
+    if (!sameLanes)
+    {
+      for (String laneId : lanes)
+      {
+        writeRef(laneIds, laneId);
+      }
+      previousLanes = lanes;
+    }
+    byte[] states = new byte[lanes.size()];
+    for (int i = 0; i < states.length; i++)
+    {
+      states[i] = (byte) step.getTlState().get(i).getLaneState();
+    }
+    out.write(states);
+
+    writeVarint(step.getPhaseState().size());
+    for (JsonPhaseState phase : step.getPhaseState())
+    {
+      writeRef(programIds, phase.getProgramId());
+      writeSignedVarint(phase.getId());
+      writeSignedVarint(phase.getPhaseId());
+      writeSignedVarint(Math.round(phase.getNextSwitch() * 1000));
+    }
+
+    writeVehicles(step.getVehiclesToAdd());
+  }
+
+  private void writeVehicles(List<JsonVehicle> vehicles) throws IOException
+  {
+    writeVarint(vehicles.size());
+    for (JsonVehicle vehicle : vehicles)
+    {
+      writeRef(vehicleIds, vehicle.getId());
+      writeFixed(vehicle.getVehLength());
+      writeFixed(vehicle.getVehWidth());
+      int color = parseColor(vehicle.getHexColor());
+      out.writeByte(color >> 16);
+      out.writeByte(color >> 8);
+      out.writeByte(color);
+    }
+  }
+
+  private void writeLeg(JsonIntersectionLeg leg) throws IOException
+  {
+    writeString(leg.getId());
+    writeSignedVarint(leg.getAngle());
+    writeVarint(leg.getLaneList().size());
+    for (JsonLane lane : leg.getLaneList())
+    {
+      writeString(lane.getId());
+      int flags = (lane.isInputLane() ? 1 : 0)
+        | (lane.getDirections().isLeft() ? 2 : 0)
+        | (lane.getDirections().isRight() ? 4 : 0)
+        | (lane.getDirections().isStraight() ? 8 : 0);
+      out.writeByte(flags);
+      writeFixed(lane.getLaneLength());
+      writeShape(lane.getShape());
+    }
+  }
+
+  private void writeShape(JsonShape shape) throws IOException
+  {
+    writeVarint(shape.getCoords().size());
+    long previousX = 0;
+    long previousY = 0;
+    for (JsonCoordinates coordinates : shape.getCoords())
+    {
+      long x = toFixed(coordinates.getX());
+      long y = toFixed(coordinates.getY());
+      writeSignedVarint(x - previousX);
+      writeSignedVarint(y - previousY);
+      previousX = x;
+      previousY = y;
+    }
+  }
+
+  private void writeRef(Map<String, Integer> dictionary, String value) throws IOException
+  {
+    Integer index = dictionary.get(value);
+    if (index != null)
+    {
+      writeVarint(index);
+      return;
+    }
+
+    writeVarint(dictionary.size());
+    writeString(value);
+    dictionary.put(value, dictionary.size());
+  }
+
+  private void writeString(String value) throws IOException
+  {
+    if (value == null)
+    {
+      writeVarint(0);
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(bytes.length + 1L);
+    out.write(bytes);
+  }
+
+  private void writeFixed(double value) throws IOException
+  {
+    writeSignedVarint(toFixed(value));
+  }
+
+  private void writeSignedVarint(long value) throws IOException
+  {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  private void writeVarint(long value) throws IOException
+  {
+    while ((value & ~0x7FL) != 0)
+    {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long toFixed(double value)
+  {
+    return Math.round(value * BinaryFormat.FIXED_POINT_SCALE);
+  }
+
+  private static int parseColor(String hexColor)
+  {
+    if (hexColor == null || hexColor.length() != 7 || hexColor.charAt(0) != '#')
+    {
+      return 0;
+    }
+
+    try
+    {
+      return Integer.parseInt(hexColor.substring(1), 16);
+    }
+    catch (NumberFormatException e)
+    {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package trafficsimulator.simulator.output.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Simulation step encoded as a difference to the previous step sent to the same client.
+ * <p>
+ * Reconstruction on the client:
+ * <ul>
+ * <li>keyframe - the lists are complete, the client drops everything it knows and takes
+ * vehicleState, tlState and phaseState as they are; removedVehicles is empty</li>
+ * <li>delta frame - applied on the state after the previous frame:
+ * vehicles from vehicleState are replaced (or inserted) by id with all their values,
+ * vehicles from removedVehicles are removed,
+ * traffic light states are replaced by laneId and phase states by intersection id.
+ * Vehicles and lights which are not listed did not change</li>
+ * <li>vehiclesToAdd has the same meaning as in {@link JsonSimulationStep} in both cases</li>
+ * </ul>
+ * A vehicle is listed when its position (quantized), angle, speed or signaling changed,
+ * therefore its other values (distance, waiting time) may be older until the vehicle
+ * changes or the next keyframe comes. Every stream starts with a keyframe, the client
+ * which lost a frame has to wait for the next keyframe (or reconnect).
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonDeltaStep
+{
+  private final int simulationStep;
+  private final boolean keyframe;
+  private final List<JsonVehicleState> vehicleState;
+  private final List<String> removedVehicles;
+  private final List<JsonTrafficLightState> tlState;
+  private final List<JsonPhaseState> phaseState;
+  private final List<JsonVehicle> vehiclesToAdd;
+}
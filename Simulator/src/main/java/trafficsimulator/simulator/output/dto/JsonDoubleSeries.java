@@ -0,0 +1,97 @@
+package trafficsimulator.simulator.output.dto;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Read only view of a part of a primitive array, the array is not copied.
+ * Serialized as a plain json array.
+ * @author z003ru0y
+ *
+ */
+@JsonSerialize(using = JsonDoubleSeries.Serializer.class)
+public class JsonDoubleSeries implements JsonSeries
+{
+  private final double[] values;
+
+  private final int offset;
+
+  private final int length;
+
+  /**
+   * @param values backing array, it is not copied
+   * @param length number of the values in the view, from the beginning of the array
+   */
+  public JsonDoubleSeries(double[] values, int length)
+  {
+    this(values, 0, length);
+  }
+
+  /**
+   * @param values backing array, it is not copied
+   * @param offset index of the first value of the view
+   * @param length number of the values in the view
+   */
+  public JsonDoubleSeries(double[] values, int offset, int length)
+  {
+    this.values = values;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * @return number of the values
+   */
+  @Override
+  public int size()
+  {
+    return length;
+  }
+
+  /**
+   * @param index index of the value
+   * @return value
+   */
+  public double get(int index)
+  {
+    if (index >= length)
+    {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + length);
+    }
+    return values[offset + index];
+  }
+
+  /**
+   * @return copy of the values
+   */
+  public double[] toArray()
+  {
+    double[] copy = new double[length];
+    System.arraycopy(values, offset, copy, 0, length);
+    return copy;
+  }
+
+  /**
+   * Writes the values straight from the backing array
+   */
+  static class Serializer extends StdSerializer<JsonDoubleSeries>
+  {
+    private static final long serialVersionUID = 1L;
+
+    Serializer()
+    {
+      super(JsonDoubleSeries.class);
+    }
+
+    @Override
+    public void serialize(JsonDoubleSeries series, JsonGenerator generator, SerializerProvider provider)
+        throws IOException
+    {
+      generator.writeArray(series.values, series.offset, series.length);
+    }
+  }
+}
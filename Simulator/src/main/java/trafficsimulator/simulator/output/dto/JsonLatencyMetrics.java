@@ -0,0 +1,19 @@
+package trafficsimulator.simulator.output.dto;
+
+import lombok.Data;
+
+/**
+ * Durations of one kind of operation, times in ms
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonLatencyMetrics
+{
+  private final long count;
+  private final double totalTime;
+  private final double averageTime;
+  /** average weighted to the latest operations */
+  private final double recentAverageTime;
+  private final JsonPercentiles latency;
+}
@@ -0,0 +1,19 @@
+package trafficsimulator.simulator.output.dto;
+
+import lombok.Data;
+
+/**
+ * Percentiles of the values recorded in a histogram
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonPercentiles
+{
+  /** number of the recorded values */
+  private final long count;
+  private final double p50;
+  private final double p90;
+  private final double p99;
+  private final double max;
+}
@@ -0,0 +1,14 @@
+package trafficsimulator.simulator.output.dto;
+
+/**
+ * Series of numbers serialized as a plain json array
+ * @author z003ru0y
+ *
+ */
+public interface JsonSeries
+{
+  /**
+   * @return number of the values
+   */
+  int size();
+}
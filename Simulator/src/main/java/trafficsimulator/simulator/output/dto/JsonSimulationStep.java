@@ -2,6 +2,8 @@ package trafficsimulator.simulator.output.dto;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.Data;
 
 @Data
@@ -13,4 +15,8 @@ public class JsonSimulationStep
   private final List<JsonTrafficLightState> tlState;
   private final List<JsonPhaseState> phaseState;
   private final List<JsonVehicle> vehiclesToAdd;
+
+  /** durations of the stages of the step, only when the step timing is on */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private JsonStepTiming timing;
 }
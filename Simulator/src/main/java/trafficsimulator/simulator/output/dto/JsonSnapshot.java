@@ -0,0 +1,18 @@
+package trafficsimulator.simulator.output.dto;
+
+import lombok.Data;
+
+/**
+ * Snapshot of the simulation which can be restored
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonSnapshot
+{
+  private final String id;
+  /** previous snapshot of the same run (taken or restored), null for the first one */
+  private final String parentId;
+  /** simulation time of the snapshot (ms) */
+  private final int simulationTime;
+}
@@ -1,18 +1,16 @@
 package trafficsimulator.simulator.output.dto;
 
-import java.util.List;
+import java.util.Map;
 
 import lombok.Data;
 
 @Data
 public class JsonStatistics
 {
-  private final List<JsonVehicleStatistics> vehicles;
-  private final List<JsonStepStatistics> steps;
-  
   private final double simulationTime;
   private final double simulationStepLength;
   private final int totalVehiclesAdded;
+  private final int totalVehiclesArrived;
   
   private final double totalCO2;
   private final double totalCO;
@@ -23,17 +21,30 @@ public class JsonStatistics
   
   private final double averageVehicleTimeInSimulation;
   private final double averageVehicleWaitingTime;
+
+  /** of the vehicles which arrived at their destination */
+  private final JsonTrafficPercentiles tripPercentiles;
+  /** of the passages through the approaches, by edge id */
+  private final Map<String, JsonTrafficPercentiles> approachPercentiles;
   
   
   //Chart data
-  private final double[] simSteps;
+  /** time between the points (s), the step length when every step is present */
+  private final double resolution;
+  private final JsonDoubleSeries simSteps;
+  
+  /* values of the steps, averages of the steps when the points are aggregated */
+  private final JsonSeries vehiclesInTime;
+  private final JsonDoubleSeries COInTime;
+  private final JsonDoubleSeries CO2InTime;
+  private final JsonDoubleSeries NOxInTime;
+  private final JsonDoubleSeries PMxInTime;
+  private final JsonDoubleSeries HCInTime;
+  private final JsonDoubleSeries FuelInTime;
   
-  private final int[] vehiclesInTime;
-  private final double[] COInTime;
-  private final double[] CO2InTime;
-  private final double[] NOxInTime;
-  private final double[] PMxInTime;
-  private final double[] HCInTime;
-  private final double[] FuelInTime;
+  /* by metric name (CO2, CO, HC, PMx, NOx, fuel, vehicles), empty when every step is present */
+  private final Map<String, JsonDoubleSeries> minInTime;
+  private final Map<String, JsonDoubleSeries> maxInTime;
+  private final Map<String, JsonDoubleSeries> sumInTime;
 
 }
@@ -0,0 +1,22 @@
+package trafficsimulator.simulator.output.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Frames read from the continuous run buffer
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonStepFrames
+{
+  /** cursor to use for the next read */
+  private final long nextCursor;
+  /** frames which were overwritten before they were read */
+  private final long skippedFrames;
+  /** false when the continuous run has ended, no more frames will come */
+  private final boolean running;
+  private final List<JsonSimulationStep> steps;
+}
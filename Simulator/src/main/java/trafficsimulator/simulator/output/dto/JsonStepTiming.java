@@ -0,0 +1,26 @@
+package trafficsimulator.simulator.output.dto;
+
+import lombok.Data;
+
+/**
+ * Durations of the stages of one simulation step (ms)
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonStepTiming
+{
+  /** traffic actuation of the intersections */
+  private final double actuation;
+  /** generation of new vehicles */
+  private final double generation;
+  /** SUMO simulating the step */
+  private final double nextStep;
+  /** statistics of the vehicles which arrived */
+  private final double arrivals;
+  /** states and statistics of the vehicles */
+  private final double vehicles;
+  /** states of the traffic lights */
+  private final double trafficLights;
+  private final double total;
+}
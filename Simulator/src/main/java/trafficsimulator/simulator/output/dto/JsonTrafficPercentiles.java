@@ -0,0 +1,18 @@
+package trafficsimulator.simulator.output.dto;
+
+import lombok.Data;
+
+/**
+ * Percentiles of travel time, waiting time and number of stops
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonTrafficPercentiles
+{
+  /** time (s) */
+  private final JsonPercentiles travelTime;
+  /** time (s) */
+  private final JsonPercentiles waitingTime;
+  private final JsonPercentiles stops;
+}
@@ -0,0 +1,20 @@
+package trafficsimulator.simulator.output.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Part of the statistics of the vehicles, in the order the vehicles were added
+ * @author z003ru0y
+ *
+ */
+@Data
+public class JsonVehicleStatisticsPage
+{
+  /** index of the first vehicle of the page */
+  private final int offset;
+  /** number of the vehicles in the simulation */
+  private final int totalVehicles;
+  private final List<JsonVehicleStatistics> vehicles;
+}
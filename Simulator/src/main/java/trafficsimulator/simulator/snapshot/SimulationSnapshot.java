@@ -0,0 +1,55 @@
+package trafficsimulator.simulator.snapshot;
+
+import lombok.Getter;
+import trafficsimulator.simulator.statistics.TripLog;
+
+/**
+ * Saved state of the simulation. The snapshot is complete by itself and it is never
+ * changed, so any number of runs can be restored from it.
+ * @author z003ru0y
+ *
+ */
+@Getter
+public class SimulationSnapshot
+{
+  private final String id;
+
+  /** previous snapshot of the same run (taken or restored), null for the first one */
+  private final String parentId;
+
+  /** simulation time of the snapshot (ms) */
+  private final int simulationTime;
+
+  /** file with SUMO state */
+  private final String stateFile;
+
+  /** serialized statistics */
+  private final byte[] statistics;
+
+  /** serialized vehicle generation state */
+  private final byte[] vehicleGeneration;
+
+  /** end of the trip log when the snapshot was taken, null when the trips are not logged */
+  private final TripLog.Mark tripLogMark;
+
+  /**
+   * @param id snapshot id
+   * @param parentId previous snapshot of the same run (taken or restored), null for none
+   * @param simulationTime simulation time of the snapshot (ms)
+   * @param stateFile file with SUMO state
+   * @param statistics serialized statistics
+   * @param vehicleGeneration serialized vehicle generation state
+   * @param tripLogMark end of the trip log, null when the trips are not logged
+   */
+  public SimulationSnapshot(String id, String parentId, int simulationTime, String stateFile, byte[] statistics,
+      byte[] vehicleGeneration, TripLog.Mark tripLogMark)
+  {
+    this.id = id;
+    this.parentId = parentId;
+    this.simulationTime = simulationTime;
+    this.stateFile = stateFile;
+    this.statistics = statistics;
+    this.vehicleGeneration = vehicleGeneration;
+    this.tripLogMark = tripLogMark;
+  }
+}
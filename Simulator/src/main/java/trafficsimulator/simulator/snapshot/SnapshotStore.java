@@ -0,0 +1,197 @@
+package trafficsimulator.simulator.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import trafficsimulator.simulator.exceptions.SnapshotException;
+
+/**
+ * Local store of the snapshots of one simulation. The snapshots are never changed, restoring
+ * does not consume them, so many runs can be forked from one warmed up state. Every snapshot
+ * is complete by itself, the oldest ones are deleted when the store is full.
+ * @author z003ru0y
+ *
+ */
+public class SnapshotStore
+{
+  private static Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+  private static final String STATE_FILE_PREFIX = "state-";
+
+  /** SUMO compresses the state by the file extension */
+  private static final String STATE_FILE_SUFFIX = ".xml.gz";
+
+  private final String directory;
+
+  private final int maxSnapshots;
+
+  /** snapshots in the order they were taken */
+  private final Map<String, SimulationSnapshot> snapshots;
+
+  private int lastId;
+
+  /**
+   * @param directory directory for the SUMO state files, ends with separator
+   * @param maxSnapshots maximal number of kept snapshots
+   */
+  public SnapshotStore(String directory, int maxSnapshots)
+  {
+    this.directory = directory;
+    this.maxSnapshots = maxSnapshots;
+    this.snapshots = new LinkedHashMap<>();
+  }
+
+  /**
+   * @return id for a new snapshot
+   */
+  public synchronized String nextId()
+  {
+    return String.valueOf(++lastId);
+  }
+
+  /**
+   * @param id snapshot id
+   * @return file for the SUMO state of the snapshot
+   * @throws SnapshotException when the directory could not be created
+   */
+  public String getStateFile(String id) throws SnapshotException
+  {
+    try
+    {
+      Files.createDirectories(Paths.get(directory));
+    }
+    catch (IOException e)
+    {
+      throw new SnapshotException("Could not create snapshot directory: " + e.getMessage());
+    }
+    return new File(directory, STATE_FILE_PREFIX + id + STATE_FILE_SUFFIX).getPath();
+  }
+
+  /**
+   * Adds the snapshot, deletes the oldest one if the store is full
+   * @param snapshot snapshot with its state file already written
+   */
+  public void put(SimulationSnapshot snapshot)
+  {
+    List<SimulationSnapshot> evicted = new ArrayList<>();
+    synchronized (this)
+    {
+      snapshots.put(snapshot.getId(), snapshot);
+      Iterator<SimulationSnapshot> iterator = snapshots.values().iterator();
+      while (snapshots.size() > maxSnapshots)
+      {
+        evicted.add(iterator.next());
+        iterator.remove();
+      }
+    }
+
+    for (SimulationSnapshot old : evicted)
+    {
+      logger.debug("Snapshot {} removed, the store is full", old.getId());
+      deleteStateFile(old);
+    }
+  }
+
+  /**
+   * @param id snapshot id
+   * @return snapshot
+   * @throws SnapshotException when there is no such snapshot
+   */
+  public synchronized SimulationSnapshot get(String id) throws SnapshotException
+  {
+    SimulationSnapshot snapshot = snapshots.get(id);
+    if (snapshot == null)
+    {
+      throw new SnapshotException("Snapshot not found: " + id);
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return all the snapshots in the order they were taken
+   */
+  public synchronized List<SimulationSnapshot> getSnapshots()
+  {
+    return new ArrayList<>(snapshots.values());
+  }
+
+  /**
+   * Deletes all the snapshots
+   */
+  public void clear()
+  {
+    List<SimulationSnapshot> cleared;
+    synchronized (this)
+    {
+      cleared = new ArrayList<>(snapshots.values());
+      snapshots.clear();
+    }
+    cleared.forEach(this::deleteStateFile);
+  }
+
+  /**
+   * @param object object to store in the snapshot
+   * @return serialized object
+   * @throws SnapshotException when the object could not be serialized
+   */
+  public static byte[] serialize(Serializable object) throws SnapshotException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+    {
+      out.writeObject(object);
+    }
+    catch (IOException e)
+    {
+      throw new SnapshotException("Could not serialize " + object.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Every call returns new copy, so the stored bytes stay untouched
+   * @param bytes serialized object
+   * @param type class of the object
+   * @param <T> type of the object
+   * @return deserialized object
+   * @throws SnapshotException when the object could not be deserialized
+   */
+  public static <T> T deserialize(byte[] bytes, Class<T> type) throws SnapshotException
+  {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+    {
+      return type.cast(in.readObject());
+    }
+    catch (IOException | ClassNotFoundException | ClassCastException e)
+    {
+      throw new SnapshotException("Could not deserialize " + type.getSimpleName() + ": " + e.getMessage());
+    }
+  }
+
+  private void deleteStateFile(SimulationSnapshot snapshot)
+  {
+    try
+    {
+      Files.deleteIfExists(Paths.get(snapshot.getStateFile()));
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not delete state file of snapshot {}: {}", snapshot.getId(), e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package trafficsimulator.simulator.snapshot;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import lombok.Getter;
+
+/**
+ * State of the vehicle generation stored in the simulation snapshot
+ * @author z003ru0y
+ *
+ */
+@Getter
+public class VehicleGenerationState implements Serializable
+{
+  private static final long serialVersionUID = 2L;
+
+  /** every how many seconds is a vehicle generated */
+  private final int generateVehicleEveryXStep;
+
+  /** random generator picking routes and vehicle types */
+  private final Random random;
+
+  /** number of the next generated vehicle, part of its id */
+  private final long nextVehicleNumber;
+
+  /**
+   * @param generateVehicleEveryXStep generation rate
+   * @param random random generator picking routes and vehicle types
+   * @param nextVehicleNumber number of the next generated vehicle
+   */
+  public VehicleGenerationState(int generateVehicleEveryXStep, Random random, long nextVehicleNumber)
+  {
+    this.generateVehicleEveryXStep = generateVehicleEveryXStep;
+    this.random = random;
+    this.nextVehicleNumber = nextVehicleNumber;
+  }
+}
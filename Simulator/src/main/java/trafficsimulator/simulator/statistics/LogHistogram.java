@@ -0,0 +1,162 @@
+package trafficsimulator.simulator.statistics;
+
+import java.io.Serializable;
+
+import trafficsimulator.simulator.output.dto.JsonPercentiles;
+
+/**
+ * Histogram with logarithmic buckets in the manner of HDR histogram. Values are counted in
+ * units of fixed size, the units below {@link #SUB_BUCKETS} have bucket each, above them every
+ * power of two is split into {@link #SUB_BUCKETS} / 2 buckets, so the relative error of the
+ * percentiles stays under 1 / {@link #SUB_BUCKETS} whatever the value. The memory is fixed,
+ * independent of the number of recorded values, and the histograms of the same unit can be merged.
+ * @author z003ru0y
+ *
+ */
+public class LogHistogram implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /** number of buckets holding values of one power of two, times two */
+  public static final int SUB_BUCKETS = 32;
+
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+  /** bits of the position of the highest bit of the trackable values */
+  private static final int MAX_BIT = 30;
+
+  private static final int BUCKET_COUNT = (MAX_BIT - Integer.numberOfTrailingZeros(HALF_SUB_BUCKETS))
+    * HALF_SUB_BUCKETS + SUB_BUCKETS;
+
+  /** values larger than this are counted as this */
+  private static final long MAX_VALUE = (1L << (MAX_BIT + 1)) - 1;
+
+  /** size of the unit in which the values are counted */
+  private final double unit;
+
+  private final long[] counts;
+
+  private long totalCount;
+
+  private double max;
+
+  /**
+   * @param unit size of the unit in which the values are counted, the values smaller than
+   * the unit are not distinguished
+   */
+  public LogHistogram(double unit)
+  {
+    this.unit = unit;
+    this.counts = new long[BUCKET_COUNT];
+  }
+
+  /**
+   * @param value value to record, negative values are recorded as 0
+   */
+  public void record(double value)
+  {
+    long units = Math.min(MAX_VALUE, Math.max(0, Math.round(value / unit)));
+    counts[indexOf(units)]++;
+    totalCount++;
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Adds all the values of the other histogram to this one
+   * @param other histogram with the same unit
+   */
+  public void merge(LogHistogram other)
+  {
+    if (other.unit != unit)
+    {
+      throw new IllegalArgumentException("Histograms with different units can not be merged");
+    }
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * @return number of recorded values
+   */
+  public long getCount()
+  {
+    return totalCount;
+  }
+
+  /**
+   * @return largest recorded value, 0 when there is none
+   */
+  public double getMax()
+  {
+    return max;
+  }
+
+  /**
+   * @param percentile percentile in range 0 - 100
+   * @return the value under which the percentile of the recorded values is, middle of its bucket,
+   * 0 when there are no values
+   */
+  public double getPercentile(double percentile)
+  {
+    if (totalCount == 0)
+    {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      seen += counts[i];
+      if (seen >= rank)
+      {
+        double middle = (lowestValueOf(i) + lowestValueOf(i + 1) - 1) / 2.0;
+        return Math.min(max, middle * unit);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @return p50, p90 and p99 of the recorded values
+   */
+  public JsonPercentiles generatePercentiles()
+  {
+    return new JsonPercentiles(totalCount, getPercentile(50), getPercentile(90), getPercentile(99), max);
+  }
+
+  /**
+   * @param units value in units
+   * @return index of the bucket of the value
+   */
+  static int indexOf(long units)
+  {
+    if (units < SUB_BUCKETS)
+    {
+      return (int) units;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(units);
+    // shift which leaves the value in the upper half of the sub buckets
+    int shift = highestBit - Integer.numberOfTrailingZeros(HALF_SUB_BUCKETS);
+    return shift * HALF_SUB_BUCKETS + (int) (units >> shift);
+  }
+
+  /**
+   * @param index index of the bucket
+   * @return lowest value in units which belongs to the bucket
+   */
+  static long lowestValueOf(int index)
+  {
+    if (index < SUB_BUCKETS)
+    {
+      return index;
+    }
+    int shift = index / HALF_SUB_BUCKETS - 1;
+    long mantissa = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return mantissa << shift;
+  }
+}
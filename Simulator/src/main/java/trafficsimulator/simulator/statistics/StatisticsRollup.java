@@ -0,0 +1,204 @@
+package trafficsimulator.simulator.statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/**
+ * Step statistics aggregated into buckets of fixed width of simulation time. Every bucket
+ * keeps minimum, maximum, sum and count of the steps of each metric, so the buckets can be
+ * merged into coarser ones when they are read.
+ * @author z003ru0y
+ *
+ */
+public class StatisticsRollup implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /** names of the metrics, in the order of the values added by {@link #add(double, double[])} */
+  public static final String[] METRICS = {"CO2", "CO", "HC", "PMx", "NOx", "fuel", "vehicles"};
+
+  /* indexes of the metrics */
+  public static final int CO2 = 0;
+  public static final int CO = 1;
+  public static final int HC = 2;
+  public static final int PMX = 3;
+  public static final int NOX = 4;
+  public static final int FUEL = 5;
+  public static final int VEHICLES = 6;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** bucket width (s) */
+  @Getter
+  private final double width;
+
+  /* [metric][bucket] */
+  private double[][] min;
+  private double[][] max;
+  private double[][] sum;
+
+  /** number of steps in the bucket */
+  private int[] counts;
+
+  /** index of the last bucket plus one */
+  private int size;
+
+  /**
+   * @param width bucket width (s)
+   */
+  public StatisticsRollup(double width)
+  {
+    this.width = width;
+    this.min = new double[METRICS.length][INITIAL_CAPACITY];
+    this.max = new double[METRICS.length][INITIAL_CAPACITY];
+    this.sum = new double[METRICS.length][INITIAL_CAPACITY];
+    this.counts = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Adds the finished step to its bucket
+   * @param simulationTime simulation time of the step (s)
+   * @param values values of the step, in the order of {@link #METRICS}
+   */
+  public void add(double simulationTime, double[] values)
+  {
+    int bucket = bucketOf(simulationTime);
+    if (bucket >= counts.length)
+    {
+      grow(bucket + 1);
+    }
+
+    for (int metric = 0; metric < METRICS.length; metric++)
+    {
+      double value = values[metric];
+      if (counts[bucket] == 0)
+      {
+        min[metric][bucket] = value;
+        max[metric][bucket] = value;
+      }
+      else
+      {
+        min[metric][bucket] = Math.min(min[metric][bucket], value);
+        max[metric][bucket] = Math.max(max[metric][bucket], value);
+      }
+      sum[metric][bucket] += value;
+    }
+    counts[bucket]++;
+    size = Math.max(size, bucket + 1);
+  }
+
+  /**
+   * @param simulationTime simulation time (s)
+   * @return index of the bucket containing the time
+   */
+  public int bucketOf(double simulationTime)
+  {
+    return Math.max(0, (int) Math.floor(simulationTime / width));
+  }
+
+  /**
+   * Reads the buckets in the time range, merging every factor of them into one.
+   * Empty buckets are left out.
+   * @param from start of the range (s)
+   * @param to end of the range (s)
+   * @param factor how many buckets to merge into one
+   * @return merged buckets
+   */
+  public Timeline read(double from, double to, int factor)
+  {
+    int first = bucketOf(from) / factor * factor;
+    int last = Math.min(size, bucketOf(to) + 1);
+    int capacity = Math.max(0, (last - first + factor - 1) / factor);
+    Timeline timeline = new Timeline(width * factor, capacity);
+
+    for (int start = first; start < last; start += factor)
+    {
+      int end = Math.min(last, start + factor);
+      timeline.addBucket(start * width, this, start, end);
+    }
+    return timeline;
+  }
+
+  private void grow(int minCapacity)
+  {
+    int capacity = Math.max(minCapacity, counts.length * 2);
+    for (int metric = 0; metric < METRICS.length; metric++)
+    {
+      min[metric] = Arrays.copyOf(min[metric], capacity);
+      max[metric] = Arrays.copyOf(max[metric], capacity);
+      sum[metric] = Arrays.copyOf(sum[metric], capacity);
+    }
+    counts = Arrays.copyOf(counts, capacity);
+  }
+
+  /**
+   * Buckets read from the rollup, arrays by metric in the order of {@link #METRICS}
+   */
+  @Getter
+  public static class Timeline
+  {
+    /** bucket width (s) */
+    private final double resolution;
+
+    /** start of the bucket (s) */
+    private final double[] time;
+
+    private final double[][] min;
+    private final double[][] max;
+    private final double[][] sum;
+    private final double[][] average;
+
+    /** number of the buckets */
+    private int length;
+
+    Timeline(double resolution, int capacity)
+    {
+      this.resolution = resolution;
+      this.time = new double[capacity];
+      this.min = new double[METRICS.length][capacity];
+      this.max = new double[METRICS.length][capacity];
+      this.sum = new double[METRICS.length][capacity];
+      this.average = new double[METRICS.length][capacity];
+    }
+
+    /**
+     * Merges the buckets of the rollup into one, if they are not empty
+     */
+    private void addBucket(double startTime, StatisticsRollup rollup, int from, int to)
+    {
+      int count = 0;
+      for (int bucket = from; bucket < to; bucket++)
+      {
+        count += rollup.counts[bucket];
+      }
+      if (count == 0)
+      {
+        return;
+      }
+
+      time[length] = startTime;
+      for (int metric = 0; metric < METRICS.length; metric++)
+      {
+        double bucketMin = Double.POSITIVE_INFINITY;
+        double bucketMax = Double.NEGATIVE_INFINITY;
+        double bucketSum = 0;
+        for (int bucket = from; bucket < to; bucket++)
+        {
+          if (rollup.counts[bucket] > 0)
+          {
+            bucketMin = Math.min(bucketMin, rollup.min[metric][bucket]);
+            bucketMax = Math.max(bucketMax, rollup.max[metric][bucket]);
+            bucketSum += rollup.sum[metric][bucket];
+          }
+        }
+        min[metric][length] = bucketMin;
+        max[metric][length] = bucketMax;
+        sum[metric][length] = bucketSum;
+        average[metric][length] = bucketSum / count;
+      }
+      length++;
+    }
+  }
+}
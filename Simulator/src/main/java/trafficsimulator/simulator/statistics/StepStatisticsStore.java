@@ -0,0 +1,161 @@
+package trafficsimulator.simulator.statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import trafficsimulator.simulator.output.dto.JsonDoubleSeries;
+import trafficsimulator.simulator.output.dto.JsonIntSeries;
+import trafficsimulator.simulator.statistics.dto.VehicleChangeset;
+
+/**
+ * Statistics of the simulation steps stored by columns, one primitive array per metric.
+ * The arrays grow by doubling, the views handed out keep the arrays they were created with,
+ * so the steps present at the time of their creation are never copied nor changed, except
+ * the last step, which is being filled.
+ * @author z003ru0y
+ *
+ */
+public class StepStatisticsStore implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /** simulation time of the step (s) */
+  public static final int SIMULATION_TIME = 0;
+  public static final int CO2 = 1;
+  public static final int CO = 2;
+  public static final int HC = 3;
+  public static final int PMX = 4;
+  public static final int NOX = 5;
+  public static final int FUEL = 6;
+
+  private static final int COLUMN_COUNT = 7;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private double[][] columns;
+
+  /** vehicles present in simulation at the step */
+  private int[] vehicleCounts;
+
+  private int size;
+
+  /**
+   * creates empty store
+   */
+  public StepStatisticsStore()
+  {
+    columns = new double[COLUMN_COUNT][INITIAL_CAPACITY];
+    vehicleCounts = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Starts new step, the following updates are added to it
+   * @param simulationTime simulation time of the step (s)
+   */
+  public void addStep(double simulationTime)
+  {
+    if (size == vehicleCounts.length)
+    {
+      grow();
+    }
+    columns[SIMULATION_TIME][size] = simulationTime;
+    size++;
+  }
+
+  /**
+   * Adds the vehicle values to the last step
+   * @param changes changeset of vehicle
+   */
+  public void update(VehicleChangeset changes)
+  {
+    int step = size - 1;
+    columns[CO2][step] += changes.getVehicleCO2();
+    columns[CO][step] += changes.getVehicleCO();
+    columns[HC][step] += changes.getVehicleHC();
+    columns[PMX][step] += changes.getVehiclePMx();
+    columns[NOX][step] += changes.getVehicleNOx();
+    columns[FUEL][step] += changes.getVehicleFuelConsumption();
+    vehicleCounts[step]++;
+  }
+
+  /**
+   * @return number of the steps
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * @param column one of the column constants
+   * @param step index of the step
+   * @return value of the step
+   */
+  public double get(int column, int step)
+  {
+    return columns[column][step];
+  }
+
+  /**
+   * @param step index of the step
+   * @return vehicles present in simulation at the step
+   */
+  public int getVehicleCount(int step)
+  {
+    return vehicleCounts[step];
+  }
+
+  /**
+   * @param simulationTime simulation time (s)
+   * @return index of the first step at or after the time, size if there is none
+   */
+  public int indexOf(double simulationTime)
+  {
+    int low = 0;
+    int high = size;
+    while (low < high)
+    {
+      int middle = (low + high) >>> 1;
+      if (columns[SIMULATION_TIME][middle] < simulationTime)
+      {
+        low = middle + 1;
+      }
+      else
+      {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param column one of the column constants
+   * @param from index of the first step
+   * @param to index after the last step
+   * @return view of the column
+   */
+  public JsonDoubleSeries getColumn(int column, int from, int to)
+  {
+    return new JsonDoubleSeries(columns[column], from, to - from);
+  }
+
+  /**
+   * @param from index of the first step
+   * @param to index after the last step
+   * @return view of the vehicle counts
+   */
+  public JsonIntSeries getVehicleCounts(int from, int to)
+  {
+    return new JsonIntSeries(vehicleCounts, from, to - from);
+  }
+
+  private void grow()
+  {
+    int capacity = vehicleCounts.length * 2;
+    for (int i = 0; i < COLUMN_COUNT; i++)
+    {
+      columns[i] = Arrays.copyOf(columns[i], capacity);
+    }
+    vehicleCounts = Arrays.copyOf(vehicleCounts, capacity);
+  }
+}
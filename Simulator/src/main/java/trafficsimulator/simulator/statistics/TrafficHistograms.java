@@ -0,0 +1,65 @@
+package trafficsimulator.simulator.statistics;
+
+import java.io.Serializable;
+
+import trafficsimulator.simulator.output.dto.JsonTrafficPercentiles;
+
+/**
+ * Histograms of travel time, waiting time and number of stops, of whole trips or of passages
+ * through one approach of an intersection
+ * @author z003ru0y
+ *
+ */
+public class TrafficHistograms implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /** resolution of the times (s) */
+  private static final double TIME_UNIT = 0.1;
+
+  private final LogHistogram travelTime;
+  private final LogHistogram waitingTime;
+  private final LogHistogram stops;
+
+  /**
+   * creates empty histograms
+   */
+  public TrafficHistograms()
+  {
+    this.travelTime = new LogHistogram(TIME_UNIT);
+    this.waitingTime = new LogHistogram(TIME_UNIT);
+    this.stops = new LogHistogram(1);
+  }
+
+  /**
+   * @param travelTime travel time (s)
+   * @param waitingTime waiting time (s)
+   * @param stops number of stops
+   */
+  public void record(double travelTime, double waitingTime, int stops)
+  {
+    this.travelTime.record(travelTime);
+    this.waitingTime.record(waitingTime);
+    this.stops.record(stops);
+  }
+
+  /**
+   * Adds all the values of the other histograms to these
+   * @param other histograms to add
+   */
+  public void merge(TrafficHistograms other)
+  {
+    travelTime.merge(other.travelTime);
+    waitingTime.merge(other.waitingTime);
+    stops.merge(other.stops);
+  }
+
+  /**
+   * @return percentiles of the histograms
+   */
+  public JsonTrafficPercentiles generatePercentiles()
+  {
+    return new JsonTrafficPercentiles(travelTime.generatePercentiles(),
+      waitingTime.generatePercentiles(), stops.generatePercentiles());
+  }
+}
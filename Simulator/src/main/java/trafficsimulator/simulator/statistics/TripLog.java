@@ -0,0 +1,199 @@
+package trafficsimulator.simulator.statistics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Data;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatistics;
+
+/**
+ * File with one CSV line for every vehicle which arrived at its destination, so the statistics of
+ * the vehicles do not have to be kept in memory. When the file can not be written, the log is
+ * turned off and the simulation goes on. When a snapshot is restored, the log is cut back to the
+ * position marked with the snapshot, so it holds the trips of the current run only.
+ * @author z003ru0y
+ *
+ */
+public class TripLog
+{
+  private static Logger logger = LoggerFactory.getLogger(TripLog.class);
+
+  private static final String HEADER = "id,arrivalTime,timeInSimulation,CO2,CO,HC,PMx,NOx,fuel,waitingTime";
+
+  private final Path file;
+
+  private BufferedWriter writer;
+
+  private boolean failed;
+
+  /** positions the log was cut back to, in the order of the cuts */
+  private final List<Long> cuts = new ArrayList<>();
+
+  /**
+   * @param file file to append the trips to, created with its directory when it does not exist
+   */
+  public TripLog(String file)
+  {
+    this.file = Paths.get(file);
+  }
+
+  /**
+   * @param trip statistics of the vehicle
+   * @param arrivalTime simulation time of the arrival (s)
+   */
+  public void append(JsonVehicleStatistics trip, double arrivalTime)
+  {
+    if (failed)
+    {
+      return;
+    }
+
+    try
+    {
+      if (writer == null)
+      {
+        open();
+      }
+      writer.write(trip.getId() + ',' + arrivalTime + ',' + trip.getTimeInSimulation() + ','
+        + trip.getVehicleTotalCO2() + ',' + trip.getVehicleTotalCO() + ',' + trip.getVehicleTotalHC() + ','
+        + trip.getVehicleTotalPMx() + ',' + trip.getVehicleTotalNOx() + ','
+        + trip.getVehicleTotalFuelConsumption() + ',' + trip.getVehicleWaitingTime());
+      writer.newLine();
+    }
+    catch (IOException e)
+    {
+      logger.error("Could not write trip log {}, the trips are not logged any more: {}", file, e.getMessage());
+      failed = true;
+      close();
+    }
+  }
+
+  /**
+   * @return current end of the log, to cut the log back to it later; null when the log is turned off
+   */
+  public Mark mark()
+  {
+    if (failed)
+    {
+      return null;
+    }
+
+    try
+    {
+      if (writer != null)
+      {
+        writer.flush();
+      }
+      return new Mark(Files.exists(file) ? Files.size(file) : 0, cuts.size());
+    }
+    catch (IOException e)
+    {
+      logger.error("Could not write trip log {}, the trips are not logged any more: {}", file, e.getMessage());
+      failed = true;
+      close();
+      return null;
+    }
+  }
+
+  /**
+   * Removes the trips written after the mark. When the log was cut before the mark since the
+   * mark was taken, the trips of the marked run are lost after the lowest cut, the log is cut there.
+   * @param mark mark returned by {@link #mark()}, null to leave the log as it is
+   */
+  public void cutBack(Mark mark)
+  {
+    if (failed || mark == null)
+    {
+      return;
+    }
+
+    long position = mark.getPosition();
+    for (long cut : cuts.subList(mark.getCuts(), cuts.size()))
+    {
+      position = Math.min(position, cut);
+    }
+    if (position < mark.getPosition())
+    {
+      logger.warn("Trips of the restored run after {} bytes of trip log {} were cut away before", position, file);
+    }
+
+    close();
+    if (!Files.exists(file))
+    {
+      cuts.add(position);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+    {
+      channel.truncate(position);
+      cuts.add(position);
+      logger.debug("Trip log {} cut back to {} bytes", file, position);
+    }
+    catch (IOException e)
+    {
+      logger.error("Could not cut trip log {}, the trips are not logged any more: {}", file, e.getMessage());
+      failed = true;
+    }
+  }
+
+  /**
+   * Writes the buffered trips to the file and closes it, the next trip opens it again
+   */
+  public void close()
+  {
+    if (writer == null)
+    {
+      return;
+    }
+
+    try
+    {
+      writer.close();
+    }
+    catch (IOException e)
+    {
+      logger.error("Could not close trip log {}: {}", file, e.getMessage());
+    }
+    writer = null;
+  }
+
+  private void open() throws IOException
+  {
+    if (file.getParent() != null)
+    {
+      Files.createDirectories(file.getParent());
+    }
+    boolean created = !Files.exists(file) || Files.size(file) == 0;
+    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    if (created)
+    {
+      writer.write(HEADER);
+      writer.newLine();
+    }
+    logger.debug("Trip log {} opened", file);
+  }
+
+  /**
+   * Position in the log, for cutting the log back
+   */
+  @Data
+  public static class Mark
+  {
+    /** size of the log (bytes) */
+    private final long position;
+
+    /** number of the cuts of the log made before the mark */
+    private final int cuts;
+  }
+}
@@ -18,4 +18,6 @@ public class VehicleChangeset
   private final Double vehicleNOx;
   private final Double vehicleFuelConsumption;  
   private final Double waitingTime;
+  /** edge or internal junction lane the vehicle is on */
+  private final String roadId;
 }
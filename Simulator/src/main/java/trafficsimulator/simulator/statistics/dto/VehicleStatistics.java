@@ -1,14 +1,23 @@
 package trafficsimulator.simulator.statistics.dto;
 
+import java.io.Serializable;
+import java.util.Map;
+
 import trafficsimulator.simulator.output.dto.JsonVehicleStatistics;
+import trafficsimulator.simulator.statistics.TrafficHistograms;
 
 /**
  * Data object holding data about specific vehicle for whole duration of simulation
  * @author Petr Svana
  *
  */
-public class VehicleStatistics
+public class VehicleStatistics implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+
+  /** edges inside the junctions, the vehicle crossing the junction still belongs to its approach */
+  private static final String INTERNAL_EDGE_PREFIX = ":";
+
   private String vehicleId;
 
   /* total footprint of a vehicle */
@@ -25,12 +34,28 @@ public class VehicleStatistics
   /** total steps in which was vehicle present in simulation */
   private Double stepsInSimulation;
 
+  /** simulation time when the vehicle was added (s) */
+  private final double addedTime;
+
+  /** time the vehicle was stopped (s) and number of the stops */
+  private double stoppedTime;
+  private int stops;
+  private boolean stopped;
+
+  /* the edge the vehicle is on and what happened since it entered it */
+  private String approach;
+  private double approachEnterTime;
+  private double approachStoppedTime;
+  private int approachStops;
+
   /**
    * @param id id of the vehicle
+   * @param addedTime simulation time when the vehicle was added (s)
    */
-  public VehicleStatistics(String id)
+  public VehicleStatistics(String id, double addedTime)
   {
     this.vehicleId = id;    
+    this.addedTime = addedTime;
     vehicleTotalCO2 = 0.0;
     vehicleTotalCO = 0.0;
     vehicleTotalHC = 0.0;
@@ -44,9 +69,37 @@ public class VehicleStatistics
 
   /**
    * @param changes changeset of the vehicle
+   * @param simulationTime simulation time at the end of the step (s)
+   * @param stepLength simulation step length (s)
+   * @param approaches histograms by approach, the passage is recorded when the vehicle leaves the approach
    */
-  public void update(VehicleChangeset changes)
+  public void update(VehicleChangeset changes, double simulationTime, double stepLength,
+      Map<String, TrafficHistograms> approaches)
   {
+    String roadId = changes.getRoadId();
+    if (roadId != null && !roadId.isEmpty() && !roadId.startsWith(INTERNAL_EDGE_PREFIX) && !roadId.equals(approach))
+    {
+      leaveApproach(simulationTime - stepLength, approaches);
+      approach = roadId;
+      approachEnterTime = simulationTime - stepLength;
+      approachStoppedTime = 0;
+      approachStops = 0;
+    }
+
+    boolean stoppedNow = changes.getWaitingTime() > 0;
+    if (stoppedNow)
+    {
+      if (!stopped)
+      {
+        stops++;
+        approachStops++;
+      }
+      stoppedTime += stepLength;
+      approachStoppedTime += stepLength;
+    }
+    stopped = stoppedNow;
+
+
     vehicleTotalCO2 += changes.getVehicleCO2();
     vehicleTotalCO += changes.getVehicleCO();
     vehicleTotalHC += changes.getVehicleHC();
@@ -57,6 +110,28 @@ public class VehicleStatistics
     stepsInSimulation++;
   }
 
+  /**
+   * Records the trip of the vehicle which arrived at its destination
+   * @param arrivalTime simulation time of the arrival (s)
+   * @param trips histograms of the trips
+   * @param approaches histograms by approach
+   */
+  public void finish(double arrivalTime, TrafficHistograms trips, Map<String, TrafficHistograms> approaches)
+  {
+    leaveApproach(arrivalTime, approaches);
+    trips.record(arrivalTime - addedTime, stoppedTime, stops);
+  }
+
+  private void leaveApproach(double leaveTime, Map<String, TrafficHistograms> approaches)
+  {
+    if (approach != null)
+    {
+      approaches.computeIfAbsent(approach, key -> new TrafficHistograms())
+        .record(leaveTime - approachEnterTime, approachStoppedTime, approachStops);
+      approach = null;
+    }
+  }
+
   /**
    * @return json data object of vehicle data per simulation
    */
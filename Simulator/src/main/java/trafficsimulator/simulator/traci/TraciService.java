@@ -31,7 +31,8 @@ public interface TraciService
   void stopSimulation();
   
   /**
-   * Performs next step of the simulation
+   * Performs next step of the simulation,
+   * set commands queued during the current step are sent right before it
    * @throws TraciException when traci call fails
    */
   public void nextStep() throws TraciException;
@@ -42,6 +43,21 @@ public interface TraciService
    * @throws TraciException when traci call fails
    */
   public int getSimulationTime() throws TraciException;
+
+  /**
+   * Saves the complete state of the simulation (vehicles, traffic lights, time) to the file
+   * @param stateFile file to save the state to, compressed when it ends with .gz
+   * @throws TraciException when traci call fails
+   */
+  public void saveState(String stateFile) throws TraciException;
+
+  /**
+   * Replaces the state of the simulation by the state saved by {@link #saveState(String)},
+   * the simulation has to run the same network
+   * @param stateFile file with the saved state
+   * @throws TraciException when traci call fails
+   */
+  public void loadState(String stateFile) throws TraciException;
     
   /**
    * Gets current number of vehicles in network plus the
@@ -94,6 +110,13 @@ public interface TraciService
    * @throws TraciException when traci call fails
    */
   public List<String> getVehicleIds() throws TraciException;
+
+  /**
+   * Retrieves list of id for every vehicle which arrived at its destination in the last step
+   * @return list with vehicle id
+   * @throws TraciException when traci call fails
+   */
+  public List<String> getArrivedVehicleIds() throws TraciException;
     
   /**
    * Performs check of the detector if vehicle was present on it in previous step
@@ -104,6 +127,24 @@ public interface TraciService
    */
   public boolean detectorIsOccupied(String detectorId, int laneId) throws TraciException;
 
+  /**
+   * Registers the detector, so its occupancy is delivered together with every step
+   * (when the subscriptions are enabled)
+   * @param detectorId detector to register
+   * @param laneId lane where is the detector
+   * @return slot of the detector for {@link #detectorIsOccupied(int)}
+   * @throws TraciException when traci call fails
+   */
+  public int registerDetector(String detectorId, int laneId) throws TraciException;
+
+  /**
+   * Performs check of the registered detector if vehicle was present on it in previous step
+   * @param detectorSlot slot returned by {@link #registerDetector(String, int)}
+   * @return true if the detector is occupied; false otherwise
+   * @throws TraciException when traci call fails
+   */
+  public boolean detectorIsOccupied(int detectorSlot) throws TraciException;
+
   /**
    * Gets id of the current phase on intersection
    * @param intersectionId id of the intersection
@@ -137,6 +178,16 @@ public interface TraciService
    */
   public PhaseInfo getCurrentIntersectionPhaseInfo(int intersectionId, String signalProgramId) throws TraciException;
 
+  /**
+   * Gets definition of all the phases of the signal program, ordered by the phase index.
+   * The definition does not change during the simulation.
+   * @param intersectionId id of the intersection
+   * @param signalProgramId id of the signal program
+   * @return phases of the program
+   * @throws TraciException when traci call fails
+   */
+  public List<PhaseInfo> getSignalProgramPhases(int intersectionId, String signalProgramId) throws TraciException;
+
   /**
    * Updates the duration of the current phase
    * @param intersectionId id of the intersection
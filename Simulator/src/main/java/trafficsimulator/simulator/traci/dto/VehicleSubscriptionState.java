@@ -0,0 +1,173 @@
+package trafficsimulator.simulator.traci.dto;
+
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.ws.container.SumoObject;
+import de.tudresden.ws.container.SumoPosition2D;
+import de.tudresden.ws.container.SumoPrimitive;
+import lombok.Getter;
+
+/**
+ * Holds the latest subscribed values of one vehicle as they were delivered by SUMO
+ * together with the simulation step
+ * @author z003ru0y
+ *
+ */
+public class VehicleSubscriptionState
+{
+  /** variables every vehicle is subscribed to after its insertion */
+  public static final int[] SUBSCRIBED_VARIABLES =
+  {
+    Constants.VAR_POSITION,
+    Constants.VAR_ANGLE,
+    Constants.VAR_SIGNALS,
+    Constants.VAR_SPEED,
+    Constants.VAR_DISTANCE,
+    Constants.VAR_WAITING_TIME,
+    Constants.VAR_ROAD_ID,
+    Constants.VAR_CO2EMISSION,
+    Constants.VAR_COEMISSION,
+    Constants.VAR_HCEMISSION,
+    Constants.VAR_PMXEMISSION,
+    Constants.VAR_NOXEMISSION,
+    Constants.VAR_FUELCONSUMPTION
+  };
+
+  @Getter
+  private final String id;
+
+  /** step in which the values were received, -1 if never */
+  @Getter
+  private long lastUpdateStep;
+
+  /** number of variables received in the last update step */
+  private int receivedCount;
+
+  @Getter
+  private double x;
+  @Getter
+  private double y;
+  @Getter
+  private double angle;
+  @Getter
+  private int signals;
+  @Getter
+  private double speed;
+  @Getter
+  private double distance;
+  @Getter
+  private double waitingTime;
+  @Getter
+  private String roadId;
+  @Getter
+  private double CO2;
+  @Getter
+  private double CO;
+  @Getter
+  private double HC;
+  @Getter
+  private double PMx;
+  @Getter
+  private double NOx;
+  @Getter
+  private double fuel;
+
+  /**
+   * @param id id of the vehicle
+   */
+  public VehicleSubscriptionState(String id)
+  {
+    this.id = id;
+    this.lastUpdateStep = -1;
+  }
+
+  /**
+   * Stores one subscribed value
+   * @param step current subscription step
+   * @param variable traci variable id
+   * @param value value as received from SUMO
+   */
+  public void update(long step, int variable, SumoObject value)
+  {
+    if (step != lastUpdateStep)
+    {
+      lastUpdateStep = step;
+      receivedCount = 0;
+    }
+
+    if (variable == Constants.VAR_POSITION && value instanceof SumoPosition2D)
+    {
+      x = ((SumoPosition2D) value).x;
+      y = ((SumoPosition2D) value).y;
+      receivedCount++;
+      return;
+    }
+
+    if (!(value instanceof SumoPrimitive))
+    {
+      return;
+    }
+
+    Object primitive = ((SumoPrimitive) value).val;
+
+    if (variable == Constants.VAR_ROAD_ID)
+    {
+      roadId = String.valueOf(primitive);
+      receivedCount++;
+      return;
+    }
+
+    if (variable == Constants.VAR_SIGNALS)
+    {
+      signals = ((Number) primitive).intValue();
+      receivedCount++;
+      return;
+    }
+
+    double number = ((Number) primitive).doubleValue();
+    switch (variable)
+    {
+      case Constants.VAR_ANGLE:
+        angle = number;
+        break;
+      case Constants.VAR_SPEED:
+        speed = number;
+        break;
+      case Constants.VAR_DISTANCE:
+        distance = number;
+        break;
+      case Constants.VAR_WAITING_TIME:
+        waitingTime = number;
+        break;
+      case Constants.VAR_CO2EMISSION:
+        CO2 = number;
+        break;
+      case Constants.VAR_COEMISSION:
+        CO = number;
+        break;
+      case Constants.VAR_HCEMISSION:
+        HC = number;
+        break;
+      case Constants.VAR_PMXEMISSION:
+        PMx = number;
+        break;
+      case Constants.VAR_NOXEMISSION:
+        NOx = number;
+        break;
+      case Constants.VAR_FUELCONSUMPTION:
+        fuel = number;
+        break;
+      default:
+        return;
+    }
+    receivedCount++;
+  }
+
+  /**
+   * @param step current subscription step
+   * @return true if all the subscribed values were received in the given step
+   */
+  public boolean isComplete(long step)
+  {
+    return lastUpdateStep == step && receivedCount >= SUBSCRIBED_VARIABLES.length;
+  }
+}
@@ -0,0 +1,133 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.ws.container.SumoPrimitive;
+
+/**
+ * Occupancy of the induction loops as received by variable subscriptions together
+ * with the simulation step. Every registered loop has its slot, the occupancy of the slot
+ * is kept as one bit, so reading it does not allocate anything.
+ * @author z003ru0y
+ *
+ */
+public class DetectorOccupancyObserver implements Observer
+{
+  private final Map<String, Integer> slots;
+
+  private final List<String> loopIds;
+
+  /** loops with at least one vehicle in the last step */
+  private long[] occupied;
+
+  /** loops which received the value in the last step */
+  private long[] received;
+
+  /**
+   * creates observer without any loop
+   */
+  public DetectorOccupancyObserver()
+  {
+    this.slots = new HashMap<>();
+    this.loopIds = new ArrayList<>();
+    this.occupied = new long[1];
+    this.received = new long[1];
+  }
+
+  /**
+   * @param loopId induction loop id
+   * @return slot of the loop, the same one if the loop is already registered
+   */
+  public int register(String loopId)
+  {
+    Integer slot = slots.get(loopId);
+    if (slot != null)
+    {
+      return slot;
+    }
+
+    slot = loopIds.size();
+    loopIds.add(loopId);
+    slots.put(loopId, slot);
+    if ((slot >> 6) >= occupied.length)
+    {
+      occupied = Arrays.copyOf(occupied, occupied.length * 2);
+      received = Arrays.copyOf(received, received.length * 2);
+    }
+    return slot;
+  }
+
+  /**
+   * @param slot slot of the loop
+   * @return induction loop id
+   */
+  public String getLoopId(int slot)
+  {
+    return loopIds.get(slot);
+  }
+
+  /**
+   * Has to be called right before the simulation step is performed
+   */
+  public void beginStep()
+  {
+    Arrays.fill(occupied, 0L);
+    Arrays.fill(received, 0L);
+  }
+
+  /**
+   * @param slot slot of the loop
+   * @return true if the value of the loop was received in the last step
+   */
+  public boolean isReceived(int slot)
+  {
+    return (received[slot >> 6] & (1L << slot)) != 0;
+  }
+
+  /**
+   * @param slot slot of the loop
+   * @return true if there was a vehicle on the loop in the last step
+   */
+  public boolean isOccupied(int slot)
+  {
+    return (occupied[slot >> 6] & (1L << slot)) != 0;
+  }
+
+  @Override
+  public void update(Observable o, Object arg)
+  {
+    if (!(arg instanceof SubscriptionObject))
+    {
+      return;
+    }
+
+    SubscriptionObject result = (SubscriptionObject) arg;
+    if (result.response != ResponseType.INDUCTIONLOOP_VARIABLE
+      || result.variable != Constants.LAST_STEP_VEHICLE_NUMBER
+      || !(result.object instanceof SumoPrimitive))
+    {
+      return;
+    }
+
+    Integer slot = slots.get(result.id);
+    if (slot == null)
+    {
+      return;
+    }
+
+    received[slot >> 6] |= 1L << slot;
+    if (((Number) ((SumoPrimitive) result.object).val).intValue() > 0)
+    {
+      occupied[slot >> 6] |= 1L << slot;
+    }
+  }
+}
@@ -0,0 +1,475 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.util.List;
+
+import trafficsimulator.simulator.exceptions.TraciException;
+import trafficsimulator.simulator.metrics.MetricsRegistry;
+import trafficsimulator.simulator.output.dto.JsonCoordinates;
+import trafficsimulator.simulator.output.dto.JsonShape;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+import trafficsimulator.simulator.statistics.dto.VehicleChangeset;
+import trafficsimulator.simulator.traci.TraciService;
+import trafficsimulator.simulator.traci.dto.PhaseInfo;
+import trafficsimulator.simulator.traci.dto.SumoVehicle;
+import trafficsimulator.simulator.traci.dto.VehicleInfo;
+
+/**
+ * Measures every call of the wrapped TraciService, the durations are recorded under the name
+ * of the method prefixed by {@link #METRIC_PREFIX}, failed calls included. The measurement costs two reads of the clock and
+ * a lock of the recorder of the calling thread, which the sessions do not share, so it can stay on in production.
+ * @author z003ru0y
+ *
+ */
+public class InstrumentedTraciService implements TraciService
+{
+  /** prefix of the names of the recorded operations */
+  public static final String METRIC_PREFIX = "traci.";
+
+  private final TraciService delegate;
+
+  private final MetricsRegistry metrics;
+
+  /**
+   * @param delegate measured service
+   * @param metrics where to record the durations
+   */
+  public InstrumentedTraciService(TraciService delegate, MetricsRegistry metrics)
+  {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void startSimulation() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.startSimulation();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "startSimulation", start);
+    }
+  }
+
+  @Override
+  public void stopSimulation()
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.stopSimulation();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "stopSimulation", start);
+    }
+  }
+
+  @Override
+  public void nextStep() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.nextStep();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "nextStep", start);
+    }
+  }
+
+  @Override
+  public int getSimulationTime() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getSimulationTime();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getSimulationTime", start);
+    }
+  }
+
+  @Override
+  public void saveState(String stateFile) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.saveState(stateFile);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "saveState", start);
+    }
+  }
+
+  @Override
+  public void loadState(String stateFile) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.loadState(stateFile);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "loadState", start);
+    }
+  }
+
+  @Override
+  public int getVehicleCount() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getVehicleCount();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getVehicleCount", start);
+    }
+  }
+
+  @Override
+  public void addVehicle(SumoVehicle vehicle) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.addVehicle(vehicle);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "addVehicle", start);
+    }
+  }
+
+  @Override
+  public JsonVehicleState getVehicleState(String vehId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getVehicleState(vehId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getVehicleState", start);
+    }
+  }
+
+  @Override
+  public VehicleChangeset getVehicleStatistics(String vehId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getVehicleStatistics(vehId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getVehicleStatistics", start);
+    }
+  }
+
+  @Override
+  public List<VehicleInfo> getAlreadyExistingVehicles() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getAlreadyExistingVehicles();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getAlreadyExistingVehicles", start);
+    }
+  }
+
+  @Override
+  public List<VehicleInfo> getNewVehicles() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getNewVehicles();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getNewVehicles", start);
+    }
+  }
+
+  @Override
+  public List<String> getVehicleIds() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getVehicleIds();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getVehicleIds", start);
+    }
+  }
+
+  @Override
+  public List<String> getArrivedVehicleIds() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getArrivedVehicleIds();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getArrivedVehicleIds", start);
+    }
+  }
+
+  @Override
+  public boolean detectorIsOccupied(String detectorId, int laneId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.detectorIsOccupied(detectorId, laneId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "detectorIsOccupied", start);
+    }
+  }
+
+  @Override
+  public int registerDetector(String detectorId, int laneId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.registerDetector(detectorId, laneId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "registerDetector", start);
+    }
+  }
+
+  @Override
+  public boolean detectorIsOccupied(int detectorSlot) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.detectorIsOccupied(detectorSlot);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "detectorIsOccupiedBySlot", start);
+    }
+  }
+
+  @Override
+  public int getTlsPhaseId(int intersectionId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getTlsPhaseId(intersectionId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getTlsPhaseId", start);
+    }
+  }
+
+  @Override
+  public String getTlsSignalProgramId(int intersectionId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getTlsSignalProgramId(intersectionId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getTlsSignalProgramId", start);
+    }
+  }
+
+  @Override
+  public List<String> getControledLanes(int intersectionId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getControledLanes(intersectionId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getControledLanes", start);
+    }
+  }
+
+  @Override
+  public PhaseInfo getCurrentIntersectionPhaseInfo(int intersectionId, String signalProgramId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getCurrentIntersectionPhaseInfo(intersectionId, signalProgramId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getCurrentIntersectionPhaseInfo", start);
+    }
+  }
+
+  @Override
+  public List<PhaseInfo> getSignalProgramPhases(int intersectionId, String signalProgramId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getSignalProgramPhases(intersectionId, signalProgramId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getSignalProgramPhases", start);
+    }
+  }
+
+  @Override
+  public void setCurrentPhaseDuration(int intersectionId, int newDuration) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.setCurrentPhaseDuration(intersectionId, newDuration);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "setCurrentPhaseDuration", start);
+    }
+  }
+
+  @Override
+  public String getTLStateString(String tlsId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getTLStateString(tlsId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getTLStateString", start);
+    }
+  }
+
+  @Override
+  public List<String> getIntersectionIds() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getIntersectionIds();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getIntersectionIds", start);
+    }
+  }
+
+  @Override
+  public int getNextSwitch(String tlsId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getNextSwitch(tlsId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getNextSwitch", start);
+    }
+  }
+
+  @Override
+  public void setSignalProgram(String tlsId, String programId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      delegate.setSignalProgram(tlsId, programId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "setSignalProgram", start);
+    }
+  }
+
+  @Override
+  public JsonShape getIntersectionShape(String tlsId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getIntersectionShape(tlsId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getIntersectionShape", start);
+    }
+  }
+
+  @Override
+  public JsonShape getLaneShape(String laneId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getLaneShape(laneId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getLaneShape", start);
+    }
+  }
+
+  @Override
+  public double getLaneLength(String laneId) throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getLaneLength(laneId);
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getLaneLength", start);
+    }
+  }
+
+  @Override
+  public JsonCoordinates getNetworkBoundary() throws TraciException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return delegate.getNetworkBoundary();
+    }
+    finally
+    {
+      metrics.record(METRIC_PREFIX + "getNetworkBoundary", start);
+    }
+  }
+}
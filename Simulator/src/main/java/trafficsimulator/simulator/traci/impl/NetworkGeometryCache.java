@@ -0,0 +1,155 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.Setter;
+import trafficsimulator.simulator.output.dto.JsonCoordinates;
+import trafficsimulator.simulator.output.dto.JsonShape;
+
+/**
+ * Values which do not change while the same network is simulated (shapes, lengths,
+ * lanes controlled by the traffic lights). They are kept per network file, so they are retrieved
+ * from SUMO only once even if the simulation is restarted with the same network.
+ * @author z003ru0y
+ *
+ */
+public class NetworkGeometryCache
+{
+  /** hash of the network file, null if the network file could not be read */
+  @Getter
+  private final String networkHash;
+
+  private final Map<String, JsonShape> laneShapes;
+
+  private final Map<String, Double> laneLengths;
+
+  private final Map<String, JsonShape> junctionShapes;
+
+  private final Map<String, List<String>> controlledLanes;
+
+  @Getter
+  @Setter
+  private JsonCoordinates networkBoundary;
+
+  /** true after the cache was filled in bulk */
+  @Getter
+  @Setter
+  private boolean filled;
+
+  /**
+   * @param networkHash hash of the network file
+   */
+  public NetworkGeometryCache(String networkHash)
+  {
+    this.networkHash = networkHash;
+    this.laneShapes = new ConcurrentHashMap<>();
+    this.laneLengths = new ConcurrentHashMap<>();
+    this.junctionShapes = new ConcurrentHashMap<>();
+    this.controlledLanes = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Map of caches which keeps only the recently used ones. It is not thread safe, the users
+   * synchronize on the map itself.
+   * @param size how many caches to keep
+   * @return empty map of caches by network hash
+   */
+  public static Map<String, NetworkGeometryCache> recentlyUsed(int size)
+  {
+    return new LinkedHashMap<String, NetworkGeometryCache>(size, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, NetworkGeometryCache> eldest)
+      {
+        return size() > size;
+      }
+    };
+  }
+
+  /**
+   * @param networkFile SUMO network file
+   * @return SHA-256 of the file content as hex string
+   * @throws IOException when the file can not be read
+   */
+  public static String hashNetworkFile(Path networkFile) throws IOException
+  {
+    MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IOException("SHA-256 is not available", e);
+    }
+
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(networkFile))
+    {
+      int read;
+      while ((read = in.read(buffer)) > 0)
+      {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    StringBuilder hash = new StringBuilder();
+    for (byte b : digest.digest())
+    {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+
+  public JsonShape getLaneShape(String laneId)
+  {
+    return laneShapes.get(laneId);
+  }
+
+  public void putLaneShape(String laneId, JsonShape shape)
+  {
+    laneShapes.put(laneId, shape);
+  }
+
+  public Double getLaneLength(String laneId)
+  {
+    return laneLengths.get(laneId);
+  }
+
+  public void putLaneLength(String laneId, double length)
+  {
+    laneLengths.put(laneId, length);
+  }
+
+  public JsonShape getJunctionShape(String junctionId)
+  {
+    return junctionShapes.get(junctionId);
+  }
+
+  public void putJunctionShape(String junctionId, JsonShape shape)
+  {
+    junctionShapes.put(junctionId, shape);
+  }
+
+  public List<String> getControlledLanes(String tlsId)
+  {
+    return controlledLanes.get(tlsId);
+  }
+
+  public void putControlledLanes(String tlsId, List<String> lanes)
+  {
+    controlledLanes.put(tlsId, lanes);
+  }
+}
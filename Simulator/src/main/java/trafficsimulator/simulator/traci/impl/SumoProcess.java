@@ -0,0 +1,128 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Getter;
+import it.polito.appeal.traci.SumoTraciConnection;
+import trafficsimulator.simulator.exceptions.TraciException;
+
+/**
+ * SUMO process of the pool together with its TraCI connection. The process is reused
+ * for more simulations, every simulation is loaded into it by the TraCI load command.
+ * TraaS can not remove observers from the connection, so the process is the only observer
+ * and forwards the subscription results to the observers of the current simulation.
+ * @author z003ru0y
+ *
+ */
+public class SumoProcess implements Observer
+{
+  private static Logger logger = LoggerFactory.getLogger(SumoProcess.class);
+
+  /** how long to wait for SUMO to quit after the connection is closed (ms) */
+  private static final long EXIT_TIMEOUT = 5000;
+
+  private final Process process;
+
+  @Getter
+  private final SumoTraciConnection connection;
+
+  @Getter
+  private final int port;
+
+  /** slot of the port in the pool */
+  final int portSlot;
+
+  private final TraciCommandPipeline pipeline;
+
+  private volatile Observer[] observers;
+
+  /** when the process was returned to the pool */
+  @Getter
+  private long idleSince;
+
+  /**
+   * @param process running SUMO
+   * @param connection connection to the process
+   * @param port port on which the process listens
+   * @param portSlot slot of the port in the pool
+   */
+  SumoProcess(Process process, SumoTraciConnection connection, int port, int portSlot)
+  {
+    this.process = process;
+    this.connection = connection;
+    this.port = port;
+    this.portSlot = portSlot;
+    this.pipeline = new TraciCommandPipeline(connection);
+    this.observers = new Observer[0];
+    connection.addObserver(this);
+  }
+
+  /**
+   * Replaces the simulation of the process
+   * @param options SUMO command line options of the new simulation
+   * @throws TraciException when the simulation could not be loaded
+   */
+  void load(List<String> options) throws TraciException
+  {
+    observers = new Observer[0];
+    pipeline.load(options);
+  }
+
+  /**
+   * @param simulationObservers observers of the subscription results of the current simulation
+   */
+  public void setObservers(Observer... simulationObservers)
+  {
+    observers = simulationObservers.clone();
+  }
+
+  void markIdle()
+  {
+    observers = new Observer[0];
+    idleSince = System.currentTimeMillis();
+  }
+
+  /**
+   * @return true if the process runs and the connection is open
+   */
+  boolean isAlive()
+  {
+    return process.isAlive() && !connection.isClosed();
+  }
+
+  /**
+   * Closes the connection and waits for SUMO to quit, kills it if it does not
+   */
+  void close()
+  {
+    connection.close();
+    try
+    {
+      if (!process.waitFor(EXIT_TIMEOUT, TimeUnit.MILLISECONDS))
+      {
+        logger.warn("SUMO on port {} did not quit, killing it", port);
+        process.destroyForcibly();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void update(Observable o, Object arg)
+  {
+    for (Observer observer : observers)
+    {
+      observer.update(o, arg);
+    }
+  }
+}
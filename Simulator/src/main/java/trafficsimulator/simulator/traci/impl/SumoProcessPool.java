@@ -0,0 +1,468 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.polito.appeal.traci.SumoTraciConnection;
+import trafficsimulator.simulator.exceptions.TraciException;
+
+/**
+ * Pool of running SUMO processes. Starting SUMO and waiting for its TraCI server takes
+ * seconds, loading new simulation into running SUMO takes milliseconds. The pool keeps
+ * the processes which finished their simulation and starts new ones in the background,
+ * so there are always warm processes ready to be handed out.
+ * SUMO can not start without any network, the warm processes are started with the pool's own
+ * configuration. It is made from the network of the first simulation and kept in the pool
+ * directory, the session directories are removed with their sessions.
+ * @author z003ru0y
+ *
+ */
+public class SumoProcessPool
+{
+  private static Logger logger = LoggerFactory.getLogger(SumoProcessPool.class);
+
+  private static final String SUMO_BINARY = "sumo";
+
+  private static final String LOG_FILE_PREFIX = "sumo-";
+
+  private static final String WARM_CONFIGURATION_FILE = "warm.sumocfg";
+
+  private static final String WARM_NETWORK_FILE = "warm.net.xml";
+
+  /** how often are the idle processes looked for at most (ms) */
+  private static final long EVICTION_PERIOD = 60000;
+
+  private final double stepLength;
+
+  private final int size;
+
+  private final long idleTimeout;
+
+  private final int basePort;
+
+  private final int maxProcesses;
+
+  /** directory of the warm-up configuration and of the output of the processes */
+  private final File directory;
+
+  /** network file name in the configuration directory of a simulation */
+  private final String networkFileName;
+
+  private final Deque<SumoProcess> idle;
+
+  /** port slots of all the processes, idle, used and starting ones */
+  private final BitSet usedPorts;
+
+  private int starting;
+
+  /** configuration used to start the warm processes, null while there is no demand */
+  private String warmConfiguration;
+
+  private final ExecutorService starter;
+
+  private final ScheduledExecutorService evictor;
+
+  /**
+   * @param stepLength simulation step length
+   * @param size how many warm processes to keep ready, 0 to start SUMO on demand only
+   * @param idleTimeout after how long is unused warm process closed (ms), 0 to keep it forever
+   * @param basePort port of the first process, the next ones use the following ports;
+   *   0 to let every process find a free port
+   * @param maxProcesses maximal number of processes, used and warm together
+   * @param directory directory of the warm-up configuration and of the output of the processes
+   * @param networkFileName network file name in the configuration directory of a simulation
+   */
+  public SumoProcessPool(double stepLength, int size, long idleTimeout, int basePort, int maxProcesses,
+      String directory, String networkFileName)
+  {
+    this.stepLength = stepLength;
+    this.size = size;
+    this.idleTimeout = idleTimeout;
+    this.basePort = basePort;
+    this.maxProcesses = maxProcesses;
+    this.directory = new File(directory);
+    if (!this.directory.isDirectory() && !this.directory.mkdirs())
+    {
+      logger.warn("SUMO pool directory could not be created: {}", directory);
+    }
+    this.networkFileName = networkFileName;
+    this.idle = new ArrayDeque<>();
+    this.usedPorts = new BitSet(maxProcesses);
+
+    this.starter = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sumo-pool-starter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sumo-pool-eviction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (idleTimeout > 0)
+    {
+      long period = Math.min(idleTimeout, EVICTION_PERIOD);
+      evictor.scheduleWithFixedDelay(this::closeExpiredProcesses, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    logger.debug("SUMO process pool started, size: {}, idle timeout: {} ms", size, idleTimeout);
+  }
+
+  /**
+   * Starts the warm processes, if the warm-up configuration was made by previous run
+   */
+  public void prestart()
+  {
+    File configuration = new File(directory, WARM_CONFIGURATION_FILE);
+    if (!configuration.isFile())
+    {
+      logger.debug("No configuration to prestart SUMO with: {}", configuration);
+      return;
+    }
+
+    synchronized (idle)
+    {
+      warmConfiguration = configuration.getPath();
+    }
+    refill();
+  }
+
+  /**
+   * Hands out warm process with the simulation loaded, starts new process if there is none
+   * @param configurationFile SUMO configuration file of the simulation
+   * @return process with the simulation loaded
+   * @throws TraciException when SUMO could not be started
+   */
+  public SumoProcess acquire(String configurationFile) throws TraciException
+  {
+    List<String> options = simulationOptions(configurationFile);
+    try
+    {
+      SumoProcess process;
+      while ((process = pollIdle()) != null)
+      {
+        try
+        {
+          process.load(options);
+          logger.debug("Simulation loaded into warm SUMO on port {}", process.getPort());
+          return process;
+        }
+        catch (TraciException e)
+        {
+          logger.warn("Warm SUMO on port {} could not load the simulation, closing it", process.getPort());
+          discard(process);
+        }
+      }
+
+      logger.debug("No warm SUMO available, starting new one");
+      return start(configurationFile);
+    }
+    finally
+    {
+      prepareWarmConfiguration(configurationFile);
+      refill();
+    }
+  }
+
+  /**
+   * Takes the process back after its simulation finished, it stays running if the pool is not full
+   * @param process process to return
+   */
+  public void release(SumoProcess process)
+  {
+    synchronized (idle)
+    {
+      if (process.isAlive() && idle.size() < size)
+      {
+        process.markIdle();
+        idle.addFirst(process);
+        return;
+      }
+    }
+    discard(process);
+  }
+
+  /**
+   * @return number of warm processes ready to be handed out
+   */
+  public int getIdleCount()
+  {
+    synchronized (idle)
+    {
+      return idle.size();
+    }
+  }
+
+  /**
+   * Closes all the warm processes, the used ones are closed when they are released
+   */
+  public void shutdown()
+  {
+    starter.shutdownNow();
+    evictor.shutdownNow();
+
+    List<SumoProcess> closing;
+    synchronized (idle)
+    {
+      closing = new ArrayList<>(idle);
+      idle.clear();
+    }
+    closing.forEach(this::discard);
+  }
+
+  private SumoProcess pollIdle()
+  {
+    synchronized (idle)
+    {
+      return idle.pollFirst();
+    }
+  }
+
+  /**
+   * Starts the missing warm processes in the background
+   */
+  private void refill()
+  {
+    synchronized (idle)
+    {
+      if (starter.isShutdown() || warmConfiguration == null)
+      {
+        return;
+      }
+
+      while (idle.size() + starting < size && usedPortCount() + starting < maxProcesses)
+      {
+        starting++;
+        String configurationFile = warmConfiguration;
+        starter.execute(() -> startWarm(configurationFile));
+      }
+    }
+  }
+
+  /**
+   * Makes the warm-up configuration on first demand, from the network of the simulation
+   * @param configurationFile SUMO configuration file of the simulation
+   */
+  private synchronized void prepareWarmConfiguration(String configurationFile)
+  {
+    synchronized (idle)
+    {
+      if (warmConfiguration != null)
+      {
+        return;
+      }
+    }
+
+    File configuration = new File(directory, WARM_CONFIGURATION_FILE);
+    File network = new File(new File(configurationFile).getParentFile(), networkFileName);
+    try
+    {
+      if (!configuration.isFile())
+      {
+        install(WARM_NETWORK_FILE, temp -> Files.copy(network.toPath(), temp, StandardCopyOption.REPLACE_EXISTING));
+        // written last, the network is complete once the configuration exists
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<configuration>\n"
+          + "  <input>\n"
+          + "    <net-file value=\"" + WARM_NETWORK_FILE + "\"/>\n"
+          + "  </input>\n"
+          + "</configuration>\n";
+        install(WARM_CONFIGURATION_FILE, temp -> Files.write(temp, content.getBytes(StandardCharsets.UTF_8)));
+        logger.debug("Warm-up configuration made from {}", network);
+      }
+
+      synchronized (idle)
+      {
+        warmConfiguration = configuration.getPath();
+      }
+    }
+    catch (IOException e)
+    {
+      logger.warn("Warm-up configuration could not be made from {}: {}", network, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the file of the pool to temporary file first, so SUMO never reads half written file
+   */
+  private void install(String filename, FileContent content) throws IOException
+  {
+    Path temp = Files.createTempFile(directory.toPath(), filename, null);
+    try
+    {
+      content.writeTo(temp);
+      Files.move(temp, new File(directory, filename).toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally
+    {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void startWarm(String configurationFile)
+  {
+    try
+    {
+      SumoProcess process = start(configurationFile);
+      process.markIdle();
+      synchronized (idle)
+      {
+        starting--;
+        idle.addLast(process);
+      }
+      logger.debug("Warm SUMO started on port {}", process.getPort());
+    }
+    catch (TraciException e)
+    {
+      synchronized (idle)
+      {
+        starting--;
+      }
+      logger.warn("Warm SUMO could not be started with {}", configurationFile);
+    }
+  }
+
+  private SumoProcess start(String configurationFile) throws TraciException
+  {
+    int portSlot = takePortSlot();
+    Process process = null;
+    try
+    {
+      int port = basePort > 0 ? basePort + portSlot : findFreePort();
+
+      List<String> command = new ArrayList<>();
+      command.add(SUMO_BINARY);
+      command.addAll(simulationOptions(configurationFile));
+      command.add("--remote-port");
+      command.add(String.valueOf(port));
+
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(directory, LOG_FILE_PREFIX + portSlot + ".log")));
+      process = builder.start();
+
+      SumoTraciConnection connection =
+        new SumoTraciConnection(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      return new SumoProcess(process, connection, port, portSlot);
+    }
+    catch (IOException | InterruptedException e)
+    {
+      if (process != null)
+      {
+        process.destroyForcibly();
+      }
+      releasePortSlot(portSlot);
+      throw new TraciException(e, null, "Could not start SUMO");
+    }
+  }
+
+  private List<String> simulationOptions(String configurationFile)
+  {
+    return new ArrayList<>(Arrays.asList(
+      "-c", configurationFile,
+      "--step-length", String.valueOf(stepLength),
+      "--collision.action", "warn"));
+  }
+
+  private void discard(SumoProcess process)
+  {
+    process.close();
+    releasePortSlot(process.portSlot);
+  }
+
+  private void closeExpiredProcesses()
+  {
+    List<SumoProcess> expired = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    synchronized (idle)
+    {
+      Iterator<SumoProcess> iterator = idle.iterator();
+      while (iterator.hasNext())
+      {
+        SumoProcess process = iterator.next();
+        if (now - process.getIdleSince() >= idleTimeout || !process.isAlive())
+        {
+          iterator.remove();
+          expired.add(process);
+        }
+      }
+      // do not start them again until there is demand
+      if (!expired.isEmpty() && idle.isEmpty())
+      {
+        warmConfiguration = null;
+      }
+    }
+
+    for (SumoProcess process : expired)
+    {
+      logger.debug("Warm SUMO on port {} was not used, closing it", process.getPort());
+      discard(process);
+    }
+  }
+
+  private int takePortSlot() throws TraciException
+  {
+    synchronized (usedPorts)
+    {
+      int portSlot = usedPorts.nextClearBit(0);
+      if (portSlot >= maxProcesses)
+      {
+        throw new TraciException(new IllegalStateException("all " + maxProcesses + " SUMO processes are running"),
+          null, "Could not start SUMO");
+      }
+      usedPorts.set(portSlot);
+      return portSlot;
+    }
+  }
+
+  private int usedPortCount()
+  {
+    synchronized (usedPorts)
+    {
+      return usedPorts.cardinality();
+    }
+  }
+
+  private void releasePortSlot(int portSlot)
+  {
+    synchronized (usedPorts)
+    {
+      usedPorts.clear(portSlot);
+    }
+  }
+
+  private static int findFreePort() throws IOException
+  {
+    try (ServerSocket socket = new ServerSocket(0))
+    {
+      return socket.getLocalPort();
+    }
+  }
+
+  private interface FileContent
+  {
+    void writeTo(Path file) throws IOException;
+  }
+}
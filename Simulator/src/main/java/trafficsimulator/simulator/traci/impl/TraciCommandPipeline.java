@@ -0,0 +1,419 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.util.CommandProcessor;
+import de.tudresden.sumo.util.SumoCommand;
+import de.tudresden.ws.container.SumoObject;
+import de.tudresden.ws.container.SumoPrimitive;
+import de.uniluebeck.itm.tcpip.Storage;
+import it.polito.appeal.traci.SumoTraciConnection;
+import it.polito.appeal.traci.TraCIException;
+import it.polito.appeal.traci.protocol.Command;
+import it.polito.appeal.traci.protocol.RequestMessage;
+import it.polito.appeal.traci.protocol.ResponseContainer;
+import it.polito.appeal.traci.protocol.ResponseMessage;
+import it.polito.appeal.traci.protocol.StatusResponse;
+import trafficsimulator.simulator.exceptions.TraciException;
+
+/**
+ * Queue of TraCI commands which do not return any value (set commands, subscriptions).
+ * The commands are accumulated during the simulation step and sent to SUMO as one
+ * multi-command message, so the caller does not wait for a reply of every single command.
+ * Bulk of get commands can be sent the same way by {@link #query(List)}.
+ *
+ * TraaS does not expose the socket nor the raw command, so they are accessed by reflection.
+ * When it is not possible, the commands are sent one by one by the connection itself.
+ * @author z003ru0y
+ *
+ */
+public class TraciCommandPipeline
+{
+  private static Logger logger = LoggerFactory.getLogger(TraciCommandPipeline.class);
+
+  private static final Field SOCKET_FIELD = accessibleField(SumoTraciConnection.class, "socket");
+
+  private static final Field COMMAND_FIELD = accessibleField(SumoCommand.class, "cmd");
+
+  private final SumoTraciConnection traciConnection;
+
+  private final List<Command> commands;
+
+  private final List<SumoCommand> sumoCommands;
+
+  private final List<String> descriptions;
+
+  private DataOutputStream outStream;
+
+  private DataInputStream inStream;
+
+  /**
+   * @param traciConnection connection to send the commands to
+   */
+  public TraciCommandPipeline(SumoTraciConnection traciConnection)
+  {
+    this.traciConnection = traciConnection;
+    this.commands = new ArrayList<>();
+    this.sumoCommands = new ArrayList<>();
+    this.descriptions = new ArrayList<>();
+  }
+
+  /**
+   * Adds set command to the queue
+   * @param command set command
+   * @param description description used in error reporting
+   */
+  public void enqueue(SumoCommand command, String description)
+  {
+    commands.add(rawCommand(command));
+    sumoCommands.add(command);
+    descriptions.add(description);
+  }
+
+  /**
+   * Adds raw command (such as subscription) to the queue.
+   * Same as TraaS does for subscriptions, failure of such command is only logged
+   * @param command raw command
+   * @param description description used in error reporting
+   */
+  public void enqueue(Command command, String description)
+  {
+    commands.add(command);
+    sumoCommands.add(null);
+    descriptions.add(description);
+  }
+
+  /**
+   * @return number of commands waiting to be sent
+   */
+  public int size()
+  {
+    return commands.size();
+  }
+
+  /**
+   * Drops all the waiting commands
+   */
+  public void clear()
+  {
+    commands.clear();
+    sumoCommands.clear();
+    descriptions.clear();
+  }
+
+  /**
+   * Sends all the waiting commands in one message and verifies the replies
+   * @throws TraciException when sending fails or some of the commands were refused by SUMO
+   */
+  public void flush() throws TraciException
+  {
+    if (commands.isEmpty())
+    {
+      return;
+    }
+
+    try
+    {
+      if (canPipeline())
+      {
+        sendAsOneMessage();
+      }
+      else
+      {
+        sendOneByOne();
+      }
+    }
+    catch (TraciException e)
+    {
+      throw e;
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not send " + commands.size() + " queued commands");
+    }
+    finally
+    {
+      clear();
+    }
+  }
+
+  /**
+   * Sends the get commands in one message and returns their values in the same order.
+   * Values are of the same types as returned by {@link SumoTraciConnection#do_job_get(SumoCommand)}.
+   * The queued set commands are not affected.
+   * @param queries get commands
+   * @return list of values
+   * @throws TraciException when some of the get commands fails
+   */
+  public List<Object> query(List<SumoCommand> queries) throws TraciException
+  {
+    List<Object> values = new ArrayList<>();
+    List<Command> rawQueries = new ArrayList<>();
+    for (SumoCommand query : queries)
+    {
+      rawQueries.add(rawCommand(query));
+    }
+
+    try
+    {
+      if (SOCKET_FIELD == null || rawQueries.contains(null))
+      {
+        for (SumoCommand query : queries)
+        {
+          values.add(traciConnection.do_job_get(query));
+        }
+        return values;
+      }
+
+      List<ResponseContainer> responses = sendAndReceive(rawQueries).responses();
+      for (int i = 0; i < queries.size(); i++)
+      {
+        StatusResponse status = i < responses.size() ? responses.get(i).getStatus() : null;
+        if (status == null || status.result() != Constants.RTYPE_OK || responses.get(i).getResponse() == null)
+        {
+          throw new TraCIException("query " + i + " of " + queries.size() + " failed: "
+            + (status == null ? "no response received" : status.description()));
+        }
+
+        Object value = decode(responses.get(i).getResponse());
+        values.add(value != null ? value : traciConnection.do_job_get(queries.get(i)));
+      }
+      return values;
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not perform " + queries.size() + " queries");
+    }
+  }
+
+  /**
+   * Loads new simulation into the running SUMO (TraCI load command), the connection stays open.
+   * TraaS does not provide the command, so it can be sent only when the socket is accessible.
+   * @param options SUMO command line options of the new simulation
+   * @throws TraciException when the simulation could not be loaded
+   */
+  public void load(List<String> options) throws TraciException
+  {
+    Command command = new Command(Constants.CMD_LOAD);
+    command.content().writeUnsignedByte(Constants.TYPE_STRINGLIST);
+    command.content().writeInt(options.size());
+    for (String option : options)
+    {
+      command.content().writeStringASCII(option);
+    }
+
+    try
+    {
+      if (SOCKET_FIELD == null)
+      {
+        throw new IllegalStateException("socket of the connection is not accessible");
+      }
+
+      StatusResponse status;
+      synchronized (traciConnection)
+      {
+        send(Collections.singletonList(command));
+        // the reply of load is status only, which TraaS does not expect
+        byte[] reply = new byte[inStream.readInt() - Integer.BYTES];
+        inStream.readFully(reply);
+        status = new StatusResponse(new Storage(reply));
+      }
+
+      if (status.result() != Constants.RTYPE_OK)
+      {
+        throw new TraCIException("load refused: " + status.description());
+      }
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not load the simulation");
+    }
+  }
+
+  private Object decode(Command response)
+  {
+    Storage content = response.content();
+    content.readUnsignedByte(); // variable
+    content.readStringASCII(); // object id
+    int type = content.readUnsignedByte();
+    SumoObject value = CommandProcessor.read(type, content);
+    return value instanceof SumoPrimitive ? ((SumoPrimitive) value).val : value;
+  }
+
+  private ResponseMessage sendAndReceive(List<Command> message) throws Exception
+  {
+    synchronized (traciConnection)
+    {
+      send(message);
+      return new ResponseMessage(inStream);
+    }
+  }
+
+  /**
+   * Has to be called with the connection locked, together with reading of the reply
+   * @param message commands to send in one message
+   * @throws Exception when the connection is closed or writing fails
+   */
+  private void send(List<Command> message) throws Exception
+  {
+    RequestMessage request = new RequestMessage();
+    for (Command command : message)
+    {
+      request.append(command);
+    }
+
+    if (traciConnection.isClosed())
+    {
+      throw new IllegalStateException("connection is closed");
+    }
+    openStreams();
+    request.writeTo(outStream);
+  }
+
+  private void sendAsOneMessage() throws Exception
+  {
+    List<ResponseContainer> responses = sendAndReceive(commands).responses();
+    List<String> errors = new ArrayList<>();
+    for (int i = 0; i < commands.size(); i++)
+    {
+      if (i >= responses.size())
+      {
+        errors.add(descriptions.get(i) + ": no response received");
+        continue;
+      }
+
+      StatusResponse status = responses.get(i).getStatus();
+      String error = null;
+      if (status.id() != commands.get(i).id())
+      {
+        error = descriptions.get(i) + ": response for different command " + status.id();
+      }
+      else if (status.result() != Constants.RTYPE_OK)
+      {
+        error = descriptions.get(i) + ": " + status.description();
+      }
+
+      if (error != null && sumoCommands.get(i) == null)
+      {
+        logger.warn("Queued command failed - {}", error);
+      }
+      else if (error != null)
+      {
+        errors.add(error);
+      }
+    }
+
+    reportErrors(errors);
+  }
+
+  private void sendOneByOne() throws Exception
+  {
+    List<String> errors = new ArrayList<>();
+    for (int i = 0; i < commands.size(); i++)
+    {
+      try
+      {
+        if (sumoCommands.get(i) == null)
+        {
+          Command command = commands.get(i);
+          traciConnection.do_subscription(() -> command);
+        }
+        else
+        {
+          traciConnection.do_job_set(sumoCommands.get(i));
+        }
+      }
+      catch (Exception e)
+      {
+        errors.add(descriptions.get(i) + ": " + e.getMessage());
+      }
+    }
+
+    reportErrors(errors);
+  }
+
+  private void reportErrors(List<String> errors) throws TraciException
+  {
+    if (errors.isEmpty())
+    {
+      return;
+    }
+
+    for (String error : errors)
+    {
+      logger.error("Queued command failed - {}", error);
+    }
+
+    throw new TraciException(new TraCIException(errors.size() + " of " + commands.size() + " queued commands failed"),
+      traciConnection, "Some of the queued commands failed");
+  }
+
+  private boolean canPipeline()
+  {
+    if (SOCKET_FIELD == null)
+    {
+      return false;
+    }
+
+    for (Command command : commands)
+    {
+      if (command == null)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void openStreams() throws Exception
+  {
+    if (outStream == null)
+    {
+      Socket socket = (Socket) SOCKET_FIELD.get(traciConnection);
+      outStream = new DataOutputStream(socket.getOutputStream());
+      inStream = new DataInputStream(socket.getInputStream());
+    }
+  }
+
+  private static Command rawCommand(SumoCommand command)
+  {
+    if (COMMAND_FIELD == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      return (Command) COMMAND_FIELD.get(command);
+    }
+    catch (IllegalAccessException e)
+    {
+      return null;
+    }
+  }
+
+  private static Field accessibleField(Class<?> clazz, String name)
+  {
+    try
+    {
+      Field field = clazz.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    }
+    catch (Exception e)
+    {
+      logger.warn("TraCI command pipelining is not available: {}.{} is not accessible", clazz.getSimpleName(), name);
+      return null;
+    }
+  }
+}
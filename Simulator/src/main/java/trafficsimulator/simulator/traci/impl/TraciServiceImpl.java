@@ -1,9 +1,13 @@
 package trafficsimulator.simulator.traci.impl;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +18,10 @@ import de.tudresden.sumo.cmd.Lane;
 import de.tudresden.sumo.cmd.Simulation;
 import de.tudresden.sumo.cmd.Trafficlight;
 import de.tudresden.sumo.cmd.Vehicle;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.SumoCommand;
 import de.tudresden.ws.container.SumoBoundingBox;
 import de.tudresden.ws.container.SumoColor;
 import de.tudresden.ws.container.SumoGeometry;
@@ -34,6 +42,7 @@ import trafficsimulator.simulator.traci.TraciService;
 import trafficsimulator.simulator.traci.dto.PhaseInfo;
 import trafficsimulator.simulator.traci.dto.SumoVehicle;
 import trafficsimulator.simulator.traci.dto.VehicleInfo;
+import trafficsimulator.simulator.traci.dto.VehicleSubscriptionState;
 
 /**
  * @author z003ru0y
@@ -48,6 +57,40 @@ public class TraciServiceImpl implements TraciService
   private final String sumoConfPath;
 
   private final String sumoConfFileName;
+
+  private final boolean useSubscriptions;
+
+  private VehicleSubscriptionObserver vehicleSubscriptions;
+
+  private DetectorOccupancyObserver detectorOccupancy;
+
+  private final boolean usePipelining;
+
+  private TraciCommandPipeline commandPipeline;
+
+  private final String sumoNetFileName;
+
+  /** geometry caches of the recently simulated networks, by network hash */
+  private final Map<String, NetworkGeometryCache> geometryCaches;
+
+  private NetworkGeometryCache geometryCache;
+
+  /**
+   * traffic light definitions of the current simulation, by traffic light id. The signal programs come
+   * from the additional files, not from the network, so they are not kept in the geometry cache.
+   */
+  private final Map<String, SumoTLSController> tlsControllers = new HashMap<>();
+
+  private static final int GEOMETRY_CACHE_SIZE = 4;
+
+  /** TraaS does not know the load state command */
+  private static final int CMD_LOAD_SIMSTATE = 0x96;
+
+  /** pool of running SUMO processes, null if SUMO is started by TraaS for every simulation */
+  private final SumoProcessPool processPool;
+
+  /** process of the pool which runs the current simulation */
+  private SumoProcess sumoProcess;
   
   private static Logger logger = LoggerFactory.getLogger(TraciServiceImpl.class);  
 
@@ -55,45 +98,251 @@ public class TraciServiceImpl implements TraciService
    * @param sumoConfPath path to SUMO configuration files
    * @param sumoStepLength simulation step length
    * @param sumoConfFileName name of main sumo configuration file
+   * @param sumoNetFileName name of sumo network file, used to identify cached network geometry
+   * @param useSubscriptions if true, vehicle values and detector occupancy are retrieved by variable subscriptions,
+   *   otherwise by separate call for each value
+   * @param usePipelining if true, set commands are queued and sent in one message before the next step,
+   *   otherwise every command waits for its own reply
    */
-  public TraciServiceImpl(String sumoConfPath, double sumoStepLength, String sumoConfFileName)
+  public TraciServiceImpl(String sumoConfPath, double sumoStepLength, String sumoConfFileName, String sumoNetFileName,
+      boolean useSubscriptions, boolean usePipelining)
+  {
+    this(sumoConfPath, sumoStepLength, sumoConfFileName, sumoNetFileName, useSubscriptions, usePipelining, null,
+      NetworkGeometryCache.recentlyUsed(GEOMETRY_CACHE_SIZE));
+  }
+
+  /**
+   * @param sumoConfPath path to SUMO configuration files
+   * @param sumoStepLength simulation step length
+   * @param sumoConfFileName name of main sumo configuration file
+   * @param sumoNetFileName name of sumo network file, used to identify cached network geometry
+   * @param useSubscriptions if true, vehicle values and detector occupancy are retrieved by variable subscriptions,
+   *   otherwise by separate call for each value
+   * @param usePipelining if true, set commands are queued and sent in one message before the next step,
+   *   otherwise every command waits for its own reply
+   * @param processPool pool of running SUMO processes, null to let TraaS start SUMO for every simulation
+   * @param geometryCaches geometry caches by network hash, can be shared by more services
+   */
+  public TraciServiceImpl(String sumoConfPath, double sumoStepLength, String sumoConfFileName, String sumoNetFileName,
+      boolean useSubscriptions, boolean usePipelining, SumoProcessPool processPool,
+      Map<String, NetworkGeometryCache> geometryCaches)
   {
     this.sumoConfPath = sumoConfPath;
     this.sumoStepLength = sumoStepLength;
     this.sumoConfFileName = sumoConfFileName;
+    this.sumoNetFileName = sumoNetFileName;
+    this.geometryCaches = geometryCaches;
+    this.useSubscriptions = useSubscriptions;
+    this.usePipelining = usePipelining;
+    this.processPool = processPool;
     
-    logger.debug("Traci Service started");
+    logger.debug("Traci Service started, vehicle subscriptions: {}, command pipelining: {}, process pool: {}", 
+      useSubscriptions, usePipelining, processPool != null);
   }
 
   public void startSimulation() throws TraciException
   {
+    if (sumoProcess != null || traciConnection != null && !traciConnection.isClosed())
+    {
+      // previous simulation was left running
+      stopSimulation();
+    }
+
     String sumoBinary = "sumo";
-    traciConnection = new SumoTraciConnection(sumoBinary, sumoConfPath + sumoConfFileName);
-    traciConnection.addOption("step-length", String.valueOf(sumoStepLength));
-    traciConnection.addOption("collision.action", "warn");
+    if (processPool != null)
+    {
+      sumoProcess = processPool.acquire(sumoConfPath + sumoConfFileName);
+      traciConnection = sumoProcess.getConnection();
+    }
+    else
+    {
+      traciConnection = new SumoTraciConnection(sumoBinary, sumoConfPath + sumoConfFileName);
+      traciConnection.addOption("step-length", String.valueOf(sumoStepLength));
+      traciConnection.addOption("collision.action", "warn");
 
-    try
+      try
+      {
+        traciConnection.runServer();
+      }
+      catch (IOException e)
+      {
+        throw new TraciException(e, traciConnection, "Could not start the simulation");
+      }
+    }
+
+    detectorOccupancy = new DetectorOccupancyObserver();
+    if (useSubscriptions)
     {
-      traciConnection.runServer();
+      vehicleSubscriptions = new VehicleSubscriptionObserver();
+      if (sumoProcess != null)
+      {
+        // TraaS can not remove observers from the reused connection, the process forwards to these
+        sumoProcess.setObservers(vehicleSubscriptions, detectorOccupancy);
+      }
+      else
+      {
+        traciConnection.addObserver(vehicleSubscriptions);
+        traciConnection.addObserver(detectorOccupancy);
+      }
     }
-    catch (IOException e)
+
+    commandPipeline = new TraciCommandPipeline(traciConnection);
+    tlsControllers.clear();
+    geometryCache = getGeometryCache();
+    if (!geometryCache.isFilled())
     {
-      throw new TraciException(e, traciConnection, "Could not start the simulation");
+      fillGeometryCache(geometryCache);
     }
     
     logger.debug("Traci simulation started");
   }
 
+  /**
+   * @return cache for the network which is being simulated, new one if the network was not simulated recently
+   */
+  private NetworkGeometryCache getGeometryCache()
+  {
+    String networkHash;
+    try
+    {
+      networkHash = NetworkGeometryCache.hashNetworkFile(Paths.get(sumoConfPath, sumoNetFileName));
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not read network file, geometry will not be reused: {}", e.getMessage());
+      return new NetworkGeometryCache(null);
+    }
+
+    synchronized (geometryCaches)
+    {
+      return geometryCaches.computeIfAbsent(networkHash, NetworkGeometryCache::new);
+    }
+  }
+
+  /**
+   * Retrieves geometry of all the lanes, junctions and traffic lights in few bulk requests.
+   * If it fails, the values are retrieved later one by one, when they are needed.
+   * @param cache cache to fill
+   */
+  private void fillGeometryCache(NetworkGeometryCache cache)
+  {
+    try
+    {
+      List<Object> lists = commandPipeline.query(Arrays.asList(
+        Lane.getIDList(), Junction.getIDList(), Trafficlight.getIDList(), Simulation.getNetBoundary()));
+      List<String> laneIds = withoutInternal((SumoStringList) lists.get(0));
+      List<String> junctionIds = withoutInternal((SumoStringList) lists.get(1));
+      List<String> tlsIds = (SumoStringList) lists.get(2);
+      SumoBoundingBox boundingBox = (SumoBoundingBox) lists.get(3);
+
+      List<SumoCommand> queries = new ArrayList<>();
+      for (String laneId : laneIds)
+      {
+        queries.add(Lane.getShape(laneId));
+        queries.add(Lane.getLength(laneId));
+      }
+      for (String junctionId : junctionIds)
+      {
+        queries.add(Junction.getShape(junctionId));
+      }
+      for (String tlsId : tlsIds)
+      {
+        queries.add(Trafficlight.getControlledLanes(tlsId));
+      }
+
+      List<Object> values = commandPipeline.query(queries);
+      int index = 0;
+      for (String laneId : laneIds)
+      {
+        cache.putLaneShape(laneId, toJsonShape((SumoGeometry) values.get(index++)));
+        cache.putLaneLength(laneId, JsonHelper.roundDouble((double) values.get(index++)));
+      }
+      for (String junctionId : junctionIds)
+      {
+        cache.putJunctionShape(junctionId, toJsonShape((SumoGeometry) values.get(index++)));
+      }
+      for (String tlsId : tlsIds)
+      {
+        cache.putControlledLanes(tlsId, Collections.unmodifiableList((SumoStringList) values.get(index++)));
+      }
+
+
+      cache.setNetworkBoundary(JsonHelper.roundCoordinates(new Coordinates(boundingBox.x_max, boundingBox.y_max)));
+      cache.setFilled(true);
+
+      logger.debug("Network geometry cached: {} lanes, {} junctions, {} traffic lights",
+        laneIds.size(), junctionIds.size(), tlsIds.size());
+    }
+    catch (Exception e)
+    {
+      logger.warn("Could not cache network geometry, it will be retrieved on demand: {}", e.getMessage());
+    }
+  }
+
+  private static List<String> withoutInternal(List<String> ids)
+  {
+    List<String> result = new ArrayList<>();
+    for (String id : ids)
+    {
+      if (!id.startsWith(":"))
+      {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  private static JsonShape toJsonShape(SumoGeometry geom)
+  {
+    List<JsonCoordinates> coords = new ArrayList<>();
+    for (SumoPosition2D position : geom.coords)
+    {
+      Coordinates coordinates = new Coordinates(position.x, position.y);
+      coords.add(JsonHelper.roundCoordinates(coordinates));
+    }
+    return new JsonShape(Collections.unmodifiableList(coords));
+  }
+
   public void stopSimulation()
   {
-    traciConnection.close();
+    if (commandPipeline != null)
+    {
+      commandPipeline.clear();
+    }
+    if (sumoProcess != null)
+    {
+      // the process stays running for another simulation
+      processPool.release(sumoProcess);
+      sumoProcess = null;
+      traciConnection = null;
+    }
+    else if (traciConnection != null)
+    {
+      traciConnection.close();
+    }
   }
 
   public void nextStep() throws TraciException
   {
+    if (commandPipeline != null)
+    {
+      commandPipeline.flush();
+    }
+
     try
     {
+      if (vehicleSubscriptions != null)
+      {
+        vehicleSubscriptions.beginStep();
+        detectorOccupancy.beginStep();
+      }
+
       traciConnection.do_timestep();
+
+      if (vehicleSubscriptions != null)
+      {
+        vehicleSubscriptions.removeStale();
+      }
     }
     catch (Exception e)
     {
@@ -113,6 +362,52 @@ public class TraciServiceImpl implements TraciService
     }
   }
 
+  public void saveState(String stateFile) throws TraciException
+  {
+    if (commandPipeline != null)
+    {
+      // the queued commands belong to the current step, the state has to contain them
+      commandPipeline.flush();
+    }
+
+    try
+    {
+      traciConnection.do_job_set(Simulation.saveState(stateFile));
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not save the simulation state");
+    }
+  }
+
+  public void loadState(String stateFile) throws TraciException
+  {
+    if (commandPipeline != null)
+    {
+      // the queued commands belong to the abandoned state
+      commandPipeline.clear();
+    }
+
+    try
+    {
+      traciConnection.do_job_set(new SumoCommand(Constants.CMD_SET_SIM_VARIABLE, CMD_LOAD_SIMSTATE, "", stateFile));
+
+      if (vehicleSubscriptions != null)
+      {
+        // the vehicles are replaced by the loaded ones, their subscriptions are gone
+        vehicleSubscriptions.clear();
+        for (String vehId : (SumoStringList) traciConnection.do_job_get(Vehicle.getIDList()))
+        {
+          subscribeVehicle(vehId);
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not load the simulation state");
+    }
+  }
+
   public int getVehicleCount() throws TraciException
   {
     try
@@ -129,14 +424,20 @@ public class TraciServiceImpl implements TraciService
   {
     try
     {      
-      traciConnection.do_job_set(Vehicle.add(vehicle.getId(), "DEFAULT_VEHTYPE", vehicle.getRoute(), vehicle.getSimtime(), 0.0, 0.0, (byte) 0));
-      traciConnection.do_job_set(Vehicle.setVehicleClass(vehicle.getId(), vehicle.getVehicleClass()));
-      traciConnection.do_job_set(Vehicle.setShapeClass(vehicle.getId(), vehicle.getShapeClass()));
-      traciConnection.do_job_set(Vehicle.setLength(vehicle.getId(), vehicle.getVehicleType().getLength()));
-      traciConnection.do_job_set(Vehicle.setColor(vehicle.getId(), vehicle.getColor()));
-      traciConnection.do_job_set(Vehicle.setAccel(vehicle.getId(), vehicle.getVehicleType().getAccel()));
-      traciConnection.do_job_set(Vehicle.setDecel(vehicle.getId(), vehicle.getVehicleType().getDecel()));
-      traciConnection.do_job_set(Vehicle.setTau(vehicle.getId(), 2.0));
+      set(Vehicle.add(vehicle.getId(), "DEFAULT_VEHTYPE", vehicle.getRoute(), vehicle.getSimtime(), 0.0, 0.0, (byte) 0),
+        "add vehicle " + vehicle.getId());
+      set(Vehicle.setVehicleClass(vehicle.getId(), vehicle.getVehicleClass()), "vehicle class of " + vehicle.getId());
+      set(Vehicle.setShapeClass(vehicle.getId(), vehicle.getShapeClass()), "shape class of " + vehicle.getId());
+      set(Vehicle.setLength(vehicle.getId(), vehicle.getVehicleType().getLength()), "length of " + vehicle.getId());
+      set(Vehicle.setColor(vehicle.getId(), vehicle.getColor()), "color of " + vehicle.getId());
+      set(Vehicle.setAccel(vehicle.getId(), vehicle.getVehicleType().getAccel()), "accel of " + vehicle.getId());
+      set(Vehicle.setDecel(vehicle.getId(), vehicle.getVehicleType().getDecel()), "decel of " + vehicle.getId());
+      set(Vehicle.setTau(vehicle.getId(), 2.0), "tau of " + vehicle.getId());
+
+      if (vehicleSubscriptions != null)
+      {
+        subscribeVehicle(vehicle.getId());
+      }
     }
     catch (Exception e)
     {
@@ -145,6 +446,44 @@ public class TraciServiceImpl implements TraciService
 
   }
 
+  private void subscribeVehicle(String vehId) throws Exception
+  {
+    VariableSubscription subscription =
+      new VariableSubscription(SubscribtionVariable.vehicle, 0, Integer.MAX_VALUE, vehId);
+    for (int variable : VehicleSubscriptionState.SUBSCRIBED_VARIABLES)
+    {
+      subscription.addCommand(variable);
+    }
+
+    vehicleSubscriptions.register(vehId);
+    if (usePipelining)
+    {
+      commandPipeline.enqueue(subscription.getCommand(), "subscription of " + vehId);
+    }
+    else
+    {
+      traciConnection.do_subscription(subscription);
+    }
+  }
+
+  /**
+   * Performs set command, or queues it until the next step when the pipelining is enabled
+   * @param command set command
+   * @param description description for error reporting
+   * @throws Exception when traci call fails
+   */
+  private void set(SumoCommand command, String description) throws Exception
+  {
+    if (usePipelining)
+    {
+      commandPipeline.enqueue(command, description);
+    }
+    else
+    {
+      traciConnection.do_job_set(command);
+    }
+  }
+
   public List<VehicleInfo> getAlreadyExistingVehicles() throws TraciException
   {
     List<VehicleInfo> existing = new ArrayList<>(); 
@@ -199,6 +538,18 @@ public class TraciServiceImpl implements TraciService
     }
   }
 
+  public List<String> getArrivedVehicleIds() throws TraciException
+  {
+    try
+    {
+      return (SumoStringList) traciConnection.do_job_get(Simulation.getArrivedIDList());
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not get list of arrived vehicle ids");
+    }
+  }
+
   public boolean detectorIsOccupied(String detectorId, int laneId) throws TraciException
   {
     int occupancy;
@@ -213,6 +564,56 @@ public class TraciServiceImpl implements TraciService
     }
   }
 
+  public int registerDetector(String detectorId, int laneId) throws TraciException
+  {
+    String loopId = detectorId + "_" + laneId;
+    int slot = detectorOccupancy.register(loopId);
+    if (!useSubscriptions)
+    {
+      return slot;
+    }
+
+    VariableSubscription subscription =
+      new VariableSubscription(SubscribtionVariable.inductive_loop, 0, Integer.MAX_VALUE, loopId);
+    subscription.addCommand(Constants.LAST_STEP_VEHICLE_NUMBER);
+    try
+    {
+      if (usePipelining)
+      {
+        commandPipeline.enqueue(subscription.getCommand(), "subscription of detector " + loopId);
+      }
+      else
+      {
+        traciConnection.do_subscription(subscription);
+      }
+      return slot;
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not subscribe detector occupancy");
+    }
+  }
+
+  public boolean detectorIsOccupied(int detectorSlot) throws TraciException
+  {
+    if (useSubscriptions && detectorOccupancy.isReceived(detectorSlot))
+    {
+      return detectorOccupancy.isOccupied(detectorSlot);
+    }
+
+    // not subscribed or the value did not arrive yet (e.g. right after the registration)
+    try
+    {
+      int occupancy = (int) traciConnection.do_job_get(
+        Inductionloop.getLastStepVehicleNumber(detectorOccupancy.getLoopId(detectorSlot)));
+      return occupancy > 0;
+    }
+    catch (Exception e)
+    {
+      throw new TraciException(e, traciConnection, "Could not check detector occupancy");
+    }
+  }
+
   public int getTlsPhaseId(int intersectionId) throws TraciException
   {
     try
@@ -237,6 +638,20 @@ public class TraciServiceImpl implements TraciService
     }
   }
 
+  public List<PhaseInfo> getSignalProgramPhases(int intersectionId, String signalProgramId) throws TraciException
+  {
+    List<PhaseInfo> phases = new ArrayList<>();
+    SumoTLSProgram program = this.getTlsController(intersectionId).programs.get(signalProgramId);
+    if (program != null)
+    {
+      for (SumoTLSPhase phase : program.phases)
+      {
+        phases.add(new PhaseInfo(phase.phasedef, phase.duration / 1000.0));
+      }
+    }
+    return phases;
+  }
+
   public PhaseInfo getCurrentIntersectionPhaseInfo(int intersectionId, String signalProgramId) throws TraciException
   {
     SumoTLSPhase currentPhase = this.getCurrentIntersectionPhase(intersectionId, signalProgramId);
@@ -250,14 +665,24 @@ public class TraciServiceImpl implements TraciService
 
     SumoTLSProgram program = phasesmap.get(signalProgramId);
     List<SumoTLSPhase> phaseList = program.phases;
-    return phaseList.get(program.currentPhaseIndex);
+    // definition is cached, so the current phase index has to be retrieved separately
+    return phaseList.get(getTlsPhaseId(intersectionId));
   }
 
   private SumoTLSController getTlsController(int intersectionId) throws TraciException
   {
+    SumoTLSController cached = tlsControllers.get(intersectionId + "");
+    if (cached != null)
+    {
+      return cached;
+    }
+
     try
     {
-      return (SumoTLSController) traciConnection.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(intersectionId + ""));
+      SumoTLSController controller =
+        (SumoTLSController) traciConnection.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(intersectionId + ""));
+      tlsControllers.put(intersectionId + "", controller);
+      return controller;
     }
     catch (Exception e)
     {
@@ -269,7 +694,7 @@ public class TraciServiceImpl implements TraciService
   {
     try
     {
-      traciConnection.do_job_set(Trafficlight.setPhaseDuration(intersectionId + "", newDuration));
+      set(Trafficlight.setPhaseDuration(intersectionId + "", newDuration), "phase duration of " + intersectionId);
     }
     catch (Exception e)
     {
@@ -280,6 +705,14 @@ public class TraciServiceImpl implements TraciService
   // retrieval
   public JsonVehicleState getVehicleState(String vehId) throws TraciException
   {
+    VehicleSubscriptionState subscribed = getSubscribedState(vehId);
+    if (subscribed != null)
+    {
+      return new JsonVehicleState(vehId, new Coordinates(subscribed.getX(), subscribed.getY()), subscribed.getAngle(),
+        subscribed.getSignals(), Math.round(subscribed.getSpeed() * 3.6), Math.round(subscribed.getDistance()),
+        subscribed.getWaitingTime());
+    }
+
     try
     {
       SumoPosition2D result = (SumoPosition2D) traciConnection.do_job_get(Vehicle.getPosition(vehId));
@@ -300,6 +733,13 @@ public class TraciServiceImpl implements TraciService
 
   public VehicleChangeset getVehicleStatistics(String vehId) throws TraciException
   {
+    VehicleSubscriptionState subscribed = getSubscribedState(vehId);
+    if (subscribed != null)
+    {
+      return new VehicleChangeset(subscribed.getCO2(), subscribed.getCO(), subscribed.getHC(), subscribed.getPMx(),
+        subscribed.getNOx(), subscribed.getFuel(), subscribed.getWaitingTime(), subscribed.getRoadId());
+    }
+
     try
     {
       double CO2 = (double) traciConnection.do_job_get(Vehicle.getCO2Emission(vehId));
@@ -309,8 +749,9 @@ public class TraciServiceImpl implements TraciService
       double NOx = (double) traciConnection.do_job_get(Vehicle.getNOxEmission(vehId));
       double fuel = (double) traciConnection.do_job_get(Vehicle.getFuelConsumption(vehId));
       double waiting = (double) traciConnection.do_job_get(Vehicle.getWaitingTime(vehId));
+      String roadId = (String) traciConnection.do_job_get(Vehicle.getRoadID(vehId));
 
-      return new VehicleChangeset(CO2, CO, HC, PMx, NOx, fuel, waiting);
+      return new VehicleChangeset(CO2, CO, HC, PMx, NOx, fuel, waiting, roadId);
     }
     catch (Exception e)
     {
@@ -318,6 +759,16 @@ public class TraciServiceImpl implements TraciService
     }
   }
 
+  /**
+   * @param vehId vehicle id
+   * @return values received by subscription in the last step or null if
+   *   the subscriptions are disabled or the values are not complete
+   */
+  private VehicleSubscriptionState getSubscribedState(String vehId)
+  {
+    return vehicleSubscriptions == null ? null : vehicleSubscriptions.getCurrentState(vehId);
+  }
+
   private VehicleInfo getVehicleInfo(String vehId) throws TraciException
   {
     try
@@ -374,9 +825,18 @@ public class TraciServiceImpl implements TraciService
   // TODO: this methods needs to be rewritten
   public List<String> getControledLanes(int intersectionId) throws TraciException
   {
+    List<String> cached = geometryCache.getControlledLanes(intersectionId + "");
+    if (cached != null)
+    {
+      return cached;
+    }
+
     try
     {
-      return (SumoStringList) traciConnection.do_job_get(Trafficlight.getControlledLanes(intersectionId + ""));
+      List<String> lanes = Collections.unmodifiableList(
+        (SumoStringList) traciConnection.do_job_get(Trafficlight.getControlledLanes(intersectionId + "")));
+      geometryCache.putControlledLanes(intersectionId + "", lanes);
+      return lanes;
     }
     catch (Exception e)
     {
@@ -398,19 +858,17 @@ public class TraciServiceImpl implements TraciService
 
   public JsonShape getIntersectionShape(String tlsId) throws TraciException
   {
-    List<JsonCoordinates> coords = new ArrayList<>();
+    JsonShape cached = geometryCache.getJunctionShape(tlsId);
+    if (cached != null)
+    {
+      return cached;
+    }
 
-    SumoGeometry geom;
     try
     {
-      geom = (SumoGeometry) traciConnection.do_job_get(Junction.getShape(tlsId));
-      for (SumoPosition2D position : geom.coords)
-      {
-        Coordinates coordinates = new Coordinates(position.x, position.y);
-        coords.add(JsonHelper.roundCoordinates(coordinates));
-      }
-
-      return new JsonShape(coords);
+      JsonShape shape = toJsonShape((SumoGeometry) traciConnection.do_job_get(Junction.getShape(tlsId)));
+      geometryCache.putJunctionShape(tlsId, shape);
+      return shape;
     }
     catch (Exception e)
     {
@@ -420,18 +878,17 @@ public class TraciServiceImpl implements TraciService
 
   public JsonShape getLaneShape(String laneId) throws TraciException
   {
-    List<JsonCoordinates> coords = new ArrayList<>();
+    JsonShape cached = geometryCache.getLaneShape(laneId);
+    if (cached != null)
+    {
+      return cached;
+    }
 
-    SumoGeometry geom;
     try
     {
-      geom = (SumoGeometry) traciConnection.do_job_get(Lane.getShape(laneId));
-      for (SumoPosition2D position : geom.coords)
-      {
-        Coordinates coordinates = new Coordinates(position.x, position.y);
-        coords.add(JsonHelper.roundCoordinates(coordinates));
-      }
-      return new JsonShape(coords);
+      JsonShape shape = toJsonShape((SumoGeometry) traciConnection.do_job_get(Lane.getShape(laneId)));
+      geometryCache.putLaneShape(laneId, shape);
+      return shape;
     }
     catch (Exception e)
     {
@@ -441,9 +898,17 @@ public class TraciServiceImpl implements TraciService
 
   public double getLaneLength(String laneId) throws TraciException
   {
+    Double cached = geometryCache.getLaneLength(laneId);
+    if (cached != null)
+    {
+      return cached;
+    }
+
     try
     {
-      return JsonHelper.roundDouble((double) traciConnection.do_job_get(Lane.getLength(laneId)));
+      double length = JsonHelper.roundDouble((double) traciConnection.do_job_get(Lane.getLength(laneId)));
+      geometryCache.putLaneLength(laneId, length);
+      return length;
     }
     catch (Exception e)
     {
@@ -453,11 +918,18 @@ public class TraciServiceImpl implements TraciService
 
   public JsonCoordinates getNetworkBoundary() throws TraciException
   {
+    if (geometryCache.getNetworkBoundary() != null)
+    {
+      return geometryCache.getNetworkBoundary();
+    }
+
     SumoBoundingBox boundingBox;
     try
     {
       boundingBox = (SumoBoundingBox) traciConnection.do_job_get(Simulation.getNetBoundary());
-      return JsonHelper.roundCoordinates(new Coordinates(boundingBox.x_max, boundingBox.y_max));
+      JsonCoordinates boundary = JsonHelper.roundCoordinates(new Coordinates(boundingBox.x_max, boundingBox.y_max));
+      geometryCache.setNetworkBoundary(boundary);
+      return boundary;
     }
     catch (Exception e)
     {
@@ -0,0 +1,110 @@
+package trafficsimulator.simulator.traci.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import trafficsimulator.simulator.traci.dto.VehicleSubscriptionState;
+
+/**
+ * Collects vehicle variable subscription results which SUMO sends together
+ * with the response to the simulation step
+ * @author z003ru0y
+ *
+ */
+public class VehicleSubscriptionObserver implements Observer
+{
+  private final Map<String, VehicleSubscriptionState> vehicles;
+
+  private long step;
+
+  /**
+   * creates empty observer
+   */
+  public VehicleSubscriptionObserver()
+  {
+    this.vehicles = new HashMap<>();
+    this.step = 0;
+  }
+
+  /**
+   * Registers newly subscribed vehicle
+   * @param vehId vehicle id
+   */
+  public void register(String vehId)
+  {
+    vehicles.putIfAbsent(vehId, new VehicleSubscriptionState(vehId));
+  }
+
+  /**
+   * Forgets all the vehicles, e.g. when the simulation state was replaced
+   */
+  public void clear()
+  {
+    vehicles.clear();
+  }
+
+  /**
+   * Has to be called right before the simulation step is performed
+   */
+  public void beginStep()
+  {
+    step++;
+  }
+
+  /**
+   * Removes vehicles which were receiving values before, but not in the current step,
+   * therefore they are no longer in the simulation
+   */
+  public void removeStale()
+  {
+    Iterator<VehicleSubscriptionState> iterator = vehicles.values().iterator();
+    while (iterator.hasNext())
+    {
+      VehicleSubscriptionState state = iterator.next();
+      if (state.getLastUpdateStep() >= 0 && state.getLastUpdateStep() < step)
+      {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @param vehId vehicle id
+   * @return subscribed values if they are complete for the current step; null otherwise
+   */
+  public VehicleSubscriptionState getCurrentState(String vehId)
+  {
+    VehicleSubscriptionState state = vehicles.get(vehId);
+    if (state == null || !state.isComplete(step))
+    {
+      return null;
+    }
+    return state;
+  }
+
+  @Override
+  public void update(Observable o, Object arg)
+  {
+    if (!(arg instanceof SubscriptionObject))
+    {
+      return;
+    }
+
+    SubscriptionObject result = (SubscriptionObject) arg;
+    if (result.response != ResponseType.VEHICLE_VARIABLE)
+    {
+      return;
+    }
+
+    VehicleSubscriptionState state = vehicles.get(result.id);
+    if (state != null)
+    {
+      state.update(step, result.variable, result.object);
+    }
+  }
+}
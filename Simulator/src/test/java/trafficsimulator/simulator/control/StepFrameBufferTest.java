@@ -0,0 +1,295 @@
+package trafficsimulator.simulator.control;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+
+public class StepFrameBufferTest
+{
+  /**
+   * @param time simulation time of the step
+   * @return step adding one vehicle named by the time
+   */
+  private static JsonSimulationStep createStep(int time)
+  {
+    return new JsonSimulationStep(time, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+      Collections.singletonList(new JsonVehicle("veh" + time, 4.5, 1.8, "#FF8000")));
+  }
+
+  private static List<Integer> times(JsonStepFrames frames)
+  {
+    List<Integer> times = new ArrayList<>();
+    for (JsonSimulationStep step : frames.getSteps())
+    {
+      times.add(step.getSimulationStep());
+    }
+    return times;
+  }
+
+  /**
+   * Starts thread which puts the frame, it may wait in the buffer
+   * @return the thread, the flag is set when the put returned
+   */
+  private static Thread putInBackground(StepFrameBuffer buffer, JsonSimulationStep frame, AtomicBoolean returned,
+      AtomicReference<Throwable> failure)
+  {
+    Thread producer = new Thread(() -> {
+      try
+      {
+        buffer.put(frame);
+        returned.set(true);
+      }
+      catch (Throwable e)
+      {
+        failure.set(e);
+      }
+    });
+    producer.setDaemon(true);
+    producer.start();
+    return producer;
+  }
+
+  /**
+   * Waits until the thread waits on a monitor, so the test does not depend on timing
+   */
+  private static void awaitWaiting(Thread thread) throws InterruptedException
+  {
+    while (thread.isAlive() && thread.getState() != Thread.State.WAITING)
+    {
+      Thread.sleep(5);
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class readMethod
+  {
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_has_to_be_positive()
+    {
+      new StepFrameBuffer(0, BackpressurePolicy.BLOCK);
+    }
+
+    @Test
+    public void frames_are_read_from_the_cursor() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(4, BackpressurePolicy.BLOCK);
+      buffer.put(createStep(100));
+      buffer.put(createStep(200));
+      buffer.put(createStep(300));
+      // EXECUTE
+      JsonStepFrames first = buffer.read(0, 2);
+      JsonStepFrames second = buffer.read(first.getNextCursor(), 10);
+      // VERIFY
+      assertThat("first read", times(first), is(equalTo(Arrays.asList(100, 200))));
+      assertThat("cursor after the first read", first.getNextCursor(), is(equalTo(2L)));
+      assertThat("second read", times(second), is(equalTo(Collections.singletonList(300))));
+      assertThat("cursor at the head", second.getNextCursor(), is(equalTo(buffer.getHead())));
+      assertThat("nothing skipped", second.getSkippedFrames(), is(equalTo(0L)));
+      assertThat("still running", second.isRunning(), is(true));
+    }
+
+    @Test
+    public void cursor_past_the_head_reads_nothing() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(4, BackpressurePolicy.BLOCK);
+      buffer.put(createStep(100));
+      // EXECUTE
+      JsonStepFrames frames = buffer.read(5, 10);
+      // VERIFY
+      assertThat("no frames", frames.getSteps().isEmpty(), is(true));
+      assertThat("cursor at the head", frames.getNextCursor(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void closed_buffer_runs_until_all_the_frames_are_read() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(4, BackpressurePolicy.BLOCK);
+      buffer.put(createStep(100));
+      buffer.put(createStep(200));
+      buffer.close();
+      // EXECUTE
+      buffer.put(createStep(300));
+      JsonStepFrames first = buffer.read(0, 1);
+      JsonStepFrames last = buffer.read(first.getNextCursor(), 10);
+      // VERIFY
+      assertThat("closed buffer takes no frames", buffer.getHead(), is(equalTo(2L)));
+      assertThat("unread frame left", first.isRunning(), is(true));
+      assertThat("last frame", times(last), is(equalTo(Collections.singletonList(200))));
+      assertThat("all read", last.isRunning(), is(false));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class blockPolicy
+  {
+    @Test
+    public void full_buffer_waits_until_the_frames_are_read() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(1, BackpressurePolicy.BLOCK);
+      buffer.put(createStep(100));
+      AtomicBoolean returned = new AtomicBoolean();
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      Thread producer = putInBackground(buffer, createStep(200), returned, failure);
+      awaitWaiting(producer);
+      boolean waitedWhileFull = !returned.get();
+      // EXECUTE
+      JsonStepFrames frames = buffer.read(0, 10);
+      producer.join(10000);
+      // VERIFY
+      assertThat("waited while full", waitedWhileFull, is(true));
+      assertThat("put returned", returned.get(), is(true));
+      assertThat("no failure", failure.get(), is((Throwable) null));
+      assertThat("read frame", times(frames), is(equalTo(Collections.singletonList(100))));
+      assertThat("frame added after the read", times(buffer.read(frames.getNextCursor(), 10)),
+        is(equalTo(Collections.singletonList(200))));
+    }
+
+    @Test
+    public void close_wakes_up_waiting_producer() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(1, BackpressurePolicy.BLOCK);
+      buffer.put(createStep(100));
+      AtomicBoolean returned = new AtomicBoolean();
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      Thread producer = putInBackground(buffer, createStep(200), returned, failure);
+      awaitWaiting(producer);
+      // EXECUTE
+      buffer.close();
+      producer.join(10000);
+      // VERIFY
+      assertThat("put returned", returned.get(), is(true));
+      assertThat("no failure", failure.get(), is((Throwable) null));
+      assertThat("frame not added", buffer.getHead(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void close_wakes_up_waiting_reader() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(1, BackpressurePolicy.BLOCK);
+      AtomicReference<Boolean> available = new AtomicReference<>();
+      Thread reader = new Thread(() -> {
+        try
+        {
+          available.set(buffer.await(0, 60000));
+        }
+        catch (InterruptedException e)
+        {
+          // test failed
+        }
+      });
+      reader.setDaemon(true);
+      reader.start();
+      while (reader.isAlive() && reader.getState() != Thread.State.TIMED_WAITING)
+      {
+        Thread.sleep(5);
+      }
+      // EXECUTE
+      buffer.close();
+      reader.join(10000);
+      // VERIFY
+      assertThat("no frame to read", available.get(), is(false));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class dropOldestPolicy
+  {
+    @Test
+    public void overwritten_frames_are_reported_as_skipped() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(2, BackpressurePolicy.DROP_OLDEST);
+      // EXECUTE
+      for (int time = 100; time <= 500; time += 100)
+      {
+        buffer.put(createStep(time));
+      }
+      JsonStepFrames frames = buffer.read(0, 10);
+      // VERIFY
+      assertThat("newest frames kept", times(frames), is(equalTo(Arrays.asList(400, 500))));
+      assertThat("skipped frames", frames.getSkippedFrames(), is(equalTo(3L)));
+      assertThat("cursor at the head", frames.getNextCursor(), is(equalTo(5L)));
+    }
+
+    @Test
+    public void reader_up_to_date_skips_nothing() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(2, BackpressurePolicy.DROP_OLDEST);
+      buffer.put(createStep(100));
+      buffer.put(createStep(200));
+      long cursor = buffer.read(0, 10).getNextCursor();
+      // EXECUTE
+      buffer.put(createStep(300));
+      JsonStepFrames frames = buffer.read(cursor, 10);
+      // VERIFY
+      assertThat("new frame", times(frames), is(equalTo(Collections.singletonList(300))));
+      assertThat("nothing skipped", frames.getSkippedFrames(), is(equalTo(0L)));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class coalescePolicy
+  {
+    @Test
+    public void new_frames_are_merged_into_the_newest_unread_frame() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(2, BackpressurePolicy.COALESCE);
+      // EXECUTE
+      for (int time = 100; time <= 400; time += 100)
+      {
+        buffer.put(createStep(time));
+      }
+      JsonStepFrames frames = buffer.read(0, 10);
+      // VERIFY
+      assertThat("newest frame carries the state", times(frames), is(equalTo(Arrays.asList(100, 400))));
+      assertThat("nothing skipped", frames.getSkippedFrames(), is(equalTo(0L)));
+      List<String> added = new ArrayList<>();
+      for (JsonVehicle vehicle : frames.getSteps().get(1).getVehiclesToAdd())
+      {
+        added.add(vehicle.getId());
+      }
+      assertThat("vehicles added by all the merged frames", added,
+        is(equalTo(Arrays.asList("veh200", "veh300", "veh400"))));
+    }
+
+    @Test
+    public void frames_are_added_again_after_they_are_read() throws Exception
+    {
+      // PREPARE
+      StepFrameBuffer buffer = new StepFrameBuffer(2, BackpressurePolicy.COALESCE);
+      buffer.put(createStep(100));
+      buffer.put(createStep(200));
+      long cursor = buffer.read(0, 10).getNextCursor();
+      // EXECUTE
+      buffer.put(createStep(300));
+      buffer.put(createStep(400));
+      JsonStepFrames frames = buffer.read(cursor, 10);
+      // VERIFY
+      assertThat("separate frames", times(frames), is(equalTo(Arrays.asList(300, 400))));
+      assertThat("own vehicles only", frames.getSteps().get(1).getVehiclesToAdd().size(), is(equalTo(1)));
+    }
+  }
+}
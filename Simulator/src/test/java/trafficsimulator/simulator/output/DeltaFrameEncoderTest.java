@@ -0,0 +1,215 @@
+package trafficsimulator.simulator.output;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import trafficsimulator.shared.dto.Coordinates;
+import trafficsimulator.simulator.output.dto.JsonDeltaStep;
+import trafficsimulator.simulator.output.dto.JsonPhaseState;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+
+public class DeltaFrameEncoderTest
+{
+  private static final double QUANTUM = 0.1;
+
+  private static JsonVehicleState vehicle(String id, double x, double y, int speed)
+  {
+    return new JsonVehicleState(id, new Coordinates(x, y), 90, 0, speed, (long) x, 0);
+  }
+
+  private static JsonSimulationStep step(int time, List<JsonVehicleState> vehicles, char light, int phase)
+  {
+    return new JsonSimulationStep(time, vehicles,
+      Arrays.asList(new JsonTrafficLightState("e1_0", light), new JsonTrafficLightState("e1_1", 'r')),
+      Collections.singletonList(new JsonPhaseState("program1", 1, phase, 30)),
+      Collections.<JsonVehicle>emptyList());
+  }
+
+  /**
+   * Steps with vehicles entering, moving less than the quantum, standing and leaving, the lights
+   * and the phase change during the sequence
+   */
+  private static List<JsonSimulationStep> createSteps()
+  {
+    List<JsonSimulationStep> steps = new ArrayList<>();
+    for (int i = 0; i < 10; i++)
+    {
+      List<JsonVehicleState> vehicles = new ArrayList<>();
+      // moves every step
+      vehicles.add(vehicle("moving", 10 + i * 5, 20, 5));
+      // moves less than the quantum
+      vehicles.add(vehicle("creeping", 100 + i * 0.01, 50, 0));
+      if (i < 4)
+      {
+        // leaves right after the first keyframe boundary
+        vehicles.add(vehicle("leaving", 200, 10 + i, 1));
+      }
+      if (i >= 2 && i != 7)
+      {
+        // enters later, leaves between keyframes and comes back
+        vehicles.add(vehicle("late", 300 + i, 30, 2));
+      }
+      steps.add(step(i * 500, vehicles, i < 5 ? 'G' : 'r', i < 6 ? 0 : 1));
+    }
+    return steps;
+  }
+
+  /**
+   * Client state rebuilt from the frames as described in {@link JsonDeltaStep}
+   */
+  private static class Reconstruction
+  {
+    private final Map<String, JsonVehicleState> vehicles = new LinkedHashMap<>();
+
+    private final Map<String, Character> lights = new HashMap<>();
+
+    private final Map<Integer, JsonPhaseState> phases = new HashMap<>();
+
+    void apply(JsonDeltaStep frame)
+    {
+      if (frame.isKeyframe())
+      {
+        assertThat("keyframe removes nothing", frame.getRemovedVehicles().isEmpty(), is(true));
+        vehicles.clear();
+        lights.clear();
+        phases.clear();
+      }
+      for (JsonVehicleState vehicle : frame.getVehicleState())
+      {
+        vehicles.put(vehicle.getId(), vehicle);
+      }
+      for (String removed : frame.getRemovedVehicles())
+      {
+        vehicles.remove(removed);
+      }
+      for (JsonTrafficLightState light : frame.getTlState())
+      {
+        lights.put(light.getLaneId(), light.getLaneState());
+      }
+      for (JsonPhaseState phase : frame.getPhaseState())
+      {
+        phases.put(phase.getId(), phase);
+      }
+    }
+
+    void assertEquals(JsonSimulationStep expected)
+    {
+      String time = " at " + expected.getSimulationStep();
+      assertThat("vehicles" + time, vehicles.size(), is(equalTo(expected.getVehicleState().size())));
+      for (JsonVehicleState vehicle : expected.getVehicleState())
+      {
+        JsonVehicleState rebuilt = vehicles.get(vehicle.getId());
+        assertThat("vehicle " + vehicle.getId() + time, rebuilt != null, is(true));
+        assertThat("x of " + vehicle.getId() + time, rebuilt.getCoords().getX(), is(closeTo(vehicle.getCoords().getX(), QUANTUM)));
+        assertThat("y of " + vehicle.getId() + time, rebuilt.getCoords().getY(), is(closeTo(vehicle.getCoords().getY(), QUANTUM)));
+        assertThat("angle of " + vehicle.getId() + time, rebuilt.getAngle(), is(equalTo(vehicle.getAngle())));
+        assertThat("speed of " + vehicle.getId() + time, rebuilt.getSpeed(), is(equalTo(vehicle.getSpeed())));
+        assertThat("signaling of " + vehicle.getId() + time, rebuilt.getSignaling(), is(equalTo(vehicle.getSignaling())));
+      }
+      for (JsonTrafficLightState light : expected.getTlState())
+      {
+        assertThat("light " + light.getLaneId() + time, lights.get(light.getLaneId()), is(equalTo(light.getLaneState())));
+      }
+      for (JsonPhaseState phase : expected.getPhaseState())
+      {
+        assertThat("phase " + phase.getId() + time, phases.get(phase.getId()), is(equalTo(phase)));
+      }
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class encodeMethod
+  {
+    @Test
+    public void applied_deltas_rebuild_every_step()
+    {
+      // PREPARE
+      DeltaFrameEncoder encoder = new DeltaFrameEncoder(4, QUANTUM);
+      Reconstruction client = new Reconstruction();
+      List<JsonSimulationStep> steps = createSteps();
+      List<Boolean> keyframes = new ArrayList<>();
+      // EXECUTE
+      for (JsonSimulationStep step : steps)
+      {
+        JsonDeltaStep frame = encoder.encode(step);
+        keyframes.add(frame.isKeyframe());
+        client.apply(frame);
+        // VERIFY
+        client.assertEquals(step);
+      }
+      assertThat("keyframe every fourth frame", keyframes,
+        is(equalTo(Arrays.asList(true, false, false, false, true, false, false, false, true, false))));
+      client.assertEquals(steps.get(steps.size() - 1));
+    }
+
+    @Test
+    public void skipped_steps_do_not_break_the_reconstruction()
+    {
+      // PREPARE
+      DeltaFrameEncoder encoder = new DeltaFrameEncoder(100, QUANTUM);
+      Reconstruction client = new Reconstruction();
+      List<JsonSimulationStep> steps = createSteps();
+      // EXECUTE
+      // the steps in which the vehicle left and came back are not sent
+      for (int i : new int[] {0, 1, 5, 9})
+      {
+        client.apply(encoder.encode(steps.get(i)));
+        // VERIFY
+        client.assertEquals(steps.get(i));
+      }
+    }
+
+    @Test
+    public void unchanged_vehicles_are_not_sent()
+    {
+      // PREPARE
+      DeltaFrameEncoder encoder = new DeltaFrameEncoder(100, QUANTUM);
+      List<JsonSimulationStep> steps = createSteps();
+      encoder.encode(steps.get(2));
+      // EXECUTE
+      JsonDeltaStep frame = encoder.encode(steps.get(3));
+      // VERIFY
+      List<String> sent = new ArrayList<>();
+      for (JsonVehicleState vehicle : frame.getVehicleState())
+      {
+        sent.add(vehicle.getId());
+      }
+      assertThat("only the changed vehicles", sent, is(equalTo(Arrays.asList("moving", "leaving", "late"))));
+      assertThat("unchanged lights left out", frame.getTlState().isEmpty(), is(true));
+      assertThat("unchanged phases left out", frame.getPhaseState().isEmpty(), is(true));
+      assertThat("delta smaller than the step", frame.getVehicleState().size(),
+        is(lessThan(steps.get(3).getVehicleState().size())));
+    }
+
+    @Test
+    public void vehicles_which_left_are_removed()
+    {
+      // PREPARE
+      DeltaFrameEncoder encoder = new DeltaFrameEncoder(100, QUANTUM);
+      List<JsonSimulationStep> steps = createSteps();
+      encoder.encode(steps.get(6));
+      // EXECUTE
+      JsonDeltaStep frame = encoder.encode(steps.get(7));
+      // VERIFY
+      assertThat("removed vehicle", frame.getRemovedVehicles(), is(equalTo(Collections.singletonList("late"))));
+    }
+  }
+}
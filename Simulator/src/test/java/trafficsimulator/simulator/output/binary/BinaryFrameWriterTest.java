@@ -0,0 +1,202 @@
+package trafficsimulator.simulator.output.binary;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import trafficsimulator.shared.dto.Coordinates;
+import trafficsimulator.shared.dto.GridPosition;
+import trafficsimulator.simulator.output.dto.JsonConnectionLeg;
+import trafficsimulator.simulator.output.dto.JsonConnectionPolygon;
+import trafficsimulator.simulator.output.dto.JsonCoordinates;
+import trafficsimulator.simulator.output.dto.JsonDirections;
+import trafficsimulator.simulator.output.dto.JsonIntersection;
+import trafficsimulator.simulator.output.dto.JsonIntersectionLeg;
+import trafficsimulator.simulator.output.dto.JsonLane;
+import trafficsimulator.simulator.output.dto.JsonLayoutMetadata;
+import trafficsimulator.simulator.output.dto.JsonPhaseState;
+import trafficsimulator.simulator.output.dto.JsonShape;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonTrafficLightState;
+import trafficsimulator.simulator.output.dto.JsonVehicle;
+import trafficsimulator.simulator.output.dto.JsonVehicleState;
+
+public class BinaryFrameWriterTest
+{
+  private static JsonSimulationStep createStep(int time, int vehicleCount)
+  {
+    List<JsonVehicleState> vehicles = new ArrayList<>();
+    for (int i = 0; i < vehicleCount; i++)
+    {
+      vehicles.add(new JsonVehicleState("veh" + i, new Coordinates(125.4567 + i + time / 1000.0, -48.3219 - i),
+        90.7 + i, 8, 36 + i, 120 + i, 1.5));
+    }
+
+    List<JsonTrafficLightState> lights = new ArrayList<>();
+    for (int i = 0; i < 12; i++)
+    {
+      lights.add(new JsonTrafficLightState("e1_" + i, i % 3 == 0 ? 'G' : i % 3 == 1 ? 'r' : 'y'));
+    }
+
+    List<JsonPhaseState> phases = Arrays.asList(new JsonPhaseState("program1", 1, 2, 31.5),
+      new JsonPhaseState("program2", 2, 0, 12.0));
+    List<JsonVehicle> vehiclesToAdd = Collections.singletonList(new JsonVehicle("veh" + vehicleCount, 4.5, 1.8, "#FF8000"));
+
+    return new JsonSimulationStep(time, vehicles, lights, phases, vehiclesToAdd);
+  }
+
+  private static byte[] writeSteps(List<JsonSimulationStep> steps) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryFrameWriter writer = new BinaryFrameWriter(out);
+    writer.writeSteps(steps);
+    writer.flush();
+    return out.toByteArray();
+  }
+
+  private static void assertStepEquals(JsonSimulationStep expected, JsonSimulationStep actual)
+  {
+    assertThat("simulation time", actual.getSimulationStep(), is(equalTo(expected.getSimulationStep())));
+    assertThat("vehicle count", actual.getVehicleState().size(), is(equalTo(expected.getVehicleState().size())));
+    for (int i = 0; i < expected.getVehicleState().size(); i++)
+    {
+      JsonVehicleState expectedVehicle = expected.getVehicleState().get(i);
+      JsonVehicleState actualVehicle = actual.getVehicleState().get(i);
+      assertThat("vehicle id", actualVehicle.getId(), is(equalTo(expectedVehicle.getId())));
+      assertThat("x is quantized to cm", actualVehicle.getCoords().getX(), is(closeTo(expectedVehicle.getCoords().getX(), 0.005)));
+      assertThat("y is quantized to cm", actualVehicle.getCoords().getY(), is(closeTo(expectedVehicle.getCoords().getY(), 0.005)));
+      assertThat("angle", actualVehicle.getAngle(), is(equalTo(expectedVehicle.getAngle())));
+      assertThat("signaling", actualVehicle.getSignaling(), is(equalTo(expectedVehicle.getSignaling())));
+      assertThat("speed", actualVehicle.getSpeed(), is(equalTo(expectedVehicle.getSpeed())));
+      assertThat("distance", actualVehicle.getDistance(), is(equalTo(expectedVehicle.getDistance())));
+      assertThat("waiting time", actualVehicle.getWaitingTime(), is(closeTo(expectedVehicle.getWaitingTime(), 0.005)));
+    }
+    assertThat("traffic lights", actual.getTlState(), is(equalTo(expected.getTlState())));
+    assertThat("phases", actual.getPhaseState(), is(equalTo(expected.getPhaseState())));
+    assertThat("vehicles to add", actual.getVehiclesToAdd(), is(equalTo(expected.getVehiclesToAdd())));
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class writeStepsMethod
+  {
+    @Test
+    public void steps_round_trip() throws Exception
+    {
+      // PREPARE
+      List<JsonSimulationStep> steps = Arrays.asList(createStep(500, 3), createStep(1000, 4), createStep(1500, 0));
+      // EXECUTE
+      byte[] bytes = writeSteps(steps);
+      List<JsonSimulationStep> decoded = new BinaryFrameReader(new ByteArrayInputStream(bytes)).readSteps();
+      // VERIFY
+      assertThat("all the steps are decoded", decoded.size(), is(equalTo(steps.size())));
+      for (int i = 0; i < steps.size(); i++)
+      {
+        assertStepEquals(steps.get(i), decoded.get(i));
+      }
+    }
+
+    @Test
+    public void binary_steps_are_much_smaller_than_json() throws Exception
+    {
+      // PREPARE
+      List<JsonSimulationStep> steps = new ArrayList<>();
+      for (int i = 1; i <= 10; i++)
+      {
+        steps.add(createStep(i * 500, 40));
+      }
+      // EXECUTE
+      byte[] bytes = writeSteps(steps);
+      byte[] json = new ObjectMapper().writeValueAsBytes(steps);
+      // VERIFY
+      assertThat("binary is at least 5 times smaller", bytes.length * 5, is(lessThan(json.length)));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class writeStepFramesMethod
+  {
+    @Test
+    public void frames_round_trip() throws Exception
+    {
+      // PREPARE
+      JsonStepFrames frames = new JsonStepFrames(42, 3, true, Arrays.asList(createStep(500, 2), createStep(1000, 2)));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryFrameWriter writer = new BinaryFrameWriter(out);
+      // EXECUTE
+      writer.writeHeader(0, "", BinaryFormat.PAYLOAD_STEP_FRAMES);
+      writer.writeStepFrames(frames);
+      writer.flush();
+      BinaryFrameReader reader = new BinaryFrameReader(new ByteArrayInputStream(out.toByteArray()));
+      reader.readMagic();
+      int status = reader.readStatus();
+      String statusMessage = reader.readStatusMessage();
+      int payloadKind = reader.readPayloadKind();
+      JsonStepFrames decoded = reader.readStepFrames();
+      // VERIFY
+      assertThat("status", status, is(equalTo(0)));
+      assertThat("status message", statusMessage, is(equalTo("")));
+      assertThat("payload kind", payloadKind, is(equalTo(BinaryFormat.PAYLOAD_STEP_FRAMES)));
+      assertThat("next cursor", decoded.getNextCursor(), is(equalTo(42L)));
+      assertThat("skipped frames", decoded.getSkippedFrames(), is(equalTo(3L)));
+      assertThat("running", decoded.isRunning(), is(equalTo(true)));
+      assertStepEquals(frames.getSteps().get(1), decoded.getSteps().get(1));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class writeLayoutMethod
+  {
+    @Test
+    public void layout_round_trip() throws Exception
+    {
+      // PREPARE
+      JsonShape shape = new JsonShape(Arrays.asList(new JsonCoordinates(10.25, 20.5), new JsonCoordinates(-3.75, 250.0),
+        new JsonCoordinates(0.01, 0.0)));
+      JsonLane lane = new JsonLane("e1_0", true, new JsonDirections(true, false, true), 48.35, shape);
+      JsonIntersectionLeg leg = new JsonIntersectionLeg("leg1", 90, Collections.singletonList(lane));
+      JsonIntersection intersection = new JsonIntersection("1", shape, new GridPosition(-1, 2), 45,
+        Collections.singletonList(leg), Arrays.asList("1", "2"));
+      JsonSituationLayout layout = new JsonSituationLayout(
+        new JsonLayoutMetadata(0.5, 1, 4, new JsonCoordinates(350.12, 275.5)),
+        Collections.singletonList(intersection),
+        Collections.singletonList(new JsonConnectionLeg("c1", "leg1", "leg2", shape)),
+        Collections.singletonList(new JsonConnectionPolygon(shape)),
+        Collections.singletonList(new JsonVehicle("veh0", 4.5, 1.8, "#00A0FF")));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryFrameWriter writer = new BinaryFrameWriter(out);
+      // EXECUTE
+      writer.writeLayout(layout);
+      writer.flush();
+      JsonSituationLayout decoded = new BinaryFrameReader(new ByteArrayInputStream(out.toByteArray())).readLayout();
+      // VERIFY
+      assertThat("metadata", decoded.getMetadata(), is(equalTo(layout.getMetadata())));
+      JsonIntersection decodedIntersection = decoded.getIntersectionList().get(0);
+      assertThat("intersection id", decodedIntersection.getId(), is(equalTo("1")));
+      assertThat("intersection shape", decodedIntersection.getShape(), is(equalTo(shape)));
+      assertThat("grid position", decodedIntersection.getGridPosition(), is(equalTo(intersection.getGridPosition())));
+      assertThat("angle", decodedIntersection.getAngle(), is(equalTo(45)));
+      assertThat("legs", decodedIntersection.getLegList(), is(equalTo(intersection.getLegList())));
+      assertThat("signal programs", decodedIntersection.getSignalProgramList(), is(equalTo(Arrays.asList("1", "2"))));
+      assertThat("connection legs", decoded.getConnectionLegs(), is(equalTo(layout.getConnectionLegs())));
+      assertThat("connection polygons", decoded.getConnectionPolygons(), is(equalTo(layout.getConnectionPolygons())));
+      assertThat("vehicles", decoded.getAlreadyExistingVehicles(), is(equalTo(layout.getAlreadyExistingVehicles())));
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package trafficsimulator.simulator.statistics;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+public class LogHistogramTest
+{
+  /** largest value with its own bucket, larger ones are counted as this */
+  private static final long MAX_VALUE = (1L << 31) - 1;
+
+  /** relative error of the percentiles stated by the histogram */
+  private static final double RELATIVE_ERROR = 1.0 / LogHistogram.SUB_BUCKETS;
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class buckets
+  {
+    @Test
+    public void small_values_have_bucket_each()
+    {
+      // VERIFY
+      for (long units = 0; units < LogHistogram.SUB_BUCKETS; units++)
+      {
+        assertThat("bucket of " + units, LogHistogram.indexOf(units), is(equalTo((int) units)));
+        assertThat("lowest value of " + units, LogHistogram.lowestValueOf((int) units), is(equalTo(units)));
+      }
+    }
+
+    @Test
+    public void bucket_boundaries_at_powers_of_two()
+    {
+      // VERIFY
+      assertThat("31 has its own bucket", LogHistogram.indexOf(31), is(equalTo(31)));
+      assertThat("32 starts the split buckets", LogHistogram.indexOf(32), is(equalTo(32)));
+      assertThat("32 and 33 share the bucket", LogHistogram.indexOf(33), is(equalTo(32)));
+      assertThat("62 and 63 share the bucket", LogHistogram.indexOf(62), is(equalTo(LogHistogram.indexOf(63))));
+      assertThat("63 is the last of its power of two", LogHistogram.indexOf(63), is(equalTo(47)));
+      assertThat("64 starts the next power of two", LogHistogram.indexOf(64), is(equalTo(48)));
+      assertThat("lowest value of the bucket of 63", LogHistogram.lowestValueOf(47), is(equalTo(62L)));
+      assertThat("lowest value of the bucket of 64", LogHistogram.lowestValueOf(48), is(equalTo(64L)));
+    }
+
+    @Test
+    public void max_value_is_in_the_last_bucket()
+    {
+      // PREPARE
+      int last = LogHistogram.indexOf(MAX_VALUE);
+      // VERIFY
+      assertThat("previous value in the same bucket", LogHistogram.indexOf(MAX_VALUE - 1), is(equalTo(last)));
+      assertThat("next bucket starts above the max value", LogHistogram.lowestValueOf(last + 1),
+        is(equalTo(MAX_VALUE + 1)));
+    }
+
+    @Test
+    public void every_value_is_in_the_bucket_of_its_range()
+    {
+      // PREPARE
+      Random random = new Random(42);
+      // VERIFY
+      for (int i = 0; i < 100000; i++)
+      {
+        long units = (long) Math.floor(Math.pow(2, random.nextDouble() * 31));
+        int index = LogHistogram.indexOf(units);
+        assertThat("not below the bucket", LogHistogram.lowestValueOf(index), is(lessThanOrEqualTo(units)));
+        assertThat("below the next bucket", LogHistogram.lowestValueOf(index + 1), is(greaterThan(units)));
+        long width = LogHistogram.lowestValueOf(index + 1) - LogHistogram.lowestValueOf(index);
+        assertThat("bucket narrow enough", (double) width, is(lessThanOrEqualTo(Math.max(1, units * 2 * RELATIVE_ERROR))));
+      }
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class percentiles
+  {
+    @Test
+    public void empty_histogram_has_zero_percentiles()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(1);
+      // VERIFY
+      assertThat("count", histogram.getCount(), is(equalTo(0L)));
+      assertThat("p50", histogram.getPercentile(50), is(equalTo(0.0)));
+      assertThat("max", histogram.getMax(), is(equalTo(0.0)));
+    }
+
+    @Test
+    public void uniform_distribution_within_the_stated_error()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(0.001);
+      // EXECUTE
+      for (int i = 1; i <= 100000; i++)
+      {
+        histogram.record(i / 100.0);
+      }
+      // VERIFY
+      assertThat("count", histogram.getCount(), is(equalTo(100000L)));
+      assertThat("p50", histogram.getPercentile(50), is(closeTo(500, 500 * RELATIVE_ERROR)));
+      assertThat("p90", histogram.getPercentile(90), is(closeTo(900, 900 * RELATIVE_ERROR)));
+      assertThat("p99", histogram.getPercentile(99), is(closeTo(990, 990 * RELATIVE_ERROR)));
+      assertThat("p100", histogram.getPercentile(100), is(closeTo(1000, 1000 * RELATIVE_ERROR)));
+      assertThat("p100 not above the max", histogram.getPercentile(100), is(lessThanOrEqualTo(1000.0)));
+      assertThat("max", histogram.getMax(), is(equalTo(1000.0)));
+    }
+
+    @Test
+    public void exponential_distribution_within_the_stated_error()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(0.001);
+      Random random = new Random(7);
+      // EXECUTE
+      for (int i = 0; i < 200000; i++)
+      {
+        histogram.record(-Math.log(1 - random.nextDouble()) * 10);
+      }
+      // VERIFY
+      double median = 10 * Math.log(2);
+      double p99 = 10 * Math.log(100);
+      // the sampling error of 200000 values is far below the bucket error
+      assertThat("p50", histogram.getPercentile(50), is(closeTo(median, median * 2 * RELATIVE_ERROR)));
+      assertThat("p99", histogram.getPercentile(99), is(closeTo(p99, p99 * 2 * RELATIVE_ERROR)));
+    }
+
+    @Test
+    public void single_value_is_every_percentile()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(1);
+      // EXECUTE
+      histogram.record(1000);
+      // VERIFY
+      assertThat("p1", histogram.getPercentile(1), is(closeTo(1000, 1000 * RELATIVE_ERROR)));
+      assertThat("p99", histogram.getPercentile(99), is(closeTo(1000, 1000 * RELATIVE_ERROR)));
+      assertThat("not above the max", histogram.getPercentile(99), is(lessThanOrEqualTo(1000.0)));
+    }
+
+    @Test
+    public void values_out_of_range_are_clamped()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(1);
+      // EXECUTE
+      histogram.record(-5);
+      histogram.record(1e12);
+      // VERIFY
+      assertThat("count", histogram.getCount(), is(equalTo(2L)));
+      assertThat("negative value counted as 0", histogram.getPercentile(50), is(equalTo(0.0)));
+      assertThat("max is kept exactly", histogram.getMax(), is(equalTo(1e12)));
+      assertThat("huge value in the last bucket", histogram.getPercentile(100),
+        is(closeTo(MAX_VALUE, MAX_VALUE * RELATIVE_ERROR)));
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class mergeMethod
+  {
+    @Test
+    public void merged_histogram_equals_histogram_of_all_the_values()
+    {
+      // PREPARE
+      LogHistogram all = new LogHistogram(0.01);
+      LogHistogram first = new LogHistogram(0.01);
+      LogHistogram second = new LogHistogram(0.01);
+      Random random = new Random(3);
+      for (int i = 0; i < 10000; i++)
+      {
+        double value = random.nextDouble() * (i % 2 == 0 ? 10 : 1000);
+        all.record(value);
+        (i % 3 == 0 ? first : second).record(value);
+      }
+      // EXECUTE
+      first.merge(second);
+      // VERIFY
+      assertThat("count", first.getCount(), is(equalTo(all.getCount())));
+      assertThat("max", first.getMax(), is(equalTo(all.getMax())));
+      for (double percentile : new double[] {1, 25, 50, 75, 90, 99, 99.9, 100})
+      {
+        assertThat("p" + percentile, first.getPercentile(percentile), is(equalTo(all.getPercentile(percentile))));
+      }
+    }
+
+    @Test
+    public void merging_empty_histogram_changes_nothing()
+    {
+      // PREPARE
+      LogHistogram histogram = new LogHistogram(1);
+      histogram.record(10);
+      histogram.record(20);
+      // EXECUTE
+      histogram.merge(new LogHistogram(1));
+      // VERIFY
+      assertThat("count", histogram.getCount(), is(equalTo(2L)));
+      assertThat("max", histogram.getMax(), is(equalTo(20.0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void histograms_with_different_units_can_not_be_merged()
+    {
+      new LogHistogram(1).merge(new LogHistogram(0.001));
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package trafficsimulator.simulator.statistics;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+public class StatisticsRollupTest
+{
+  private static final double DELTA = 1e-9;
+
+  /**
+   * @param co2 CO2 of the step, the number of vehicles is always 10
+   * @return values of the step in the order of the metrics
+   */
+  private static double[] values(double co2)
+  {
+    double[] values = new double[StatisticsRollup.METRICS.length];
+    values[StatisticsRollup.CO2] = co2;
+    values[StatisticsRollup.VEHICLES] = 10;
+    return values;
+  }
+
+  /**
+   * @return rollup of 1 s buckets with steps every 0.5 s from 0 to 9.5 s, CO2 of the step is its time
+   */
+  private static StatisticsRollup tenSeconds()
+  {
+    StatisticsRollup rollup = new StatisticsRollup(1);
+    for (int step = 0; step < 20; step++)
+    {
+      rollup.add(step * 0.5, values(step * 0.5));
+    }
+    return rollup;
+  }
+
+  private static double[] times(StatisticsRollup.Timeline timeline)
+  {
+    return Arrays.copyOf(timeline.getTime(), timeline.getLength());
+  }
+
+  private static void assertBucket(StatisticsRollup.Timeline timeline, int index, double min, double max, double sum,
+      double average)
+  {
+    assertThat("min of " + index, timeline.getMin()[StatisticsRollup.CO2][index], is(closeTo(min, DELTA)));
+    assertThat("max of " + index, timeline.getMax()[StatisticsRollup.CO2][index], is(closeTo(max, DELTA)));
+    assertThat("sum of " + index, timeline.getSum()[StatisticsRollup.CO2][index], is(closeTo(sum, DELTA)));
+    assertThat("average of " + index, timeline.getAverage()[StatisticsRollup.CO2][index], is(closeTo(average, DELTA)));
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class addMethod
+  {
+    @Test
+    public void bucket_of_the_time()
+    {
+      // PREPARE
+      StatisticsRollup rollup = new StatisticsRollup(5);
+      // VERIFY
+      assertThat("start of the first bucket", rollup.bucketOf(0), is(equalTo(0)));
+      assertThat("end of the first bucket", rollup.bucketOf(4.999), is(equalTo(0)));
+      assertThat("start of the second bucket", rollup.bucketOf(5), is(equalTo(1)));
+      assertThat("negative time in the first bucket", rollup.bucketOf(-1), is(equalTo(0)));
+    }
+
+    @Test
+    public void steps_far_in_the_simulation_grow_the_buckets()
+    {
+      // PREPARE
+      StatisticsRollup rollup = new StatisticsRollup(1);
+      // EXECUTE
+      rollup.add(0, values(1));
+      rollup.add(1000.5, values(3));
+      StatisticsRollup.Timeline timeline = rollup.read(0, 2000, 1);
+      // VERIFY
+      assertThat("both steps kept", times(timeline), is(equalTo(new double[] {0, 1000})));
+      assertBucket(timeline, 1, 3, 3, 3, 3);
+    }
+  }
+
+  @RunWith(MockitoJUnitRunner.class)
+  public static class readMethod
+  {
+    @Test
+    public void buckets_with_min_max_sum_and_average()
+    {
+      // EXECUTE
+      StatisticsRollup.Timeline timeline = tenSeconds().read(0, 10, 1);
+      // VERIFY
+      assertThat("resolution", timeline.getResolution(), is(equalTo(1.0)));
+      assertThat("bucket every second", timeline.getLength(), is(equalTo(10)));
+      for (int bucket = 0; bucket < 10; bucket++)
+      {
+        assertThat("start of " + bucket, timeline.getTime()[bucket], is(equalTo((double) bucket)));
+        assertBucket(timeline, bucket, bucket, bucket + 0.5, 2 * bucket + 0.5, bucket + 0.25);
+      }
+      assertThat("vehicles average", timeline.getAverage()[StatisticsRollup.VEHICLES][3], is(closeTo(10, DELTA)));
+    }
+
+    @Test
+    public void factor_merges_buckets_and_keeps_the_last_partial_one()
+    {
+      // EXECUTE
+      StatisticsRollup.Timeline timeline = tenSeconds().read(0, 10, 3);
+      // VERIFY
+      assertThat("resolution", timeline.getResolution(), is(equalTo(3.0)));
+      assertThat("starts of the merged buckets", times(timeline), is(equalTo(new double[] {0, 3, 6, 9})));
+      assertBucket(timeline, 0, 0, 2.5, 7.5, 1.25);
+      assertBucket(timeline, 1, 3, 5.5, 25.5, 4.25);
+      assertBucket(timeline, 3, 9, 9.5, 18.5, 9.25);
+    }
+
+    @Test
+    public void unaligned_range_starts_at_the_merged_bucket_containing_it()
+    {
+      // EXECUTE
+      StatisticsRollup.Timeline timeline = tenSeconds().read(4.2, 7.1, 3);
+      // VERIFY
+      assertThat("starts aligned to the factor", times(timeline), is(equalTo(new double[] {3, 6})));
+      assertBucket(timeline, 0, 3, 5.5, 25.5, 4.25);
+      // the range ends in bucket 7, bucket 8 is left out
+      assertBucket(timeline, 1, 6, 7.5, 27, 6.75);
+    }
+
+    @Test
+    public void range_edges_include_their_buckets()
+    {
+      // EXECUTE
+      StatisticsRollup.Timeline timeline = tenSeconds().read(2, 4, 1);
+      // VERIFY
+      assertThat("buckets 2 to 4", times(timeline), is(equalTo(new double[] {2, 3, 4})));
+    }
+
+    @Test
+    public void range_after_the_last_step_is_empty()
+    {
+      // EXECUTE
+      StatisticsRollup.Timeline after = tenSeconds().read(20, 30, 1);
+      StatisticsRollup.Timeline beyond = tenSeconds().read(8, 30, 1);
+      // VERIFY
+      assertThat("nothing after the last step", after.getLength(), is(equalTo(0)));
+      assertThat("range cut at the last step", times(beyond), is(equalTo(new double[] {8, 9})));
+    }
+
+    @Test
+    public void empty_buckets_are_left_out()
+    {
+      // PREPARE
+      StatisticsRollup rollup = new StatisticsRollup(1);
+      rollup.add(0.5, values(1));
+      rollup.add(1.5, values(2));
+      rollup.add(5.5, values(6));
+      rollup.add(5.7, values(-6));
+      // EXECUTE
+      StatisticsRollup.Timeline buckets = rollup.read(0, 10, 1);
+      StatisticsRollup.Timeline merged = rollup.read(0, 10, 2);
+      // VERIFY
+      assertThat("only buckets with steps", times(buckets), is(equalTo(new double[] {0, 1, 5})));
+      assertBucket(buckets, 2, -6, 6, 0, 0);
+      assertThat("only merged buckets with steps", times(merged), is(equalTo(new double[] {0, 4})));
+      assertBucket(merged, 0, 1, 2, 3, 1.5);
+      // the empty bucket 4 does not count into the minimum nor the average
+      assertBucket(merged, 1, -6, 6, 0, 0);
+    }
+  }
+}
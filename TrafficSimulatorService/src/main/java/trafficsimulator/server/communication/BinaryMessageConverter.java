@@ -0,0 +1,133 @@
+package trafficsimulator.server.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import trafficsimulator.server.communication.dto.JsonMessage;
+import trafficsimulator.server.communication.enums.MessageState;
+import trafficsimulator.simulator.output.binary.BinaryFormat;
+import trafficsimulator.simulator.output.binary.BinaryFrameReader;
+import trafficsimulator.simulator.output.binary.BinaryFrameWriter;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+
+/**
+ * @author z003ru0y
+ * Writes {@link JsonMessage} in the compact binary format when the client accepts
+ * {@link BinaryFormat#MEDIA_TYPE}. Steps, frames and map have their binary representation,
+ * other payloads are embedded as JSON.
+ */
+public class BinaryMessageConverter extends AbstractHttpMessageConverter<JsonMessage>
+{
+  private final ObjectMapper objectMapper;
+
+  /**
+   * @param objectMapper mapper for the payloads without binary representation
+   */
+  public BinaryMessageConverter(ObjectMapper objectMapper)
+  {
+    super(MediaType.parseMediaType(BinaryFormat.MEDIA_TYPE));
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz)
+  {
+    return JsonMessage.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void writeInternal(JsonMessage message, HttpOutputMessage outputMessage)
+      throws IOException, HttpMessageNotWritableException
+  {
+    BinaryFrameWriter writer = new BinaryFrameWriter(outputMessage.getBody());
+    Object payload = message.getPayload();
+
+    if (payload == null)
+    {
+      writer.writeHeader(message.getStatus(), message.getStatusMessage(), BinaryFormat.PAYLOAD_NONE);
+    }
+    else if (isStepList(payload))
+    {
+      writer.writeHeader(message.getStatus(), message.getStatusMessage(), BinaryFormat.PAYLOAD_STEPS);
+      writer.writeSteps((List<JsonSimulationStep>) payload);
+    }
+    else if (payload instanceof JsonStepFrames)
+    {
+      writer.writeHeader(message.getStatus(), message.getStatusMessage(), BinaryFormat.PAYLOAD_STEP_FRAMES);
+      writer.writeStepFrames((JsonStepFrames) payload);
+    }
+    else if (payload instanceof JsonSituationLayout)
+    {
+      writer.writeHeader(message.getStatus(), message.getStatusMessage(), BinaryFormat.PAYLOAD_LAYOUT);
+      writer.writeLayout((JsonSituationLayout) payload);
+    }
+    else
+    {
+      writer.writeHeader(message.getStatus(), message.getStatusMessage(), BinaryFormat.PAYLOAD_JSON);
+      writer.writeBytes(objectMapper.writeValueAsBytes(payload));
+    }
+    writer.flush();
+  }
+
+  @Override
+  protected JsonMessage readInternal(Class<? extends JsonMessage> clazz, HttpInputMessage inputMessage)
+      throws IOException, HttpMessageNotReadableException
+  {
+    BinaryFrameReader reader = new BinaryFrameReader(inputMessage.getBody());
+    reader.readMagic();
+    int status = reader.readStatus();
+    String statusMessage = reader.readStatusMessage();
+    int payloadKind = reader.readPayloadKind();
+
+    if (status != MessageState.OK.getNumValue())
+    {
+      return new JsonMessage(MessageState.ERROR, statusMessage);
+    }
+
+    switch (payloadKind)
+    {
+      case BinaryFormat.PAYLOAD_NONE:
+        return new JsonMessage();
+      case BinaryFormat.PAYLOAD_STEPS:
+        return new JsonMessage(reader.readSteps());
+      case BinaryFormat.PAYLOAD_STEP_FRAMES:
+        return new JsonMessage(reader.readStepFrames());
+      case BinaryFormat.PAYLOAD_LAYOUT:
+        return new JsonMessage(reader.readLayout());
+      case BinaryFormat.PAYLOAD_JSON:
+        return new JsonMessage(objectMapper.readValue(new ByteArrayInputStream(reader.readBytes()), Object.class));
+      default:
+        throw new HttpMessageNotReadableException("Unknown payload kind " + payloadKind);
+    }
+  }
+
+  private static boolean isStepList(Object payload)
+  {
+    if (!(payload instanceof List))
+    {
+      return false;
+    }
+
+    for (Object item : (List<?>) payload)
+    {
+      if (!(item instanceof JsonSimulationStep))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
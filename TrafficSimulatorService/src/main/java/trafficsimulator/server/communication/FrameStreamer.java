@@ -0,0 +1,196 @@
+package trafficsimulator.server.communication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import trafficsimulator.server.communication.dto.JsonMessage;
+import trafficsimulator.server.communication.enums.MessageState;
+import trafficsimulator.server.session.SessionMemory;
+import trafficsimulator.simulator.interfaces.SimulationControl;
+import trafficsimulator.simulator.output.DeltaFrameEncoder;
+import trafficsimulator.simulator.output.dto.JsonDeltaFrames;
+import trafficsimulator.simulator.output.dto.JsonDeltaStep;
+import trafficsimulator.simulator.output.dto.JsonSimulationStep;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+
+/**
+ * @author z003ru0y
+ * Pushes frames of the continuous run to the clients as Server-Sent Events.
+ * Every subscriber has its own cursor and its own sender, which writes to the client
+ * as fast as the client reads. Every event carries all the frames produced since
+ * the previous one (up to the maximal batch), so a fast client gets single frames
+ * and a slow one gets bigger batches instead of falling further behind.
+ * On request, the frames are delta encoded for each subscriber separately.
+ */
+public class FrameStreamer
+{
+  private static Logger logger = LoggerFactory.getLogger(FrameStreamer.class);
+
+  private final int maxBatch;
+
+  private final long heartbeatMillis;
+
+  private final int keyframeInterval;
+
+  private final double positionQuantum;
+
+  private final ExecutorService senders;
+
+  /**
+   * @param maxBatch maximal number of frames in one event
+   * @param heartbeatMillis how often to send heartbeat when there are no frames
+   * @param keyframeInterval every how many frames to send a keyframe in delta encoding
+   * @param positionQuantum smallest position change (m) sent in delta encoding
+   */
+  public FrameStreamer(int maxBatch, long heartbeatMillis, int keyframeInterval, double positionQuantum)
+  {
+    this.maxBatch = maxBatch;
+    this.heartbeatMillis = heartbeatMillis;
+    this.keyframeInterval = keyframeInterval;
+    this.positionQuantum = positionQuantum;
+    this.senders = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "frame-streamer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    logger.debug("Frame Streamer started");
+  }
+
+  /**
+   * Starts pushing the frames to a new subscriber, the session is kept from expiring while it is subscribed
+   * @param session session of the subscriber
+   * @param simulationControl simulation with continuous run
+   * @param cursor sequence of the first frame to send
+   * @param delta if true, the frames are sent as {@link JsonDeltaStep}
+   * @return emitter to return from the request handler
+   */
+  public SseEmitter subscribe(SessionMemory session, SimulationControl simulationControl, long cursor, boolean delta)
+  {
+    SseEmitter emitter = new SseEmitter(0L);
+    Subscriber subscriber = new Subscriber(session, simulationControl, emitter, cursor,
+      delta ? new DeltaFrameEncoder(keyframeInterval, positionQuantum) : null);
+    emitter.onCompletion(subscriber::stop);
+    emitter.onTimeout(subscriber::stop);
+    senders.execute(subscriber);
+    return emitter;
+  }
+
+  /**
+   * Stops all the senders
+   */
+  public void shutdown()
+  {
+    senders.shutdownNow();
+  }
+
+  private class Subscriber implements Runnable
+  {
+    /** touched with every event, the subscriber does not send requests which would touch it */
+    private final SessionMemory session;
+
+    private final SimulationControl simulationControl;
+
+    private final SseEmitter emitter;
+
+    /** null if the frames are sent complete */
+    private final DeltaFrameEncoder encoder;
+
+    private long cursor;
+
+    private volatile boolean active;
+
+    Subscriber(SessionMemory session, SimulationControl simulationControl, SseEmitter emitter, long cursor,
+        DeltaFrameEncoder encoder)
+    {
+      this.session = session;
+      this.simulationControl = simulationControl;
+      this.emitter = emitter;
+      this.encoder = encoder;
+      this.cursor = cursor;
+      this.active = true;
+    }
+
+    void stop()
+    {
+      active = false;
+    }
+
+    private Object encode(JsonStepFrames frames)
+    {
+      if (encoder == null)
+      {
+        return frames;
+      }
+
+      List<JsonDeltaStep> steps = new ArrayList<>();
+      for (JsonSimulationStep step : frames.getSteps())
+      {
+        steps.add(encoder.encode(step));
+      }
+      return new JsonDeltaFrames(frames.getNextCursor(), frames.getSkippedFrames(), frames.isRunning(), steps);
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        while (active)
+        {
+          // every loop sends frames or waits at most until the heartbeat
+          session.touch();
+          JsonStepFrames frames = simulationControl.readFrames(cursor, maxBatch);
+          if (!frames.getSteps().isEmpty() || frames.getSkippedFrames() > 0)
+          {
+            emitter.send(SseEmitter.event().name("frames").id(String.valueOf(frames.getNextCursor()))
+              .data(new JsonMessage(encode(frames)), MediaType.APPLICATION_JSON));
+            cursor = frames.getNextCursor();
+          }
+
+          if (!frames.isRunning())
+          {
+            emitter.send(SseEmitter.event().name("end").data(new JsonMessage(), MediaType.APPLICATION_JSON));
+            emitter.complete();
+            return;
+          }
+
+          if (frames.getSteps().isEmpty() && !simulationControl.awaitFrames(cursor, heartbeatMillis))
+          {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+          }
+        }
+      }
+      catch (IOException | IllegalStateException e)
+      {
+        logger.debug("Frame subscriber disconnected: " + e.getMessage());
+      }
+      catch (InterruptedException e)
+      {
+        emitter.complete();
+      }
+      catch (Exception e)
+      {
+        logger.error("Frame streaming failed: " + e.getMessage());
+        try
+        {
+          emitter.send(SseEmitter.event().name("error")
+            .data(new JsonMessage(MessageState.ERROR, "Internal simulation error: " + e.getMessage()),
+              MediaType.APPLICATION_JSON));
+          emitter.complete();
+        }
+        catch (IOException | IllegalStateException sendException)
+        {
+          logger.debug("Frame subscriber disconnected: " + sendException.getMessage());
+        }
+      }
+    }
+  }
+}
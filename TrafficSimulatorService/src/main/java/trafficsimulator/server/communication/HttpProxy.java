@@ -1,20 +1,24 @@
 package trafficsimulator.server.communication;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import trafficsimulator.generator.SumoNetworkConfigurationGenerator;
 import trafficsimulator.generator.exceptions.SumoNetworkGenerationException;
@@ -25,13 +29,16 @@ import trafficsimulator.parser.exceptions.XMLElementNotFoundException;
 import trafficsimulator.server.communication.dto.JsonMessage;
 import trafficsimulator.server.communication.enums.LaneOperation;
 import trafficsimulator.server.communication.enums.MessageState;
+import trafficsimulator.server.exceptions.SessionException;
 import trafficsimulator.server.session.SessionMemory;
+import trafficsimulator.server.session.SessionRegistry;
 import trafficsimulator.shared.dto.Directions;
 import trafficsimulator.shared.dto.GridPosition;
 import trafficsimulator.shared.dto.Intersection;
 import trafficsimulator.shared.dto.Lane;
 import trafficsimulator.shared.dto.Leg;
 import trafficsimulator.shared.dto.SignalGroup;
+import trafficsimulator.shared.enumerators.SituationPart;
 import trafficsimulator.shared.enumerators.VehicleTypeEnum;
 import trafficsimulator.shared.exceptions.InfrastructureElementNotFoundException;
 import trafficsimulator.shared.exceptions.LaneOperationException;
@@ -42,12 +49,17 @@ import trafficsimulator.shared.exceptions.UnknownDirection;
 import trafficsimulator.shared.helper.Computations;
 import trafficsimulator.simulator.exceptions.NoIntersectionInSituationException;
 import trafficsimulator.simulator.exceptions.NoValidRoutesInSituationException;
+import trafficsimulator.simulator.exceptions.SnapshotException;
 import trafficsimulator.simulator.exceptions.TraciException;
+import trafficsimulator.simulator.interfaces.SimulationControl;
+import trafficsimulator.simulator.metrics.MetricsRegistry;
 import trafficsimulator.simulator.output.dto.JsonCoordinates;
 import trafficsimulator.simulator.output.dto.JsonLayoutMetadata;
 import trafficsimulator.simulator.output.dto.JsonRecievedConf;
 import trafficsimulator.simulator.output.dto.JsonSimulationStep;
 import trafficsimulator.simulator.output.dto.JsonSituationLayout;
+import trafficsimulator.simulator.output.dto.JsonStepFrames;
+import trafficsimulator.simulator.output.dto.JsonVehicleStatisticsPage;
 
 /**
  * @author z003ru0y
@@ -67,29 +79,43 @@ public class HttpProxy
   private SumoNetworkConfigurationGenerator generator;
   
   @Autowired
-  private SessionMemory session;
+  private SessionRegistry sessionRegistry;
   
   @Autowired
   private Computations computations;
+  
+  @Autowired
+  private FrameStreamer frameStreamer;
+  
+  @Autowired
+  private MetricsRegistry metrics;
    
 
   /**
    * Retrieves current infrastructure layout
+   * (in compact binary format when the client accepts application/x-trafficsimulator-binary)
+   * @param session session of the client
    * @return json object with infrastructure layout
    * @throws TraciException when some of the traci calls fails
    * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    */
   @GetMapping(value = "/getMap")
-  public JsonMessage getSituationLayout()
+  public JsonMessage getSituationLayout(SessionMemory session)
       throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
   {
     logger.debug("Got /getMap request from client");
     
     if (session.getSituation().getIntersectionList().size() > 0)
     {
-      JsonSituationLayout layout = session.getSimulationControl(true).generateMapData(session.getVisualizationMultiplier());
-      session.deleteCurrentRunner();
+      SimulationControl simulationControl = session.getSimulationControl(true);
+      JsonSituationLayout layout = simulationControl.generateMapData(session.getVisualizationMultiplier());
+      if (!simulationControl.isContinuousRun())
+      {
+        // SUMO goes back to the pool for the next simulation
+        simulationControl.stopSimulation();
+        session.deleteCurrentRunner();
+      }
       return new JsonMessage(layout);
     }
     else
@@ -102,21 +128,54 @@ public class HttpProxy
   }
   
   /**
-   * Retrieves statistical data about current simulation
+   * Retrieves statistical data about current simulation, statistics of the single vehicles
+   * are retrieved by /getVehicleStatistics. The chart data are aggregated (min, max, sum and average
+   * of the steps) when the range has more steps than maxPoints or when the resolution is coarser than the step.
+   * @param session session of the client
+   * @param from start of the time range of the chart data (s)
+   * @param to end of the time range of the chart data (s), the current time when not set
+   * @param resolution time between the chart points (s), 0 for as fine as maxPoints allows
+   * @param maxPoints maximal number of the chart points
    * @return json object with statistical data
    * @throws TraciException when some of the traci calls fails
    * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    */
   @GetMapping(value = "/getStatistics")
-  public JsonMessage getStatistics()
+  public JsonMessage getStatistics(SessionMemory session, @RequestParam(defaultValue = "0") double from,
+    @RequestParam(required = false) Double to, @RequestParam(defaultValue = "0") double resolution,
+    @RequestParam(defaultValue = "1000") int maxPoints)
+      throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
+  {
+    return new JsonMessage(session.getSimulationControl(false).getnerateStatistics(
+      from, to != null ? to : Double.MAX_VALUE, resolution, maxPoints));
+  }
+  
+  /**
+   * Retrieves statistics of the vehicles of current simulation, one page at a time
+   * @param session session of the client
+   * @param offset index of the first vehicle
+   * @param limit maximal number of vehicles
+   * @return json object with statistics of the vehicles
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   */
+  @GetMapping(value = "/getVehicleStatistics")
+  public JsonMessage getVehicleStatistics(SessionMemory session, @RequestParam(defaultValue = "0") int offset,
+    @RequestParam(defaultValue = "100") int limit)
       throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {
-    return new JsonMessage(session.getSimulationControl(false).getnerateStatistics());
+    if (!session.hasSimulationControl())
+    {
+      return new JsonMessage(new JsonVehicleStatisticsPage(offset, 0, new ArrayList<>()));
+    }
+    return new JsonMessage(session.getSimulationControl(false).generateVehicleStatistics(offset, limit));
   }
   
   /**
    * Sets the density of traffic
+   * @param session session of the client
    * @param density traffic generation rate
    * @return generic json message object
    * @throws TraciException when some of the traci calls fails
@@ -124,7 +183,7 @@ public class HttpProxy
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    */
   @GetMapping(value = "/setTrafficDensity")
-  public JsonMessage setTrafficDensity(@RequestParam int density)
+  public JsonMessage setTrafficDensity(SessionMemory session, @RequestParam int density)
       throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {
     logger.debug("Got /setTrafficDensity request from client with param {}", density);
@@ -136,6 +195,7 @@ public class HttpProxy
   
   /**
    * Sets another signal program to specific intersection
+   * @param session session of the client
    * @param intersectionNo id of an intersection
    * @param programId id of a signal program
    * @return generic json message object
@@ -144,7 +204,8 @@ public class HttpProxy
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    */
   @GetMapping(value = "/setSignalProgram")
-  public JsonMessage setSignalProgram(@RequestParam int intersectionNo, @RequestParam String programId)
+  public JsonMessage setSignalProgram(SessionMemory session, @RequestParam int intersectionNo,
+    @RequestParam String programId)
       throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
   {
     logger.debug("Got /setSignalProgram request from client with params {} {}", intersectionNo, programId);
@@ -157,6 +218,7 @@ public class HttpProxy
   
   /**
    * Removes intersection from infrastructure layout
+   * @param session session of the client
    * @param intersectionId id of the intersection to delete
    * @return generic json message object
    * @throws UnknownDirection when some invalid direction occurs
@@ -164,14 +226,14 @@ public class HttpProxy
    * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
    */
   @GetMapping(value = "/deleteIntersection")
-  public JsonMessage deleteIntersection(@RequestParam int intersectionId)
+  public JsonMessage deleteIntersection(SessionMemory session, @RequestParam int intersectionId)
       throws UnknownDirection, SumoNetworkGenerationException, InfrastructureElementNotFoundException
   {
     logger.debug("Got /deleteIntersection request from client with param {}", intersectionId);    
 
     session.getSituation().deleteIntersection(intersectionId);
     computations.connectIntersections(session.getSituation());
-    generator.generateConfiguration(session.getSituation());
+    generator.generateConfiguration(session.getSituation(), session.getConfigurationPath());
     
     return new JsonMessage();
   }
@@ -179,6 +241,7 @@ public class HttpProxy
   /**
    * Handles lane operations: add, delete, change
    * TODO: split
+   * @param session session of the client
    * @param legId id of a leg where we want to put the lane
    * @param intersectionId id of a intersection where we want to put the lane
    * @param left direction
@@ -192,7 +255,8 @@ public class HttpProxy
    * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
    */
   @GetMapping(value = "/laneOperation")
-  public JsonMessage laneOperation(@RequestParam String legId, @RequestParam int intersectionId,
+  public JsonMessage laneOperation(SessionMemory session, @RequestParam String legId,
+    @RequestParam int intersectionId,
     @RequestParam(required = false) Boolean left, 
     @RequestParam(required = false) Boolean straight, 
     @RequestParam(required = false) Boolean right,
@@ -291,9 +355,11 @@ public class HttpProxy
     
     leg.calculateTurns(intersection.getLegs());
     leg.getAllLanes().forEach(lane -> lane.calculateOutputLegs(leg));
+    // the lanes are changed in place, the routes between the legs stay the same
+    session.getSituation().markChanged(SituationPart.NETWORK, SituationPart.TRAFFIC_LIGHTS, SituationPart.DETECTORS);
     
 
-    generator.generateConfiguration(session.getSituation());
+    generator.generateConfiguration(session.getSituation(), session.getConfigurationPath());
 
 
         
@@ -302,6 +368,8 @@ public class HttpProxy
   
   /**
    * Performs multiple steps in a simulation
+   * (in compact binary format when the client accepts application/x-trafficsimulator-binary)
+   * @param session session of the client
    * @param noOfSteps number of steps to perform at once
    * @return json object with data about performed steps
    * @throws TraciException when some of the traci calls fails
@@ -310,7 +378,7 @@ public class HttpProxy
    * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
    */
   @GetMapping(value = "/getDataMultipleStep")
-  public JsonMessage getSimulationDataMultipleStep(@RequestParam int noOfSteps)
+  public JsonMessage getSimulationDataMultipleStep(SessionMemory session, @RequestParam int noOfSteps)
       throws TraciException, NoIntersectionInSituationException, 
       NoValidRoutesInSituationException, InfrastructureElementNotFoundException 
   {
@@ -320,15 +388,263 @@ public class HttpProxy
     return new JsonMessage(list);
   }
   
+  /**
+   * Advances the simulation without sending the intermediate steps, only the last step is returned.
+   * Stops the continuous run, if there is one.
+   * (in compact binary format when the client accepts application/x-trafficsimulator-binary)
+   * @param session session of the client
+   * @param noOfSteps number of steps to perform, has to be positive; used when untilTime is not set
+   * @param untilTime simulation time to reach (ms), has to be later than the current simulation time
+   * @return json object with data about the last step
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
+   */
+  @GetMapping(value = "/fastForward")
+  public JsonMessage fastForward(SessionMemory session, @RequestParam(defaultValue = "1") int noOfSteps,
+    @RequestParam(required = false) Integer untilTime)
+      throws TraciException, NoIntersectionInSituationException, 
+      NoValidRoutesInSituationException, InfrastructureElementNotFoundException 
+  {
+    logger.debug("Got /fastForward request from client with params {} {}", noOfSteps, untilTime);
+    
+    SimulationControl simulationControl = session.getSimulationControl(true);
+    JsonSimulationStep step = untilTime != null
+      ? simulationControl.fastForwardUntil(untilTime, session.getVisualizationMultiplier())
+      : simulationControl.fastForward(noOfSteps, session.getVisualizationMultiplier());
+    return new JsonMessage(Collections.singletonList(step));
+  }
+  
+  /**
+   * Starts stepping the simulation in the background, independently of the client requests
+   * @param session session of the client
+   * @return generic json message
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   */
+  @GetMapping(value = "/startContinuousRun")
+  public JsonMessage startContinuousRun(SessionMemory session)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
+  {
+    logger.info("Got /startContinuousRun request from client");
+    
+    session.getSimulationControl(true).startContinuousRun(session.getVisualizationMultiplier());
+    
+    return new JsonMessage();
+  }
+  
+  /**
+   * Stops stepping the simulation in the background, the simulation itself keeps running
+   * @param session session of the client
+   * @return generic json message
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   */
+  @GetMapping(value = "/stopContinuousRun")
+  public JsonMessage stopContinuousRun(SessionMemory session)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
+  {
+    logger.info("Got /stopContinuousRun request from client");
+    
+    if (session.hasSimulationControl())
+    {
+      session.getSimulationControl(false).stopContinuousRun();
+    }
+    
+    return new JsonMessage();
+  }
+  
+  /**
+   * Reads frames produced by the continuous run
+   * (in compact binary format when the client accepts application/x-trafficsimulator-binary)
+   * @param session session of the client
+   * @param cursor nextCursor from the previous response, 0 for the first request
+   * @param maxFrames maximal number of frames to return
+   * @return json object with the frames and the cursor for the next request
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
+   */
+  @GetMapping(value = "/getFrames")
+  public JsonMessage getFrames(SessionMemory session, @RequestParam long cursor,
+    @RequestParam(defaultValue = "100") int maxFrames)
+      throws TraciException, NoIntersectionInSituationException, 
+      NoValidRoutesInSituationException, InfrastructureElementNotFoundException
+  {
+    logger.debug("Got /getFrames request from client with params {} {}", cursor, maxFrames);
+    
+    if (!session.hasSimulationControl())
+    {
+      return new JsonMessage(new JsonStepFrames(cursor, 0, false, new ArrayList<>()));
+    }
+    return new JsonMessage(session.getSimulationControl(false).readFrames(cursor, maxFrames));
+  }
+  
+  /**
+   * Streams frames of the continuous run as Server-Sent Events, starts the continuous run if needed.
+   * Every "frames" event carries the same object as /getFrames, its id is the cursor to continue from
+   * @param session session of the client
+   * @param cursor sequence of the first frame to send
+   * @param delta if true, the steps are delta encoded (see JsonDeltaStep for reconstruction)
+   * @param lastEventId id of the last received event, sent by the browser on reconnect
+   * @return emitter of the events
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   */
+  @GetMapping(value = "/streamFrames", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamFrames(SessionMemory session, @RequestParam(defaultValue = "0") long cursor,
+    @RequestParam(defaultValue = "false") boolean delta,
+    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
+  {
+    logger.info("Got /streamFrames request from client with params {} {} {}", cursor, delta, lastEventId);
+    
+    SimulationControl simulationControl = session.getSimulationControl(true);
+    simulationControl.startContinuousRun(session.getVisualizationMultiplier());
+    
+    return frameStreamer.subscribe(session, simulationControl, lastEventId != null ? lastEventId : cursor, delta);
+  }
+  
+  /**
+   * Saves the current state of the simulation, so it can be restored later
+   * @param session session of the client
+   * @return json object with the snapshot
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   * @throws SnapshotException when the state could not be stored
+   */
+  @GetMapping(value = "/checkpoint")
+  public JsonMessage checkpoint(SessionMemory session)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException, SnapshotException
+  {
+    logger.info("Got /checkpoint request from client");
+    
+    return new JsonMessage(session.getSimulationControl(true).checkpoint());
+  }
+  
+  /**
+   * Continues the simulation from the snapshot, the client replaces all its vehicles by the returned ones
+   * @param session session of the client
+   * @param snapshotId id of the snapshot
+   * @return json object with data about the restored step
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   * @throws SnapshotException when there is no such snapshot
+   * @throws InfrastructureElementNotFoundException when some element of infrastructure is missing
+   */
+  @GetMapping(value = "/restore")
+  public JsonMessage restore(SessionMemory session, @RequestParam String snapshotId)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException,
+      SnapshotException, InfrastructureElementNotFoundException
+  {
+    logger.info("Got /restore request from client with param {}", snapshotId);
+    
+    if (!session.hasSimulationControl())
+    {
+      throw new SnapshotException("Snapshot not found: " + snapshotId);
+    }
+    JsonSimulationStep step = session.getSimulationControl(false).restore(snapshotId, session.getVisualizationMultiplier());
+    return new JsonMessage(Collections.singletonList(step));
+  }
+  
+  /**
+   * Lists snapshots of the current simulation
+   * @param session session of the client
+   * @return json object with the snapshots
+   * @throws TraciException when some of the traci calls fails
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   */
+  @GetMapping(value = "/getSnapshots")
+  public JsonMessage getSnapshots(SessionMemory session)
+      throws TraciException, NoIntersectionInSituationException, NoValidRoutesInSituationException
+  {
+    logger.debug("Got /getSnapshots request from client");
+    
+    if (!session.hasSimulationControl())
+    {
+      return new JsonMessage(new ArrayList<>());
+    }
+    return new JsonMessage(session.getSimulationControl(false).getSnapshots());
+  }
+  
+  /**
+   * Opens new session, the client sends its token in X-Session-Token header
+   * (or "session" parameter) of all the following requests.
+   * Clients without token share the default session.
+   * @return json object with the session token
+   * @throws SessionException when there is no room for new session
+   */
+  @GetMapping(value = "/createSession")
+  public JsonMessage createSession() throws SessionException
+  {
+    String token = sessionRegistry.createSession();
+    logger.info("Got /createSession request from client, session {} created", token);
+    
+    return new JsonMessage(token);
+  }
+  
+  /**
+   * Retrieves durations of the measured operations of all the sessions (count, total, average
+   * and percentiles, in ms), the TraCI calls are named with prefix "traci.", the stages
+   * of the simulation step with prefix "step."
+   * @param reset if true, the metrics are cleared after they are read
+   * @return json object with the metrics by operation name
+   */
+  @GetMapping(value = "/getMetrics")
+  public JsonMessage getMetrics(@RequestParam(defaultValue = "false") boolean reset)
+  {
+    logger.debug("Got /getMetrics request from client");
+    
+    JsonMessage message = new JsonMessage(metrics.generateMetrics());
+    if (reset)
+    {
+      metrics.clear();
+    }
+    return message;
+  }
+  
+  /**
+   * Closes the session together with its simulation
+   * @param session session of the client
+   * @return generic json message
+   */
+  @GetMapping(value = "/closeSession")
+  public JsonMessage closeSession(SessionMemory session)
+  {
+    logger.info("Got /closeSession request from client for session {}", session.getToken());
+    
+    sessionRegistry.closeSession(session);
+    
+    return new JsonMessage();
+  }
+  
   /**
    * Resets everything in a simulation
+   * @param session session of the client
    * @return generic json message
+   * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
+   * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
+   * @throws TraciException when some of the traci calls fails
    */
   @GetMapping(value = "/resetSimulation")
-  public JsonMessage clearSituation()
+  public JsonMessage clearSituation(SessionMemory session)
+      throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {
     logger.info("Got /resetSimulation request from client");
     
+    if (session.hasSimulationControl())
+    {
+      session.getSimulationControl(false).stopContinuousRun();
+    }
+    
     session.setUpNewSessionData();
     session.deleteCurrentRunner();
     
@@ -337,13 +653,14 @@ public class HttpProxy
   
   /**
    * Correctly stops simulation
+   * @param session session of the client
    * @return generic json message
    * @throws NoIntersectionInSituationException when there are no intersections present in infrastructure
    * @throws NoValidRoutesInSituationException when there are no valid routes present in infrastructure
    * @throws TraciException when some of the traci calls fails
    */
   @GetMapping(value = "/stopSimulation")
-  public JsonMessage stopSimulation()
+  public JsonMessage stopSimulation(SessionMemory session)
       throws NoIntersectionInSituationException, NoValidRoutesInSituationException, TraciException
   {
     logger.info("Got /stopSimulation request from client");
@@ -359,6 +676,7 @@ public class HttpProxy
     
   /**
    * Adds new intersection to traffic infrastructure
+   * @param session session of the client
    * @param request json object with the request
    * @return generic json message
    * @throws NoVehicleTypesForSimulation when no vehycle types were selected
@@ -371,16 +689,16 @@ public class HttpProxy
    * @throws InfrastructureElementNotFoundException when some of the infrastructure elements is missing
    */
   @PostMapping(value = "/sendConfiguration")
-  public JsonMessage addIntersection(@RequestBody JsonRecievedConf request) 
+  public JsonMessage addIntersection(SessionMemory session, @RequestBody JsonRecievedConf request) 
       throws NoVehicleTypesForSimulation, UnknownDirection, OccupiedGridPositionException, 
       SumoNetworkGenerationException, NoXmlStringProvidedException, 
       XMLElementNotFoundException, XMLElementInvalidValueException, InfrastructureElementNotFoundException
   {
     logger.info("Got /sendConfiguration request from client");
   
-    setVehicleTypes(request);
+    setVehicleTypes(session, request);
     
-    Optional<GridPosition> gridPosition = resolveGridPosition(request);
+    Optional<GridPosition> gridPosition = resolveGridPosition(session, request);
     Intersection parsedIntersection = null;
     /**
      * parsing is disabled in public version
@@ -389,12 +707,12 @@ public class HttpProxy
     session.getSituation().addIntersection(parsedIntersection);
     computations.connectIntersections(session.getSituation());
     
-    generator.generateConfiguration(session.getSituation()); 
+    generator.generateConfiguration(session.getSituation(), session.getConfigurationPath()); 
     
     return new JsonMessage();
   }
   
-  private Optional<GridPosition> resolveGridPosition(JsonRecievedConf request) 
+  private Optional<GridPosition> resolveGridPosition(SessionMemory session, JsonRecievedConf request) 
     throws UnknownDirection, OccupiedGridPositionException, InfrastructureElementNotFoundException
   {
     Optional<GridPosition> gridPosition = Optional.empty();
@@ -414,7 +732,7 @@ public class HttpProxy
     return gridPosition;
   }
   
-  private void setVehicleTypes(JsonRecievedConf request) throws NoVehicleTypesForSimulation
+  private void setVehicleTypes(SessionMemory session, JsonRecievedConf request) throws NoVehicleTypesForSimulation
   {
     if (request.isFirstIntersection())
     {
@@ -503,6 +821,18 @@ public class HttpProxy
     {
       errorMessage = "Situation infrastructure element not found: " + exception.getMessage();
     }
+    else if (exception instanceof SessionException)
+    {
+      errorMessage = "Session error: " + exception.getMessage();
+    }
+    else if (exception instanceof SnapshotException)
+    {
+      errorMessage = "Snapshot error: " + exception.getMessage();
+    }
+    else if (exception instanceof IllegalArgumentException)
+    {
+      errorMessage = "Invalid request: " + exception.getMessage();
+    }
     else
     {
       errorMessage = "general error";
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
 import lombok.Getter;
+import trafficsimulator.simulator.control.BackpressurePolicy;
 import trafficsimulator.shared.helper.FileNames;
 
 /**
@@ -25,6 +26,45 @@ public class EnvironmentVariables
   @Getter
   private final double simulationStepLength;
   
+  @Getter
+  private final boolean vehicleSubscriptions;
+  
+  @Getter
+  private final boolean commandPipelining;
+  
+  @Getter
+  private final boolean traciMetrics;
+  
+  @Getter
+  private final boolean stepMetrics;
+  
+  @Getter
+  private final boolean stepTiming;
+  
+  @Getter
+  private final int frameBufferSize;
+  
+  @Getter
+  private final BackpressurePolicy backpressurePolicy;
+  
+  @Getter
+  private final int maxSnapshots;
+  
+  @Getter
+  private final String tripLogDirectory;
+  
+  @Getter
+  private final long artifactCacheSize;
+  
+  @Getter
+  private final int generatorThreads;
+  
+  @Getter
+  private final int toolProcesses;
+  
+  @Getter
+  private final long toolTimeout;
+  
   @Getter
   private final double distanceBetweenIntersections;
   
@@ -34,6 +74,33 @@ public class EnvironmentVariables
   @Getter
   private final int visualizationMultiplier;
   
+  @Getter
+  private final int streamMaxBatch;
+  
+  @Getter
+  private final long streamHeartbeat;
+  
+  @Getter
+  private final int streamKeyframeInterval;
+  
+  @Getter
+  private final double streamPositionQuantum;
+  
+  @Getter
+  private final int maxSessions;
+  
+  @Getter
+  private final long sessionTtl;
+  
+  @Getter
+  private final int sumoPoolSize;
+  
+  @Getter
+  private final long sumoPoolIdleTimeout;
+  
+  @Getter
+  private final int sumoBasePort;
+  
   @Getter
   private final FileNames files;
   
@@ -48,18 +115,82 @@ public class EnvironmentVariables
 
     simulationStepLength = Double.parseDouble(env.getProperty("trafficsimulator.simulator.simsteplength"));
     
+    vehicleSubscriptions = Boolean.parseBoolean(env.getProperty("trafficsimulator.simulator.subscriptions", "true"));
+    
+    commandPipelining = Boolean.parseBoolean(env.getProperty("trafficsimulator.simulator.pipelining", "true"));
+    
+    traciMetrics = Boolean.parseBoolean(env.getProperty("trafficsimulator.simulator.metrics.traci", "true"));
+    
+    stepMetrics = Boolean.parseBoolean(env.getProperty("trafficsimulator.simulator.metrics.steps", "true"));
+    
+    stepTiming = Boolean.parseBoolean(env.getProperty("trafficsimulator.simulator.steptiming", "false"));
+    
+    frameBufferSize = Integer.parseInt(env.getProperty("trafficsimulator.simulator.framebuffer", "256"));
+    
+    String backpressure = env.getProperty("trafficsimulator.simulator.backpressure", "block");
+    backpressurePolicy = BackpressurePolicy.fromKey(backpressure)
+      .orElseThrow(() -> new IllegalArgumentException("Unknown backpressure policy: " + backpressure));
+    
+    maxSnapshots = Integer.parseInt(env.getProperty("trafficsimulator.simulator.snapshots.max", "20"));
+    
+    tripLogDirectory = env.getProperty("trafficsimulator.simulator.triplog.directory", "").trim();
+    
+    artifactCacheSize = Long.parseLong(env.getProperty("trafficsimulator.generator.cache.maxsize", "256")) * 1024 * 1024;
+    
+    generatorThreads = Integer.parseInt(env.getProperty("trafficsimulator.generator.threads", "4"));
+    
+    toolProcesses = Integer.parseInt(env.getProperty("trafficsimulator.generator.tools.maxprocesses", "2"));
+    
+    toolTimeout = Long.parseLong(env.getProperty("trafficsimulator.generator.tools.timeout", "120000"));
+    
     distanceBetweenIntersections = Double.parseDouble(env.getProperty("trafficsimulator.generator.distance"));
     
     legLength = Double.parseDouble(env.getProperty("trafficsimulator.generator.leglength"));
     
     visualizationMultiplier = Integer.parseInt(env.getProperty("trafficsimulator.server.multiplier"));
     
+    streamMaxBatch = Integer.parseInt(env.getProperty("trafficsimulator.server.stream.maxbatch", "50"));
+    
+    streamHeartbeat = Long.parseLong(env.getProperty("trafficsimulator.server.stream.heartbeat", "15000"));
+    
+    streamKeyframeInterval = Integer.parseInt(env.getProperty("trafficsimulator.server.stream.keyframe", "20"));
+    
+    streamPositionQuantum = Double.parseDouble(env.getProperty("trafficsimulator.server.stream.quantum", "0.1"));
+    
+    maxSessions = Integer.parseInt(env.getProperty("trafficsimulator.server.sessions.max", "50"));
+    
+    sessionTtl = Long.parseLong(env.getProperty("trafficsimulator.server.sessions.ttl", "1800000"));
+    
+    sumoPoolSize = Integer.parseInt(env.getProperty("trafficsimulator.simulator.pool.size", "2"));
+    
+    sumoPoolIdleTimeout = Long.parseLong(env.getProperty("trafficsimulator.simulator.pool.idletimeout", "600000"));
+    
+    sumoBasePort = Integer.parseInt(env.getProperty("trafficsimulator.simulator.pool.baseport", "0"));
+    
     files = parseFiles(env);
     
     logger.info("Environment variables from appliaction.properties below.");
     logger.info("Sumo configuration path: {}", sumoConfigurationPath);
     logger.info("Maximum number of vehicles: {}", maxVehicles);
     logger.info("Simulation step length[s]: {}", simulationStepLength);
+    logger.info("Vehicle subscriptions: {}", vehicleSubscriptions);
+    logger.info("Command pipelining: {}", commandPipelining);
+    logger.info("TraCI call metrics: {}", traciMetrics);
+    logger.info("Step stage metrics: {}", stepMetrics);
+    logger.info("Step timing in every step: {}", stepTiming);
+    logger.info("Frame buffer size: {}", frameBufferSize);
+    logger.info("Backpressure policy: {}", backpressurePolicy.getValue());
+    logger.info("Maximum number of snapshots: {}", maxSnapshots);
+    logger.info("Trip log directory: {}", tripLogDirectory.isEmpty() ? "none" : tripLogDirectory);
+    logger.info("Artifact cache size[B]: {}", artifactCacheSize);
+    logger.info("Files generated in parallel: {}", generatorThreads);
+    logger.info("Tools running at once: {}", toolProcesses);
+    logger.info("Tool timeout[ms]: {}", toolTimeout);
+    logger.info("Maximum number of sessions: {}", maxSessions);
+    logger.info("Session time to live[ms]: {}", sessionTtl);
+    logger.info("Warm SUMO processes: {}", sumoPoolSize);
+    logger.info("Warm SUMO idle timeout[ms]: {}", sumoPoolIdleTimeout);
+    logger.info("Port of the first SUMO process: {}", sumoBasePort);
     
     logger.debug("Environment variables initialized");
   }
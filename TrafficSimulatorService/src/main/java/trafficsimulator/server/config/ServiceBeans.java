@@ -1,18 +1,24 @@
 package trafficsimulator.server.config;
 
+import java.io.File;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import trafficsimulator.generator.ArtifactCache;
+import trafficsimulator.generator.ProcessRunner;
 import trafficsimulator.generator.SumoNetworkConfigurationGenerator;
 import trafficsimulator.generator.XmlGenerator;
 import trafficsimulator.parser.ConfigurationParser;
-import trafficsimulator.server.session.SessionMemory;
+import trafficsimulator.server.communication.FrameStreamer;
+import trafficsimulator.server.session.SessionRegistry;
 import trafficsimulator.shared.helper.Computations;
 import trafficsimulator.simulator.control.SimulationControlFactory;
-import trafficsimulator.simulator.traci.TraciService;
-import trafficsimulator.simulator.traci.impl.TraciServiceImpl;
+import trafficsimulator.simulator.control.TraciServiceFactory;
+import trafficsimulator.simulator.metrics.MetricsRegistry;
+import trafficsimulator.simulator.traci.impl.SumoProcessPool;
 
 /**
  * @author z003ru0y
@@ -21,6 +27,10 @@ import trafficsimulator.simulator.traci.impl.TraciServiceImpl;
 @Configuration
 public class ServiceBeans
 {
+  /** directory of the cache of netconvert and duarouter outputs under the configuration path */
+  private static final String ARTIFACT_CACHE_DIRECTORY = "cache";
+
+  private static final String SUMO_POOL_DIRECTORY = "pool";
 
   @Autowired
   private Environment env;
@@ -68,49 +78,113 @@ public class ServiceBeans
     return new XmlGenerator(vars.getFiles());
   }
 
+  /**
+   * Runs netconvert and duarouter for all the sessions
+   * @param vars EnvironmentVariables instance
+   * @return ProcessRunner instance
+   */
+  @Bean
+  public ProcessRunner createProcessRunner(EnvironmentVariables vars)
+  {
+    return new ProcessRunner(vars.getToolProcesses(), vars.getToolTimeout());
+  }
+
   /**
    * Generates XML configuration files for SUMO
    * @param vars EnvironmentVariables instance
+   * @param processRunner ProcessRunner instance
    * @return SumoNetworkConfigurationGenerator instance
    */
   @Bean
-  public SumoNetworkConfigurationGenerator createSumoXmlGenerator(EnvironmentVariables vars)
+  public SumoNetworkConfigurationGenerator createSumoXmlGenerator(EnvironmentVariables vars, ProcessRunner processRunner)
   {
-    return new SumoNetworkConfigurationGenerator(vars.getSumoConfigurationPath(), vars.getFiles());
+    ArtifactCache artifactCache = vars.getArtifactCacheSize() > 0
+      ? new ArtifactCache(vars.getSumoConfigurationPath() + ARTIFACT_CACHE_DIRECTORY + File.separator, vars.getArtifactCacheSize())
+      : null;
+    return new SumoNetworkConfigurationGenerator(vars.getSumoConfigurationPath(), vars.getFiles(), artifactCache,
+      processRunner, vars.getGeneratorThreads());
   }
 
   /**
    * Generates new SimulationControl instances when needed
    * @param vars EnvironmentVariables instance
+   * @param metrics MetricsRegistry instance
    * @return SimulationControlFactory instance
    */
   @Bean
-  public SimulationControlFactory createSimulationRunnerFactory(EnvironmentVariables vars)
+  public SimulationControlFactory createSimulationRunnerFactory(EnvironmentVariables vars, MetricsRegistry metrics)
   {
-    return new SimulationControlFactory(vars.getSimulationStepLength(), vars.getMaxVehicles());
+    return new SimulationControlFactory(vars.getSimulationStepLength(), vars.getMaxVehicles(),
+      vars.getFrameBufferSize(), vars.getBackpressurePolicy(), vars.getMaxSnapshots(),
+      vars.getTripLogDirectory(), vars.isStepMetrics() ? metrics : null, vars.isStepTiming());
   }
   
   /**
-   * TraciService for communicating with SUMO
+   * Keeps SUMO processes running, so the simulation does not wait for SUMO to start
+   * @param vars EnvironmentVariables instance
+   * @return SumoProcessPool instance
+   */
+  @Bean
+  public SumoProcessPool createSumoProcessPool(EnvironmentVariables vars)
+  {
+    SumoProcessPool pool = new SumoProcessPool(vars.getSimulationStepLength(), vars.getSumoPoolSize(),
+      vars.getSumoPoolIdleTimeout(), vars.getSumoBasePort(), vars.getMaxSessions() + vars.getSumoPoolSize(),
+      vars.getSumoConfigurationPath() + SUMO_POOL_DIRECTORY + File.separator, vars.getFiles().getNetworkFileName());
+    pool.prestart();
+    return pool;
+  }
+
+  /**
+   * Durations of the operations of all the sessions
+   * @return MetricsRegistry instance
+   */
+  @Bean
+  public MetricsRegistry createMetricsRegistry()
+  {
+    return new MetricsRegistry();
+  }
+
+  /**
+   * Generates TraciService for communicating with SUMO of every session
+   * @param vars EnvironmentVariables instance
+   * @param pool SumoProcessPool instance
+   * @param metrics MetricsRegistry instance
+   * @return TraciServiceFactory instance
+   */
+  @Bean
+  public TraciServiceFactory createTraciServiceFactory(EnvironmentVariables vars, SumoProcessPool pool,
+      MetricsRegistry metrics)
+  {
+    return new TraciServiceFactory(vars.getSimulationStepLength(), vars.getFiles().getSumoConfigurationFileName(),
+        vars.getFiles().getNetworkFileName(), vars.isVehicleSubscriptions(), vars.isCommandPipelining(), pool,
+        vars.isTraciMetrics() ? metrics : null);
+  }
+
+  /**
+   * Pushes frames of the continuous run to the streaming clients
    * @param vars EnvironmentVariables instance
-   * @return TraciService instance
+   * @return FrameStreamer instance
    */
   @Bean
-  public TraciService createTraciService(EnvironmentVariables vars)
+  public FrameStreamer createFrameStreamer(EnvironmentVariables vars)
   {
-    return new TraciServiceImpl(
-        vars.getSumoConfigurationPath(), vars.getSimulationStepLength(), vars.getFiles().getSumoConfigurationFileName());
+    return new FrameStreamer(vars.getStreamMaxBatch(), vars.getStreamHeartbeat(),
+      vars.getStreamKeyframeInterval(), vars.getStreamPositionQuantum());
   }
 
   /**
-   * Contains current relevant data about ongoing simulation
+   * Contains current relevant data about ongoing simulations of all the sessions
    * @param vars EnvironmentVariables instance
-   * @return SessionMemory instance
+   * @param traciServiceFactory TraciServiceFactory instance
+   * @param simulationControlFactory SimulationControlFactory instance
+   * @return SessionRegistry instance
    */
   @Bean
-  public SessionMemory createSessionMemoryInstance(EnvironmentVariables vars)
+  public SessionRegistry createSessionRegistry(EnvironmentVariables vars, TraciServiceFactory traciServiceFactory,
+      SimulationControlFactory simulationControlFactory)
   {
-    return new SessionMemory(vars.getVisualizationMultiplier());
+    return new SessionRegistry(vars.getSumoConfigurationPath(), vars.getMaxSessions(), vars.getSessionTtl(),
+      vars.getVisualizationMultiplier(), traciServiceFactory, simulationControlFactory);
   }
 
   
@@ -0,0 +1,61 @@
+package trafficsimulator.server.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import trafficsimulator.server.communication.BinaryMessageConverter;
+import trafficsimulator.server.session.SessionArgumentResolver;
+import trafficsimulator.server.session.SessionInterceptor;
+import trafficsimulator.server.session.SessionRegistry;
+
+/**
+ * @author z003ru0y
+ * Registers the additional message formats and the session handling
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer
+{
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private SessionRegistry sessionRegistry;
+
+  /**
+   * Binary format is added after JSON, so it is used only when the client asks for it
+   * @param converters converters configured by Spring
+   */
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters)
+  {
+    converters.add(new BinaryMessageConverter(objectMapper));
+  }
+
+  /**
+   * Finds and locks the session for the handlers which work with it
+   * @param registry interceptor registry
+   */
+  @Override
+  public void addInterceptors(InterceptorRegistry registry)
+  {
+    registry.addInterceptor(new SessionInterceptor(sessionRegistry));
+  }
+
+  /**
+   * Passes the session to the handlers
+   * @param resolvers resolvers configured by Spring
+   */
+  @Override
+  public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers)
+  {
+    resolvers.add(new SessionArgumentResolver());
+  }
+}
@@ -0,0 +1,19 @@
+package trafficsimulator.server.exceptions;
+
+/**
+ * @author z003ru0y
+ * When the session can not be opened (invalid token, all the sessions are busy)
+ */
+public class SessionException extends Exception
+{
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message error message
+   */
+  public SessionException(String message)
+  {
+    super(message);
+  }
+}
@@ -0,0 +1,28 @@
+package trafficsimulator.server.session;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * @author z003ru0y
+ * Passes the session found by SessionInterceptor to the handler parameter of type SessionMemory
+ */
+public class SessionArgumentResolver implements HandlerMethodArgumentResolver
+{
+  @Override
+  public boolean supportsParameter(MethodParameter parameter)
+  {
+    return SessionMemory.class.equals(parameter.getParameterType());
+  }
+
+  @Override
+  public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+      NativeWebRequest webRequest, WebDataBinderFactory binderFactory)
+  {
+    return webRequest.getAttribute(SessionInterceptor.SESSION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+  }
+}
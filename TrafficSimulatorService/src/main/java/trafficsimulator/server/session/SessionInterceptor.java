@@ -0,0 +1,108 @@
+package trafficsimulator.server.session;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * @author z003ru0y
+ * Finds the session of the request by its token (header X-Session-Token or parameter "session")
+ * and holds the session lock while the request is handled, so the requests of one session
+ * are handled one after another while different sessions run in parallel.
+ * Only handlers which take SessionMemory as parameter are intercepted.
+ */
+public class SessionInterceptor implements AsyncHandlerInterceptor
+{
+  /** header with the session token */
+  public static final String TOKEN_HEADER = "X-Session-Token";
+
+  /** request parameter with the session token, for clients which can not set the header (EventSource) */
+  public static final String TOKEN_PARAMETER = "session";
+
+  /** request attribute with the locked session */
+  static final String SESSION_ATTRIBUTE = SessionInterceptor.class.getName() + ".session";
+
+  private final SessionRegistry registry;
+
+  /**
+   * @param registry sessions of all the users
+   */
+  public SessionInterceptor(SessionRegistry registry)
+  {
+    this.registry = registry;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+      throws Exception
+  {
+    if (!needsSession(handler))
+    {
+      return true;
+    }
+
+    String token = request.getHeader(TOKEN_HEADER);
+    if (token == null)
+    {
+      token = request.getParameter(TOKEN_PARAMETER);
+    }
+
+    SessionMemory session = registry.getSession(token);
+    session.getLock().lock();
+    while (session.isClosed())
+    {
+      // the session was closed while the request waited for it
+      session.getLock().unlock();
+      session = registry.getSession(token);
+      session.getLock().lock();
+    }
+
+    request.setAttribute(SESSION_ATTRIBUTE, session);
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+      Object handler) throws Exception
+  {
+    // the response is produced by another thread, the session is not needed anymore
+    release(request);
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+      Exception ex) throws Exception
+  {
+    release(request);
+  }
+
+  private static void release(HttpServletRequest request)
+  {
+    Object session = request.getAttribute(SESSION_ATTRIBUTE);
+    if (session != null)
+    {
+      request.removeAttribute(SESSION_ATTRIBUTE);
+      ((SessionMemory) session).getLock().unlock();
+    }
+  }
+
+  private static boolean needsSession(Object handler)
+  {
+    if (!(handler instanceof HandlerMethod))
+    {
+      return false;
+    }
+
+    for (MethodParameter parameter : ((HandlerMethod) handler).getMethodParameters())
+    {
+      if (SessionMemory.class.equals(parameter.getParameterType()))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
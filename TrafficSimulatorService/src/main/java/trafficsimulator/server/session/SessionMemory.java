@@ -1,8 +1,10 @@
 package trafficsimulator.server.session;
 
+import java.io.File;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 
 import lombok.Getter;
 import trafficsimulator.shared.dto.Situation;
@@ -11,35 +13,68 @@ import trafficsimulator.simulator.control.SimulationControlFactory;
 import trafficsimulator.simulator.exceptions.NoIntersectionInSituationException;
 import trafficsimulator.simulator.exceptions.NoValidRoutesInSituationException;
 import trafficsimulator.simulator.exceptions.TraciException;
+import trafficsimulator.simulator.traci.TraciService;
 
 /**
  * @author z003ru0y
- * Contains current relevant data about ongoing simulation
+ * Contains current relevant data about ongoing simulation of one session
  */
 public class SessionMemory
 {
   private static Logger logger = LoggerFactory.getLogger(SessionMemory.class);
 
+  private static final String SNAPSHOTS_DIRECTORY = "snapshots";
+
+  @Getter
+  private final String token;
+
   @Getter
   private Situation situation;
 
   private SimulationControl simulationControl;
-  
+
   @Getter
   private final int visualizationMultiplier;
- 
-  @Autowired
-  private SimulationControlFactory simulationControlFactory;
+
+  /** directory with the SUMO configuration files of the session, ends with separator */
+  @Getter
+  private final String configurationPath;
+
+  private final TraciService traciService;
+
+  private final SimulationControlFactory simulationControlFactory;
+
+  /** held by the request which works with the session, so the requests of one session do not overlap */
+  @Getter
+  private final ReentrantLock lock;
+
+  @Getter
+  private volatile long lastAccess;
+
+  /** true after the session was removed from the registry and closed */
+  @Getter
+  private volatile boolean closed;
 
   /**
    * creates new instance and sets up new situation
+   * @param token session token
    * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @param configurationPath directory with the SUMO configuration files of the session
+   * @param traciService connection to SUMO of the session
+   * @param simulationControlFactory creates simulation control for the session
    */
-  public SessionMemory(int visualizationMultiplier)
-  {    
+  public SessionMemory(String token, int visualizationMultiplier, String configurationPath,
+      TraciService traciService, SimulationControlFactory simulationControlFactory)
+  {
+    this.token = token;
     this.visualizationMultiplier = visualizationMultiplier;
+    this.configurationPath = configurationPath;
+    this.traciService = traciService;
+    this.simulationControlFactory = simulationControlFactory;
+    this.lock = new ReentrantLock();
+    touch();
     setUpNewSessionData();
-    logger.debug("Session Memory started");
+    logger.debug("Session Memory {} started", token);
   }
 
   /**
@@ -51,6 +86,14 @@ public class SessionMemory
     logger.debug("New situation set");
   }
 
+  /**
+   * Marks the session as used right now
+   */
+  public void touch()
+  {
+    lastAccess = System.currentTimeMillis();
+  }
+
   /**
    * Retrieves current simulation control
    * @param createNewIfNull if true, than the instance is created if its missing
@@ -65,7 +108,8 @@ public class SessionMemory
     if (simulationControl == null && createNewIfNull)
     {
       logger.debug("Creating new simulation control");
-      simulationControl = simulationControlFactory.createSimulationControl(situation);      
+      simulationControl = simulationControlFactory.createSimulationControl(situation, traciService,
+        configurationPath + SNAPSHOTS_DIRECTORY + File.separator, token);
       return simulationControl;
     }
     logger.debug("Using existing simulation control");
@@ -80,7 +124,7 @@ public class SessionMemory
     simulationControl = null;
     logger.debug("Simulation control removed");
   }
-  
+
   /**
    * @return true if simulation control has current instance set up
    */
@@ -89,4 +133,31 @@ public class SessionMemory
     return simulationControl != null;
   }
 
+  /**
+   * @return true if the simulation of the session is stepped in the background
+   */
+  public boolean isContinuousRun()
+  {
+    return simulationControl != null && simulationControl.isContinuousRun();
+  }
+
+  /**
+   * Stops the simulation of the session and its SUMO process
+   */
+  public void close()
+  {
+    closed = true;
+    if (simulationControl != null)
+    {
+      simulationControl.stopSimulation();
+      deleteCurrentRunner();
+    }
+    else
+    {
+      // SUMO may be still running after the map was generated, give it back
+      traciService.stopSimulation();
+    }
+    logger.info("Session {} closed", token);
+  }
+
 }
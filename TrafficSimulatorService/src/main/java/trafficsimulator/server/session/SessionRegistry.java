@@ -0,0 +1,315 @@
+package trafficsimulator.server.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import trafficsimulator.server.exceptions.SessionException;
+import trafficsimulator.simulator.control.SimulationControlFactory;
+import trafficsimulator.simulator.control.TraciServiceFactory;
+
+/**
+ * @author z003ru0y
+ * Sessions of all the users by session token. Every session has its own situation, its own
+ * connection to SUMO (process from the pool) and its own directory with SUMO configuration.
+ * Sessions which were not used for the time to live are closed, when there are too many
+ * sessions, the least recently used one which is not being used right now and does not run
+ * continuously is closed.
+ */
+public class SessionRegistry
+{
+  private static Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
+
+  /** token of the session used by clients which do not send any token */
+  public static final String DEFAULT_TOKEN = "default";
+
+  /** the token is used as directory name */
+  private static final Pattern TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private static final String SESSIONS_DIRECTORY = "sessions";
+
+  /** how often are the idle sessions looked for at most (ms) */
+  private static final long EVICTION_PERIOD = 60000;
+
+  /** sessions in access order, the least recently used first */
+  private final Map<String, SessionMemory> sessions;
+
+  private final String configurationPath;
+
+  private final int maxSessions;
+
+  private final long sessionTtl;
+
+  private final int visualizationMultiplier;
+
+  private final TraciServiceFactory traciServiceFactory;
+
+  private final SimulationControlFactory simulationControlFactory;
+
+  private final ScheduledExecutorService evictor;
+
+  /**
+   * @param configurationPath path under which the session directories are created
+   * @param maxSessions maximal number of open sessions
+   * @param sessionTtl after how long without request the session is closed (ms)
+   * @param visualizationMultiplier how to multiply vehicle dimensions for web
+   * @param traciServiceFactory creates connection to SUMO for every session
+   * @param simulationControlFactory creates simulation control for every session
+   */
+  public SessionRegistry(String configurationPath, int maxSessions, long sessionTtl,
+      int visualizationMultiplier, TraciServiceFactory traciServiceFactory,
+      SimulationControlFactory simulationControlFactory)
+  {
+    this.configurationPath = configurationPath;
+    this.maxSessions = maxSessions;
+    this.sessionTtl = sessionTtl;
+    this.visualizationMultiplier = visualizationMultiplier;
+    this.traciServiceFactory = traciServiceFactory;
+    this.simulationControlFactory = simulationControlFactory;
+    this.sessions = new LinkedHashMap<>(maxSessions, 0.75f, true);
+
+    this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "session-eviction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.min(sessionTtl, EVICTION_PERIOD);
+    evictor.scheduleWithFixedDelay(this::closeExpiredSessions, period, period, TimeUnit.MILLISECONDS);
+
+    logger.debug("Session Registry started, max sessions: {}, ttl: {} ms", maxSessions, sessionTtl);
+  }
+
+  /**
+   * Opens new session with random token
+   * @return token of the new session
+   * @throws SessionException when there is no room for new session
+   */
+  public String createSession() throws SessionException
+  {
+    String token = UUID.randomUUID().toString();
+    getSession(token);
+    return token;
+  }
+
+  /**
+   * Retrieves the session, opens new one if the session with the token is not open.
+   * When there are too many sessions, the least recently used idle session is closed.
+   * @param token session token, null or empty for the default session
+   * @return session
+   * @throws SessionException when the token is invalid or there is no room for new session
+   */
+  public SessionMemory getSession(String token) throws SessionException
+  {
+    String sessionToken = token == null || token.isEmpty() ? DEFAULT_TOKEN : token;
+    if (!TOKEN_PATTERN.matcher(sessionToken).matches())
+    {
+      throw new SessionException("Invalid session token");
+    }
+
+    while (true)
+    {
+      SessionMemory evicted;
+      synchronized (sessions)
+      {
+        SessionMemory session = sessions.get(sessionToken);
+        if (session != null)
+        {
+          session.touch();
+          return session;
+        }
+
+        if (sessions.size() < maxSessions)
+        {
+          session = openSession(sessionToken);
+          sessions.put(sessionToken, session);
+          return session;
+        }
+
+        evicted = removeIdleSession(0);
+      }
+
+      if (evicted == null)
+      {
+        throw new SessionException("All " + maxSessions + " sessions are in use");
+      }
+      logger.info("Session {} closed to make room for {}", evicted.getToken(), sessionToken);
+      closeRemovedSession(evicted);
+    }
+  }
+
+  /**
+   * Closes the session, if it is open. The session has to be locked by the caller,
+   * the lock stays held by the caller after the session is closed.
+   * @param session session to close
+   */
+  public void closeSession(SessionMemory session)
+  {
+    synchronized (sessions)
+    {
+      if (sessions.get(session.getToken()) != session)
+      {
+        return;
+      }
+      sessions.remove(session.getToken());
+    }
+
+    // closing releases one hold of the lock
+    session.getLock().lock();
+    closeRemovedSession(session);
+  }
+
+  /**
+   * @return number of open sessions
+   */
+  public int getSessionCount()
+  {
+    synchronized (sessions)
+    {
+      return sessions.size();
+    }
+  }
+
+  /**
+   * Closes all the sessions
+   */
+  public void shutdown()
+  {
+    evictor.shutdownNow();
+
+    List<SessionMemory> closing;
+    synchronized (sessions)
+    {
+      closing = new ArrayList<>(sessions.values());
+      sessions.clear();
+    }
+    for (SessionMemory session : closing)
+    {
+      session.getLock().lock();
+      closeRemovedSession(session);
+    }
+  }
+
+  private SessionMemory openSession(String token) throws SessionException
+  {
+    String sessionPath = configurationPath + SESSIONS_DIRECTORY + File.separator + token + File.separator;
+    try
+    {
+      Files.createDirectories(Paths.get(sessionPath));
+    }
+    catch (IOException e)
+    {
+      throw new SessionException("Could not create session directory: " + e.getMessage());
+    }
+
+    logger.info("Session {} opened", token);
+    return new SessionMemory(token, visualizationMultiplier, sessionPath,
+      traciServiceFactory.createTraciService(sessionPath), simulationControlFactory);
+  }
+
+  /**
+   * Removes the least recently used session which is not used by any request. Has to be called
+   * with the sessions locked. The removed session stays locked, so no request can use it.
+   * Session with continuous run is not removed to make room, it is removed only when it expires,
+   * its frame subscribers keep it from expiring.
+   * @param idleFor how long the session has to be without request (ms), 0 to make room
+   * @return removed session or null, if there is none
+   */
+  private SessionMemory removeIdleSession(long idleFor)
+  {
+    long now = System.currentTimeMillis();
+    Iterator<SessionMemory> iterator = sessions.values().iterator();
+    while (iterator.hasNext())
+    {
+      SessionMemory session = iterator.next();
+      // the frame subscribers touch the session without changing the access order
+      if (now - session.getLastAccess() < idleFor)
+      {
+        continue;
+      }
+      if (session.getLock().tryLock())
+      {
+        if (idleFor == 0 && session.isContinuousRun())
+        {
+          session.getLock().unlock();
+          continue;
+        }
+        iterator.remove();
+        return session;
+      }
+    }
+    return null;
+  }
+
+  private void closeExpiredSessions()
+  {
+    List<SessionMemory> expired = new ArrayList<>();
+    synchronized (sessions)
+    {
+      SessionMemory session;
+      while ((session = removeIdleSession(sessionTtl)) != null)
+      {
+        expired.add(session);
+      }
+    }
+
+    for (SessionMemory session : expired)
+    {
+      logger.info("Session {} expired", session.getToken());
+      closeRemovedSession(session);
+    }
+  }
+
+  /**
+   * Stops the simulation of the locked session and deletes its directory
+   * @param session session removed from the registry
+   */
+  private void closeRemovedSession(SessionMemory session)
+  {
+    try
+    {
+      session.close();
+      deleteDirectory(Paths.get(session.getConfigurationPath()));
+    }
+    catch (Exception e)
+    {
+      logger.error("Session {} was not closed correctly: {}", session.getToken(), e.getMessage());
+    }
+    finally
+    {
+      session.getLock().unlock();
+    }
+  }
+
+  private static void deleteDirectory(Path directory) throws IOException
+  {
+    if (!Files.exists(directory))
+    {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(directory))
+    {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+      {
+        Files.delete(path);
+      }
+    }
+  }
+}